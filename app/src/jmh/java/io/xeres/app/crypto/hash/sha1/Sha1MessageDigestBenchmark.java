@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.crypto.hash.sha1;
+
+import io.xeres.common.id.Sha1Sum;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes a file like the share scanner does: small files through a buffer, large ones memory mapped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Sha1MessageDigestBenchmark
+{
+	private static final int FILE_SIZE = 16 * 1024 * 1024;
+
+	private Path file;
+	private byte[] ioBuffer;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		file = Files.createTempFile("xeres-benchmark", ".bin");
+		var data = new byte[FILE_SIZE];
+		ThreadLocalRandom.current().nextBytes(data);
+		Files.write(file, data);
+		ioBuffer = new byte[64 * 1024];
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public Sha1Sum hashBuffered() throws IOException
+	{
+		try (var ios = Files.newInputStream(file))
+		{
+			var md = new Sha1MessageDigest();
+			int read;
+
+			while ((read = ios.read(ioBuffer)) > 0)
+			{
+				md.update(ioBuffer, 0, read);
+			}
+			return md.getSum();
+		}
+	}
+
+	@Benchmark
+	public Sha1Sum hashMapped() throws IOException
+	{
+		try (var fc = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			var md = new Sha1MessageDigest();
+			md.update(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+			return md.getSum();
+		}
+	}
+}
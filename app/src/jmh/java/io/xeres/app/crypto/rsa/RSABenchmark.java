@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.crypto.rsa;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.security.PublicKey;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies signatures the way incoming GXS groups and messages are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RSABenchmark
+{
+	@Param({"1024", "2048"})
+	private int keySize;
+
+	private PublicKey publicKey;
+	private byte[] data;
+	private byte[] signature;
+
+	@Setup
+	public void setup()
+	{
+		var keyPair = RSA.generateKeys(keySize);
+		publicKey = keyPair.getPublic();
+		data = new byte[2048];
+		ThreadLocalRandom.current().nextBytes(data);
+		signature = RSA.sign(data, keyPair.getPrivate());
+	}
+
+	@Benchmark
+	public boolean verify()
+	{
+		return RSA.verify(publicKey, signature, data);
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.net.peer.pipeline;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xeres.app.xrs.item.RawItem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static io.xeres.app.net.peer.packet.MultiPacket.SLICE_FLAG_END;
+import static io.xeres.app.net.peer.packet.MultiPacket.SLICE_FLAG_START;
+import static io.xeres.app.net.peer.packet.Packet.*;
+
+/**
+ * Decodes items sliced into multiple packets, as sent by Retroshare for large items.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PacketDecoderBenchmark
+{
+	@Param({"512", "65536", "250000"})
+	private int itemSize;
+
+	private EmbeddedChannel channel;
+	private ByteBuf input;
+
+	@Setup
+	public void setup()
+	{
+		channel = new EmbeddedChannel(new PacketDecoder(), new ItemDecoder());
+
+		var item = new byte[itemSize];
+		ThreadLocalRandom.current().nextBytes(item);
+		item[0] = 2; // item version
+		Unpooled.wrappedBuffer(item).setInt(4, itemSize); // item size
+
+		input = Unpooled.buffer();
+		var offset = 0;
+		do
+		{
+			var length = Math.min(OPTIMAL_PACKET_SIZE - HEADER_SIZE, itemSize - offset);
+			var flags = 0;
+			if (offset == 0)
+			{
+				flags |= SLICE_FLAG_START;
+			}
+			if (offset + length == itemSize)
+			{
+				flags |= SLICE_FLAG_END;
+			}
+			input.writeByte(SLICE_PROTOCOL_VERSION_ID_01);
+			input.writeByte(flags);
+			input.writeInt(1);
+			input.writeShort(length);
+			input.writeBytes(item, offset, length);
+			offset += length;
+		}
+		while (offset < itemSize);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		input.release();
+		channel.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	public int decode()
+	{
+		channel.writeInbound(input.retainedDuplicate());
+		RawItem rawItem = channel.readInbound();
+		var size = rawItem.getSize();
+		rawItem.dispose();
+		return size;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.service.file;
+
+import io.xeres.common.id.Sha1Sum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks hashes against the bloom filter, which is done for every turtle tunnel request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashBloomFilterBenchmark
+{
+	private static final int ENTRIES = 100_000;
+
+	private HashBloomFilter bloomFilter;
+	private Sha1Sum present;
+	private Sha1Sum absent;
+
+	@Setup
+	public void setup()
+	{
+		bloomFilter = new HashBloomFilter(null, ENTRIES, 0.01);
+		for (var i = 0; i < ENTRIES; i++)
+		{
+			present = createSha1Sum();
+			bloomFilter.add(present);
+		}
+		absent = createSha1Sum();
+	}
+
+	@Benchmark
+	public boolean mightContainPresent()
+	{
+		return bloomFilter.mightContain(present);
+	}
+
+	@Benchmark
+	public boolean mightContainAbsent()
+	{
+		return bloomFilter.mightContain(absent);
+	}
+
+	private static Sha1Sum createSha1Sum()
+	{
+		var bytes = new byte[Sha1Sum.LENGTH];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		return new Sha1Sum(bytes);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.xeres.app.net.peer.PeerConnection;
+import io.xeres.app.xrs.common.Signature;
+import io.xeres.app.xrs.item.Item;
+import io.xeres.app.xrs.service.RsService;
+import io.xeres.app.xrs.service.RsServiceType;
+import io.xeres.app.xrs.service.chat.item.ChatRoomMessageItem;
+import io.xeres.app.xrs.service.filetransfer.item.FileTransferDataItem;
+import io.xeres.app.xrs.service.forum.item.ForumMessageItem;
+import io.xeres.app.xrs.service.gxs.item.GxsTransferMessageItem;
+import io.xeres.app.xrs.service.turtle.item.TurtleGenericDataItem;
+import io.xeres.common.id.GxsId;
+import io.xeres.common.id.MessageId;
+import io.xeres.common.id.Sha1Sum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes and deserializes representative items through the same path as the peer pipeline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializerBenchmark
+{
+	private static final RsService FORUM_SERVICE = new RsService(null)
+	{
+		@Override
+		public RsServiceType getServiceType()
+		{
+			return RsServiceType.FORUMS;
+		}
+
+		@Override
+		public void handleItem(PeerConnection sender, Item item)
+		{
+			// Not used
+		}
+	};
+
+	private ChatRoomMessageItem chatRoomMessageItem;
+	private TurtleGenericDataItem turtleGenericDataItem;
+	private GxsTransferMessageItem gxsTransferMessageItem;
+	private Sha1Sum fileHash;
+	private ByteBuf fileData;
+
+	@Setup
+	public void setup()
+	{
+		var gxsId = new GxsId(randomBytes(GxsId.LENGTH));
+
+		chatRoomMessageItem = new ChatRoomMessageItem("Hello everyone, this is a chat line of an average length.");
+		chatRoomMessageItem.setRoomId(ThreadLocalRandom.current().nextLong());
+		chatRoomMessageItem.setMessageId(ThreadLocalRandom.current().nextLong());
+		chatRoomMessageItem.setSenderNickname("Someone");
+		chatRoomMessageItem.setSignature(new Signature(gxsId, randomBytes(128)));
+
+		turtleGenericDataItem = new TurtleGenericDataItem(randomBytes(4096));
+
+		var forumMessageItem = new ForumMessageItem(gxsId, new MessageId(randomBytes(MessageId.LENGTH)), "Some forum subject");
+		forumMessageItem.setContent("A forum post with a few paragraphs of text. ".repeat(40));
+		gxsTransferMessageItem = new GxsTransferMessageItem(forumMessageItem, 1, RsServiceType.FORUMS);
+
+		fileHash = new Sha1Sum(randomBytes(Sha1Sum.LENGTH));
+		fileData = Unpooled.wrappedBuffer(randomBytes(8192));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		fileData.release();
+	}
+
+	@Benchmark
+	public Item chatRoomMessageItem()
+	{
+		return roundTrip(chatRoomMessageItem, new ChatRoomMessageItem(), null);
+	}
+
+	@Benchmark
+	public Item turtleGenericDataItem()
+	{
+		return roundTrip(turtleGenericDataItem, new TurtleGenericDataItem(), null);
+	}
+
+	@Benchmark
+	public Item gxsTransferMessageItem()
+	{
+		var result = new GxsTransferMessageItem();
+		result.setServiceType(RsServiceType.FORUMS.getType());
+		return roundTrip(gxsTransferMessageItem, result, FORUM_SERVICE);
+	}
+
+	@Benchmark
+	public Item fileTransferDataItem()
+	{
+		// The serialization releases the data, so each item gets its own reference
+		var fileTransferDataItem = new FileTransferDataItem(0L, 1024L * 1024L, fileHash, fileData.retainedDuplicate());
+		return roundTrip(fileTransferDataItem, new FileTransferDataItem(), null);
+	}
+
+	private static Item roundTrip(Item item, Item result, RsService service)
+	{
+		item.setOutgoing(ByteBufAllocator.DEFAULT, service);
+		var rawItem = item.serializeItem(EnumSet.noneOf(SerializationFlags.class));
+		rawItem.deserialize(result);
+		rawItem.dispose();
+		return result;
+	}
+
+	private static byte[] randomBytes(int size)
+	{
+		var bytes = new byte[size];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.turtle;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expires idle tunnels, which is done every turtle cleanup round. The timer wheel only looks at the tunnels
+ * whose timeout expired, the scan looks at all of them like it was done before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimerWheelBenchmark
+{
+	private static final int TUNNELS = 10_000;
+	private static final long TICK = Duration.ofSeconds(1).toNanos();
+	private static final long MAX_TUNNEL_IDLE_TIME = Duration.ofSeconds(60).toNanos();
+
+	private TimerWheel<Integer> tunnelTimeouts;
+	private Map<Integer, Long> lastUsed;
+	private long now;
+
+	@Setup
+	public void setup()
+	{
+		tunnelTimeouts = new TimerWheel<>(Duration.ofNanos(TICK), 128, 0L);
+		lastUsed = HashMap.newHashMap(TUNNELS);
+
+		// The tunnels are spread over their idle time, as if they were created over a minute
+		for (var i = 0; i < TUNNELS; i++)
+		{
+			var created = i * MAX_TUNNEL_IDLE_TIME / TUNNELS;
+			lastUsed.put(i, created);
+			tunnelTimeouts.schedule(i, created + MAX_TUNNEL_IDLE_TIME);
+		}
+		now = MAX_TUNNEL_IDLE_TIME;
+	}
+
+	/**
+	 * Each tunnel was used in the meantime, so it is scheduled again instead of being closed. This keeps the
+	 * number of tunnels constant.
+	 */
+	@Benchmark
+	public int expireTunnelsWithTimerWheel()
+	{
+		now += TICK;
+		tunnelTimeouts.expire(now, tunnelId -> {
+			lastUsed.put(tunnelId, now);
+			tunnelTimeouts.schedule(tunnelId, now + MAX_TUNNEL_IDLE_TIME);
+		});
+		return tunnelTimeouts.size();
+	}
+
+	@Benchmark
+	public int expireTunnelsWithScan()
+	{
+		now += TICK;
+		var expired = 0;
+		for (var entry : lastUsed.entrySet())
+		{
+			if (now - entry.getValue() > MAX_TUNNEL_IDLE_TIME)
+			{
+				entry.setValue(now);
+				expired++;
+			}
+		}
+		return expired;
+	}
+}
@@ -27,6 +27,7 @@ import io.xeres.app.xrs.service.filetransfer.FileTransferRsService;
 import io.xeres.common.id.Sha1Sum;
 import io.xeres.common.rest.file.FileDownloadRequest;
 import io.xeres.common.rest.file.FileProgress;
+import io.xeres.common.rest.file.FileRateLimitRequest;
 import io.xeres.common.rest.file.FileSearchRequest;
 import io.xeres.common.rest.file.FileSearchResponse;
 import jakarta.validation.Valid;
@@ -88,6 +89,21 @@ public class FileController
 		return fileTransferRsService.getUploadStatistics();
 	}
 
+	@PutMapping("/{hash}/rate-limit")
+	@Operation(summary = "Set the upload rate limit of a file, 0 means unlimited")
+	@ApiResponse(responseCode = "204", description = "Rate limit set successfully")
+	@ApiResponse(responseCode = "400", description = "Invalid hash")
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public void setRateLimit(@PathVariable String hash, @Valid @RequestBody FileRateLimitRequest fileRateLimitRequest)
+	{
+		var sha1Sum = Sha1Sum.fromString(hash);
+		if (sha1Sum.isNullIdentifier())
+		{
+			throw new IllegalArgumentException("Invalid hash");
+		}
+		fileTransferRsService.setRateLimit(sha1Sum, fileRateLimitRequest.bytesPerSecond());
+	}
+
 	@DeleteMapping("/downloads/{id}")
 	@Operation(summary = "Remove/cancel a download")
 	@ApiResponse(responseCode = "200", description = "Download removed successfully")
@@ -25,16 +25,22 @@ import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import io.xeres.app.database.model.forum.ForumMessageCursor;
+import io.xeres.app.database.model.forum.ForumThreadNode;
 import io.xeres.app.database.model.gxs.GxsGroupItem;
 import io.xeres.app.service.ForumMessageService;
+import io.xeres.app.service.ForumThreadService;
 import io.xeres.app.service.IdentityService;
 import io.xeres.app.xrs.service.forum.ForumRsService;
 import io.xeres.app.xrs.service.forum.item.ForumMessageItem;
 import io.xeres.common.dto.forum.ForumGroupDTO;
 import io.xeres.common.dto.forum.ForumMessageDTO;
+import io.xeres.common.dto.forum.ForumThreadDTO;
 import io.xeres.common.id.MessageId;
 import io.xeres.common.rest.forum.CreateForumGroupRequest;
 import io.xeres.common.rest.forum.CreateForumMessageRequest;
+import io.xeres.common.rest.forum.ForumMessagePageResponse;
+import io.xeres.common.rest.forum.ForumThreadPageResponse;
 import io.xeres.common.rest.forum.UpdateForumMessagesReadRequest;
 import jakarta.validation.Valid;
 import org.apache.commons.collections4.CollectionUtils;
@@ -57,15 +63,20 @@ import static io.xeres.common.rest.PathConfig.FORUMS_PATH;
 @RequestMapping(value = FORUMS_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
 public class ForumController
 {
+	private static final int DEFAULT_PAGE_SIZE = 500;
+	private static final int MAX_PAGE_SIZE = 2000;
+
 	private final ForumRsService forumRsService;
 	private final IdentityService identityService;
 	private final ForumMessageService forumMessageService;
+	private final ForumThreadService forumThreadService;
 
-	public ForumController(ForumRsService forumRsService, IdentityService identityService, ForumMessageService forumMessageService)
+	public ForumController(ForumRsService forumRsService, IdentityService identityService, ForumMessageService forumMessageService, ForumThreadService forumThreadService)
 	{
 		this.forumRsService = forumRsService;
 		this.identityService = identityService;
 		this.forumMessageService = forumMessageService;
+		this.forumThreadService = forumThreadService;
 	}
 
 	@GetMapping("/groups")
@@ -120,7 +131,97 @@ public class ForumController
 
 		return toSummaryMessageDTOs(forumMessages,
 				forumMessageService.getAuthorsMapFromSummaries(forumMessages),
-				forumMessageService.getMessagesMapFromSummaries(groupId, forumMessages));
+				forumMessageService.getMessageIdsMapFromSummaries(groupId, forumMessages));
+	}
+
+	@GetMapping("/groups/{groupId}/messages/page")
+	@Operation(summary = "Get a page of the summary of messages in a group, most recent first")
+	@ApiResponse(responseCode = "200", description = "Request successful")
+	@ApiResponse(responseCode = "400", description = "Invalid cursor")
+	public ForumMessagePageResponse getForumMessagesPage(@PathVariable long groupId, @RequestParam(value = "cursor", required = false) String cursor, @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size)
+	{
+		var pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+		var before = cursor != null ? ForumMessageCursor.decode(cursor) : null;
+
+		// Fetch one more message to know if there's a next page
+		var forumMessages = forumRsService.findMessagesSummaryPage(groupId, before, pageSize + 1);
+		String nextCursor = null;
+		if (forumMessages.size() > pageSize)
+		{
+			forumMessages = forumMessages.subList(0, pageSize);
+			nextCursor = ForumMessageCursor.fromSummary(forumMessages.getLast()).encode();
+		}
+
+		return new ForumMessagePageResponse(toSummaryMessageDTOs(forumMessages,
+				forumMessageService.getAuthorsMapFromSummaries(forumMessages),
+				forumMessageService.getMessageIdsMapFromSummaries(groupId, forumMessages)),
+				nextCursor);
+	}
+
+	@GetMapping("/groups/{groupId}/threads")
+	@Operation(summary = "Get a page of the threads in a group, most recently active first")
+	@ApiResponse(responseCode = "200", description = "Request successful")
+	@ApiResponse(responseCode = "400", description = "Invalid cursor")
+	public ForumThreadPageResponse getForumThreads(@PathVariable long groupId, @RequestParam(value = "cursor", required = false) String cursor, @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size)
+	{
+		var pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+		var before = cursor != null ? ForumMessageCursor.decode(cursor) : null;
+
+		var threads = forumThreadService.findThreads(groupId, before, pageSize + 1);
+		String nextCursor = null;
+		if (threads.size() > pageSize)
+		{
+			threads = threads.subList(0, pageSize);
+			nextCursor = new ForumMessageCursor(threads.getLast().getLastActivity(), threads.getLast().getMessageId()).encode();
+		}
+
+		return new ForumThreadPageResponse(getThreadDTOs(groupId, threads), nextCursor);
+	}
+
+	@GetMapping("/groups/{groupId}/messages/path")
+	@Operation(summary = "Get a message and its ancestors, from the root of its thread to the message")
+	@ApiResponse(responseCode = "200", description = "Request successful, the list is empty if the message is unknown")
+	public List<ForumThreadDTO> getForumMessagePath(@PathVariable long groupId, @RequestParam(value = "messageId") String messageId)
+	{
+		return getThreadDTOs(groupId, forumThreadService.findPath(groupId, MessageId.fromString(messageId)));
+	}
+
+	@GetMapping("/messages/{messageId}/replies")
+	@Operation(summary = "Get the direct replies to a message")
+	@ApiResponse(responseCode = "200", description = "Request successful")
+	public List<ForumThreadDTO> getForumReplies(@PathVariable long messageId)
+	{
+		var forumThreadNodes = forumThreadService.findReplies(messageId);
+		if (forumThreadNodes.isEmpty())
+		{
+			return List.of();
+		}
+		var forumGroup = forumRsService.findByGxsId(forumThreadNodes.getFirst().getGxsId()).orElseThrow();
+		return getThreadDTOs(forumGroup.getId(), forumThreadNodes);
+	}
+
+	@GetMapping("/messages/{messageId}/ancestors")
+	@Operation(summary = "Get the ids of the ancestors of a message, from its parent to the root of its thread")
+	@ApiResponse(responseCode = "200", description = "Request successful")
+	public List<Long> getForumAncestors(@PathVariable long messageId)
+	{
+		return forumThreadService.findAncestorIds(messageId);
+	}
+
+	private List<ForumThreadDTO> getThreadDTOs(long groupId, List<ForumThreadNode> forumThreadNodes)
+	{
+		if (forumThreadNodes.isEmpty())
+		{
+			return List.of();
+		}
+
+		var forumMessages = forumRsService.findMessagesSummary(forumThreadNodes.stream()
+				.map(ForumThreadNode::getMessageId)
+				.toList());
+
+		return toThreadDTOs(forumThreadNodes, toSummaryMessageDTOs(forumMessages,
+				forumMessageService.getAuthorsMapFromSummaries(forumMessages),
+				forumMessageService.getMessageIdsMapFromSummaries(groupId, forumMessages)));
 	}
 
 	@GetMapping("/messages/{messageId}")
@@ -23,13 +23,19 @@ import io.swagger.v3.oas.annotations.ExternalDocumentation;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import io.xeres.app.net.peer.PeerConnectionManager;
+import io.xeres.app.xrs.service.identity.IdentityManager;
 import io.xeres.app.xrs.service.turtle.TurtleRsService;
+import io.xeres.common.rest.statistics.OutboundQueueStatisticsResponse;
+import io.xeres.common.rest.statistics.PublicKeyCacheStatisticsResponse;
 import io.xeres.common.rest.statistics.TurtleStatisticsResponse;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 import static io.xeres.app.api.controller.statistics.StatisticsMapper.toDTO;
 import static io.xeres.common.rest.PathConfig.STATISTICS_PATH;
 
@@ -39,10 +45,14 @@ import static io.xeres.common.rest.PathConfig.STATISTICS_PATH;
 public class StatisticsController
 {
 	private final TurtleRsService turtleRsService;
+	private final PeerConnectionManager peerConnectionManager;
+	private final IdentityManager identityManager;
 
-	public StatisticsController(TurtleRsService turtleRsService)
+	public StatisticsController(TurtleRsService turtleRsService, PeerConnectionManager peerConnectionManager, IdentityManager identityManager)
 	{
 		this.turtleRsService = turtleRsService;
+		this.peerConnectionManager = peerConnectionManager;
+		this.identityManager = identityManager;
 	}
 
 	@GetMapping("/turtle")
@@ -52,4 +62,20 @@ public class StatisticsController
 	{
 		return toDTO(turtleRsService.getStatistics());
 	}
+
+	@GetMapping("/outbound-queues")
+	@Operation(summary = "Get the number of items waiting to be sent to each peer, by priority")
+	@ApiResponse(responseCode = "200", description = "Request successful")
+	public List<OutboundQueueStatisticsResponse> getOutboundQueueStatistics()
+	{
+		return toDTO(peerConnectionManager.getOutboundQueueDepths());
+	}
+
+	@GetMapping("/public-key-cache")
+	@Operation(summary = "Get the statistics of the identity public key cache")
+	@ApiResponse(responseCode = "200", description = "Request successful")
+	public PublicKeyCacheStatisticsResponse getPublicKeyCacheStatistics()
+	{
+		return toDTO(identityManager.getPublicKeyCache());
+	}
 }
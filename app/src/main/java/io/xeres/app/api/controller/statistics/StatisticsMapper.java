@@ -19,9 +19,18 @@
 
 package io.xeres.app.api.controller.statistics;
 
+import io.xeres.app.net.peer.PeerConnection;
+import io.xeres.app.xrs.item.ItemPriority;
+import io.xeres.app.xrs.service.identity.PublicKeyCache;
 import io.xeres.app.xrs.service.turtle.TurtleStatistics;
+import io.xeres.common.rest.statistics.OutboundQueueStatisticsResponse;
+import io.xeres.common.rest.statistics.PublicKeyCacheStatisticsResponse;
 import io.xeres.common.rest.statistics.TurtleStatisticsResponse;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 final class StatisticsMapper
 {
 	private StatisticsMapper()
@@ -47,4 +56,26 @@ final class StatisticsMapper
 				turtleStatistics.getTotalDownload()
 		);
 	}
+
+	public static List<OutboundQueueStatisticsResponse> toDTO(Map<PeerConnection, Map<ItemPriority, Integer>> outboundQueueDepths)
+	{
+		return outboundQueueDepths.entrySet().stream()
+				.map(entry -> {
+					var queuedItems = new LinkedHashMap<String, Integer>();
+					entry.getValue().forEach((priority, depth) -> queuedItems.put(priority.name(), depth));
+					var location = entry.getKey().getLocation();
+					return new OutboundQueueStatisticsResponse(location.getId(), location.getName(), queuedItems);
+				})
+				.toList();
+	}
+
+	public static PublicKeyCacheStatisticsResponse toDTO(PublicKeyCache publicKeyCache)
+	{
+		return new PublicKeyCacheStatisticsResponse(
+				publicKeyCache.getSize(),
+				publicKeyCache.getHits(),
+				publicKeyCache.getMisses(),
+				publicKeyCache.getEvictions()
+		);
+	}
 }
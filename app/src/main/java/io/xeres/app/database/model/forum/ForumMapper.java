@@ -25,11 +25,14 @@ import io.xeres.app.xrs.service.forum.item.ForumMessageItem;
 import io.xeres.app.xrs.service.identity.item.IdentityGroupItem;
 import io.xeres.common.dto.forum.ForumGroupDTO;
 import io.xeres.common.dto.forum.ForumMessageDTO;
+import io.xeres.common.dto.forum.ForumThreadDTO;
 import io.xeres.common.id.GxsId;
 import io.xeres.common.id.MessageId;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.apache.commons.collections4.ListUtils.emptyIfNull;
 
@@ -86,13 +89,30 @@ public final class ForumMapper
 		);
 	}
 
-	public static List<ForumMessageDTO> toSummaryMessageDTOs(List<ForumMessageItemSummary> forumMessageItemSummaries, Map<GxsId, IdentityGroupItem> authorsMap, Map<MessageId, ForumMessageItem> messagesMap)
+	public static List<ForumMessageDTO> toSummaryMessageDTOs(List<ForumMessageItemSummary> forumMessageItemSummaries, Map<GxsId, IdentityGroupItem> authorsMap, Map<MessageId, Long> messageIdsMap)
 	{
 		return emptyIfNull(forumMessageItemSummaries).stream()
 				.map(forumMessageItemSummary -> toDTO(forumMessageItemSummary,
 						authorsMap.getOrDefault(forumMessageItemSummary.getAuthorId(), IdentityGroupItem.EMPTY).getName(),
-						messagesMap.getOrDefault(forumMessageItemSummary.getOriginalMessageId(), ForumMessageItem.EMPTY).getId(),
-						messagesMap.getOrDefault(forumMessageItemSummary.getParentId(), ForumMessageItem.EMPTY).getId()
+						messageIdsMap.getOrDefault(forumMessageItemSummary.getOriginalMessageId(), 0L),
+						messageIdsMap.getOrDefault(forumMessageItemSummary.getParentId(), 0L)
+				))
+				.toList();
+	}
+
+	public static List<ForumThreadDTO> toThreadDTOs(List<ForumThreadNode> forumThreadNodes, List<ForumMessageDTO> forumMessages)
+	{
+		var messagesMap = forumMessages.stream()
+				.collect(Collectors.toMap(ForumMessageDTO::id, Function.identity()));
+
+		return emptyIfNull(forumThreadNodes).stream()
+				.filter(forumThreadNode -> messagesMap.containsKey(forumThreadNode.getMessageId()))
+				.map(forumThreadNode -> new ForumThreadDTO(
+						messagesMap.get(forumThreadNode.getMessageId()),
+						forumThreadNode.getRootId(),
+						forumThreadNode.getDepth(),
+						forumThreadNode.getReplyCount(),
+						forumThreadNode.getLastActivity()
 				))
 				.toList();
 	}
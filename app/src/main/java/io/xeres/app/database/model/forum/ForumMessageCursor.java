@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.database.model.forum;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position within a list of messages of a forum, which are sorted by date (publication or last activity) then id,
+ * both descending.
+ * <p>
+ * Unlike an offset, it stays valid when new messages arrive while the list is being fetched.
+ *
+ * @param date the date of the last returned message, or null if it has none (undated messages come after all dated ones)
+ * @param id   the id of the last returned message
+ */
+public record ForumMessageCursor(Instant date, long id)
+{
+	private static final String SEPARATOR = ":";
+	private static final String UNDATED = "u";
+
+	public static ForumMessageCursor fromSummary(ForumMessageItemSummary forumMessageItemSummary)
+	{
+		return new ForumMessageCursor(forumMessageItemSummary.getPublished(), forumMessageItemSummary.getId());
+	}
+
+	public boolean isUndated()
+	{
+		return date == null;
+	}
+
+	/**
+	 * Decodes a cursor sent by a client.
+	 *
+	 * @param cursor the encoded cursor
+	 * @return the cursor
+	 * @throws IllegalArgumentException if the cursor is invalid
+	 */
+	public static ForumMessageCursor decode(String cursor)
+	{
+		var tokens = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII).split(SEPARATOR);
+		try
+		{
+			if (tokens.length == 2 && tokens[0].equals(UNDATED))
+			{
+				return new ForumMessageCursor(null, Long.parseLong(tokens[1]));
+			}
+			if (tokens.length != 3)
+			{
+				throw new IllegalArgumentException("Invalid cursor: " + cursor);
+			}
+			return new ForumMessageCursor(Instant.ofEpochSecond(Long.parseLong(tokens[0]), Integer.parseInt(tokens[1])), Long.parseLong(tokens[2]));
+		}
+		catch (NumberFormatException | DateTimeException e)
+		{
+			throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+		}
+	}
+
+	public String encode()
+	{
+		var cursor = date != null ? (date.getEpochSecond() + SEPARATOR + date.getNano() + SEPARATOR + id) : (UNDATED + SEPARATOR + id);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.US_ASCII));
+	}
+}
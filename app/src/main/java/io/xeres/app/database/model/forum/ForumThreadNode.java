@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.database.model.forum;
+
+import io.xeres.common.id.GxsId;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Position of a forum message within its thread. Messages are referenced by their database id.
+ * <p>
+ * A message whose parent is not known (yet) is a root. It's attached to its parent once it arrives.
+ */
+@Entity
+public class ForumThreadNode
+{
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private long id;
+
+	@Embedded
+	@AttributeOverride(name = "identifier", column = @Column(name = "gxs_id"))
+	private GxsId gxsId;
+
+	private long messageId;
+
+	private Long parentId;
+
+	private long rootId;
+
+	private int depth;
+
+	private int replyCount; // All the replies below, not only the direct ones
+
+	private Instant lastActivity;
+
+	protected ForumThreadNode()
+	{
+
+	}
+
+	public ForumThreadNode(GxsId gxsId, long messageId, Instant published)
+	{
+		this.gxsId = gxsId;
+		this.messageId = messageId;
+		rootId = messageId;
+		lastActivity = Objects.requireNonNullElse(published, Instant.EPOCH); // The keyset cursor needs a date
+	}
+
+	public long getId()
+	{
+		return id;
+	}
+
+	public void setId(long id)
+	{
+		this.id = id;
+	}
+
+	public GxsId getGxsId()
+	{
+		return gxsId;
+	}
+
+	public void setGxsId(GxsId gxsId)
+	{
+		this.gxsId = gxsId;
+	}
+
+	public long getMessageId()
+	{
+		return messageId;
+	}
+
+	public void setMessageId(long messageId)
+	{
+		this.messageId = messageId;
+	}
+
+	public Long getParentId()
+	{
+		return parentId;
+	}
+
+	public void setParentId(Long parentId)
+	{
+		this.parentId = parentId;
+	}
+
+	public boolean isRoot()
+	{
+		return parentId == null;
+	}
+
+	public long getRootId()
+	{
+		return rootId;
+	}
+
+	public void setRootId(long rootId)
+	{
+		this.rootId = rootId;
+	}
+
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	public void setDepth(int depth)
+	{
+		this.depth = depth;
+	}
+
+	public int getReplyCount()
+	{
+		return replyCount;
+	}
+
+	public void setReplyCount(int replyCount)
+	{
+		this.replyCount = replyCount;
+	}
+
+	public Instant getLastActivity()
+	{
+		return lastActivity;
+	}
+
+	public void setLastActivity(Instant lastActivity)
+	{
+		this.lastActivity = lastActivity;
+	}
+
+	/**
+	 * Accounts for a subtree that was added below.
+	 *
+	 * @param replies      the number of messages in the subtree
+	 * @param lastActivity the most recent publication date of the subtree
+	 */
+	public void addReplies(int replies, Instant lastActivity)
+	{
+		replyCount += replies;
+		if (lastActivity != null && (this.lastActivity == null || lastActivity.isAfter(this.lastActivity)))
+		{
+			this.lastActivity = lastActivity;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ForumThreadNode{" +
+				"messageId=" + messageId +
+				", parentId=" + parentId +
+				", rootId=" + rootId +
+				", depth=" + depth +
+				", replyCount=" + replyCount +
+				'}';
+	}
+}
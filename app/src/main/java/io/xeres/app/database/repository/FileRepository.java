@@ -20,7 +20,9 @@
 package io.xeres.app.database.repository;
 
 import io.xeres.app.database.model.file.File;
+import io.xeres.common.file.FileType;
 import io.xeres.common.id.Sha1Sum;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -34,12 +36,20 @@ public interface FileRepository extends JpaRepository<File, Long>
 
 	List<File> findAllByNameContainingIgnoreCase(String name);
 
+	List<File> findAllByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
 	Optional<File> findByNameAndParent(String name, File parent);
 
+	List<File> findAllByParent(File parent);
+
+	List<File> findAllByParentAndType(File parent, FileType type);
+
 	Optional<File> findByNameAndParentName(String name, String parentName);
 
 	int countByParent(File parent);
 
+	Optional<File> findFirstByOrderByIdDesc();
+
 	List<File> findByHash(Sha1Sum hash);
 
 	List<File> findByEncryptedHash(Sha1Sum encryptedHash);
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.database.repository;
+
+import io.xeres.app.database.model.forum.ForumThreadNode;
+import io.xeres.common.id.GxsId;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Transactional(readOnly = true)
+public interface ForumThreadNodeRepository extends JpaRepository<ForumThreadNode, Long>
+{
+	Optional<ForumThreadNode> findByMessageId(long messageId);
+
+	List<ForumThreadNode> findAllByMessageIdIn(Collection<Long> messageIds);
+
+	List<ForumThreadNode> findAllByRootId(long rootId);
+
+	List<ForumThreadNode> findAllByGxsIdAndParentIdOrderByMessageIdAsc(GxsId groupId, long parentId);
+
+	List<ForumThreadNode> findAllByGxsIdAndParentIdIsNullOrderByLastActivityDescMessageIdDesc(GxsId groupId, Limit limit);
+
+	@Query("SELECT n FROM ForumThreadNode n WHERE n.gxsId = :groupId AND n.parentId IS NULL AND (n.lastActivity < :lastActivity OR (n.lastActivity = :lastActivity AND n.messageId < :messageId)) ORDER BY n.lastActivity DESC, n.messageId DESC")
+	List<ForumThreadNode> findAllRootsByGxsIdBefore(GxsId groupId, Instant lastActivity, long messageId, Limit limit);
+
+	boolean existsByGxsId(GxsId groupId);
+}
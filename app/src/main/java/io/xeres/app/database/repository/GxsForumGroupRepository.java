@@ -21,7 +21,9 @@ package io.xeres.app.database.repository;
 
 import io.xeres.app.xrs.service.forum.item.ForumGroupItem;
 import io.xeres.common.id.GxsId;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
@@ -34,6 +36,10 @@ public interface GxsForumGroupRepository extends JpaRepository<ForumGroupItem, L
 {
 	Optional<ForumGroupItem> findByGxsId(GxsId gxsId);
 
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Transactional
+	Optional<ForumGroupItem> findLockedByGxsId(GxsId gxsId);
+
 	List<ForumGroupItem> findAllByGxsIdIn(Set<GxsId> gxsIds);
 
 	List<ForumGroupItem> findAllBySubscribedIsTrue();
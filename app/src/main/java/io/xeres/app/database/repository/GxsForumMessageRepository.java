@@ -19,14 +19,18 @@
 
 package io.xeres.app.database.repository;
 
+import io.xeres.app.database.model.forum.ForumMessageItemId;
 import io.xeres.app.database.model.forum.ForumMessageItemSummary;
 import io.xeres.app.xrs.service.forum.item.ForumMessageItem;
 import io.xeres.common.id.GxsId;
 import io.xeres.common.id.MessageId;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -42,5 +46,29 @@ public interface GxsForumMessageRepository extends JpaRepository<ForumMessageIte
 
 	List<ForumMessageItemSummary> findSummaryAllByGxsId(GxsId groupId);
 
+	@Query("SELECT m.id AS id, m.gxsId AS gxsId, m.messageId AS messageId, m.originalMessageId AS originalMessageId, m.parentId AS parentId, m.authorId AS authorId, m.name AS name, m.published AS published, m.read AS read " +
+			"FROM forum_message m WHERE m.gxsId = :groupId AND m.published IS NOT NULL ORDER BY m.published DESC, m.id DESC")
+	List<ForumMessageItemSummary> findSummaryAllDatedByGxsIdFirst(GxsId groupId, Limit limit);
+
+	@Query("SELECT m.id AS id, m.gxsId AS gxsId, m.messageId AS messageId, m.originalMessageId AS originalMessageId, m.parentId AS parentId, m.authorId AS authorId, m.name AS name, m.published AS published, m.read AS read " +
+			"FROM forum_message m WHERE m.gxsId = :groupId AND (m.published < :published OR (m.published = :published AND m.id < :id)) ORDER BY m.published DESC, m.id DESC")
+	List<ForumMessageItemSummary> findSummaryAllDatedByGxsIdBefore(GxsId groupId, Instant published, long id, Limit limit);
+
+	@Query("SELECT m.id AS id, m.gxsId AS gxsId, m.messageId AS messageId, m.originalMessageId AS originalMessageId, m.parentId AS parentId, m.authorId AS authorId, m.name AS name, m.published AS published, m.read AS read " +
+			"FROM forum_message m WHERE m.gxsId = :groupId AND m.published IS NULL ORDER BY m.id DESC")
+	List<ForumMessageItemSummary> findSummaryAllUndatedByGxsIdFirst(GxsId groupId, Limit limit);
+
+	@Query("SELECT m.id AS id, m.gxsId AS gxsId, m.messageId AS messageId, m.originalMessageId AS originalMessageId, m.parentId AS parentId, m.authorId AS authorId, m.name AS name, m.published AS published, m.read AS read " +
+			"FROM forum_message m WHERE m.gxsId = :groupId AND m.published IS NULL AND m.id < :id ORDER BY m.id DESC")
+	List<ForumMessageItemSummary> findSummaryAllUndatedByGxsIdBefore(GxsId groupId, long id, Limit limit);
+
+	List<ForumMessageItemId> findIdAllByGxsIdAndMessageIdIn(GxsId groupId, Set<MessageId> messageIds);
+
+	Optional<ForumMessageItemId> findIdByGxsIdAndMessageId(GxsId groupId, MessageId messageId);
+
+	List<ForumMessageItemId> findIdAllByGxsIdAndParentId(GxsId groupId, MessageId parentId);
+
+	List<ForumMessageItemSummary> findSummaryAllByIdIn(Collection<Long> ids);
+
 	List<ForumMessageItem> findAllByMessageIdIn(Set<MessageId> messageIds);
 }
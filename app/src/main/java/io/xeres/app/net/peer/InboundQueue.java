@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.net.peer;
+
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Incoming queue of a peer connection. Runs the handlers that might block (for example, because they access the database)
+ * on virtual threads instead of the event loop, so that they don't stall the other peers sharing it.
+ * <p>
+ * The tasks of a peer are run one after the other, in the order they were added. If too many tasks are waiting, reading
+ * from the peer is suspended until the queue has drained enough.
+ */
+public class InboundQueue
+{
+	private static final Logger log = LoggerFactory.getLogger(InboundQueue.class);
+
+	private static final int HIGH_WATER_MARK = 256;
+	private static final int LOW_WATER_MARK = 64;
+
+	/**
+	 * Maximum number of handlers running at the same time, for all peers. Keep it below the size
+	 * of the database connection pool.
+	 */
+	private static final int MAXIMUM_CONCURRENT_HANDLERS = 8;
+
+	private static final Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+	private static final Semaphore runningHandlers = new Semaphore(MAXIMUM_CONCURRENT_HANDLERS);
+
+	private final ChannelHandlerContext ctx;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger depth = new AtomicInteger();
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	public InboundQueue(ChannelHandlerContext ctx)
+	{
+		this.ctx = ctx;
+	}
+
+	/**
+	 * Checks if the queue has no pending task. Items that don't need to be queued must still be
+	 * queued if this returns false, otherwise they would overtake the ones in the queue.
+	 *
+	 * @return true if there's no pending task
+	 */
+	public boolean isEmpty()
+	{
+		return depth.get() == 0;
+	}
+
+	/**
+	 * Adds a task to run.
+	 *
+	 * @param task the task
+	 */
+	public void add(Runnable task)
+	{
+		tasks.add(task);
+		if (depth.incrementAndGet() == HIGH_WATER_MARK)
+		{
+			log.debug("Too many pending items from {}, suspending reads", ctx.channel().remoteAddress());
+			ReadSuspension.suspend(ctx.channel(), this);
+		}
+		schedule();
+	}
+
+	public int getDepth()
+	{
+		return depth.get();
+	}
+
+	private void schedule()
+	{
+		if (!tasks.isEmpty() && running.compareAndSet(false, true))
+		{
+			executor.execute(this::run);
+		}
+	}
+
+	private void run()
+	{
+		try
+		{
+			Runnable task;
+			while ((task = tasks.poll()) != null)
+			{
+				runTask(task);
+				if (depth.decrementAndGet() == LOW_WATER_MARK)
+				{
+					log.debug("Resuming reads from {}", ctx.channel().remoteAddress());
+					ReadSuspension.resume(ctx.channel(), this);
+				}
+			}
+		}
+		finally
+		{
+			running.set(false);
+		}
+		schedule(); // A task might have been added after the queue was found empty
+	}
+
+	private static void runTask(Runnable task)
+	{
+		runningHandlers.acquireUninterruptibly();
+		try
+		{
+			task.run();
+		}
+		catch (RuntimeException e)
+		{
+			log.error("Error while handling item: {}", e.getMessage(), e);
+		}
+		finally
+		{
+			runningHandlers.release();
+		}
+	}
+}
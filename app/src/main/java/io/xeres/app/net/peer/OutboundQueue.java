@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.net.peer;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.xeres.app.net.peer.packet.SlicedItem;
+import io.xeres.app.net.peer.pipeline.MultiPacketEncoder;
+import io.xeres.app.xrs.item.ItemPriority;
+import io.xeres.app.xrs.item.RawItem;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.xeres.app.net.peer.packet.Packet.OPTIMAL_PACKET_SIZE;
+
+/**
+ * Outgoing queue of a peer connection. Items are queued by priority and drained using a deficit round-robin
+ * where each priority gets a share of the bandwidth proportional to its value. Higher priorities are visited first
+ * in each round so that interactive items never wait behind more than one round of bulk data.
+ * <p>
+ * Once the peer supports the new packet format, big items are written one slice at a time, so an interactive item
+ * only waits for the slices already handed to the channel instead of the whole item. If a slice fails to be written,
+ * the remaining ones are dropped since the peer can't reassemble the item anymore.
+ * <p>
+ * Items are only handed to the channel while it's writable. The queue is drained again once the channel becomes
+ * writable, and the channel is flushed once per drain instead of once per item.
+ * <p>
+ * Bulk producers (like file transfers) can check {@link #isFull()} and ask to be notified with
+ * {@link #whenWritable(Runnable)} instead of piling up items.
+ */
+public class OutboundQueue
+{
+	/**
+	 * Number of bytes given to each lane per round, multiplied by its priority.
+	 */
+	private static final int QUANTUM = OPTIMAL_PACKET_SIZE;
+
+	/**
+	 * Number of queued bytes above which the queue is considered full.
+	 */
+	private static final int HIGH_WATER_MARK = 256 * 1024;
+
+	/**
+	 * Number of queued bytes below which the producers waiting for the queue are notified.
+	 */
+	private static final int LOW_WATER_MARK = 64 * 1024;
+
+	private static final class Entry
+	{
+		private final RawItem rawItem;
+		private final ChannelPromise promise;
+		private SlicedItem slicedItem; // set once the item is being sent slice by slice
+
+		private Entry(RawItem rawItem, ChannelPromise promise)
+		{
+			this.rawItem = rawItem;
+			this.promise = promise;
+		}
+
+		/**
+		 * Gets the number of bytes that still need to be written.
+		 */
+		int size()
+		{
+			return slicedItem != null ? slicedItem.getRemaining() : rawItem.getBuffer().readableBytes();
+		}
+
+		/**
+		 * Gets the number of bytes of the next write.
+		 */
+		int nextSize(boolean slicing)
+		{
+			if (slicedItem != null)
+			{
+				return slicedItem.getNextSize();
+			}
+			return slicing && SlicedItem.needsSlicing(rawItem.getBuffer()) ? SlicedItem.MAXIMUM_SLICE_SIZE : size();
+		}
+	}
+
+	private static final class Lane
+	{
+		private final ItemPriority priority;
+		private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger depth = new AtomicInteger();
+		private int deficit;
+		private boolean visited;
+
+		private Lane(ItemPriority priority)
+		{
+			this.priority = priority;
+		}
+	}
+
+	private final ChannelHandlerContext ctx;
+	private Boolean slicingEncoder; // looked up when first needed, only from the event loop
+	private final Lane[] lanes; // sorted by descending priority
+	private final Lane[] lanesByPriority;
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong pendingBytes = new AtomicLong();
+	private final Queue<Runnable> writableListeners = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private volatile boolean closed;
+	private int current;
+
+	public OutboundQueue(ChannelHandlerContext ctx)
+	{
+		this.ctx = ctx;
+		lanes = Arrays.stream(ItemPriority.values())
+				.sorted(Comparator.comparingInt(ItemPriority::getPriority).reversed())
+				.map(Lane::new)
+				.toArray(Lane[]::new);
+
+		lanesByPriority = new Lane[ItemPriority.REALTIME.getPriority() + 1];
+		for (var i = 0; i < lanesByPriority.length; i++)
+		{
+			var priority = i;
+			lanesByPriority[i] = Arrays.stream(lanes)
+					.filter(lane -> lane.priority.getPriority() <= priority)
+					.findFirst()
+					.orElse(lanes[lanes.length - 1]);
+		}
+	}
+
+	/**
+	 * Queues an item for sending. Can be called from any thread.
+	 *
+	 * @param rawItem the serialized item, released once sent or if the queue is closed
+	 * @return the future of the write
+	 */
+	public ChannelFuture add(RawItem rawItem)
+	{
+		var promise = ctx.newPromise();
+		if (closed)
+		{
+			rawItem.dispose();
+			promise.tryFailure(new ClosedChannelException());
+			return promise;
+		}
+		var lane = lanesByPriority[Math.min(Math.max(rawItem.getPriority(), 0), lanesByPriority.length - 1)];
+		lane.entries.add(new Entry(rawItem, promise));
+		lane.depth.incrementAndGet();
+		pending.incrementAndGet();
+		pendingBytes.addAndGet(rawItem.getBuffer().readableBytes());
+
+		if (closed)
+		{
+			// The queue was closed while the item was being added
+			releaseAll();
+			return promise;
+		}
+
+		scheduleDrain();
+		return promise;
+	}
+
+	/**
+	 * Checks if the queue has enough data waiting to be sent. Bulk producers should wait until
+	 * it's writable again.
+	 *
+	 * @return true if full
+	 */
+	public boolean isFull()
+	{
+		return pendingBytes.get() >= HIGH_WATER_MARK;
+	}
+
+	/**
+	 * Runs an action once the queue has drained below its low water mark. The action runs immediately if the queue
+	 * is not full. It is run only once, from the event loop or the calling thread, so it must not block.
+	 *
+	 * @param listener the action to run
+	 */
+	public void whenWritable(Runnable listener)
+	{
+		writableListeners.add(listener);
+		if (!isFull())
+		{
+			notifyWritable();
+		}
+	}
+
+	/**
+	 * Resumes sending. To be called by the event loop when the channel becomes writable again.
+	 */
+	public void resume()
+	{
+		if (ctx.channel().isWritable())
+		{
+			drain();
+		}
+	}
+
+	/**
+	 * Gets the number of items waiting to be sent, by priority.
+	 *
+	 * @return the number of queued items for each priority
+	 */
+	public Map<ItemPriority, Integer> getDepths()
+	{
+		var depths = new EnumMap<ItemPriority, Integer>(ItemPriority.class);
+		for (var lane : lanes)
+		{
+			depths.put(lane.priority, lane.depth.get());
+		}
+		return depths;
+	}
+
+	/**
+	 * Closes the queue and releases all queued items. Their writes are failed, as well as the ones of the items
+	 * added afterward.
+	 */
+	public void clear()
+	{
+		closed = true;
+		releaseAll();
+	}
+
+	private void releaseAll()
+	{
+		for (var lane : lanes)
+		{
+			Entry entry;
+			while ((entry = lane.entries.poll()) != null)
+			{
+				lane.depth.decrementAndGet();
+				pending.decrementAndGet();
+				pendingBytes.addAndGet(-entry.size());
+				entry.rawItem.dispose();
+				entry.promise.tryFailure(new ClosedChannelException());
+			}
+		}
+		notifyWritable();
+	}
+
+	private void scheduleDrain()
+	{
+		if (drainScheduled.compareAndSet(false, true))
+		{
+			ctx.executor().execute(this::drain);
+		}
+	}
+
+	private void drain()
+	{
+		drainScheduled.set(false);
+		if (closed)
+		{
+			return;
+		}
+
+		var written = false;
+		var slicing = isSlicing();
+
+		while (pending.get() > 0 && ctx.channel().isWritable())
+		{
+			var lane = lanes[current];
+			var entry = lane.entries.peek();
+			if (entry == null)
+			{
+				lane.deficit = 0;
+				nextLane(lane);
+				continue;
+			}
+
+			if (entry.promise.isDone())
+			{
+				// One of its slices failed (or the write was cancelled), the rest is useless
+				remove(lane, entry);
+				entry.rawItem.dispose();
+				continue;
+			}
+
+			if (!lane.visited)
+			{
+				lane.deficit += QUANTUM * lane.priority.getPriority();
+				lane.visited = true;
+			}
+
+			var size = entry.nextSize(slicing);
+			if (size <= lane.deficit)
+			{
+				lane.deficit -= size;
+				write(lane, entry, slicing);
+				written = true;
+			}
+			else
+			{
+				nextLane(lane);
+			}
+		}
+
+		if (written)
+		{
+			ctx.flush();
+		}
+
+		if (!writableListeners.isEmpty() && pendingBytes.get() <= LOW_WATER_MARK)
+		{
+			notifyWritable();
+		}
+	}
+
+	private boolean isSlicing()
+	{
+		if (slicingEncoder == null)
+		{
+			slicingEncoder = ctx.pipeline().get(MultiPacketEncoder.class) != null;
+		}
+		return slicingEncoder && Boolean.TRUE.equals(ctx.channel().attr(PeerAttribute.MULTI_PACKET).get());
+	}
+
+	private void write(Lane lane, Entry entry, boolean slicing)
+	{
+		if (entry.slicedItem == null)
+		{
+			if (!slicing || !SlicedItem.needsSlicing(entry.rawItem.getBuffer()))
+			{
+				remove(lane, entry);
+				ctx.write(entry.rawItem, entry.promise);
+				return;
+			}
+			entry.slicedItem = new SlicedItem(entry.rawItem.getBuffer());
+		}
+
+		var itemSlice = entry.slicedItem.next();
+		pendingBytes.addAndGet(-itemSlice.content().readableBytes());
+		if (entry.slicedItem.hasNext())
+		{
+			ctx.write(itemSlice, ctx.newPromise().addListener((ChannelFutureListener) future -> {
+				if (!future.isSuccess() && entry.promise.tryFailure(future.cause()))
+				{
+					scheduleDrain(); // to drop the remaining slices
+				}
+			}));
+		}
+		else
+		{
+			remove(lane, entry); // nothing left to count
+			entry.rawItem.dispose(); // the slices hold their own reference
+			ctx.write(itemSlice, entry.promise);
+		}
+	}
+
+	private void remove(Lane lane, Entry entry)
+	{
+		lane.entries.poll();
+		lane.depth.decrementAndGet();
+		pending.decrementAndGet();
+		pendingBytes.addAndGet(-entry.size());
+	}
+
+	private void notifyWritable()
+	{
+		Runnable listener;
+		while ((listener = writableListeners.poll()) != null)
+		{
+			listener.run();
+		}
+	}
+
+	private void nextLane(Lane lane)
+	{
+		lane.visited = false;
+		current = (current + 1) % lanes.length;
+	}
+}
@@ -21,10 +21,13 @@ package io.xeres.app.net.peer;
 
 import io.netty.util.AttributeKey;
 
+import java.util.Set;
+
 public final class PeerAttribute
 {
 	public static final AttributeKey<Boolean> MULTI_PACKET = AttributeKey.valueOf("MULTI_PACKET");
 	public static final AttributeKey<PeerConnection> PEER_CONNECTION = AttributeKey.valueOf("PEER_CONNECTION");
+	public static final AttributeKey<Set<Object>> READ_SUSPENSIONS = AttributeKey.valueOf("READ_SUSPENSIONS");
 
 	private PeerAttribute()
 	{
@@ -25,7 +25,12 @@ import io.xeres.app.database.model.location.Location;
 import io.xeres.app.xrs.service.RsService;
 import io.xeres.common.util.NoSuppressedRunnable;
 
-import java.util.*;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -33,16 +38,20 @@ public class PeerConnection
 {
 	private Location location;
 	private final ChannelHandlerContext ctx;
-	private final Set<RsService> services = new HashSet<>();
+	private final Set<RsService> services = ConcurrentHashMap.newKeySet();
 	private final AtomicBoolean servicesSent = new AtomicBoolean(false);
-	private final Map<Integer, Object> data = new HashMap<>();
-	private final Map<Integer, Map<Integer, Object>> serviceData = new HashMap<>();
-	private final List<ScheduledFuture<?>> schedules = new ArrayList<>();
+	private final Map<Integer, Object> data = new ConcurrentHashMap<>();
+	private final Map<Integer, Map<Integer, Object>> serviceData = new ConcurrentHashMap<>();
+	private final Queue<ScheduledFuture<?>> schedules = new ConcurrentLinkedQueue<>();
+	private final InboundQueue inboundQueue;
+	private final OutboundQueue outboundQueue;
 
 	public PeerConnection(Location location, ChannelHandlerContext ctx)
 	{
 		this.location = location;
 		this.ctx = ctx;
+		inboundQueue = new InboundQueue(ctx);
+		outboundQueue = new OutboundQueue(ctx);
 	}
 
 	public ChannelHandlerContext getCtx()
@@ -50,6 +59,16 @@ public class PeerConnection
 		return ctx;
 	}
 
+	public InboundQueue getInboundQueue()
+	{
+		return inboundQueue;
+	}
+
+	public OutboundQueue getOutboundQueue()
+	{
+		return outboundQueue;
+	}
+
 	public Location getLocation()
 	{
 		return location;
@@ -119,7 +138,7 @@ public class PeerConnection
 	 */
 	public void putServiceData(RsService service, int key, Object data)
 	{
-		serviceData.computeIfAbsent(service.getServiceType().getType(), k -> new HashMap<>()).put(key, data);
+		serviceData.computeIfAbsent(service.getServiceType().getType(), k -> new ConcurrentHashMap<>()).put(key, data);
 	}
 
 	/**
@@ -180,6 +199,7 @@ public class PeerConnection
 	public void cleanup()
 	{
 		schedules.forEach(scheduledFuture -> scheduledFuture.cancel(false));
+		outboundQueue.clear();
 	}
 
 	@Override
@@ -27,6 +27,8 @@ import io.xeres.app.database.model.location.Location;
 import io.xeres.app.service.notification.availability.AvailabilityNotificationService;
 import io.xeres.app.service.notification.status.StatusNotificationService;
 import io.xeres.app.xrs.item.Item;
+import io.xeres.app.xrs.item.ItemPriority;
+import io.xeres.app.xrs.item.RawItem;
 import io.xeres.app.xrs.serialization.SerializationFlags;
 import io.xeres.app.xrs.service.RsService;
 import io.xeres.common.location.Availability;
@@ -35,11 +37,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static io.xeres.app.net.peer.PeerAttribute.PEER_CONNECTION;
 
@@ -147,6 +153,59 @@ public class PeerConnectionManager
 		return writeItem(peerConnection.getCtx(), item);
 	}
 
+	/**
+	 * Writes the same item to several peers. The item is serialized once and each peer gets a duplicate of the
+	 * resulting buffer, instead of having to clone and serialize the item for each of them.
+	 *
+	 * @param peerConnections the peers to write to, the ones that are disconnected are skipped
+	 * @param item            the item, it must not be written again afterwards (use a clone of it)
+	 * @param rsService       the service
+	 * @return the size of the serialized item, or 0 if it wasn't written to any peer
+	 */
+	public int writeItem(Collection<PeerConnection> peerConnections, Item item, RsService rsService)
+	{
+		var targets = peerConnections.stream()
+				.map(peerConnection -> peers.get(peerConnection.getLocation().getId()))
+				.filter(Objects::nonNull)
+				.toList();
+
+		if (targets.isEmpty())
+		{
+			return 0;
+		}
+
+		item.setOutgoing(targets.getFirst().getCtx().alloc(), rsService);
+		var rawItem = item.serializeItem(EnumSet.noneOf(SerializationFlags.class));
+		log.debug("==> {} (to {} peers)", item, targets.size());
+		log.trace("Message content: {}", rawItem);
+		try
+		{
+			targets.forEach(peerConnection -> peerConnection.getOutboundQueue().add(new RawItem(rawItem.getBuffer().retainedDuplicate(), rawItem.getPriority())));
+			return rawItem.getSize();
+		}
+		finally
+		{
+			rawItem.dispose();
+		}
+	}
+
+	/**
+	 * Writes the same item to all peers supporting a service.
+	 *
+	 * @param item      the item
+	 * @param rsService the service
+	 * @return the number of peers the item was written to
+	 * @see #writeItem(Collection, Item, RsService)
+	 */
+	public int writeItemToAllPeers(Item item, RsService rsService)
+	{
+		var targets = peers.values().stream()
+				.filter(peerConnection -> peerConnection.isServiceSupported(rsService))
+				.toList();
+		writeItem(targets, item, rsService);
+		return targets.size();
+	}
+
 	public void doForAllPeers(Consumer<PeerConnection> action, RsService rsService)
 	{
 		peers.forEach((peerId, peerConnection) ->
@@ -171,9 +230,20 @@ public class PeerConnectionManager
 		var rawItem = item.serializeItem(EnumSet.noneOf(SerializationFlags.class));
 		log.debug("==> {}", item);
 		log.trace("Message content: {}", rawItem);
+		var peerConnection = ctx.channel().attr(PEER_CONNECTION).get();
+		if (peerConnection != null)
+		{
+			return peerConnection.getOutboundQueue().add(rawItem);
+		}
 		return ctx.writeAndFlush(rawItem);
 	}
 
+	public Map<PeerConnection, Map<ItemPriority, Integer>> getOutboundQueueDepths()
+	{
+		return peers.values().stream()
+				.collect(Collectors.toMap(Function.identity(), peerConnection -> peerConnection.getOutboundQueue().getDepths()));
+	}
+
 	public int getNumberOfPeers()
 	{
 		return peers.size();
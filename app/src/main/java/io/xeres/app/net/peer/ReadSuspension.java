@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.net.peer;
+
+import io.netty.channel.Channel;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Suspends reading from a peer. There can be several reasons to suspend it (too many pending items, too much
+ * received data waiting to be written, ...) and reading only resumes once all of them are gone, so that one
+ * kind of backpressure doesn't cancel another.
+ */
+public final class ReadSuspension
+{
+	private ReadSuspension()
+	{
+		throw new UnsupportedOperationException("Utility class");
+	}
+
+	/**
+	 * Suspends reading from a channel.
+	 *
+	 * @param channel the channel
+	 * @param reason  the reason, which must be given again to resume
+	 */
+	public static void suspend(Channel channel, Object reason)
+	{
+		var reasons = getReasons(channel);
+		synchronized (reasons)
+		{
+			if (reasons.add(reason) && reasons.size() == 1)
+			{
+				channel.config().setAutoRead(false);
+			}
+		}
+	}
+
+	/**
+	 * Removes a reason to suspend reading from a channel. Reading resumes if there's no other reason left.
+	 *
+	 * @param channel the channel
+	 * @param reason  the reason given when suspending
+	 */
+	public static void resume(Channel channel, Object reason)
+	{
+		var reasons = getReasons(channel);
+		synchronized (reasons)
+		{
+			if (reasons.remove(reason) && reasons.isEmpty())
+			{
+				channel.config().setAutoRead(true);
+			}
+		}
+	}
+
+	private static Set<Object> getReasons(Channel channel)
+	{
+		var attribute = channel.attr(PeerAttribute.READ_SUSPENSIONS);
+		var reasons = attribute.get();
+		if (reasons == null)
+		{
+			var newReasons = new HashSet<>();
+			reasons = attribute.setIfAbsent(newReasons);
+			if (reasons == null)
+			{
+				reasons = newReasons;
+			}
+		}
+		return reasons;
+	}
+}
@@ -118,7 +118,7 @@ public class PeerInitializer extends ChannelInitializer<SocketChannel>
 		pipeline.addLast(new ItemDecoder());
 
 		// encoder (outbound)
-		pipeline.addLast(networkProperties.isPacketSlicing() ? new MultiPacketEncoder() : SIMPLE_PACKET_ENCODER);
+		pipeline.addLast(networkProperties.isPacketSlicing() ? new MultiPacketEncoder(networkProperties.isPacketGrouping()) : SIMPLE_PACKET_ENCODER);
 		pipeline.addLast(ITEM_ENCODER);
 
 		// business logic
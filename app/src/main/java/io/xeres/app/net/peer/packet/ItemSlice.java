@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.xeres.app.net.peer.packet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * One slice of a {@link SlicedItem}, without its header. The header is added by the encoder which also
+ * gives the packet id to the item when the first slice goes through.
+ */
+public class ItemSlice extends DefaultByteBufHolder
+{
+	private final SlicedItem slicedItem;
+	private final boolean start;
+	private final boolean end;
+
+	ItemSlice(SlicedItem slicedItem, ByteBuf data, boolean start, boolean end)
+	{
+		super(data);
+		this.slicedItem = slicedItem;
+		this.start = start;
+		this.end = end;
+	}
+
+	public SlicedItem getSlicedItem()
+	{
+		return slicedItem;
+	}
+
+	public boolean isStart()
+	{
+		return start;
+	}
+
+	public boolean isEnd()
+	{
+		return end;
+	}
+}
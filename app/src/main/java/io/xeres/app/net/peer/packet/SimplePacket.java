@@ -40,11 +40,12 @@ public class SimplePacket extends Packet
 	public SimplePacket(ChannelHandlerContext ctx, List<MultiPacket> packets)
 	{
 		priority = packets.stream().findFirst().orElseThrow().getPriority();
-		buf = ctx.alloc().buffer();
+		var composite = ctx.alloc().compositeBuffer(packets.size());
 		packets.forEach(packet -> {
-			buf.writeBytes(packet.getBuffer(), HEADER_SIZE, packet.getSize());
+			composite.addComponent(true, packet.getBuffer().retainedSlice(HEADER_SIZE, packet.getSize()));
 			packet.dispose();
 		});
+		buf = composite;
 	}
 
 	@Override
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.xeres.app.net.peer.packet;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.NoSuchElementException;
+
+import static io.xeres.app.net.peer.packet.Packet.HEADER_SIZE;
+import static io.xeres.app.net.peer.packet.Packet.OPTIMAL_PACKET_SIZE;
+
+/**
+ * Cursor over an item that is sent as several slices of the new packet format. Slices are taken one at a time
+ * so that the slices of different items can be interleaved. They don't copy the item's data.
+ */
+public class SlicedItem
+{
+	public static final int MAXIMUM_SLICE_SIZE = OPTIMAL_PACKET_SIZE - HEADER_SIZE;
+
+	private final ByteBuf buf;
+	private final int size;
+	private int offset;
+	private int packetId = -1;
+
+	/**
+	 * Creates a cursor over an item.
+	 *
+	 * @param buf the item in the old format, which stays owned by the caller
+	 */
+	public SlicedItem(ByteBuf buf)
+	{
+		this.buf = buf;
+		size = buf.readableBytes();
+	}
+
+	/**
+	 * Checks if an item needs more than one slice.
+	 *
+	 * @param buf the item in the old format
+	 * @return true if it needs more than one slice
+	 */
+	public static boolean needsSlicing(ByteBuf buf)
+	{
+		return buf.readableBytes() > MAXIMUM_SLICE_SIZE;
+	}
+
+	public int getSliceCount()
+	{
+		return Math.max(1, (size + MAXIMUM_SLICE_SIZE - 1) / MAXIMUM_SLICE_SIZE);
+	}
+
+	public boolean hasNext()
+	{
+		return offset < size;
+	}
+
+	/**
+	 * Gets the size of the data of the next slice.
+	 *
+	 * @return the size, without the header
+	 */
+	public int getNextSize()
+	{
+		return Math.min(getRemaining(), MAXIMUM_SLICE_SIZE);
+	}
+
+	public int getRemaining()
+	{
+		return size - offset;
+	}
+
+	/**
+	 * Gets the next slice.
+	 *
+	 * @return the slice, which holds a retained slice of the item
+	 */
+	public ItemSlice next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException("No slice left");
+		}
+		var length = getNextSize();
+		var slice = new ItemSlice(this, buf.retainedSlice(buf.readerIndex() + offset, length), offset == 0, offset + length == size);
+		offset += length;
+		return slice;
+	}
+
+	public int getPacketId()
+	{
+		return packetId;
+	}
+
+	public void setPacketId(int packetId)
+	{
+		this.packetId = packetId;
+	}
+}
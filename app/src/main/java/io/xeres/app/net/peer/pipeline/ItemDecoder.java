@@ -37,13 +37,21 @@ public class ItemDecoder extends MessageToMessageDecoder<ByteBuf>
 {
 	private static final int MAX_SLICES = 195_512; // maximum number of slices per packets (XXX: does RS have a limit there? I don't think so actually)
 	private static final int MAX_CONCURRENT_PACKETS = 16; // maximum number of concurrent packets
+	private static final int MAX_ACCUMULATED_SIZE = 32 * 1024 * 1024; // maximum number of bytes kept alive by packets waiting to be complete, for all packets
+	private static final int MAX_RETAINED_RATIO = 2; // a slice keeping alive a buffer bigger than that many times its size is copied
 	private final Map<Integer, List<MultiPacket>> accumulator = HashMap.newHashMap(MAX_CONCURRENT_PACKETS);
+	private int accumulatedSize;
 
 	@Override
 	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws ProtocolException
 	{
 		var packet = Packet.fromBuffer(in);
 
+		if (packet.isMulti() && !packet.isComplete() && getRetainedSize(packet) > in.readableBytes() * MAX_RETAINED_RATIO)
+		{
+			packet = copyPacket(ctx, packet);
+		}
+
 		if (packet.isMulti())
 		{
 			decodeNewPacket(ctx, (MultiPacket) packet, out);
@@ -54,8 +62,29 @@ public class ItemDecoder extends MessageToMessageDecoder<ByteBuf>
 		}
 	}
 
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx)
+	{
+		accumulator.values().forEach(packets -> packets.forEach(Packet::dispose));
+		accumulator.clear();
+		accumulatedSize = 0;
+	}
+
 	// XXX: when an error happens (eg. slices exceeded), we should remove (dispose) all packets from the accumulator and refuse any further packet with such id because they're incomplete and will reach the decoding stage (and fail there)
 	private void decodeNewPacket(ChannelHandlerContext ctx, MultiPacket packet, List<Object> out) throws ProtocolException
+	{
+		try
+		{
+			accumulate(ctx, packet, out);
+		}
+		catch (ProtocolException e)
+		{
+			packet.dispose();
+			throw e;
+		}
+	}
+
+	private void accumulate(ChannelHandlerContext ctx, MultiPacket packet, List<Object> out) throws ProtocolException
 	{
 		if (packet.isComplete())
 		{
@@ -75,6 +104,7 @@ public class ItemDecoder extends MessageToMessageDecoder<ByteBuf>
 			{
 				throw new ProtocolException("Too many concurrent packets (" + accumulator.size() + ")");
 			}
+			addAccumulatedSize(packet);
 			var list = new ArrayList<MultiPacket>();
 			list.add(packet);
 			accumulator.put(packet.getId(), list);
@@ -86,13 +116,61 @@ public class ItemDecoder extends MessageToMessageDecoder<ByteBuf>
 			{
 				throw new ProtocolException("Packet " + packet.getId() + " has too many slices (" + list.size() + ")");
 			}
+			addAccumulatedSize(packet);
 			list.add(packet);
 		}
 		else if (packet.isEnd())
 		{
 			var list = Optional.ofNullable(accumulator.remove(packet.getId())).orElseThrow(() -> new ProtocolException("End packet " + packet.getId() + " received without corresponding start packet"));
+			list.forEach(slice -> accumulatedSize -= getRetainedSize(slice));
 			list.add(packet);
 			out.add(new RawItem(new SimplePacket(ctx, list)));
 		}
 	}
+
+	private void addAccumulatedSize(MultiPacket packet) throws ProtocolException
+	{
+		var retainedSize = getRetainedSize(packet);
+		if (accumulatedSize + retainedSize > MAX_ACCUMULATED_SIZE)
+		{
+			throw new ProtocolException("Too much data waiting for incomplete packets (" + accumulatedSize + " bytes)");
+		}
+		accumulatedSize += retainedSize;
+	}
+
+	/**
+	 * Gets the size of the memory kept alive by a packet. A slice of a bigger buffer keeps the whole buffer.
+	 *
+	 * @param packet the packet
+	 * @return the capacity of the buffer that the packet retains
+	 */
+	private static int getRetainedSize(Packet packet)
+	{
+		var buf = packet.getBuffer();
+		var root = buf.unwrap();
+		return root != null ? root.capacity() : buf.capacity();
+	}
+
+	/**
+	 * Copies a packet into a right-sized buffer so that it doesn't keep the bigger buffer it was sliced from.
+	 *
+	 * @param ctx    the channel handler context
+	 * @param packet the packet, disposed of
+	 * @return the copied packet
+	 */
+	private static Packet copyPacket(ChannelHandlerContext ctx, Packet packet) throws ProtocolException
+	{
+		var buf = packet.getBuffer();
+		var copy = ctx.alloc().buffer(buf.readableBytes(), buf.readableBytes());
+		try
+		{
+			copy.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+			return Packet.fromBuffer(copy);
+		}
+		finally
+		{
+			copy.release(); // The packet holds its own reference
+			packet.dispose();
+		}
+	}
 }
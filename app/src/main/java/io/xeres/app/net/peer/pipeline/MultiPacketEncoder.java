@@ -19,13 +19,217 @@
 
 package io.xeres.app.net.peer.pipeline;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
-import org.apache.commons.lang3.NotImplementedException;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.CoalescingBufferQueue;
+import io.xeres.app.net.peer.PeerAttribute;
+import io.xeres.app.net.peer.packet.ItemSlice;
+import io.xeres.app.net.peer.packet.MultiPacket;
+import io.xeres.app.net.peer.packet.Packet;
+import io.xeres.app.net.peer.packet.SlicedItem;
+import io.xeres.app.xrs.service.RsServiceType;
 
+import java.nio.channels.ClosedChannelException;
+
+import static io.xeres.app.net.peer.packet.MultiPacket.SLICE_FLAG_END;
+import static io.xeres.app.net.peer.packet.MultiPacket.SLICE_FLAG_START;
+import static io.xeres.app.net.peer.packet.Packet.*;
+
+/**
+ * Encoder for the new packet format. Items are sliced into packets of {@link Packet#OPTIMAL_PACKET_SIZE}
+ * so that they fit well into the SSL records and, if grouping is enabled, the packets written before a flush
+ * are coalesced into writes of up to {@link Packet#MAXIMUM_PACKET_SIZE}.
+ * <p>
+ * The old format is used until the peer tells us it supports the new one (by sending a slice probe), and
+ * slice probes themselves are always sent using the old format.
+ * <p>
+ * Big items can also come as {@link ItemSlice}s written one by one by the outbound queue, which interleaves
+ * them with other items. The slices reference the item's data, only their headers are allocated.
+ */
 public class MultiPacketEncoder extends ChannelOutboundHandlerAdapter
 {
-	public MultiPacketEncoder()
+	private final boolean grouping;
+	private int packetId;
+
+	private CoalescingBufferQueue pendingWrites;
+	private boolean flushScheduled;
+
+	public MultiPacketEncoder(boolean grouping)
+	{
+		this.grouping = grouping;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx)
+	{
+		if (grouping)
+		{
+			pendingWrites = new CoalescingBufferQueue(ctx.channel(), 16);
+		}
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx)
+	{
+		if (pendingWrites != null)
+		{
+			pendingWrites.releaseAndFailAll(new ClosedChannelException());
+		}
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+	{
+		ByteBuf out;
+		if (msg instanceof ItemSlice itemSlice)
+		{
+			out = ctx.alloc().compositeBuffer(2);
+			addSlice(ctx, (CompositeByteBuf) out, itemSlice);
+		}
+		else if (msg instanceof Packet packet)
+		{
+			out = useNewFormat(ctx, packet) ? slice(ctx, packet) : packet.getBuffer();
+		}
+		else
+		{
+			// Other messages must not overtake the packets written before them
+			writePendingWrites(ctx);
+			ctx.write(msg, promise);
+			return;
+		}
+
+		if (grouping)
+		{
+			pendingWrites.add(out, promise);
+		}
+		else
+		{
+			ctx.write(out, promise);
+		}
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx)
+	{
+		if (!grouping)
+		{
+			ctx.flush();
+			return;
+		}
+
+		// Items are usually written and flushed one by one. Delaying the flush
+		// until the pending tasks of the event loop have run allows writes coming
+		// from other threads to be grouped together.
+		if (!flushScheduled)
+		{
+			flushScheduled = true;
+			ctx.executor().execute(() -> flushPendingWrites(ctx));
+		}
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception
+	{
+		flushPendingWrites(ctx);
+		super.close(ctx, promise);
+	}
+
+	private void flushPendingWrites(ChannelHandlerContext ctx)
+	{
+		flushScheduled = false;
+		writePendingWrites(ctx);
+		ctx.flush(); // Other messages might have been written too
+	}
+
+	/**
+	 * Writes the pending packets, coalesced, without flushing them.
+	 *
+	 * @param ctx the channel handler context
+	 */
+	private void writePendingWrites(ChannelHandlerContext ctx)
+	{
+		if (pendingWrites == null)
+		{
+			return;
+		}
+
+		while (!pendingWrites.isEmpty())
+		{
+			var promise = ctx.newPromise();
+			var out = pendingWrites.remove(ctx.alloc(), MAXIMUM_PACKET_SIZE, promise);
+			ctx.write(out, promise);
+		}
+	}
+
+	private static boolean useNewFormat(ChannelHandlerContext ctx, Packet packet)
+	{
+		if (packet.isMulti() || !Boolean.TRUE.equals(ctx.channel().attr(PeerAttribute.MULTI_PACKET).get()))
+		{
+			return false;
+		}
+		return packet.getBuffer().getUnsignedShort(1) != RsServiceType.PACKET_SLICING_PROBE.getType();
+	}
+
+	/**
+	 * Converts a packet in the old format into one or more slices in the new format.
+	 *
+	 * @param ctx    the channel handler context
+	 * @param packet a packet in the old format, disposed of once sliced
+	 * @return a buffer containing all the slices
+	 */
+	private ByteBuf slice(ChannelHandlerContext ctx, Packet packet)
+	{
+		var slicedItem = new SlicedItem(packet.getBuffer());
+		var out = ctx.alloc().compositeBuffer(slicedItem.getSliceCount() * 2);
+		while (slicedItem.hasNext())
+		{
+			addSlice(ctx, out, slicedItem.next());
+		}
+		packet.dispose();
+		return out;
+	}
+
+	/**
+	 * Adds the header and the data of a slice.
+	 *
+	 * @param ctx       the channel handler context
+	 * @param out       the buffer to add the slice to
+	 * @param itemSlice the slice, whose data is transferred to the buffer
+	 */
+	private void addSlice(ChannelHandlerContext ctx, CompositeByteBuf out, ItemSlice itemSlice)
+	{
+		var slicedItem = itemSlice.getSlicedItem();
+		if (itemSlice.isStart())
+		{
+			slicedItem.setPacketId(nextPacketId());
+		}
+
+		var flags = 0;
+		if (itemSlice.isStart())
+		{
+			flags |= SLICE_FLAG_START;
+		}
+		if (itemSlice.isEnd())
+		{
+			flags |= SLICE_FLAG_END;
+		}
+		var header = ctx.alloc().buffer(HEADER_SIZE);
+		header.writeByte(SLICE_PROTOCOL_VERSION_ID_01);
+		header.writeByte(flags);
+		header.writeInt(slicedItem.getPacketId());
+		header.writeShort(itemSlice.content().readableBytes());
+
+		out.addComponent(true, header);
+		out.addComponent(true, itemSlice.content());
+	}
+
+	private int nextPacketId()
 	{
-		throw new NotImplementedException("MultiPacketEncoder is not available yet, see #32");
+		var id = packetId;
+		packetId = (packetId + 1) % MultiPacket.MAXIMUM_ID;
+		return id;
 	}
 }
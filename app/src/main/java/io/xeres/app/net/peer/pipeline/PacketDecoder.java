@@ -65,7 +65,7 @@ public class PacketDecoder extends ByteToMessageDecoder
 
 			if (in.readableBytes() >= size)
 			{
-				out.add(in.readBytes((int) size));
+				out.add(in.readRetainedSlice((int) size));
 			}
 		}
 	}
@@ -37,13 +37,13 @@ import io.xeres.app.service.LocationService;
 import io.xeres.app.service.UiBridgeService;
 import io.xeres.app.xrs.item.Item;
 import io.xeres.app.xrs.item.RawItem;
+import io.xeres.app.xrs.service.RsService;
 import io.xeres.app.xrs.service.RsServiceRegistry;
 import io.xeres.app.xrs.service.serviceinfo.ServiceInfoRsService;
 import io.xeres.app.xrs.service.sliceprobe.item.SliceProbeItem;
 import jakarta.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import java.io.IOException;
@@ -94,35 +94,57 @@ public class PeerHandler extends ChannelDuplexHandler
 
 		log.trace("Got message: {}", msg);
 		var rawItem = (RawItem) msg;
+
+		var itemDispatch = rsServiceRegistry.getItemDispatch(rawItem);
+		if (itemDispatch == null)
+		{
+			rawItem.dispose();
+			return;
+		}
+
 		Item item = null;
-		var sessionBound = false;
 
 		try
 		{
-			item = rsServiceRegistry.buildIncomingItem(rawItem);
+			item = itemDispatch.createItem();
 			log.debug("<== {}", item);
 			rawItem.deserialize(item);
-
-			var service = rsServiceRegistry.getServiceFromType(item.getServiceType());
-			if (service != null)
-			{
-				var handleItemMethod = service.getClass().getDeclaredMethod("handleItem", PeerConnection.class, Item.class);
-				if (handleItemMethod.isAnnotationPresent(Transactional.class))
-				{
-					sessionBound = databaseSessionManager.bindSession();
-				}
-				service.handleItem(peerConnection, item);
-			}
-			else
-			{
-				log.warn("Unknown item (service: {}, subtype: {}). Ignoring.", item.getServiceType(), item.getSubType());
-			}
 		}
-		catch (IllegalArgumentException | NoSuchMethodException e)
+		catch (IllegalArgumentException | IllegalStateException e)
 		{
 			log.error("Failed to deserialize item {}", item, e);
 			rawItem.dispose();
-			item = null; // Don't dispose twice
+			return;
+		}
+
+		var service = itemDispatch.service();
+		var blocking = itemDispatch.transactional();
+
+		// Handlers using the database run outside the event loop. Once one of them is queued, all the
+		// following items of that peer are queued too so that they're handled in order.
+		var inboundQueue = peerConnection.getInboundQueue();
+		if (blocking || !inboundQueue.isEmpty())
+		{
+			var incomingItem = item;
+			inboundQueue.add(() -> handleItem(service, peerConnection, incomingItem, blocking));
+		}
+		else
+		{
+			handleItem(service, peerConnection, item, false);
+		}
+	}
+
+	private void handleItem(RsService service, PeerConnection peerConnection, Item item, boolean needsSession)
+	{
+		var sessionBound = false;
+
+		try
+		{
+			if (needsSession)
+			{
+				sessionBound = databaseSessionManager.bindSession();
+			}
+			service.handleItem(peerConnection, item);
 		}
 		finally
 		{
@@ -130,11 +152,7 @@ public class PeerHandler extends ChannelDuplexHandler
 			{
 				databaseSessionManager.unbindSession();
 			}
-
-			if (item != null)
-			{
-				item.dispose(); // Dispose the item
-			}
+			item.dispose();
 		}
 	}
 
@@ -215,6 +233,17 @@ public class PeerHandler extends ChannelDuplexHandler
 		}
 	}
 
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx)
+	{
+		var peerConnection = ctx.channel().attr(PeerAttribute.PEER_CONNECTION).get();
+		if (peerConnection != null)
+		{
+			peerConnection.getOutboundQueue().resume();
+		}
+		ctx.fireChannelWritabilityChanged();
+	}
+
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx)
 	{
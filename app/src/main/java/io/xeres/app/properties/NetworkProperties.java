@@ -53,6 +53,12 @@ public class NetworkProperties
 	public static final String FILE_TRANSFER_STRATEGY_LINEAR = "linear";
 	public static final String FILE_TRANSFER_STRATEGY_RANDOM = "random";
 
+	/**
+	 * Sets the maximum number of chunks that can be requested at once from a peer when downloading. The
+	 * actual number adapts to the bandwidth and latency of the peer, up to that limit.
+	 */
+	private int fileTransferWindow = 8;
+
 	@PostConstruct
 	private void checkConsistency()
 	{
@@ -60,6 +66,10 @@ public class NetworkProperties
 		{
 			throw new IllegalStateException("'network.packet-grouping' property cannot be enabled without 'network.packet-slicing'");
 		}
+		if (fileTransferWindow < 1)
+		{
+			throw new IllegalStateException("'network.file-transfer-window' property must be greater than 0");
+		}
 	}
 
 	public String getFeatures()
@@ -107,4 +117,14 @@ public class NetworkProperties
 	{
 		this.fileTransferStrategy = fileTransferStrategy;
 	}
+
+	public int getFileTransferWindow()
+	{
+		return fileTransferWindow;
+	}
+
+	public void setFileTransferWindow(int fileTransferWindow)
+	{
+		this.fileTransferWindow = fileTransferWindow;
+	}
 }
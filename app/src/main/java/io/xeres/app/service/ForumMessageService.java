@@ -19,6 +19,7 @@
 
 package io.xeres.app.service;
 
+import io.xeres.app.database.model.forum.ForumMessageItemId;
 import io.xeres.app.database.model.forum.ForumMessageItemSummary;
 import io.xeres.app.database.model.gxs.GxsGroupItem;
 import io.xeres.app.xrs.service.forum.ForumRsService;
@@ -30,9 +31,11 @@ import org.apache.commons.collections4.SetUtils;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -72,10 +75,30 @@ public class ForumMessageService
 				.collect(Collectors.toMap(GxsGroupItem::getGxsId, Function.identity()));
 	}
 
-	public Map<MessageId, ForumMessageItem> getMessagesMapFromSummaries(long groupId, List<ForumMessageItemSummary> forumMessages)
+	/**
+	 * Gets the database ids of the parents and original messages of the summaries. Only the ids are fetched, which
+	 * matters for big forums.
+	 *
+	 * @param groupId       the forum group
+	 * @param forumMessages the message summaries
+	 * @return a map of message ids to database ids
+	 */
+	public Map<MessageId, Long> getMessageIdsMapFromSummaries(long groupId, List<ForumMessageItemSummary> forumMessages)
 	{
-		var messageIds = forumMessages.stream()
-				.map(ForumMessageItemSummary::getMessageId)
+		var messageIds = getReferencedMessageIds(forumMessages);
+		if (messageIds.isEmpty())
+		{
+			return Collections.emptyMap(); // Map.of() doesn't allow getting null keys
+		}
+
+		return forumRsService.findAllMessageIds(groupId, messageIds).stream()
+				.collect(Collectors.toMap(ForumMessageItemId::getMessageId, ForumMessageItemId::getId));
+	}
+
+	private static Set<MessageId> getReferencedMessageIds(List<ForumMessageItemSummary> forumMessages)
+	{
+		var originalIds = forumMessages.stream()
+				.map(ForumMessageItemSummary::getOriginalMessageId)
 				.filter(Objects::nonNull)
 				.collect(Collectors.toSet());
 
@@ -84,8 +107,7 @@ public class ForumMessageService
 				.filter(Objects::nonNull)
 				.collect(Collectors.toSet());
 
-		return forumRsService.findAllMessages(groupId, SetUtils.union(messageIds, parentIds)).stream()
-				.collect(Collectors.toMap(ForumMessageItem::getMessageId, Function.identity()));
+		return SetUtils.union(originalIds, parentIds);
 	}
 
 	public Map<MessageId, ForumMessageItem> getMessagesMapFromMessages(long groupId, List<ForumMessageItem> forumMessages)
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.service;
+
+import io.xeres.app.database.model.forum.ForumMessageCursor;
+import io.xeres.app.database.model.forum.ForumMessageItemId;
+import io.xeres.app.database.model.forum.ForumMessageItemSummary;
+import io.xeres.app.database.model.forum.ForumThreadNode;
+import io.xeres.app.database.repository.ForumThreadNodeRepository;
+import io.xeres.app.database.repository.GxsForumGroupRepository;
+import io.xeres.app.database.repository.GxsForumMessageRepository;
+import io.xeres.app.xrs.service.forum.item.ForumMessageItem;
+import io.xeres.common.id.GxsId;
+import io.xeres.common.id.MessageId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the threads of the forums, so that they don't have to be computed from all the messages each time
+ * a forum is displayed.
+ * <p>
+ * Updates of the threads of a forum are serialized by locking the row of its group until the transaction commits.
+ * Messages of the same forum can be received from several peers at once and a reply must see its parent (and the
+ * parent its replies) once the other transaction is committed, otherwise it would stay a root forever.
+ */
+@Service
+public class ForumThreadService
+{
+	private static final Logger log = LoggerFactory.getLogger(ForumThreadService.class);
+
+	private final ForumThreadNodeRepository forumThreadNodeRepository;
+	private final GxsForumMessageRepository gxsForumMessageRepository;
+	private final GxsForumGroupRepository gxsForumGroupRepository;
+	private final TransactionTemplate transactionTemplate;
+
+	public ForumThreadService(ForumThreadNodeRepository forumThreadNodeRepository, GxsForumMessageRepository gxsForumMessageRepository, GxsForumGroupRepository gxsForumGroupRepository, PlatformTransactionManager transactionManager)
+	{
+		this.forumThreadNodeRepository = forumThreadNodeRepository;
+		this.gxsForumMessageRepository = gxsForumMessageRepository;
+		this.gxsForumGroupRepository = gxsForumGroupRepository;
+		transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Adds saved messages to their threads. Messages that are already part of a thread are ignored.
+	 *
+	 * @param forumMessages the messages, they must have been saved
+	 */
+	@Transactional
+	public void addMessages(List<ForumMessageItem> forumMessages)
+	{
+		forumMessages.stream()
+				.map(ForumMessageItem::getGxsId)
+				.distinct()
+				.sorted(Comparator.comparing(GxsId::toString)) // Always in the same order to avoid deadlocks
+				.forEach(this::lockForum);
+
+		forumMessages.stream()
+				.sorted(Comparator.comparing(ForumMessageItem::getPublished, Comparator.nullsFirst(Comparator.naturalOrder()))) // Parents are usually older
+				.forEach(this::addMessage);
+	}
+
+	private void lockForum(GxsId groupId)
+	{
+		gxsForumGroupRepository.findLockedByGxsId(groupId);
+	}
+
+	private void addMessage(ForumMessageItem forumMessage)
+	{
+		if (forumThreadNodeRepository.findByMessageId(forumMessage.getId()).isPresent())
+		{
+			return;
+		}
+
+		var node = new ForumThreadNode(forumMessage.getGxsId(), forumMessage.getId(), forumMessage.getPublished());
+		findParentNode(forumMessage).ifPresent(parent -> {
+			node.setParentId(parent.getMessageId());
+			node.setRootId(parent.getRootId());
+			node.setDepth(parent.getDepth() + 1);
+		});
+
+		// Replies can arrive before the message they reply to. They're roots until then.
+		var replyIds = gxsForumMessageRepository.findIdAllByGxsIdAndParentId(forumMessage.getGxsId(), forumMessage.getMessageId()).stream()
+				.map(ForumMessageItemId::getId)
+				.toList();
+		if (!replyIds.isEmpty())
+		{
+			forumThreadNodeRepository.findAllByMessageIdIn(replyIds).stream()
+					.filter(ForumThreadNode::isRoot)
+					.filter(reply -> reply.getMessageId() != node.getRootId()) // A root that is an ancestor of the node would make a cycle
+					.forEach(reply -> adoptReply(node, reply));
+		}
+
+		forumThreadNodeRepository.save(node);
+
+		Set<Long> visited = new HashSet<>();
+		visited.add(node.getMessageId());
+		var parentId = node.getParentId();
+		while (parentId != null && visited.add(parentId))
+		{
+			var ancestor = forumThreadNodeRepository.findByMessageId(parentId).orElseThrow();
+			ancestor.addReplies(node.getReplyCount() + 1, node.getLastActivity());
+			parentId = ancestor.getParentId();
+			if (parentId != null && visited.contains(parentId))
+			{
+				log.warn("Parent cycle in forum {} at message {}, making it a root", node.getGxsId(), ancestor.getMessageId());
+				ancestor.setParentId(null);
+			}
+		}
+	}
+
+	private void adoptReply(ForumThreadNode node, ForumThreadNode reply)
+	{
+		var depthOffset = node.getDepth() + 1;
+		forumThreadNodeRepository.findAllByRootId(reply.getMessageId()).forEach(replyNode -> {
+			replyNode.setRootId(node.getRootId());
+			replyNode.setDepth(replyNode.getDepth() + depthOffset);
+		});
+		reply.setParentId(node.getMessageId());
+		node.addReplies(reply.getReplyCount() + 1, reply.getLastActivity());
+	}
+
+	private Optional<ForumThreadNode> findParentNode(ForumMessageItem forumMessage)
+	{
+		if (forumMessage.getParentId() == null || forumMessage.getParentId().equals(forumMessage.getMessageId()))
+		{
+			return Optional.empty();
+		}
+		return gxsForumMessageRepository.findIdByGxsIdAndMessageId(forumMessage.getGxsId(), forumMessage.getParentId())
+				.flatMap(parent -> forumThreadNodeRepository.findByMessageId(parent.getId()));
+	}
+
+	/**
+	 * Rebuilds the threads of all forums from their messages, each forum in its own transaction.
+	 * <p>
+	 * Forums that already have threads are skipped so that a rebuild that failed or was interrupted resumes
+	 * where it stopped. This is only correct when no messages are received in the meantime, that is, before
+	 * the network is started.
+	 */
+	public void rebuildAllThreads()
+	{
+		gxsForumGroupRepository.findAll().forEach(forumGroup -> transactionTemplate.executeWithoutResult(status -> rebuildThreads(forumGroup.getGxsId())));
+	}
+
+	private void rebuildThreads(GxsId groupId)
+	{
+		lockForum(groupId);
+		if (forumThreadNodeRepository.existsByGxsId(groupId))
+		{
+			log.debug("Threads of forum {} already rebuilt", groupId);
+			return;
+		}
+		var nodes = buildNodes(groupId, gxsForumMessageRepository.findSummaryAllByGxsId(groupId));
+		forumThreadNodeRepository.saveAll(nodes);
+		log.debug("Rebuilt {} thread nodes for forum {}", nodes.size(), groupId);
+	}
+
+	/**
+	 * Builds the thread nodes of a forum in one pass.
+	 *
+	 * @param groupId       the forum
+	 * @param forumMessages all the messages of the forum
+	 * @return the thread nodes
+	 */
+	static List<ForumThreadNode> buildNodes(GxsId groupId, List<ForumMessageItemSummary> forumMessages)
+	{
+		var ids = forumMessages.stream()
+				.collect(Collectors.toMap(ForumMessageItemSummary::getMessageId, ForumMessageItemSummary::getId, (first, second) -> first));
+
+		Map<Long, ForumThreadNode> nodes = LinkedHashMap.newLinkedHashMap(forumMessages.size());
+		forumMessages.forEach(forumMessage -> {
+			var node = new ForumThreadNode(groupId, forumMessage.getId(), forumMessage.getPublished());
+			if (forumMessage.getParentId() != null && !forumMessage.getParentId().equals(forumMessage.getMessageId()))
+			{
+				node.setParentId(ids.get(forumMessage.getParentId()));
+			}
+			nodes.put(node.getMessageId(), node);
+		});
+
+		Set<Long> resolved = HashSet.newHashSet(nodes.size());
+		nodes.values().forEach(node -> resolveRoot(node, nodes, resolved));
+
+		// Deepest nodes first so that the replies are complete when reaching their parent
+		nodes.values().stream()
+				.filter(node -> !node.isRoot())
+				.sorted(Comparator.comparingInt(ForumThreadNode::getDepth).reversed())
+				.forEach(node -> nodes.get(node.getParentId()).addReplies(node.getReplyCount() + 1, node.getLastActivity()));
+
+		return new ArrayList<>(nodes.values());
+	}
+
+	private static void resolveRoot(ForumThreadNode node, Map<Long, ForumThreadNode> nodes, Set<Long> resolved)
+	{
+		Deque<ForumThreadNode> path = new ArrayDeque<>();
+		Set<Long> pathIds = new HashSet<>();
+		var current = node;
+		while (!current.isRoot() && !resolved.contains(current.getMessageId()))
+		{
+			if (!pathIds.add(current.getMessageId()))
+			{
+				// Parent cycle: the message closing it becomes a root and the path is walked again
+				log.warn("Parent cycle in forum {} at message {}, making it a root", current.getGxsId(), current.getMessageId());
+				current.setParentId(null);
+				path.clear();
+				pathIds.clear();
+				current = node;
+				continue;
+			}
+			path.push(current);
+			current = nodes.get(current.getParentId());
+		}
+		resolved.add(current.getMessageId());
+
+		while (!path.isEmpty())
+		{
+			var child = path.pop();
+			child.setRootId(current.getRootId());
+			child.setDepth(current.getDepth() + 1);
+			resolved.add(child.getMessageId());
+			current = child;
+		}
+	}
+
+	/**
+	 * Finds a page of threads, the most recently active first.
+	 *
+	 * @param groupId the forum group
+	 * @param before  the position after which to start, or null for the first page
+	 * @param size    the maximum number of threads to return
+	 * @return the root nodes of the threads
+	 */
+	public List<ForumThreadNode> findThreads(long groupId, ForumMessageCursor before, int size)
+	{
+		var forumGroup = gxsForumGroupRepository.findById(groupId).orElseThrow();
+		if (before == null)
+		{
+			return forumThreadNodeRepository.findAllByGxsIdAndParentIdIsNullOrderByLastActivityDescMessageIdDesc(forumGroup.getGxsId(), Limit.of(size));
+		}
+		return forumThreadNodeRepository.findAllRootsByGxsIdBefore(forumGroup.getGxsId(), before.date(), before.id(), Limit.of(size));
+	}
+
+	/**
+	 * Finds the direct replies to a message.
+	 *
+	 * @param messageId the message
+	 * @return the nodes of the replies
+	 */
+	public List<ForumThreadNode> findReplies(long messageId)
+	{
+		var node = forumThreadNodeRepository.findByMessageId(messageId).orElseThrow();
+		return forumThreadNodeRepository.findAllByGxsIdAndParentIdOrderByMessageIdAsc(node.getGxsId(), messageId);
+	}
+
+	/**
+	 * Finds the ancestors of a message.
+	 *
+	 * @param messageId the message
+	 * @return the ids of the ancestors, from the parent to the root of the thread
+	 */
+	public List<Long> findAncestorIds(long messageId)
+	{
+		List<Long> ancestorIds = new ArrayList<>();
+		var parentId = forumThreadNodeRepository.findByMessageId(messageId).orElseThrow().getParentId();
+		while (parentId != null && parentId != messageId && !ancestorIds.contains(parentId)) // Stops at a parent cycle
+		{
+			ancestorIds.add(parentId);
+			parentId = forumThreadNodeRepository.findByMessageId(parentId).orElseThrow().getParentId();
+		}
+		return ancestorIds;
+	}
+
+	/**
+	 * Finds the path to a message, so that it can be shown within its thread.
+	 *
+	 * @param groupId   the forum group
+	 * @param messageId the message
+	 * @return the nodes from the root of the thread to the message, or an empty list if the message is unknown
+	 */
+	public List<ForumThreadNode> findPath(long groupId, MessageId messageId)
+	{
+		var forumGroup = gxsForumGroupRepository.findById(groupId).orElseThrow();
+		return gxsForumMessageRepository.findIdByGxsIdAndMessageId(forumGroup.getGxsId(), messageId)
+				.map(message -> {
+					var ids = new ArrayList<>(findAncestorIds(message.getId()).reversed());
+					ids.add(message.getId());
+					var nodes = forumThreadNodeRepository.findAllByMessageIdIn(ids).stream()
+							.collect(Collectors.toMap(ForumThreadNode::getMessageId, Function.identity()));
+					return ids.stream()
+							.map(nodes::get)
+							.filter(Objects::nonNull)
+							.toList();
+				})
+				.orElse(List.of());
+	}
+}
@@ -19,12 +19,14 @@
 
 package io.xeres.app.service;
 
+import io.xeres.app.application.events.IdentityChangedEvent;
 import io.xeres.app.crypto.rsa.RSA;
 import io.xeres.app.database.repository.GxsIdentityRepository;
 import io.xeres.app.xrs.service.identity.item.IdentityGroupItem;
 import io.xeres.common.dto.identity.IdentityConstants;
 import io.xeres.common.id.GxsId;
 import io.xeres.common.identity.Type;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
@@ -39,10 +41,12 @@ import java.util.Set;
 public class IdentityService
 {
 	private final GxsIdentityRepository gxsIdentityRepository;
+	private final ApplicationEventPublisher publisher;
 
-	public IdentityService(GxsIdentityRepository gxsIdentityRepository)
+	public IdentityService(GxsIdentityRepository gxsIdentityRepository, ApplicationEventPublisher publisher)
 	{
 		this.gxsIdentityRepository = gxsIdentityRepository;
+		this.publisher = publisher;
 	}
 
 	public Optional<IdentityGroupItem> findById(long id)
@@ -93,7 +97,9 @@ public class IdentityService
 	@Transactional
 	public IdentityGroupItem save(IdentityGroupItem identityGroupItem)
 	{
-		return gxsIdentityRepository.save(identityGroupItem);
+		var savedIdentity = gxsIdentityRepository.save(identityGroupItem);
+		publisher.publishEvent(new IdentityChangedEvent(savedIdentity.getGxsId()));
+		return savedIdentity;
 	}
 
 	public List<IdentityGroupItem> findIdentitiesToValidate(int limit)
@@ -104,6 +110,7 @@ public class IdentityService
 	public void delete(IdentityGroupItem identityGroupItem)
 	{
 		gxsIdentityRepository.delete(identityGroupItem);
+		publisher.publishEvent(new IdentityChangedEvent(identityGroupItem.getGxsId()));
 	}
 
 	@Transactional(propagation = Propagation.NEVER)
@@ -119,5 +126,6 @@ public class IdentityService
 		allByProfileId.forEach(identityGroupItem -> identityGroupItem.setProfile(null));
 		// XXX: we should possibly refresh the list with contactNotificationService...
 		gxsIdentityRepository.saveAll(allByProfileId);
+		allByProfileId.forEach(identityGroupItem -> publisher.publishEvent(new IdentityChangedEvent(identityGroupItem.getGxsId())));
 	}
 }
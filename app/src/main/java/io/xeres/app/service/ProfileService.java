@@ -27,6 +27,7 @@ import io.xeres.app.database.model.profile.Profile;
 import io.xeres.app.database.repository.ProfileRepository;
 import io.xeres.app.net.peer.PeerConnectionManager;
 import io.xeres.app.service.notification.contact.ContactNotificationService;
+import io.xeres.app.xrs.service.chat.ChatBacklogService;
 import io.xeres.common.AppName;
 import io.xeres.common.dto.profile.ProfileConstants;
 import io.xeres.common.id.Id;
@@ -68,8 +69,9 @@ public class ProfileService
 
 	private final Map<Profile, Set<LocationId>> profilesToDelete = HashMap.newHashMap(2);
 	private final ContactNotificationService contactNotificationService;
+	private final ChatBacklogService chatBacklogService;
 
-	public ProfileService(ProfileRepository profileRepository, SettingsService settingsService, PeerConnectionManager peerConnectionManager, ContactNotificationService contactNotificationService)
+	public ProfileService(ProfileRepository profileRepository, SettingsService settingsService, PeerConnectionManager peerConnectionManager, ContactNotificationService contactNotificationService, ChatBacklogService chatBacklogService)
 	{
 		this.profileRepository = profileRepository;
 		this.settingsService = settingsService;
@@ -77,6 +79,7 @@ public class ProfileService
 
 		Security.addProvider(new BouncyCastleProvider());
 		this.contactNotificationService = contactNotificationService;
+		this.chatBacklogService = chatBacklogService;
 	}
 
 	@Transactional
@@ -250,8 +253,7 @@ public class ProfileService
 		// and wait until that's done before deleting the profile.
 		if (connectedLocations.isEmpty())
 		{
-			profileRepository.delete(profile);
-			contactNotificationService.removeProfile(profile);
+			deleteProfileAndLocations(profile);
 		}
 		else
 		{
@@ -281,13 +283,19 @@ public class ProfileService
 			var profileSetEntry = it.next();
 			if (profileSetEntry.getValue().isEmpty())
 			{
-				profileRepository.delete(profileSetEntry.getKey());
-				contactNotificationService.removeProfile(profileSetEntry.getKey());
+				deleteProfileAndLocations(profileSetEntry.getKey());
 				it.remove();
 			}
 		}
 	}
 
+	private void deleteProfileAndLocations(Profile profile)
+	{
+		profileRepository.delete(profile);
+		chatBacklogService.evictLocations(profile.getLocations().stream().map(Location::getLocationId).toList());
+		contactNotificationService.removeProfile(profile);
+	}
+
 	public List<Profile> getAllProfiles()
 	{
 		return profileRepository.findAll();
@@ -42,14 +42,16 @@ public class UpgradeService
 	private final FileService fileService;
 	private final IdentityRsService identityRsService;
 	private final ProfileService profileService;
+	private final ForumThreadService forumThreadService;
 
-	public UpgradeService(DataDirConfiguration dataDirConfiguration, SettingsService settingsService, FileService fileService, IdentityRsService identityRsService, ProfileService profileService)
+	public UpgradeService(DataDirConfiguration dataDirConfiguration, SettingsService settingsService, FileService fileService, IdentityRsService identityRsService, ProfileService profileService, ForumThreadService forumThreadService)
 	{
 		this.dataDirConfiguration = dataDirConfiguration;
 		this.settingsService = settingsService;
 		this.fileService = fileService;
 		this.identityRsService = identityRsService;
 		this.profileService = profileService;
+		this.forumThreadService = forumThreadService;
 	}
 
 	/**
@@ -58,7 +60,7 @@ public class UpgradeService
 	 */
 	public void upgrade()
 	{
-		var version = 3; // Increment this number when needing to add new defaults
+		var version = 4; // Increment this number when needing to add new defaults
 
 		// Don't do this stuff when running tests
 		if (dataDirConfiguration.getDataDir() == null)
@@ -110,6 +112,11 @@ public class UpgradeService
 			profileService.fixAllProfiles();
 		}
 
+		if (settingsService.getVersion() < 4)
+		{
+			forumThreadService.rebuildAllThreads();
+		}
+
 		// [Add new defaults here]
 
 		settingsService.setVersion(version);
@@ -0,0 +1,709 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.service.file;
+
+import io.xeres.app.database.model.file.File;
+import io.xeres.app.util.expression.CompoundExpression;
+import io.xeres.app.util.expression.Expression;
+import io.xeres.app.util.expression.ExtensionExpression;
+import io.xeres.app.util.expression.NameExpression;
+import io.xeres.common.file.FileType;
+import io.xeres.common.id.Sha1Sum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * An inverted index of the shared files, used to answer searches without scanning the database.
+ * <p>
+ * The names are split into trigrams, each of them pointing to the files containing it. A keyword search
+ * narrows down the candidates using the trigrams of the searched terms then checks their names, so it doesn't
+ * need the database at all. An expression search only narrows down the candidates, the database then checks
+ * them against the full expression so that the results are the same as without the index.
+ * <p>
+ * The entries are persisted to disk, next to the bloom filter. The header stores the number of files and the
+ * highest file id so that an index which doesn't match the database anymore (for example, because the
+ * application was killed before saving it) is detected when loading and rebuilt. The index can't be used
+ * until it's loaded or rebuilt.
+ */
+class FileSearchIndex
+{
+	private static final Logger log = LoggerFactory.getLogger(FileSearchIndex.class);
+
+	private static final String PERSISTENT_FILE = "turtle_index";
+	private static final int VERSION = 3;
+	private static final int TRIGRAM_LENGTH = 3;
+	private static final int MAX_CANDIDATES = 5_000; // Above that, a plain database query is cheaper than looking up each candidate
+
+	private final Path persistentFile;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final List<File> documents = new ArrayList<>(); // index is the document id, null if removed
+	private final List<String> names = new ArrayList<>(); // lowercase names of the documents, for checking the candidates
+	private final Map<Long, Integer> documentIds = new HashMap<>();
+	private final Map<Long, Postings> postings = new HashMap<>();
+	private final Map<Long, Long> parentIds = new HashMap<>(); // needed to remove the content of a directory
+	private final Map<Long, Set<Long>> childIds = new HashMap<>();
+	private int removedDocuments;
+	private boolean modified;
+	private volatile boolean ready;
+
+	private static final class Postings
+	{
+		private int[] ids = new int[4];
+		private int size;
+
+		void add(int id)
+		{
+			if (size == ids.length)
+			{
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		void addTo(BitSet bitSet)
+		{
+			for (var i = 0; i < size; i++)
+			{
+				bitSet.set(ids[i]);
+			}
+		}
+	}
+
+	/**
+	 * Creates a search index.
+	 *
+	 * @param baseDir the directory where the index is persisted, null for an in-memory only index
+	 */
+	FileSearchIndex(String baseDir)
+	{
+		persistentFile = baseDir != null ? Path.of(baseDir, PERSISTENT_FILE) : null;
+	}
+
+	/**
+	 * Loads the persisted index.
+	 *
+	 * @param fileCount the number of files in the database
+	 * @param maxFileId the highest file id in the database
+	 * @return true if loaded, false if there's no usable persisted index, in which case it has to be rebuilt
+	 */
+	boolean load(long fileCount, long maxFileId)
+	{
+		if (persistentFile == null || Files.notExists(persistentFile))
+		{
+			return false;
+		}
+
+		lock.writeLock().lock();
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(persistentFile))))
+		{
+			clearDocuments();
+			clearLinks();
+			if (in.readInt() != VERSION)
+			{
+				log.warn("Search index version mismatch, rebuilding");
+				return false;
+			}
+			var count = in.readInt();
+			if (count != fileCount || in.readLong() != maxFileId)
+			{
+				log.warn("Search index doesn't match the database, rebuilding");
+				return false;
+			}
+			for (var i = 0; i < count; i++)
+			{
+				var file = readFile(in);
+				addLink(file.getId(), in.readLong());
+				addDocument(file);
+			}
+			log.debug("Loaded search index with {} files", count);
+			ready = true;
+			return true;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warn("Couldn't load search index, rebuilding: {}", e.getMessage());
+			clearDocuments();
+			clearLinks();
+			return false;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Saves the index if it was modified since the last time. An index that is being rebuilt isn't saved.
+	 */
+	void save()
+	{
+		if (persistentFile == null)
+		{
+			return;
+		}
+
+		lock.writeLock().lock();
+		try
+		{
+			if (!modified || !ready)
+			{
+				return;
+			}
+			var tempFile = persistentFile.resolveSibling(PERSISTENT_FILE + ".tmp");
+			try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile))))
+			{
+				out.writeInt(VERSION);
+				out.writeInt(documentIds.size());
+				out.writeLong(documentIds.keySet().stream()
+						.mapToLong(Long::longValue)
+						.max()
+						.orElse(0L));
+				for (var file : documents)
+				{
+					if (file != null)
+					{
+						writeFile(out, file);
+						out.writeLong(parentIds.getOrDefault(file.getId(), 0L));
+					}
+				}
+			}
+			Files.move(tempFile, persistentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			modified = false;
+		}
+		catch (IOException e)
+		{
+			log.error("Couldn't save search index: {}", e.getMessage());
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the content of the index.
+	 *
+	 * @param files the files
+	 */
+	void rebuild(Collection<File> files)
+	{
+		clear();
+		addAll(files);
+		setReady();
+	}
+
+	/**
+	 * Empties the index to rebuild it. It can't be used until {@link #setReady()} is called.
+	 */
+	void clear()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			ready = false;
+			clearDocuments();
+			clearLinks();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Marks the index as complete, after all the files have been added to it.
+	 */
+	void setReady()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			ready = true;
+			modified = true;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	boolean isReady()
+	{
+		return ready;
+	}
+
+	/**
+	 * Adds or updates files.
+	 *
+	 * @param files the files
+	 */
+	void addAll(Collection<File> files)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			files.forEach(this::add);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds or updates a file. Nothing is done if the file is already indexed and unchanged.
+	 *
+	 * @param file the file
+	 */
+	void add(File file)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			if (isIndexed(file))
+			{
+				return;
+			}
+			removeDocument(file.getId());
+			removeLink(file.getId());
+			addLink(file.getId(), getParentId(file));
+			addDocument(createSnapshot(file));
+			modified = true;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a file. If it's a directory, its content is removed as well.
+	 *
+	 * @param fileId the id of the file
+	 */
+	void remove(long fileId)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			removeLink(fileId);
+
+			var toRemove = new ArrayDeque<Long>();
+			toRemove.add(fileId);
+			while (!toRemove.isEmpty())
+			{
+				var id = toRemove.poll();
+				parentIds.remove(id);
+				var children = childIds.remove(id);
+				if (children != null)
+				{
+					toRemove.addAll(children);
+				}
+				removeDocument(id);
+			}
+			modified = true;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the files whose name might contain a string, ignoring the case.
+	 *
+	 * @param name the string to search for
+	 * @return the ids of the candidate files, a superset of the matching files, or empty if the index can't narrow down the search
+	 */
+	Optional<Set<Long>> findCandidates(String name)
+	{
+		lock.readLock().lock();
+		try
+		{
+			if (!ready)
+			{
+				return Optional.empty();
+			}
+			return collect(getCandidates(name.toLowerCase(Locale.ENGLISH)));
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the files whose name contains a string, ignoring the case. The candidates are checked against
+	 * their name so the result is exact. A string too short for the trigrams is checked against all the names.
+	 *
+	 * @param name the string to search for
+	 * @return the ids of the matching files, or empty if the index isn't ready
+	 */
+	Optional<Set<Long>> findMatches(String name)
+	{
+		lock.readLock().lock();
+		try
+		{
+			if (!ready)
+			{
+				return Optional.empty();
+			}
+			var term = name.toLowerCase(Locale.ENGLISH);
+			var candidates = getCandidates(term);
+			var documentIndexes = candidates != null ? candidates.stream() : IntStream.range(0, documents.size());
+			var results = new HashSet<Long>();
+			documentIndexes
+					.filter(documentId -> names.get(documentId) != null && names.get(documentId).contains(term))
+					.forEach(documentId -> results.add(documents.get(documentId).getId()));
+			return Optional.of(results);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the files that might match all expressions.
+	 *
+	 * @param expressions the expressions
+	 * @return the ids of the candidate files, a superset of the matching files, or empty if the index can't narrow down the search
+	 */
+	Optional<Set<Long>> findCandidates(List<Expression> expressions)
+	{
+		lock.readLock().lock();
+		try
+		{
+			if (!ready)
+			{
+				return Optional.empty();
+			}
+			BitSet candidates = null;
+			for (var expression : expressions)
+			{
+				candidates = and(candidates, getCandidates(expression));
+			}
+			return collect(candidates);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	int size()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documentIds.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	private Optional<Set<Long>> collect(BitSet candidates)
+	{
+		if (candidates == null || candidates.cardinality() > MAX_CANDIDATES)
+		{
+			return Optional.empty();
+		}
+		var results = new HashSet<Long>();
+		candidates.stream()
+				.mapToObj(documents::get)
+				.filter(Objects::nonNull)
+				.forEach(file -> results.add(file.getId()));
+		return Optional.of(results);
+	}
+
+	/**
+	 * Gets the documents that might match an expression.
+	 *
+	 * @param expression the expression
+	 * @return the candidates, or null if all documents are candidates
+	 */
+	private BitSet getCandidates(Expression expression)
+	{
+		return switch (expression)
+		{
+			case null -> new BitSet();
+			case CompoundExpression compound -> switch (compound.getOperator())
+			{
+				case AND -> and(getCandidates(compound.getLeft()), getCandidates(compound.getRight()));
+				case OR, XOR -> or(getCandidates(compound.getLeft()), getCandidates(compound.getRight()));
+			};
+			case NameExpression nameExpression -> switch (nameExpression.getOperator())
+			{
+				case EQUALS -> getCandidates(String.join(" ", nameExpression.getWords()).toLowerCase(Locale.ENGLISH));
+				case CONTAINS_ALL -> nameExpression.getWords().stream()
+						.map(word -> getCandidates(word.toLowerCase(Locale.ENGLISH)))
+						.reduce(null, FileSearchIndex::and);
+				case CONTAINS_ANY -> getCandidatesForAny(nameExpression.getWords());
+			};
+			case ExtensionExpression extensionExpression -> getCandidatesForAny(extensionExpression.getWords());
+			default -> null;
+		};
+	}
+
+	private BitSet getCandidatesForAny(List<String> words)
+	{
+		var candidates = new BitSet();
+		for (var word : words)
+		{
+			var wordCandidates = getCandidates(word.toLowerCase(Locale.ENGLISH));
+			if (wordCandidates == null)
+			{
+				return null;
+			}
+			candidates.or(wordCandidates);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Gets the documents that might contain a term.
+	 *
+	 * @param term the term, in lowercase
+	 * @return the candidates, or null if the term is too short to use the index
+	 */
+	private BitSet getCandidates(String term)
+	{
+		if (term.length() < TRIGRAM_LENGTH)
+		{
+			return null;
+		}
+
+		BitSet candidates = null;
+		for (var i = 0; i <= term.length() - TRIGRAM_LENGTH; i++)
+		{
+			var trigramPostings = postings.get(getTrigram(term, i));
+			if (trigramPostings == null)
+			{
+				return new BitSet();
+			}
+			var trigramCandidates = new BitSet(documents.size());
+			trigramPostings.addTo(trigramCandidates);
+			candidates = and(candidates, trigramCandidates);
+		}
+		return candidates;
+	}
+
+	private static BitSet and(BitSet a, BitSet b)
+	{
+		if (a == null)
+		{
+			return b;
+		}
+		if (b == null)
+		{
+			return a;
+		}
+		var result = (BitSet) a.clone();
+		result.and(b);
+		return result;
+	}
+
+	private static BitSet or(BitSet a, BitSet b)
+	{
+		if (a == null || b == null)
+		{
+			return null;
+		}
+		var result = (BitSet) a.clone();
+		result.or(b);
+		return result;
+	}
+
+	private boolean isIndexed(File file)
+	{
+		var documentId = documentIds.get(file.getId());
+		if (documentId == null)
+		{
+			return false;
+		}
+		var indexedFile = documents.get(documentId);
+		return indexedFile.getName().equals(file.getName()) &&
+				indexedFile.getSize() == file.getSize() &&
+				indexedFile.getType() == file.getType() &&
+				Objects.equals(indexedFile.getHash(), file.getHash()) &&
+				Objects.equals(indexedFile.getModified(), file.getModified()) &&
+				parentIds.getOrDefault(file.getId(), 0L) == getParentId(file);
+	}
+
+	private void addDocument(File file)
+	{
+		var documentId = documents.size();
+		var name = file.getName().toLowerCase(Locale.ENGLISH);
+		documents.add(file);
+		names.add(name);
+		documentIds.put(file.getId(), documentId);
+
+		var seen = new HashSet<Long>();
+		for (var i = 0; i <= name.length() - TRIGRAM_LENGTH; i++)
+		{
+			var trigram = getTrigram(name, i);
+			if (seen.add(trigram))
+			{
+				postings.computeIfAbsent(trigram, k -> new Postings()).add(documentId);
+			}
+		}
+	}
+
+	private void removeDocument(long fileId)
+	{
+		var documentId = documentIds.remove(fileId);
+		if (documentId == null)
+		{
+			return;
+		}
+		documents.set(documentId, null); // The postings are cleaned up when compacting
+		names.set(documentId, null);
+		removedDocuments++;
+
+		if (removedDocuments > documents.size() / 2)
+		{
+			compact();
+		}
+	}
+
+	private void compact()
+	{
+		var files = documents.stream()
+				.filter(Objects::nonNull)
+				.toList();
+		clearDocuments();
+		files.forEach(this::addDocument);
+	}
+
+	private void addLink(long fileId, long parentId)
+	{
+		if (parentId != 0L)
+		{
+			parentIds.put(fileId, parentId);
+			childIds.computeIfAbsent(parentId, k -> new HashSet<>()).add(fileId);
+		}
+	}
+
+	private void removeLink(long fileId)
+	{
+		var parentId = parentIds.remove(fileId);
+		if (parentId != null)
+		{
+			var siblings = childIds.get(parentId);
+			if (siblings != null)
+			{
+				siblings.remove(fileId);
+				if (siblings.isEmpty())
+				{
+					childIds.remove(parentId);
+				}
+			}
+		}
+	}
+
+	private void clearLinks()
+	{
+		parentIds.clear();
+		childIds.clear();
+	}
+
+	private static long getParentId(File file)
+	{
+		return file.getParent() != null ? file.getParent().getId() : 0L;
+	}
+
+	private void clearDocuments()
+	{
+		documents.clear();
+		names.clear();
+		documentIds.clear();
+		postings.clear();
+		removedDocuments = 0;
+	}
+
+	private static long getTrigram(String s, int index)
+	{
+		return (long) s.charAt(index) << 32 | (long) s.charAt(index + 1) << 16 | s.charAt(index + 2);
+	}
+
+	/**
+	 * Creates a detached copy of the fields of a file that can be used in searches.
+	 *
+	 * @param file the file
+	 * @return a copy of the file, without its parents
+	 */
+	private static File createSnapshot(File file)
+	{
+		var snapshot = new File();
+		snapshot.setId(file.getId());
+		snapshot.setName(file.getName());
+		snapshot.setSize(file.getSize());
+		snapshot.setType(file.getType());
+		snapshot.setHash(file.getHash());
+		snapshot.setModified(file.getModified());
+		return snapshot;
+	}
+
+	private static void writeFile(DataOutputStream out, File file) throws IOException
+	{
+		out.writeLong(file.getId());
+		out.writeUTF(file.getName());
+		out.writeLong(file.getSize());
+		out.writeUTF(file.getType() != null ? file.getType().name() : "");
+		out.writeBoolean(file.getHash() != null);
+		if (file.getHash() != null)
+		{
+			out.write(file.getHash().getBytes());
+		}
+		out.writeLong(file.getModified() != null ? file.getModified().toEpochMilli() : Long.MIN_VALUE);
+	}
+
+	private static File readFile(DataInputStream in) throws IOException
+	{
+		var file = new File();
+		file.setId(in.readLong());
+		file.setName(in.readUTF());
+		file.setSize(in.readLong());
+		var type = in.readUTF();
+		file.setType(type.isEmpty() ? null : FileType.valueOf(type));
+		if (in.readBoolean())
+		{
+			var hash = new byte[Sha1Sum.LENGTH];
+			in.readFully(hash);
+			file.setHash(new Sha1Sum(hash));
+		}
+		var modified = in.readLong();
+		file.setModified(modified != Long.MIN_VALUE ? Instant.ofEpochMilli(modified) : null);
+		return file;
+	}
+}
@@ -31,18 +31,23 @@ import io.xeres.app.database.repository.ShareRepository;
 import io.xeres.app.service.notification.file.FileNotificationService;
 import io.xeres.app.util.expression.Expression;
 import io.xeres.common.id.Sha1Sum;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.criteria.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -65,11 +70,16 @@ public class FileService
 	public static final String DOWNLOAD_EXTENSION = ".xrsdownload";
 
 	private static final TemporalAmount SCAN_DELAY = Duration.ofMinutes(10); // Delay between shares scan
+	private static final TemporalAmount FULL_SCAN_DELAY = Duration.ofHours(24); // Delay between full scans, which also pick up files modified in place
 
 	private static final Map<Sha1Sum, Path> temporaryHashes = new ConcurrentHashMap<>();
 
+	private final Map<Long, Instant> lastFullScans = new ConcurrentHashMap<>();
+
 	static final int SMALL_FILE_SIZE = 1024 * 16; // 16 KB
 
+	private static final int SEARCH_INDEX_REBUILD_SIZE = 1000; // Files loaded per query when rebuilding the search index
+
 	private final FileNotificationService fileNotificationService;
 
 	private final ShareRepository shareRepository;
@@ -80,8 +90,12 @@ public class FileService
 
 	private final HashBloomFilter bloomFilter;
 
+	private final FileSearchIndex searchIndex;
+
 	private final EntityManager entityManager;
 
+	private final TransactionTemplate transactionTemplate;
+
 	private static final String[] ignoredSuffixes = {
 			".bak",
 			".sys",
@@ -101,15 +115,23 @@ public class FileService
 			"temp."
 	};
 
-	public FileService(FileNotificationService fileNotificationService, ShareRepository shareRepository, FileRepository fileRepository, FileDownloadRepository fileDownloadRepository, DataDirConfiguration dataDirConfiguration, EntityManager entityManager)
+	public FileService(FileNotificationService fileNotificationService, ShareRepository shareRepository, FileRepository fileRepository, FileDownloadRepository fileDownloadRepository, DataDirConfiguration dataDirConfiguration, EntityManager entityManager, PlatformTransactionManager transactionManager)
 	{
 		this.fileNotificationService = fileNotificationService;
 		this.shareRepository = shareRepository;
 		this.fileRepository = fileRepository;
 		this.fileDownloadRepository = fileDownloadRepository;
-		bloomFilter = new HashBloomFilter(dataDirConfiguration.getDataDir(), 10_000, 0.01d); // XXX: parameters will need experimenting, especially the max files (yes it can be extended, but not reduced)
 		this.entityManager = entityManager;
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		bloomFilter = new HashBloomFilter(dataDirConfiguration.getDataDir(), 10_000, 0.01d); // XXX: parameters will need experimenting, especially the max files (yes it can be extended, but not reduced)
 		updateBloomFilter();
+		searchIndex = new FileSearchIndex(dataDirConfiguration.getDataDir()); // Loaded by the first scan
+	}
+
+	@PreDestroy
+	void saveSearchIndex()
+	{
+		searchIndex.save();
 	}
 
 	/**
@@ -146,22 +168,34 @@ public class FileService
 	 * <p>
 	 * Note that the user might expect at most each {@link #SCAN_DELAY} for a new file to be picked up, that's why
 	 * the time spent while scanning is included.
+	 * <p>
+	 * The scan itself isn't running within a transaction, it commits its changes by batches.
 	 */
-	@Transactional
 	public void checkForSharesToScan()
 	{
-		var sharesToScan = shareRepository.findAll(Sort.by(Sort.Order.by("lastScanned")).ascending());
+		prepareSearchIndex();
 
-		log.debug("Shares to scan: {}", sharesToScan);
 		var now = Instant.now();
-		sharesToScan.stream()
-				.filter(share -> share.getLastScanned() == null || share.getLastScanned().isBefore(now.minus(SCAN_DELAY)))
-				.findFirst().ifPresent(share -> {
-					log.debug("Scanning: {}", share);
-					share.setLastScanned(now);
-					shareRepository.save(share);
-					scanShare(share);
-				});
+		var shareToScan = transactionTemplate.execute(status -> {
+			var sharesToScan = shareRepository.findAll(Sort.by(Sort.Order.by("lastScanned")).ascending());
+
+			log.debug("Shares to scan: {}", sharesToScan);
+			return sharesToScan.stream()
+					.filter(share -> share.getLastScanned() == null || share.getLastScanned().isBefore(now.minus(SCAN_DELAY)))
+					.findFirst()
+					.map(share -> {
+						log.debug("Scanning: {}", share);
+						share.setLastScanned(now);
+						shareRepository.save(share);
+						getFilePath(share.getFile()); // Loads the directory and its parents, they're needed outside the transaction
+						return share;
+					})
+					.orElse(null);
+		});
+		if (shareToScan != null)
+		{
+			scanShare(shareToScan);
+		}
 	}
 
 	/**
@@ -189,6 +223,7 @@ public class FileService
 				var sharedDirectory = share.getFile();
 				shareRepository.delete(share);
 				fileRepository.delete(sharedDirectory);
+				removeFromSearchIndex(sharedDirectory.getId());
 			}
 		});
 	}
@@ -279,21 +314,32 @@ public class FileService
 			file = parent;
 		}
 		fileRepository.delete(file);
+		removeFromSearchIndex(file.getId());
 	}
 
 	public List<File> searchFiles(String name)
 	{
-		return fileRepository.findAllByNameContainingIgnoreCase(name);
+		// The database is only searched while the index is being loaded
+		return searchIndex.findMatches(name)
+				.map(ids -> ids.isEmpty() ? List.<File>of() : fileRepository.findAllById(ids))
+				.orElseGet(() -> fileRepository.findAllByNameContainingIgnoreCase(name));
 	}
 
 	public List<File> searchFiles(List<Expression> expressions)
 	{
+		var candidates = searchIndex.findCandidates(expressions);
+		if (candidates.isPresent() && candidates.get().isEmpty())
+		{
+			return List.of();
+		}
+
 		var cb = entityManager.getCriteriaBuilder();
 		var query = cb.createQuery(File.class);
 
 		var file = query.from(File.class);
 
 		List<Predicate> predicates = new ArrayList<>();
+		candidates.ifPresent(ids -> predicates.add(file.get("id").in(ids)));
 		for (Expression expression : expressions)
 		{
 			predicates.add(expression.toPredicate(cb, file));
@@ -302,6 +348,86 @@ public class FileService
 		return entityManager.createQuery(query).getResultList();
 	}
 
+	/**
+	 * Adds files to the search index, once they're committed. The index is saved along with the next changes.
+	 *
+	 * @param files the saved files
+	 */
+	void addToSearchIndex(Collection<File> files)
+	{
+		afterCommit(() -> files.forEach(searchIndex::add));
+	}
+
+	/**
+	 * Removes a file and its content from the search index, once the deletion is committed.
+	 * The index is saved along with the next changes.
+	 *
+	 * @param fileId the id of the deleted file
+	 */
+	private void removeFromSearchIndex(long fileId)
+	{
+		afterCommit(() -> searchIndex.remove(fileId));
+	}
+
+	private static void afterCommit(Runnable action)
+	{
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+		{
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+			{
+				@Override
+				public void afterCommit()
+				{
+					action.run();
+				}
+			});
+		}
+		else
+		{
+			action.run();
+		}
+	}
+
+	/**
+	 * Loads the search index, or rebuilds it if the persisted one can't be used. Searches are done
+	 * on the database alone until then.
+	 */
+	void prepareSearchIndex()
+	{
+		if (searchIndex.isReady())
+		{
+			return;
+		}
+		if (!searchIndex.load(fileRepository.count(), fileRepository.findFirstByOrderByIdDesc().map(File::getId).orElse(0L)))
+		{
+			rebuildSearchIndex();
+		}
+	}
+
+	/**
+	 * Rebuilds the search index from the database, by batches of files.
+	 */
+	public void rebuildSearchIndex()
+	{
+		log.debug("Rebuilding search index...");
+		searchIndex.clear();
+		var lastId = 0L;
+		List<File> files;
+		do
+		{
+			files = fileRepository.findAllByIdGreaterThanOrderByIdAsc(lastId, Limit.of(SEARCH_INDEX_REBUILD_SIZE));
+			searchIndex.addAll(files);
+			if (!files.isEmpty())
+			{
+				lastId = files.getLast().getId();
+			}
+		}
+		while (files.size() == SEARCH_INDEX_REBUILD_SIZE);
+		searchIndex.setReady();
+		searchIndex.save();
+		log.debug("Search index rebuilt with {} files", searchIndex.size());
+	}
+
 	public Optional<Share> findShareForFile(File file)
 	{
 		Set<Long> fileIds = new HashSet<>();
@@ -376,7 +502,7 @@ public class FileService
 	private void saveFullPath(File file)
 	{
 		var tree = getFullPath(file);
-		fileRepository.saveAll(tree);
+		addToSearchIndex(fileRepository.saveAll(tree));
 	}
 
 	private List<File> getFullPath(File file)
@@ -408,100 +534,23 @@ public class FileService
 	{
 		try
 		{
-			var ioBuffer = new byte[SMALL_FILE_SIZE];
 			fileNotificationService.startScanning(share);
-			var directory = share.getFile();
-			var directoryPath = getFilePath(directory);
-			var visitor = new TrackingFileVisitor(fileRepository, directory)
-			{
-				@Override
-				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
-				{
-					Objects.requireNonNull(file);
-					Objects.requireNonNull(attrs);
-					if (isIndexableFile(file, attrs))
-					{
-						indexFile(file, attrs);
-					}
-					return FileVisitResult.CONTINUE;
-				}
-
-				@Override
-				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
-				{
-					Objects.requireNonNull(dir);
-					Objects.requireNonNull(attrs);
-					if (isIndexableDirectory(dir, attrs))
-					{
-						indexDirectory(dir, attrs);
-						return FileVisitResult.CONTINUE;
-					}
-					else
-					{
-						return FileVisitResult.SKIP_SUBTREE;
-					}
-				}
-
-				@Override
-				public FileVisitResult postVisitDirectory(Path dir, IOException exc)
-				{
-					Objects.requireNonNull(dir);
-					super.postVisitDirectory(dir, exc);
-					if (exc != null)
-					{
-						log.debug("Failed to fully scan directory {}: {}", dir, exc.getMessage());
-					}
-					return FileVisitResult.CONTINUE;
-				}
-
-				@Override
-				public FileVisitResult visitFileFailed(Path file, IOException exc)
-				{
-					Objects.requireNonNull(file);
-					log.debug("Visiting file {} failed: {}", file, exc.getMessage());
-					return FileVisitResult.CONTINUE;
-				}
-
-				private void indexFile(Path file, BasicFileAttributes attrs)
-				{
-					var currentFile = fileRepository.findByNameAndParent(file.getFileName().toString(), getCurrentDirectory()).orElseGet(() -> File.createFile(getCurrentDirectory(), file.getFileName().toString(), attrs.size(), null));
-					var lastModified = attrs.lastModifiedTime().toInstant();
-					log.debug("Checking file {}, modification time: {}", file, lastModified);
-					if (currentFile.getModified() == null || lastModified.isAfter(currentFile.getModified()))
-					{
-						log.debug("Current file in database, modified: {}", currentFile.getModified());
-						var hash = calculateFileHash(file, ioBuffer);
-						currentFile.setHash(hash);
-						currentFile.setEncryptedHash(encryptHash(hash));
-						currentFile.setModified(lastModified);
-						fileRepository.save(currentFile);
-						setChanged();
-					}
-				}
-
-				private void indexDirectory(Path dir, BasicFileAttributes attrs)
-				{
-					super.preVisitDirectory(dir, attrs);
-					log.debug("Entering directory {}", dir);
-					var directory = getCurrentDirectory();
-					if (fileRepository.findByNameAndParent(directory.getName(), directory.getParent()).isEmpty())
-					{
-						fileRepository.save(directory);
-					}
-				}
-			};
-			Files.walkFileTree(directoryPath, visitor);
-			directory.setModified(Files.getLastModifiedTime(directoryPath).toInstant());
-			fileRepository.save(directory);
+			var now = Instant.now();
+			var lastFullScan = lastFullScans.get(share.getId());
+			var fullScan = lastFullScan == null || lastFullScan.isBefore(now.minus(FULL_SCAN_DELAY));
+			log.debug("Scanning share {}, full scan: {}", share.getName(), fullScan);
 
-			if (visitor.foundChanges())
+			var directory = share.getFile();
+			var scanner = new ShareScanner(this, fileRepository, entityManager, transactionTemplate, searchIndex, fullScan);
+			if (scanner.scan(getFilePath(directory), directory))
 			{
 				updateBloomFilter();
 			}
-		}
-		catch (IOException e)
-		{
-			throw new RuntimeException(e);
+			searchIndex.save(); // Also saves the removals done since the last scan
+			if (fullScan)
+			{
+				lastFullScans.put(share.getId(), now);
+			}
 		}
 		finally
 		{
@@ -518,7 +567,7 @@ public class FileService
 		return Path.of(file.getName());
 	}
 
-	private boolean isIndexableFile(Path file, BasicFileAttributes attrs)
+	boolean isIndexableFile(Path file, BasicFileAttributes attrs)
 	{
 		if (attrs.isRegularFile() && attrs.size() > 0)
 		{
@@ -528,7 +577,7 @@ public class FileService
 		return false;
 	}
 
-	private boolean isIndexableDirectory(Path directory, BasicFileAttributes attrs)
+	boolean isIndexableDirectory(Path directory, BasicFileAttributes attrs)
 	{
 		if (attrs.isDirectory())
 		{
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.service.file;
+
+import io.xeres.app.database.model.file.File;
+import io.xeres.app.database.repository.FileRepository;
+import io.xeres.common.file.FileType;
+import io.xeres.common.id.Sha1Sum;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Scans a share and updates the database.
+ * <p>
+ * The directories are enumerated on the calling thread, which also performs all database accesses. The files
+ * to hash are handed over to a bounded pool and the resulting entities are written by batches. Each batch is
+ * committed in its own transaction, so the scan of a big share never holds a connection for long, and the
+ * memory used doesn't grow with the size of the share. The scanner must be called outside a transaction: the
+ * entities it works with are detached and the parents of new entries are loaded again by id.
+ * <p>
+ * Unless a full scan is requested, directories whose modification time didn't change since the last scan are not
+ * listed again, only their known subdirectories are visited. Note that this means that a file modified in place
+ * (which doesn't update the modification time of its directory) is only picked up by a full scan.
+ */
+class ShareScanner
+{
+	private static final Logger log = LoggerFactory.getLogger(ShareScanner.class);
+
+	private static final int HASHING_THREADS = Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4);
+	private static final int MAX_PENDING_HASHES = HASHING_THREADS * 4;
+	private static final int BATCH_SIZE = 100; // Files written per transaction
+
+	private final FileService fileService;
+	private final FileRepository fileRepository;
+	private final EntityManager entityManager;
+	private final TransactionTemplate transactionTemplate;
+	private final FileSearchIndex searchIndex;
+	private final boolean fullScan;
+
+	private final ThreadLocal<byte[]> ioBuffers = ThreadLocal.withInitial(() -> new byte[FileService.SMALL_FILE_SIZE]);
+	private final Deque<PendingHash> pendingHashes = new ArrayDeque<>();
+	private final List<PendingWrite> batch = new ArrayList<>(BATCH_SIZE);
+	private ExecutorService hashingExecutor;
+	private boolean changed;
+
+	/**
+	 * A file to hash.
+	 *
+	 * @param file     the file
+	 * @param parentId the id of its directory if the file is new, 0 otherwise
+	 * @param modified the modification time of the file
+	 * @param hash     the hash being computed
+	 */
+	private record PendingHash(File file, long parentId, Instant modified, Future<Sha1Sum> hash)
+	{
+	}
+
+	/**
+	 * A file to write.
+	 *
+	 * @param file     the file
+	 * @param parentId the id of its directory if the file is new, 0 otherwise
+	 */
+	private record PendingWrite(File file, long parentId)
+	{
+	}
+
+	ShareScanner(FileService fileService, FileRepository fileRepository, EntityManager entityManager, TransactionTemplate transactionTemplate, FileSearchIndex searchIndex, boolean fullScan)
+	{
+		this.fileService = fileService;
+		this.fileRepository = fileRepository;
+		this.entityManager = entityManager;
+		this.transactionTemplate = transactionTemplate;
+		this.searchIndex = searchIndex;
+		this.fullScan = fullScan;
+	}
+
+	/**
+	 * Scans a directory and all its subdirectories.
+	 *
+	 * @param directoryPath the path of the directory
+	 * @param directory     the directory, must be saved already
+	 * @return true if something changed in the database
+	 */
+	boolean scan(Path directoryPath, File directory)
+	{
+		try (var executor = Executors.newFixedThreadPool(HASHING_THREADS, Thread.ofPlatform().name("File Hasher ", 1).daemon().factory()))
+		{
+			hashingExecutor = executor;
+			scanDirectory(directoryPath, directory);
+			while (!pendingHashes.isEmpty())
+			{
+				completeHash(pendingHashes.removeFirst());
+			}
+			flush();
+		}
+		finally
+		{
+			hashingExecutor = null;
+		}
+		return changed;
+	}
+
+	private void scanDirectory(Path directoryPath, File directory)
+	{
+		Instant lastModified;
+		try
+		{
+			lastModified = Files.getLastModifiedTime(directoryPath).toInstant();
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to get modification time of directory {}: {}", directoryPath, e.getMessage());
+			return;
+		}
+
+		if (!fullScan && directory.getModified() != null && !lastModified.isAfter(directory.getModified()))
+		{
+			log.debug("Directory {} unchanged, only visiting its subdirectories", directoryPath);
+			getSubDirectories(directory)
+					.forEach(child -> {
+						var childPath = directoryPath.resolve(child.getName());
+						if (Files.isDirectory(childPath, LinkOption.NOFOLLOW_LINKS))
+						{
+							scanDirectory(childPath, child);
+						}
+					});
+			return;
+		}
+
+		var children = getChildren(directory);
+
+		log.debug("Entering directory {}", directoryPath);
+		try (var stream = Files.newDirectoryStream(directoryPath))
+		{
+			for (var path : stream)
+			{
+				scanEntry(path, directory, children);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.debug("Failed to fully scan directory {}: {}", directoryPath, e.getMessage());
+			return; // Keep the old modification time so that it's listed again next time
+		}
+
+		if (!lastModified.equals(directory.getModified()))
+		{
+			directory.setModified(lastModified);
+			addToBatch(directory, 0L);
+		}
+		else if (fullScan)
+		{
+			searchIndex.add(directory);
+		}
+	}
+
+	private void scanEntry(Path path, File directory, Map<String, File> children)
+	{
+		BasicFileAttributes attrs;
+		try
+		{
+			attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		}
+		catch (IOException e)
+		{
+			log.debug("Visiting file {} failed: {}", path, e.getMessage());
+			return;
+		}
+
+		var name = path.getFileName().toString();
+
+		if (fileService.isIndexableDirectory(path, attrs))
+		{
+			var subDirectory = children.get(name);
+			if (subDirectory == null)
+			{
+				subDirectory = transactionTemplate.execute(status -> {
+					var newDirectory = File.createDirectory(getReference(directory.getId()), name, null); // Its modification time is set once it's fully scanned
+					fileRepository.save(newDirectory);
+					return newDirectory;
+				}); // Committed right away, its id is needed by its content
+				changed = true;
+			}
+			scanDirectory(path, subDirectory);
+		}
+		else if (fileService.isIndexableFile(path, attrs))
+		{
+			var file = children.get(name);
+			var lastModified = attrs.lastModifiedTime().toInstant();
+			log.debug("Checking file {}, modification time: {}", path, lastModified);
+			var parentId = 0L;
+			if (file == null)
+			{
+				file = new File(); // Its parent is set when writing, see flush()
+				file.setName(name);
+				file.setType(FileType.getTypeByExtension(name));
+				parentId = directory.getId();
+			}
+			if (file.getModified() == null || lastModified.isAfter(file.getModified()))
+			{
+				log.debug("Current file in database, modified: {}", file.getModified());
+				file.setSize(attrs.size());
+				queueHash(path, file, parentId, lastModified);
+			}
+			else if (fullScan)
+			{
+				searchIndex.add(file); // Already committed, puts it back if the index lost it
+			}
+		}
+	}
+
+	private Map<String, File> getChildren(File directory)
+	{
+		if (directory.getId() == 0L)
+		{
+			return Map.of();
+		}
+		return fileRepository.findAllByParent(directory).stream()
+				.collect(Collectors.toMap(File::getName, Function.identity(), (first, second) -> first));
+	}
+
+	private List<File> getSubDirectories(File directory)
+	{
+		if (directory.getId() == 0L)
+		{
+			return List.of();
+		}
+		return fileRepository.findAllByParentAndType(directory, FileType.DIRECTORY);
+	}
+
+	private File getReference(long fileId)
+	{
+		return entityManager.getReference(File.class, fileId);
+	}
+
+	private void queueHash(Path path, File file, long parentId, Instant modified)
+	{
+		if (pendingHashes.size() >= MAX_PENDING_HASHES)
+		{
+			completeHash(pendingHashes.removeFirst());
+		}
+		pendingHashes.addLast(new PendingHash(file, parentId, modified, hashingExecutor.submit(() -> fileService.calculateFileHash(path, ioBuffers.get()))));
+	}
+
+	private void completeHash(PendingHash pendingHash)
+	{
+		Sha1Sum hash;
+		try
+		{
+			hash = pendingHash.hash().get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while hashing " + pendingHash.file().getName(), e);
+		}
+		catch (ExecutionException e)
+		{
+			log.warn("Failed to hash file {}: {}", pendingHash.file().getName(), e.getMessage());
+			return;
+		}
+
+		if (hash == null)
+		{
+			return; // It will be retried on the next full scan
+		}
+		var file = pendingHash.file();
+		file.setHash(hash);
+		file.setEncryptedHash(FileService.encryptHash(hash));
+		file.setModified(pendingHash.modified());
+		addToBatch(file, pendingHash.parentId());
+		changed = true;
+	}
+
+	private void addToBatch(File file, long parentId)
+	{
+		batch.add(new PendingWrite(file, parentId));
+		if (batch.size() >= BATCH_SIZE)
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the batch in its own transaction. New files get their parent loaded by id, the existing ones
+	 * are merged.
+	 */
+	private void flush()
+	{
+		if (batch.isEmpty())
+		{
+			return;
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			var files = batch.stream()
+					.map(pendingWrite -> {
+						if (pendingWrite.parentId() != 0L)
+						{
+							pendingWrite.file().setParent(getReference(pendingWrite.parentId()));
+						}
+						return pendingWrite.file();
+					})
+					.toList();
+			fileService.addToSearchIndex(fileRepository.saveAll(files)); // Once committed
+		});
+		batch.clear();
+	}
+}
@@ -48,28 +48,28 @@ public class FileNotificationService extends NotificationService
 		return new FileNotification(action, shareName, scannedFile);
 	}
 
-	public void startScanning(Share share)
+	public synchronized void startScanning(Share share)
 	{
 		action = START_SCANNING;
 		shareName = share.getName();
 		sendNotification(createNotification());
 	}
 
-	public void startScanningFile(Path scannedFile)
+	public synchronized void startScanningFile(Path scannedFile)
 	{
 		action = START_HASHING;
 		this.scannedFile = scannedFile.toString();
 		sendNotification(createNotification());
 	}
 
-	public void stopScanningFile()
+	public synchronized void stopScanningFile()
 	{
 		action = STOP_HASHING;
 		scannedFile = null;
 		sendNotification(createNotification());
 	}
 
-	public void stopScanning()
+	public synchronized void stopScanning()
 	{
 		action = STOP_SCANNING;
 		shareName = null;
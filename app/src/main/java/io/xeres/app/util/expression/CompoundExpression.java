@@ -49,6 +49,21 @@ public class CompoundExpression implements Expression
 		this.right = right;
 	}
 
+	public Operator getOperator()
+	{
+		return operator;
+	}
+
+	public Expression getLeft()
+	{
+		return left;
+	}
+
+	public Expression getRight()
+	{
+		return right;
+	}
+
 	@Override
 	public boolean evaluate(File file)
 	{
@@ -68,6 +68,10 @@ public class DateExpression extends RelationalExpression
 	@Override
 	int getValue(File file)
 	{
+		if (file.getModified() == null)
+		{
+			return 0;
+		}
 		return (int) file.getModified().truncatedTo(ChronoUnit.SECONDS).getEpochSecond();
 	}
 }
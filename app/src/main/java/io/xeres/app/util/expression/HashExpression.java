@@ -46,6 +46,6 @@ public class HashExpression extends StringExpression
 	@Override
 	String getValue(File file)
 	{
-		return file.getHash().toString();
+		return file.getHash() != null ? file.getHash().toString() : "";
 	}
 }
@@ -56,6 +56,16 @@ public abstract class StringExpression implements Expression
 		words = Arrays.stream(template.split(" ")).toList();
 	}
 
+	public Operator getOperator()
+	{
+		return operator;
+	}
+
+	public List<String> getWords()
+	{
+		return words;
+	}
+
 	@Override
 	public boolean evaluate(File file)
 	{
@@ -19,10 +19,20 @@
 
 package io.xeres.app.xrs.common;
 
+import io.netty.buffer.ByteBuf;
+
+/**
+ * File data. When sending, the data buffer is released by the serialization. When receiving, it's a slice
+ * of the item's buffer.
+ *
+ * @param fileItem the file item
+ * @param offset   the offset within the file
+ * @param data     the data
+ */
 public record FileData(
 		FileItem fileItem,
 		long offset,
-		byte[] data
+		ByteBuf data
 )
 {
 	@Override
@@ -31,7 +41,7 @@ public record FileData(
 		return "FileData{" +
 				"fileItem=" + fileItem +
 				", offset=" + offset +
-				", data.length=" + data.length +
+				", data.length=" + data.readableBytes() +
 				'}';
 	}
 }
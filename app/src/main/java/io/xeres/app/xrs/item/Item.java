@@ -61,7 +61,7 @@ public abstract class Item implements Cloneable
 
 	public void setOutgoing(ByteBufAllocator allocator, RsService service)
 	{
-		buf = allocator.buffer();
+		buf = allocateBuffer(allocator);
 		buf.writeByte(VERSION);
 
 		// Handle items that are shared between service and hence have no intrinsic service type
@@ -74,6 +74,18 @@ public abstract class Item implements Cloneable
 		buf.writeInt(HEADER_SIZE);
 	}
 
+	/**
+	 * Allocates the buffer the item is serialized into. Items carrying large buffers can use a composite
+	 * buffer so that their data is added to it instead of being copied.
+	 *
+	 * @param allocator the allocator
+	 * @return the buffer
+	 */
+	protected ByteBuf allocateBuffer(ByteBufAllocator allocator)
+	{
+		return allocator.buffer();
+	}
+
 	public void setSerialization(ByteBufAllocator allocator, RsService service)
 	{
 		backupBuf = buf;
@@ -102,7 +114,7 @@ public abstract class Item implements Cloneable
 		else
 		{
 			log.trace("Serializing class {} using annotations", getClass().getSimpleName());
-			size += Serializer.serializeAnnotatedFields(buf, this);
+			size += ItemCodecs.get(getClass()).serialize(buf, this);
 			setItemSize(size + HEADER_SIZE);
 		}
 		log.debug("==> {} ({})", getClass().getSimpleName(), size + HEADER_SIZE);
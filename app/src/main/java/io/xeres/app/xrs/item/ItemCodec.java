@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.item;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Serializes and deserializes the fields of an item, header excluded.
+ * <p>
+ * Codecs named after the item with a {@code Codec} suffix (for example {@code ChatRoomMessageItemCodec}) are
+ * generated at build time for items using {@link io.xeres.app.xrs.serialization.RsSerialized} fields
+ * and picked up automatically. Items without one use the reflective {@link io.xeres.app.xrs.serialization.Serializer}.
+ *
+ * @param <T> the item class
+ * @see ItemCodecs
+ */
+public interface ItemCodec<T extends Item>
+{
+	/**
+	 * Serializes the fields of the item.
+	 *
+	 * @param buf  the buffer
+	 * @param item the item
+	 * @return the number of bytes taken
+	 */
+	int serialize(ByteBuf buf, T item);
+
+	/**
+	 * Deserializes the fields of the item.
+	 *
+	 * @param buf  the buffer
+	 * @param item the item to fill in
+	 */
+	void deserialize(ByteBuf buf, T item);
+}
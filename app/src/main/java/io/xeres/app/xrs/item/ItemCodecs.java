@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.item;
+
+import io.netty.buffer.ByteBuf;
+import io.xeres.app.xrs.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the {@link ItemCodec} of an item class.
+ * <p>
+ * The item classes having a generated codec are listed in a registry written by the annotation processor. It's
+ * missing if the application was built without generated codecs, in which case all items use their annotated fields.
+ */
+public final class ItemCodecs
+{
+	private static final Logger log = LoggerFactory.getLogger(ItemCodecs.class);
+
+	private static final String CODEC_SUFFIX = "Codec";
+	private static final String REGISTRY = "META-INF/xeres/item-codecs";
+
+	private static final Set<String> generatedItemClassNames = loadRegistry();
+
+	private static final ItemCodec<Item> ANNOTATED_FIELDS_CODEC = new ItemCodec<>()
+	{
+		@Override
+		public int serialize(ByteBuf buf, Item item)
+		{
+			return Serializer.serializeAnnotatedFields(buf, item);
+		}
+
+		@Override
+		public void deserialize(ByteBuf buf, Item item)
+		{
+			Serializer.deserializeAnnotatedFields(buf, item);
+		}
+	};
+
+	private static final ClassValue<ItemCodec<Item>> codecs = new ClassValue<>()
+	{
+		@Override
+		protected ItemCodec<Item> computeValue(Class<?> type)
+		{
+			return findCodec(type);
+		}
+	};
+
+	private ItemCodecs()
+	{
+		throw new UnsupportedOperationException("Utility class");
+	}
+
+	/**
+	 * Gets the codec of an item class.
+	 *
+	 * @param itemClass the item class
+	 * @return the generated codec if there's one, otherwise a codec using the annotated fields
+	 */
+	public static ItemCodec<Item> get(Class<? extends Item> itemClass)
+	{
+		return codecs.get(itemClass);
+	}
+
+	/**
+	 * Checks if an item class has a generated codec.
+	 *
+	 * @param itemClass the item class
+	 * @return true if a generated codec is used
+	 */
+	public static boolean hasGeneratedCodec(Class<? extends Item> itemClass)
+	{
+		return get(itemClass) != ANNOTATED_FIELDS_CODEC;
+	}
+
+	/**
+	 * Gets the item classes that have a generated codec.
+	 *
+	 * @return the binary names of the item classes, empty if the codecs weren't generated
+	 */
+	public static Set<String> getGeneratedItemClassNames()
+	{
+		return generatedItemClassNames;
+	}
+
+	/**
+	 * Gets the accessor of a field. Used by generated codecs.
+	 *
+	 * @param itemClass          the item class
+	 * @param declaringClassName the binary name of the class declaring the field, which is either the item class or one of its superclasses
+	 * @param fieldName          the name of the field
+	 * @param fieldType          the type of the field
+	 * @return the accessor
+	 */
+	public static VarHandle findVarHandle(Class<?> itemClass, String declaringClassName, String fieldName, Class<?> fieldType)
+	{
+		var declaringClass = itemClass;
+		while (declaringClass != null && !declaringClass.getName().equals(declaringClassName))
+		{
+			declaringClass = declaringClass.getSuperclass();
+		}
+		if (declaringClass == null)
+		{
+			throw new IllegalArgumentException(declaringClassName + " is not a superclass of " + itemClass.getName());
+		}
+		try
+		{
+			return MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup()).findVarHandle(declaringClass, fieldName, fieldType);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("Can't access field " + declaringClassName + "." + fieldName + ": " + e.getMessage(), e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ItemCodec<Item> findCodec(Class<?> itemClass)
+	{
+		if (!generatedItemClassNames.contains(itemClass.getName()))
+		{
+			return ANNOTATED_FIELDS_CODEC;
+		}
+
+		try
+		{
+			var codecClass = Class.forName(itemClass.getName() + CODEC_SUFFIX, true, itemClass.getClassLoader());
+			if (ItemCodec.class.isAssignableFrom(codecClass))
+			{
+				log.debug("Using generated codec for {}", itemClass.getSimpleName());
+				return (ItemCodec<Item>) codecClass.getDeclaredConstructor().newInstance();
+			}
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			log.warn("Couldn't use generated codec for {}: {}", itemClass.getSimpleName(), e.getMessage());
+		}
+		return ANNOTATED_FIELDS_CODEC;
+	}
+
+	private static Set<String> loadRegistry()
+	{
+		try (var in = ItemCodecs.class.getClassLoader().getResourceAsStream(REGISTRY))
+		{
+			if (in == null)
+			{
+				log.info("No generated item codecs, using the annotated fields");
+				return Set.of();
+			}
+			var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			return reader.lines()
+					.filter(line -> !line.isBlank())
+					.collect(Collectors.toUnmodifiableSet());
+		}
+		catch (IOException e)
+		{
+			log.warn("Couldn't read the generated item codecs registry: {}", e.getMessage());
+			return Set.of();
+		}
+	}
+}
@@ -75,7 +75,7 @@ public class RawItem
 		{
 			// Otherwise, use the more convenient @RsSerialized notations (recommended)
 			log.trace("Deserializing class {} using annotations", item.getClass().getSimpleName());
-			Serializer.deserializeAnnotatedFields(buf, item);
+			ItemCodecs.get(item.getClass()).deserialize(buf, item);
 		}
 
 		// Check if the size matches
@@ -20,18 +20,9 @@
 package io.xeres.app.xrs.serialization;
 
 import io.netty.buffer.ByteBuf;
-import io.xeres.app.xrs.item.Item;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.stream.Collectors;
-
 final class AnnotationSerializer
 {
 	private static final Logger log = LoggerFactory.getLogger(AnnotationSerializer.class);
@@ -43,28 +34,15 @@ final class AnnotationSerializer
 
 	static int serialize(ByteBuf buf, Object object)
 	{
-		var size = 0;
-
-		for (var field : getAllFields(object.getClass(), isClassOrderReversed(object)))
-		{
-			log.trace("Serializing field {}, of type {}", field.getName(), field.getType().getSimpleName());
-			size += Serializer.serialize(buf, field, object);
-		}
-		return size;
+		log.trace("Serializing fields of {}", object.getClass().getSimpleName());
+		return SerializationPlan.of(object.getClass()).serialize(buf, object);
 	}
 
 	static Object deserialize(ByteBuf buf, Class<?> javaClass)
 	{
-		Object instanceObject;
-		try
-		{
-			instanceObject = javaClass.getDeclaredConstructor().newInstance();
-		}
-		catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e)
-		{
-			throw new IllegalArgumentException("Cannot instantiate object of class " + javaClass.getSimpleName());
-		}
-		if (!deserialize(buf, instanceObject))
+		var plan = SerializationPlan.of(javaClass);
+		var instanceObject = plan.newInstance();
+		if (!plan.deserialize(buf, instanceObject))
 		{
 			throw new IllegalArgumentException("Cannot deserialize object of class " + javaClass.getSimpleName());
 		}
@@ -73,49 +51,18 @@ final class AnnotationSerializer
 
 	static boolean deserialize(ByteBuf buf, Object object)
 	{
-		var allFields = getAllFields(object.getClass(), isClassOrderReversed(object));
-
-		for (var field : allFields)
-		{
-			log.trace("Deserializing field {}, of type {}", field.getName(), field.getType().getSimpleName());
-			Serializer.deserialize(buf, field, object, field.getAnnotation(RsSerialized.class));
-		}
-		return !allFields.isEmpty();
+		log.trace("Deserializing fields of {}", object.getClass().getSimpleName());
+		return SerializationPlan.of(object.getClass()).deserialize(buf, object);
 	}
 
 	/**
-	 * Search all fields annotated with @RsSerialized, starting with the
-	 * first subclass of Item down to the last subclass.<br>
+	 * Builds the serialization plan of a class in advance, so that the first item
+	 * doesn't have to pay for it.
 	 *
 	 * @param javaClass the class
-	 * @return all fields ordered from superclass to subclass
 	 */
-	private static List<Field> getAllFields(Class<?> javaClass, boolean reversed)
-	{
-		if (javaClass == null || javaClass == Item.class)
-		{
-			return Collections.emptyList();
-		}
-
-		List<Field> superFields = new ArrayList<>(getAllFields(javaClass.getSuperclass(), reversed));
-		var classFields = Arrays.stream(javaClass.getDeclaredFields())
-				.filter(field -> {
-					field.setAccessible(true); // NOSONAR
-					return field.isAnnotationPresent(RsSerialized.class);
-				})
-				.collect(Collectors.toCollection(ArrayList::new));
-
-		if (reversed)
-		{
-			classFields.addAll(superFields);
-			return classFields;
-		}
-		superFields.addAll(classFields);
-		return superFields;
-	}
-
-	private static boolean isClassOrderReversed(Object object)
+	static void prepare(Class<?> javaClass)
 	{
-		return object.getClass().getDeclaredAnnotation(RsClassSerializedReversed.class) != null;
+		SerializationPlan.of(javaClass);
 	}
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.xeres.app.xrs.item.Item;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed serialization plan of a class using {@link RsSerialized} fields.
+ * <p>
+ * The class hierarchy is only walked once. Each field gets its accessors and its
+ * serializer resolved in advance so that serializing or deserializing an object
+ * doesn't involve any reflection.
+ */
+final class SerializationPlan
+{
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final ClassValue<SerializationPlan> plans = new ClassValue<>()
+	{
+		@Override
+		protected SerializationPlan computeValue(Class<?> type)
+		{
+			return new SerializationPlan(type);
+		}
+	};
+
+	@FunctionalInterface
+	interface Writer
+	{
+		int write(ByteBuf buf, Object value);
+	}
+
+	@FunctionalInterface
+	interface Reader
+	{
+		/**
+		 * Reads a value.
+		 *
+		 * @param buf      the buffer
+		 * @param previous the current value of the field, only supplied for collections that are filled in place
+		 * @return the value
+		 */
+		Object read(ByteBuf buf, Object previous);
+	}
+
+	private final Class<?> javaClass;
+	private final FieldPlan[] fields;
+	private final MethodHandle constructor;
+
+	static SerializationPlan of(Class<?> javaClass)
+	{
+		return plans.get(javaClass);
+	}
+
+	private SerializationPlan(Class<?> javaClass)
+	{
+		this.javaClass = javaClass;
+		fields = getAllFields(javaClass, javaClass.getDeclaredAnnotation(RsClassSerializedReversed.class) != null).stream()
+				.map(FieldPlan::of)
+				.toArray(FieldPlan[]::new);
+		constructor = findConstructor(javaClass);
+	}
+
+	int serialize(ByteBuf buf, Object object)
+	{
+		var size = 0;
+
+		for (var field : fields)
+		{
+			size += field.serialize(buf, object);
+		}
+		return size;
+	}
+
+	boolean deserialize(ByteBuf buf, Object object)
+	{
+		for (var field : fields)
+		{
+			field.deserialize(buf, object);
+		}
+		return fields.length > 0;
+	}
+
+	Object newInstance()
+	{
+		if (constructor == null)
+		{
+			throw new IllegalArgumentException("Cannot instantiate object of class " + javaClass.getSimpleName());
+		}
+		try
+		{
+			return (Object) constructor.invokeExact();
+		}
+		catch (Throwable e) // NOSONAR
+		{
+			throw new IllegalArgumentException("Cannot instantiate object of class " + javaClass.getSimpleName());
+		}
+	}
+
+	/**
+	 * Search all fields annotated with @RsSerialized, starting with the
+	 * first subclass of Item down to the last subclass.<br>
+	 *
+	 * @param javaClass the class
+	 * @return all fields ordered from superclass to subclass
+	 */
+	private static List<Field> getAllFields(Class<?> javaClass, boolean reversed)
+	{
+		if (javaClass == null || javaClass == Item.class)
+		{
+			return new ArrayList<>();
+		}
+
+		var superFields = getAllFields(javaClass.getSuperclass(), reversed);
+		var classFields = Arrays.stream(javaClass.getDeclaredFields())
+				.filter(field -> field.isAnnotationPresent(RsSerialized.class))
+				.collect(ArrayList<Field>::new, ArrayList::add, ArrayList::addAll);
+
+		if (reversed)
+		{
+			classFields.addAll(superFields);
+			return classFields;
+		}
+		superFields.addAll(classFields);
+		return superFields;
+	}
+
+	private static MethodHandle findConstructor(Class<?> javaClass)
+	{
+		try
+		{
+			return lookup.unreflectConstructor(javaClass.getDeclaredConstructor())
+					.asType(MethodType.methodType(Object.class));
+		}
+		catch (ReflectiveOperationException | IllegalArgumentException e)
+		{
+			// Some classes are only ever serialized and have no default constructor
+			return null;
+		}
+	}
+
+	private record FieldPlan(String name, MethodHandle getter, MethodHandle setter, Writer writer, Reader reader, boolean needsPrevious)
+	{
+		@SuppressWarnings("java:S3011") // Accessibility bypass
+		static FieldPlan of(Field field)
+		{
+			field.setAccessible(true); // NOSONAR
+			var annotation = field.getAnnotation(RsSerialized.class);
+			try
+			{
+				return new FieldPlan(field.getDeclaringClass().getSimpleName() + "." + field.getName(),
+						lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class)),
+						lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class)),
+						Serializer.resolveWriter(field.getType(), annotation),
+						Serializer.resolveReader(field.getType(), field.getGenericType(), annotation),
+						Map.class.isAssignableFrom(field.getType()) || List.class.isAssignableFrom(field.getType()));
+			}
+			catch (IllegalAccessException e)
+			{
+				throw new IllegalStateException("Can't access field " + field + ": " + e.getMessage(), e);
+			}
+		}
+
+		int serialize(ByteBuf buf, Object object)
+		{
+			return writer.write(buf, get(object));
+		}
+
+		void deserialize(ByteBuf buf, Object object)
+		{
+			set(object, reader.read(buf, needsPrevious ? get(object) : null));
+		}
+
+		private Object get(Object object)
+		{
+			try
+			{
+				return (Object) getter.invokeExact(object);
+			}
+			catch (Throwable e) // NOSONAR
+			{
+				throw new IllegalStateException("Can't access field " + name + ": " + e.getMessage(), e);
+			}
+		}
+
+		private void set(Object object, Object value)
+		{
+			try
+			{
+				setter.invokeExact(object, value);
+			}
+			catch (Throwable e) // NOSONAR
+			{
+				throw new IllegalStateException("Can't set field " + name + ": " + e.getMessage(), e);
+			}
+		}
+	}
+}
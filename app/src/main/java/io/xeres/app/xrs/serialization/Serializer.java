@@ -26,8 +26,8 @@ import io.xeres.common.id.ProfileFingerprint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.*;
 
 /**
@@ -40,6 +40,24 @@ public final class Serializer
 
 	public static final int TLV_HEADER_SIZE = 6;
 
+	private static final ClassValue<SerializationPlan.Writer> writers = new ClassValue<>()
+	{
+		@Override
+		protected SerializationPlan.Writer computeValue(Class<?> type)
+		{
+			return resolveWriter(type, null);
+		}
+	};
+
+	private static final ClassValue<SerializationPlan.Reader> readers = new ClassValue<>()
+	{
+		@Override
+		protected SerializationPlan.Reader computeValue(Class<?> type)
+		{
+			return resolveReader(type, null, null);
+		}
+	};
+
 	private Serializer()
 	{
 		throw new UnsupportedOperationException("Utility class");
@@ -491,203 +509,197 @@ public final class Serializer
 		return GxsMetaAndDataSerializer.serialize(buf, gxsMetaAndData, flags, result);
 	}
 
-	static int serialize(ByteBuf buf, Field field, Object object)
+	/**
+	 * Builds the serialization plan of a class using {@link RsSerialized} fields in advance.
+	 *
+	 * @param javaClass the class
+	 */
+	public static void prepareAnnotatedFields(Class<?> javaClass)
 	{
-		return serialize(buf, field.getType(), getField(field, object), field.getAnnotation(RsSerialized.class));
+		AnnotationSerializer.prepare(javaClass);
 	}
 
-	@SuppressWarnings("unchecked")
 	static int serialize(ByteBuf buf, Class<?> javaClass, Object object, RsSerialized annotation)
 	{
-		var size = 0;
-
 		log.trace("Serializing...");
 
+		var writer = annotation == null ? writers.get(javaClass) : resolveWriter(javaClass, annotation);
+		return writer.write(buf, object);
+	}
+
+	static Object deserialize(ByteBuf buf, Class<?> javaClass)
+	{
+		return readers.get(javaClass).read(buf, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	static SerializationPlan.Writer resolveWriter(Class<?> javaClass, RsSerialized annotation)
+	{
 		if (annotation != null && annotation.tlvType() != TlvType.NONE)
 		{
-			size += TlvSerializer.serialize(buf, annotation.tlvType(), object);
+			var tlvType = annotation.tlvType();
+			return (buf, object) -> TlvSerializer.serialize(buf, tlvType, object);
 		}
 		else if (Map.class.isAssignableFrom(javaClass))
 		{
-			size += MapSerializer.serialize(buf, (Map<Object, Object>) object);
+			return (buf, object) -> MapSerializer.serialize(buf, (Map<Object, Object>) object);
 		}
 		else if (List.class.isAssignableFrom(javaClass))
 		{
-			size += ListSerializer.serialize(buf, (List<Object>) object);
+			return (buf, object) -> ListSerializer.serialize(buf, (List<Object>) object);
 		}
 		else if (EnumSet.class.isAssignableFrom(javaClass) || Set.class.isAssignableFrom(javaClass))
 		{
-			size += EnumSetSerializer.serialize(buf, (EnumSet<?>) object, annotation);
+			return (buf, object) -> EnumSetSerializer.serialize(buf, (EnumSet<?>) object, annotation);
 		}
 		else if (Enum.class.isAssignableFrom(javaClass))
 		{
-			size += EnumSerializer.serialize(buf, (Enum<?>) object);
+			return (buf, object) -> EnumSerializer.serialize(buf, (Enum<?>) object);
 		}
 		else if (javaClass.equals(int.class) || javaClass.equals(Integer.class))
 		{
-			Objects.requireNonNull(object, "Null integers not supported");
-			size += IntSerializer.serialize(buf, (int) object);
+			return (buf, object) -> {
+				Objects.requireNonNull(object, "Null integers not supported");
+				return IntSerializer.serialize(buf, (int) object);
+			};
 		}
 		else if (javaClass.equals(short.class) || javaClass.equals(Short.class))
 		{
-			Objects.requireNonNull(object, "Null shorts not supported");
-			size += ShortSerializer.serialize(buf, (short) object);
+			return (buf, object) -> {
+				Objects.requireNonNull(object, "Null shorts not supported");
+				return ShortSerializer.serialize(buf, (short) object);
+			};
 		}
 		else if (javaClass.equals(byte.class) || javaClass.equals(Byte.class))
 		{
-			Objects.requireNonNull(object, "Null bytes not supported");
-			size += ByteSerializer.serialize(buf, (byte) object);
+			return (buf, object) -> {
+				Objects.requireNonNull(object, "Null bytes not supported");
+				return ByteSerializer.serialize(buf, (byte) object);
+			};
 		}
 		else if (javaClass.equals(long.class) || javaClass.equals(Long.class))
 		{
-			Objects.requireNonNull(object, "Null longs not supported");
-			size += LongSerializer.serialize(buf, (long) object);
+			return (buf, object) -> {
+				Objects.requireNonNull(object, "Null longs not supported");
+				return LongSerializer.serialize(buf, (long) object);
+			};
 		}
 		else if (javaClass.equals(float.class) || javaClass.equals(Float.class))
 		{
-			Objects.requireNonNull(object, "Null floats not supported");
-			size += FloatSerializer.serialize(buf, (float) object);
+			return (buf, object) -> {
+				Objects.requireNonNull(object, "Null floats not supported");
+				return FloatSerializer.serialize(buf, (float) object);
+			};
 		}
 		else if (javaClass.equals(double.class) || javaClass.equals(Double.class))
 		{
-			Objects.requireNonNull(object, "Null doubles not supported");
-			size += DoubleSerializer.serialize(buf, (double) object);
+			return (buf, object) -> {
+				Objects.requireNonNull(object, "Null doubles not supported");
+				return DoubleSerializer.serialize(buf, (double) object);
+			};
 		}
 		else if (javaClass.equals(boolean.class) || javaClass.equals(Boolean.class))
 		{
-			Objects.requireNonNull(object, "Null booleans not supported");
-			size += BooleanSerializer.serialize(buf, (boolean) object);
+			return (buf, object) -> {
+				Objects.requireNonNull(object, "Null booleans not supported");
+				return BooleanSerializer.serialize(buf, (boolean) object);
+			};
 		}
 		else if (javaClass.equals(String.class))
 		{
-			size += StringSerializer.serialize(buf, (String) object);
+			return (buf, object) -> StringSerializer.serialize(buf, (String) object);
 		}
 		else if (javaClass.isArray())
 		{
-			size += ArraySerializer.serialize(buf, javaClass, object);
+			return (buf, object) -> ArraySerializer.serialize(buf, javaClass, object);
 		}
 		else if (Identifier.class.isAssignableFrom(javaClass))
 		{
-			size += IdentifierSerializer.serialize(buf, javaClass, (Identifier) object);
+			return (buf, object) -> IdentifierSerializer.serialize(buf, javaClass, (Identifier) object);
 		}
 		else if (RsSerializable.class.isAssignableFrom(javaClass))
 		{
-			size += RsSerializableSerializer.serialize(buf, (RsSerializable) object);
+			return (buf, object) -> RsSerializableSerializer.serialize(buf, (RsSerializable) object);
 		}
 		else
 		{
 			checkForNonAllowedType(javaClass);
-			size += AnnotationSerializer.serialize(buf, object);
+			return AnnotationSerializer::serialize;
 		}
-		return size;
-	}
-
-	static void deserialize(ByteBuf buf, Field field, Object object, RsSerialized annotation)
-	{
-		setField(field, object, deserialize(buf, field.getType(), field, object, annotation));
-	}
-
-	static Object deserialize(ByteBuf buf, Class<?> javaClass)
-	{
-		return deserialize(buf, javaClass, null, null, null);
 	}
 
 	@SuppressWarnings("unchecked")
-	private static Object deserialize(ByteBuf buf, Class<?> javaClass, Field field, Object object, RsSerialized annotation)
+	static SerializationPlan.Reader resolveReader(Class<?> javaClass, Type genericType, RsSerialized annotation)
 	{
 		if (annotation != null && annotation.tlvType() != TlvType.NONE)
 		{
-			return TlvSerializer.deserialize(buf, annotation.tlvType());
+			var tlvType = annotation.tlvType();
+			return (buf, previous) -> TlvSerializer.deserialize(buf, tlvType);
 		}
 		else if (javaClass.equals(int.class) || javaClass.equals(Integer.class))
 		{
-			return IntSerializer.deserialize(buf);
+			return (buf, previous) -> IntSerializer.deserialize(buf);
 		}
 		else if (javaClass.equals(short.class) || javaClass.equals(Short.class))
 		{
-			return ShortSerializer.deserialize(buf);
+			return (buf, previous) -> ShortSerializer.deserialize(buf);
 		}
 		else if (javaClass.equals(byte.class) || javaClass.equals(Byte.class))
 		{
-			return ByteSerializer.deserialize(buf);
+			return (buf, previous) -> ByteSerializer.deserialize(buf);
 		}
 		else if (javaClass.equals(long.class) || javaClass.equals(Long.class))
 		{
-			return LongSerializer.deserialize(buf);
+			return (buf, previous) -> LongSerializer.deserialize(buf);
 		}
 		else if (javaClass.equals(float.class) || javaClass.equals(Float.class))
 		{
-			return FloatSerializer.deserialize(buf);
+			return (buf, previous) -> FloatSerializer.deserialize(buf);
 		}
 		else if (javaClass.equals(double.class) || javaClass.equals(Double.class))
 		{
-			return DoubleSerializer.deserialize(buf);
+			return (buf, previous) -> DoubleSerializer.deserialize(buf);
 		}
 		else if (javaClass.equals(boolean.class) || javaClass.equals(Boolean.class))
 		{
-			return BooleanSerializer.deserialize(buf);
+			return (buf, previous) -> BooleanSerializer.deserialize(buf);
 		}
 		else if (javaClass.equals(String.class))
 		{
-			return StringSerializer.deserialize(buf);
+			return (buf, previous) -> StringSerializer.deserialize(buf);
 		}
 		else if (Identifier.class.isAssignableFrom(javaClass))
 		{
-			return IdentifierSerializer.deserialize(buf, javaClass);
+			return (buf, previous) -> IdentifierSerializer.deserialize(buf, javaClass);
 		}
 		else if (RsSerializable.class.isAssignableFrom(javaClass))
 		{
-			return RsSerializableSerializer.deserialize(buf, javaClass);
+			return (buf, previous) -> RsSerializableSerializer.deserialize(buf, javaClass);
 		}
 		else if (javaClass.isArray())
 		{
-			return ArraySerializer.deserialize(buf, javaClass);
+			return (buf, previous) -> ArraySerializer.deserialize(buf, javaClass);
 		}
 		else if (Map.class.isAssignableFrom(javaClass))
 		{
-			return MapSerializer.deserialize(buf, (Map<Object, Object>) getField(field, object), (ParameterizedType) field.getGenericType());
+			return (buf, previous) -> MapSerializer.deserialize(buf, (Map<Object, Object>) previous, (ParameterizedType) genericType);
 		}
 		else if (List.class.isAssignableFrom(javaClass))
 		{
-			return ListSerializer.deserialize(buf, (List<Object>) getField(field, object), (ParameterizedType) field.getGenericType());
+			return (buf, previous) -> ListSerializer.deserialize(buf, (List<Object>) previous, (ParameterizedType) genericType);
 		}
 		else if (EnumSet.class.isAssignableFrom(javaClass) || Set.class.isAssignableFrom(javaClass))
 		{
-			return EnumSetSerializer.deserialize(buf, (ParameterizedType) field.getGenericType(), annotation);
+			return (buf, previous) -> EnumSetSerializer.deserialize(buf, (ParameterizedType) genericType, annotation);
 		}
 		else if (Enum.class.isAssignableFrom(javaClass))
 		{
-			return EnumSerializer.deserialize(buf, javaClass);
+			return (buf, previous) -> EnumSerializer.deserialize(buf, javaClass);
 		}
 		else
 		{
 			checkForNonAllowedType(javaClass);
-			return AnnotationSerializer.deserialize(buf, javaClass);
-		}
-	}
-
-	private static Object getField(Field field, Object object)
-	{
-		try
-		{
-			return field.get(object);
-		}
-		catch (IllegalAccessException e)
-		{
-			throw new IllegalStateException("Can't access field " + field + ": " + e.getMessage(), e);
-		}
-	}
-
-	@SuppressWarnings("java:S3011") // Accessibility bypass
-	private static void setField(Field field, Object object, Object value)
-	{
-		try
-		{
-			field.set(object, value);
-		}
-		catch (IllegalAccessException e)
-		{
-			throw new IllegalStateException("Can't set field " + field + ": " + e.getMessage(), e);
+			return (buf, previous) -> AnnotationSerializer.deserialize(buf, javaClass);
 		}
 	}
 
@@ -20,6 +20,7 @@
 package io.xeres.app.xrs.serialization;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,11 +64,46 @@ final class TlvBinarySerializer
 		return len;
 	}
 
+	/**
+	 * Serializes binary data held in a buffer. The buffer is consumed: if the destination is a
+	 * {@link CompositeByteBuf}, it is appended as a component without copying, otherwise it is copied then released.
+	 *
+	 * @param buf  the destination buffer
+	 * @param type the TLV type
+	 * @param data the data, released by this method
+	 * @return the size of the TLV
+	 */
+	static int serialize(ByteBuf buf, TlvType type, ByteBuf data)
+	{
+		var len = getSize(data);
+		log.trace("Writing TLV binary data from buffer (size: {})", data.readableBytes());
+		buf.ensureWritable(TLV_HEADER_SIZE);
+		buf.writeShort(type.getValue());
+		buf.writeInt(len);
+		if (buf instanceof CompositeByteBuf composite)
+		{
+			// Remove the unused capacity otherwise the component would be added after it
+			composite.capacity(composite.writerIndex());
+			composite.addComponent(true, data);
+		}
+		else
+		{
+			buf.writeBytes(data, data.readerIndex(), data.readableBytes());
+			data.release();
+		}
+		return len;
+	}
+
 	static int getSize(byte[] data)
 	{
 		return TLV_HEADER_SIZE + (data != null ? data.length : 0);
 	}
 
+	static int getSize(ByteBuf data)
+	{
+		return TLV_HEADER_SIZE + data.readableBytes();
+	}
+
 	static byte[] deserialize(ByteBuf buf)
 	{
 		return deserialize(buf, TlvType.NONE);
@@ -83,6 +119,21 @@ final class TlvBinarySerializer
 		return out;
 	}
 
+	/**
+	 * Deserializes binary data without copying it.
+	 *
+	 * @param buf  the buffer
+	 * @param type the TLV type
+	 * @return a slice of the buffer, only valid as long as the buffer is. Retain it to keep it longer
+	 */
+	static ByteBuf deserializeSlice(ByteBuf buf, TlvType type)
+	{
+		log.trace("Reading TLV binary slice");
+		var len = TlvUtils.checkTypeAndLength(buf, type);
+		log.trace("  of {} bytes", len);
+		return buf.readSlice(len);
+	}
+
 	static byte[] deserialize(ByteBuf buf, int type)
 	{
 		log.trace("Reading TLV binary");
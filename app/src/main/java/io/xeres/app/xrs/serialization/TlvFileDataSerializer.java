@@ -42,7 +42,7 @@ final class TlvFileDataSerializer
 		log.trace("Writing TlvFileData");
 
 		var len = getSize(fileData);
-		buf.ensureWritable(len);
+		buf.ensureWritable(len - fileData.data().readableBytes()); // The data itself is not necessarily copied
 		buf.writeShort(FILE_DATA.getValue());
 		buf.writeInt(len);
 		TlvFileItemSerializer.serialize(buf, fileData.fileItem());
@@ -67,7 +67,7 @@ final class TlvFileDataSerializer
 
 		var fileItem = (FileItem) TlvSerializer.deserialize(buf, FILE_ITEM);
 		var offset = (long) TlvSerializer.deserialize(buf, LONG_OFFSET);
-		var data = TlvBinarySerializer.deserialize(buf, BIN_FILE_DATA);
+		var data = TlvBinarySerializer.deserializeSlice(buf, BIN_FILE_DATA);
 		return new FileData(fileItem, offset, data);
 	}
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service;
+
+import io.xeres.app.xrs.item.Item;
+import io.xeres.app.xrs.service.gxs.item.DynamicServiceType;
+
+import java.util.function.Supplier;
+
+/**
+ * Everything needed to receive an item of a given service and subtype, computed once when the service is registered.
+ *
+ * @param service            the service handling the item
+ * @param constructor        creates an empty item
+ * @param dynamicServiceType true if the item gets its service type from the service
+ * @param transactional      true if the service's handler uses the database
+ */
+public record ItemDispatch(RsService service, Supplier<Item> constructor, boolean dynamicServiceType, boolean transactional)
+{
+	public Item createItem()
+	{
+		var item = constructor.get();
+		if (dynamicServiceType)
+		{
+			((DynamicServiceType) item).setServiceType(service.getServiceType().getType());
+		}
+		return item;
+	}
+}
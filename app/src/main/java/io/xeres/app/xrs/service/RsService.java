@@ -41,6 +41,7 @@ public abstract class RsService implements Comparable<RsService>
 
 	/**
 	 * Handle incoming items. You can use JPA calls in there if your implementation is annotated with @Transactional.
+	 * Such implementations are called outside the network event loop, but still in order for a given peer.
 	 *
 	 * @param sender the peer sending the item
 	 * @param item   the item
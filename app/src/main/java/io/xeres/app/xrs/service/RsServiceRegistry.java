@@ -21,8 +21,12 @@ package io.xeres.app.xrs.service;
 
 import io.xeres.app.database.model.gxs.GxsGroupItem;
 import io.xeres.app.database.model.gxs.GxsMessageItem;
+import io.xeres.app.database.model.gxs.GxsMetaAndData;
+import io.xeres.app.net.peer.PeerConnection;
 import io.xeres.app.xrs.item.Item;
 import io.xeres.app.xrs.item.RawItem;
+import io.xeres.app.xrs.serialization.RsSerializable;
+import io.xeres.app.xrs.serialization.Serializer;
 import io.xeres.app.xrs.service.gxs.GxsRsService;
 import io.xeres.app.xrs.service.gxs.item.DynamicServiceType;
 import org.slf4j.Logger;
@@ -32,9 +36,13 @@ import org.springframework.context.annotation.ClassPathScanningCandidateComponen
 import org.springframework.core.env.Environment;
 import org.springframework.core.type.filter.AssignableTypeFilter;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static org.apache.commons.collections4.ListUtils.emptyIfNull;
 
@@ -51,7 +59,7 @@ public class RsServiceRegistry
 
 	private final Map<Integer, Map<Integer, Class<? extends Item>>> itemClassesWaiting = new HashMap<>();
 	private final Map<Integer, Class<? extends Item>> itemClassesGxsWaiting = new HashMap<>();
-	private final Map<Integer, Class<? extends Item>> itemClasses = new HashMap<>();
+	private final Map<Integer, ItemDispatch> itemDispatches = new HashMap<>();
 
 	public RsServiceRegistry(Environment environment)
 	{
@@ -170,21 +178,46 @@ public class RsServiceRegistry
 			masterServices.computeIfAbsent(master.getType(), v -> new ArrayList<>()).add((RsServiceSlave) rsService);
 		}
 
+		var transactional = isTransactional(rsService);
+
 		if (GxsRsService.class.isAssignableFrom(rsService.getClass()))
 		{
-			itemClassesGxsWaiting.forEach((subType, itemClass) -> itemClasses.put(serviceType << 16 | subType, itemClass));
+			itemClassesGxsWaiting.forEach((subType, itemClass) -> addItemClass(serviceType << 16 | subType, itemClass, rsService, transactional));
 		}
 		else
 		{
 			var itemClassMap = itemClassesWaiting.remove(serviceType);
 			if (itemClassMap != null)
 			{
-				itemClassMap.forEach((subType, itemClass) -> itemClasses.put(serviceType << 16 | subType, itemClass));
+				itemClassMap.forEach((subType, itemClass) -> addItemClass(serviceType << 16 | subType, itemClass, rsService, transactional));
 			}
 		}
 		return true;
 	}
 
+	private static boolean isTransactional(RsService rsService)
+	{
+		try
+		{
+			return rsService.getClass().getMethod("handleItem", PeerConnection.class, Item.class).isAnnotationPresent(Transactional.class);
+		}
+		catch (NoSuchMethodException e)
+		{
+			throw new IllegalStateException("Service " + rsService.getClass().getSimpleName() + " has no handleItem() method", e);
+		}
+	}
+
+	private void addItemClass(int key, Class<? extends Item> itemClass, RsService rsService, boolean transactional)
+	{
+		itemDispatches.put(key, new ItemDispatch(rsService, createConstructor(itemClass), DynamicServiceType.class.isAssignableFrom(itemClass), transactional));
+
+		// Items that use annotations have their serialization plan built now instead of on the first item
+		if (!RsSerializable.class.isAssignableFrom(itemClass) && !GxsMetaAndData.class.isAssignableFrom(itemClass))
+		{
+			Serializer.prepareAnnotatedFields(itemClass);
+		}
+	}
+
 	List<RsServiceSlave> getSlaves(RsService rsService)
 	{
 		if (!RsServiceMaster.class.isAssignableFrom(rsService.getClass()))
@@ -194,46 +227,69 @@ public class RsServiceRegistry
 		return emptyIfNull(masterServices.get(rsService.getServiceType().getType()));
 	}
 
+	private static Supplier<Item> createConstructor(Class<? extends Item> itemClass)
+	{
+		try
+		{
+			var constructor = MethodHandles.publicLookup().findConstructor(itemClass, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(Item.class));
+
+			return () -> {
+				try
+				{
+					return (Item) constructor.invokeExact();
+				}
+				catch (Throwable e)
+				{
+					throw new IllegalStateException("Couldn't create item " + itemClass.getSimpleName() + ": " + e.getMessage(), e);
+				}
+			};
+		}
+		catch (NoSuchMethodException | IllegalAccessException e)
+		{
+			throw new IllegalArgumentException(itemClass.getSimpleName() + " requires a public constructor with no parameters", e);
+		}
+	}
+
 	/**
-	 * Builds an item.
+	 * Gets what is needed to receive an item.
 	 *
-	 * @param rawItem the {@link RawItem} to deserialize from
-	 * @return the {@link Item}
-	 * @see io.xeres.app.xrs.serialization.Serializer Serializer
+	 * @param rawItem the {@link RawItem}
+	 * @return the {@link ItemDispatch} or null if the item is not supported
 	 */
-	public Item buildIncomingItem(RawItem rawItem)
+	public ItemDispatch getItemDispatch(RawItem rawItem)
 	{
 		var version = rawItem.getPacketVersion();
 		var service = rawItem.getPacketService();
 		var subType = rawItem.getPacketSubType();
 
-		if (version == 2)
+		if (version != 2)
 		{
-			var itemClass = itemClasses.get(service << 16 | subType);
-			if (itemClass != null)
-			{
-				try
-				{
-					var item = itemClass.getConstructor().newInstance();
-					if (DynamicServiceType.class.isAssignableFrom(item.getClass()))
-					{
-						((DynamicServiceType) item).setServiceType(service);
-					}
-					return item;
-				}
-				catch (InvocationTargetException | InstantiationException | IllegalAccessException | NoSuchMethodException e)
-				{
-					log.error("Couldn't create item: {}", e.getMessage());
-				}
-			}
-			else
-			{
-				log.warn("Couldn't create item (service: {}, subtype: {}): no mapping found", service, subType);
-			}
+			log.warn("Packet version {} is not supported", version);
+			return null;
 		}
-		else
+
+		var itemDispatch = itemDispatches.get(service << 16 | subType);
+		if (itemDispatch == null)
 		{
-			log.warn("Packet version {} is not supported", version);
+			log.warn("Couldn't create item (service: {}, subtype: {}): no mapping found", service, subType);
+		}
+		return itemDispatch;
+	}
+
+	/**
+	 * Builds an item.
+	 *
+	 * @param rawItem the {@link RawItem} to deserialize from
+	 * @return the {@link Item}
+	 * @see io.xeres.app.xrs.serialization.Serializer Serializer
+	 */
+	public Item buildIncomingItem(RawItem rawItem)
+	{
+		var itemDispatch = getItemDispatch(rawItem);
+		if (itemDispatch != null)
+		{
+			return itemDispatch.createItem();
 		}
 		return new DefaultItem(); // will just get disposed
 	}
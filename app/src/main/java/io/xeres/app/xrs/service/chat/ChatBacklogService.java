@@ -25,7 +25,6 @@ import io.xeres.app.database.model.location.Location;
 import io.xeres.app.database.repository.ChatBacklogRepository;
 import io.xeres.app.database.repository.ChatRoomBacklogRepository;
 import io.xeres.app.database.repository.ChatRoomRepository;
-import io.xeres.app.database.repository.LocationRepository;
 import io.xeres.common.id.GxsId;
 import io.xeres.common.id.LocationId;
 import org.springframework.data.domain.Limit;
@@ -34,6 +33,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Service
@@ -45,54 +45,48 @@ public class ChatBacklogService
 
 	private final ChatBacklogRepository chatBacklogRepository;
 	private final ChatRoomBacklogRepository chatRoomBacklogRepository;
-	private final LocationRepository locationRepository;
 	private final ChatRoomRepository chatRoomRepository;
+	private final ChatBacklogWriter chatBacklogWriter;
 
-	ChatBacklogService(ChatBacklogRepository chatBacklogRepository, ChatRoomBacklogRepository chatRoomBacklogRepository, LocationRepository locationRepository, ChatRoomRepository chatRoomRepository)
+	ChatBacklogService(ChatBacklogRepository chatBacklogRepository, ChatRoomBacklogRepository chatRoomBacklogRepository, ChatRoomRepository chatRoomRepository, ChatBacklogWriter chatBacklogWriter)
 	{
 		this.chatBacklogRepository = chatBacklogRepository;
 		this.chatRoomBacklogRepository = chatRoomBacklogRepository;
-		this.locationRepository = locationRepository;
 		this.chatRoomRepository = chatRoomRepository;
+		this.chatBacklogWriter = chatBacklogWriter;
 	}
 
-	@Transactional
 	public void storeIncomingChatRoomMessage(long chatRoomId, GxsId from, String nickname, String message)
 	{
-		var chatRoom = chatRoomRepository.findByRoomId(chatRoomId).orElseThrow();
-		chatRoomBacklogRepository.save(new ChatRoomBacklog(chatRoom, from, nickname, message));
+		chatBacklogWriter.addChatRoomLine(chatRoomId, from, nickname, message);
 	}
 
-	@Transactional
 	public void storeOutgoingChatRoomMessage(long chatRoomId, String nickname, String message)
 	{
-		var chatRoom = chatRoomRepository.findByRoomId(chatRoomId).orElseThrow();
-		chatRoomBacklogRepository.save(new ChatRoomBacklog(chatRoom, nickname, message));
+		chatBacklogWriter.addChatRoomLine(chatRoomId, null, nickname, message);
 	}
 
 	@Transactional(readOnly = true)
 	public List<ChatRoomBacklog> getChatRoomMessages(long chatRoomId, Instant from)
 	{
+		chatBacklogWriter.flush();
 		var chatRoom = chatRoomRepository.findByRoomId(chatRoomId).orElseThrow();
 		return chatRoomBacklogRepository.findAllByRoomAndCreatedAfterOrderByCreatedDesc(chatRoom, from, Limit.of(LAST_LINES_CHAT_ROOMS)).reversed();
 	}
 
-	@Transactional
 	public void storeIncomingMessage(LocationId from, String message)
 	{
-		var location = locationRepository.findByLocationId(from).orElseThrow();
-		chatBacklogRepository.save(new ChatBacklog(location, false, message));
+		chatBacklogWriter.addChatLine(from, false, message);
 	}
 
-	@Transactional
 	public void storeOutgoingMessage(LocationId to, String message)
 	{
-		var location = locationRepository.findByLocationId(to).orElseThrow();
-		chatBacklogRepository.save(new ChatBacklog(location, true, message));
+		chatBacklogWriter.addChatLine(to, true, message);
 	}
 
 	public List<ChatBacklog> getMessages(Location with, Instant from)
 	{
+		chatBacklogWriter.flush();
 		return chatBacklogRepository.findAllByLocationAndCreatedAfterOrderByCreatedDesc(with, from, Limit.of(LAST_LINES_CHAT)).reversed();
 	}
 
@@ -106,6 +100,16 @@ public class ChatBacklogService
 
 	}
 
+	/**
+	 * Must be called when locations are deleted so that their pending lines aren't written.
+	 *
+	 * @param locationIds the location ids
+	 */
+	public void evictLocations(Collection<LocationId> locationIds)
+	{
+		locationIds.forEach(chatBacklogWriter::evictLocation);
+	}
+
 	@Transactional
 	public void cleanup()
 	{
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.xeres.app.xrs.service.chat;
+
+import io.xeres.app.database.model.chat.ChatRoom;
+import io.xeres.app.database.model.location.Location;
+import io.xeres.app.database.repository.ChatRoomRepository;
+import io.xeres.app.database.repository.LocationRepository;
+import io.xeres.common.id.GxsId;
+import io.xeres.common.id.LocationId;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Writes the chat backlog asynchronously. Lines are queued by the chat service threads and
+ * written using JDBC batches, either when enough lines are pending or after a short delay.
+ * <p>
+ * The queue is bounded: if the database can't keep up, new lines are dropped instead of
+ * blocking the chat service.
+ * <p>
+ * Each table is written in its own transaction. If a batch fails, its lines are retried one
+ * by one so that only the failing lines are lost.
+ */
+@Component
+class ChatBacklogWriter
+{
+	private static final Logger log = LoggerFactory.getLogger(ChatBacklogWriter.class);
+
+	static final int FLUSH_SIZE = 100;
+	static final int MAXIMUM_PENDING_LINES = 10_000;
+	private static final Duration FLUSH_DELAY = Duration.ofMillis(250);
+	private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+
+	private static final String INSERT_CHAT_ROOM_LINE = "INSERT INTO chat_room_backlog (room_id, created, gxs_id, nickname, message) VALUES (?, ?, ?, ?, ?)";
+	private static final String INSERT_CHAT_LINE = "INSERT INTO chat_backlog (location_id, created, own, message) VALUES (?, ?, ?, ?)";
+
+	sealed interface Line permits ChatRoomLine, ChatLine
+	{
+	}
+
+	record ChatRoomLine(long roomId, Instant created, GxsId gxsId, String nickname, String message) implements Line
+	{
+	}
+
+	record ChatLine(LocationId locationId, Instant created, boolean own, String message) implements Line
+	{
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final ChatRoomRepository chatRoomRepository;
+	private final LocationRepository locationRepository;
+
+	private final Queue<Line> lines = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingLines = new AtomicInteger();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	// Filled within flush(), evicted when the room or location is deleted
+	private final Map<Long, Long> chatRoomIds = new ConcurrentHashMap<>();
+	private final Map<LocationId, Long> locationIds = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService executorService;
+
+	ChatBacklogWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ChatRoomRepository chatRoomRepository, LocationRepository locationRepository)
+	{
+		this.jdbcTemplate = jdbcTemplate;
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW); // flush() can be called from within a read-only transaction
+		this.chatRoomRepository = chatRoomRepository;
+		this.locationRepository = locationRepository;
+
+		executorService = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("Chat Backlog Writer").daemon().factory());
+		executorService.scheduleWithFixedDelay(this::flush, FLUSH_DELAY.toMillis(), FLUSH_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	void addChatRoomLine(long roomId, GxsId gxsId, String nickname, String message)
+	{
+		add(new ChatRoomLine(roomId, Instant.now(), gxsId, nickname, message));
+	}
+
+	void addChatLine(LocationId locationId, boolean own, String message)
+	{
+		add(new ChatLine(locationId, Instant.now(), own, message));
+	}
+
+	private void add(Line line)
+	{
+		if (pendingLines.incrementAndGet() > MAXIMUM_PENDING_LINES)
+		{
+			pendingLines.decrementAndGet();
+			log.warn("Chat backlog queue is full, dropping line");
+			return;
+		}
+		lines.add(line);
+
+		if (pendingLines.get() >= FLUSH_SIZE && flushScheduled.compareAndSet(false, true))
+		{
+			try
+			{
+				executorService.execute(this::flush);
+			}
+			catch (RejectedExecutionException e)
+			{
+				flushScheduled.set(false); // Shutting down, the last flush will write it
+			}
+		}
+	}
+
+	int getPendingLines()
+	{
+		return pendingLines.get();
+	}
+
+	/**
+	 * Forgets the database id of a chat room. Must be called when the room is deleted, once the
+	 * transaction commits, otherwise its pending lines would still be written with the stale id.
+	 *
+	 * @param roomId the id of the chat room
+	 */
+	void evictChatRoom(long roomId)
+	{
+		afterCommit(() -> chatRoomIds.remove(roomId));
+	}
+
+	/**
+	 * Forgets the database id of a location. Must be called when the location is deleted.
+	 *
+	 * @param locationId the location id
+	 */
+	void evictLocation(LocationId locationId)
+	{
+		afterCommit(() -> locationIds.remove(locationId));
+	}
+
+	private static void afterCommit(Runnable action)
+	{
+		// A flush() running before the commit can still see the row, so evict only after it
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+		{
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+			{
+				@Override
+				public void afterCommit()
+				{
+					action.run();
+				}
+			});
+		}
+		else
+		{
+			action.run();
+		}
+	}
+
+	/**
+	 * Writes all pending lines to the database. Called periodically but can also be called
+	 * before reading the backlog so that it's up to date.
+	 */
+	synchronized void flush()
+	{
+		flushScheduled.set(false);
+
+		List<ChatRoomLine> chatRoomLines = new ArrayList<>();
+		List<ChatLine> chatLines = new ArrayList<>();
+		Line line;
+		while ((line = lines.poll()) != null)
+		{
+			pendingLines.decrementAndGet();
+			switch (line)
+			{
+				case ChatRoomLine chatRoomLine -> chatRoomLines.add(chatRoomLine);
+				case ChatLine chatLine -> chatLines.add(chatLine);
+			}
+		}
+
+		write(chatRoomLines, this::insertChatRoomLines);
+		write(chatLines, this::insertChatLines);
+	}
+
+	private <T extends Line> void write(List<T> batch, Consumer<List<T>> inserter)
+	{
+		if (batch.isEmpty())
+		{
+			return;
+		}
+
+		try
+		{
+			transactionTemplate.executeWithoutResult(status -> inserter.accept(batch));
+		}
+		catch (RuntimeException e)
+		{
+			log.warn("Failed to write {} chat backlog lines, retrying them one by one: {}", batch.size(), e.getMessage());
+			// A stale id could be the cause, look them up again
+			chatRoomIds.clear();
+			locationIds.clear();
+
+			var failed = 0;
+			for (var line : batch)
+			{
+				try
+				{
+					transactionTemplate.executeWithoutResult(status -> inserter.accept(List.of(line)));
+				}
+				catch (RuntimeException lineException)
+				{
+					log.debug("Failed to write chat backlog line {}: {}", line, lineException.getMessage());
+					failed++;
+				}
+			}
+			if (failed > 0)
+			{
+				log.error("Dropped {} chat backlog lines that couldn't be written", failed);
+			}
+		}
+	}
+
+	private void insertChatRoomLines(List<ChatRoomLine> chatRoomLines)
+	{
+		var resolvedLines = new ArrayList<Map.Entry<Long, ChatRoomLine>>(chatRoomLines.size());
+		for (var chatRoomLine : chatRoomLines)
+		{
+			var id = chatRoomIds.computeIfAbsent(chatRoomLine.roomId(), roomId -> chatRoomRepository.findByRoomId(roomId).map(ChatRoom::getId).orElse(null));
+			if (id != null)
+			{
+				resolvedLines.add(Map.entry(id, chatRoomLine));
+			}
+		}
+		if (resolvedLines.size() < chatRoomLines.size())
+		{
+			log.warn("Dropped {} chat room backlog lines of unknown rooms", chatRoomLines.size() - resolvedLines.size());
+		}
+		if (resolvedLines.isEmpty())
+		{
+			return;
+		}
+
+		jdbcTemplate.batchUpdate(INSERT_CHAT_ROOM_LINE, resolvedLines, FLUSH_SIZE, (ps, entry) -> {
+			var chatRoomLine = entry.getValue();
+			ps.setLong(1, entry.getKey());
+			ps.setObject(2, chatRoomLine.created().atOffset(ZoneOffset.UTC), Types.TIMESTAMP_WITH_TIMEZONE); // Same as what Hibernate does for an Instant
+			if (chatRoomLine.gxsId() != null)
+			{
+				ps.setBytes(3, chatRoomLine.gxsId().getBytes());
+			}
+			else
+			{
+				ps.setNull(3, Types.BINARY);
+			}
+			ps.setString(4, chatRoomLine.nickname());
+			ps.setString(5, chatRoomLine.message());
+		});
+	}
+
+	private void insertChatLines(List<ChatLine> chatLines)
+	{
+		var resolvedLines = new ArrayList<Map.Entry<Long, ChatLine>>(chatLines.size());
+		for (var chatLine : chatLines)
+		{
+			var id = locationIds.computeIfAbsent(chatLine.locationId(), locationId -> locationRepository.findByLocationId(locationId).map(Location::getId).orElse(null));
+			if (id != null)
+			{
+				resolvedLines.add(Map.entry(id, chatLine));
+			}
+		}
+		if (resolvedLines.size() < chatLines.size())
+		{
+			log.warn("Dropped {} chat backlog lines of unknown locations", chatLines.size() - resolvedLines.size());
+		}
+		if (resolvedLines.isEmpty())
+		{
+			return;
+		}
+
+		jdbcTemplate.batchUpdate(INSERT_CHAT_LINE, resolvedLines, FLUSH_SIZE, (ps, entry) -> {
+			var chatLine = entry.getValue();
+			ps.setLong(1, entry.getKey());
+			ps.setObject(2, chatLine.created().atOffset(ZoneOffset.UTC), Types.TIMESTAMP_WITH_TIMEZONE);
+			ps.setBoolean(3, chatLine.own());
+			ps.setString(4, chatLine.message());
+		});
+	}
+
+	@PreDestroy
+	void shutdown()
+	{
+		// Don't interrupt a running flush, H2 closes its files when interrupted
+		executorService.shutdown();
+		try
+		{
+			if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+			{
+				log.warn("Chat backlog writer failed to terminate during the waiting period");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+}
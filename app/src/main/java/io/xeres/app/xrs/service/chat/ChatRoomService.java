@@ -14,10 +14,12 @@ import java.util.List;
 class ChatRoomService
 {
 	private final ChatRoomRepository chatRoomRepository;
+	private final ChatBacklogWriter chatBacklogWriter;
 
-	public ChatRoomService(ChatRoomRepository chatRoomRepository)
+	public ChatRoomService(ChatRoomRepository chatRoomRepository, ChatBacklogWriter chatBacklogWriter)
 	{
 		this.chatRoomRepository = chatRoomRepository;
+		this.chatBacklogWriter = chatBacklogWriter;
 	}
 
 	@Transactional
@@ -50,7 +52,10 @@ class ChatRoomService
 	@Transactional
 	public void deleteChatRoom(long chatRoomId, IdentityGroupItem identityGroupItem)
 	{
-		chatRoomRepository.findByRoomIdAndIdentityGroupItem(chatRoomId, identityGroupItem).ifPresent(chatRoomRepository::delete);
+		chatRoomRepository.findByRoomIdAndIdentityGroupItem(chatRoomId, identityGroupItem).ifPresent(chatRoom -> {
+			chatRoomRepository.delete(chatRoom);
+			chatBacklogWriter.evictChatRoom(chatRoomId);
+		});
 	}
 
 	@Transactional
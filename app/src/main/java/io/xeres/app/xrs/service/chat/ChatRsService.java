@@ -871,19 +871,25 @@ public class ChatRsService extends RsService
 		// XXX: check for antiflood
 
 		// Send to everyone except the originating peer
+		List<PeerConnection> targets = new ArrayList<>();
 		var iterator = chatRoom.getParticipatingLocations().iterator();
 		while (iterator.hasNext())
 		{
 			var location = iterator.next();
 			if (peerConnection == null || !Objects.equals(location, peerConnection.getLocation()))
 			{
-				var status = peerConnectionManager.writeItem(location, bounce.clone(), this); // Netty frees sent items so we need to clone
-				if (status == null)
+				var target = peerConnectionManager.getPeerByLocation(location.getId());
+				if (target == null)
 				{
-					iterator.remove(); // Failed to write, it means the location disconnected, so we need to remove it from our participating locations
+					iterator.remove(); // The location disconnected, so we need to remove it from our participating locations
+				}
+				else
+				{
+					targets.add(target);
 				}
 			}
 		}
+		peerConnectionManager.writeItem(targets, bounce.clone(), this); // Serialized once for all targets. Netty frees sent items so we need to clone
 
 		chatRoom.incrementConnectionChallengeCount();
 
@@ -892,15 +898,15 @@ public class ChatRsService extends RsService
 
 	private boolean validateBounceSignature(PeerConnection peerConnection, ChatRoomBounce bounce)
 	{
-		var gxsGroup = identityManager.getGxsGroup(peerConnection, bounce.getSignature().getGxsId());
-		if (gxsGroup != null)
+		var adminKey = identityManager.getAdminKey(peerConnection, bounce.getSignature().getGxsId());
+		if (adminKey != null)
 		{
-			if (!gxsGroup.hasAdminPublicKey())
+			if (adminKey.publicKey() == null)
 			{
 				log.debug("{} has no public admin key, not validating", bounce.getSenderNickname());
 				return false;
 			}
-			return RSA.verify(gxsGroup.getAdminPublicKey(), bounce.getSignature().getData(), getBounceData(bounce));
+			return RSA.verify(adminKey.publicKey(), bounce.getSignature().getData(), getBounceData(bounce));
 		}
 		log.debug("No key yet for verification, passing through");
 		return true; // if we don't have the identity yet, we let the item pass because it could be valid, and it's impossible to impersonate an identity this way
@@ -948,8 +954,7 @@ public class ChatRsService extends RsService
 	public void sendBroadcastMessage(String message)
 	{
 		var chatMessageItem = new ChatMessageItem(message, EnumSet.of(ChatFlags.PUBLIC));
-		peerConnectionManager.doForAllPeers(peerConnection -> peerConnectionManager.writeItem(peerConnection, chatMessageItem, this),
-				this);
+		peerConnectionManager.writeItemToAllPeers(chatMessageItem, this);
 	}
 
 	/**
@@ -989,8 +994,7 @@ public class ChatRsService extends RsService
 	 */
 	public void setStatusMessage(String message)
 	{
-		peerConnectionManager.doForAllPeers(peerConnection -> peerConnectionManager.writeItem(peerConnection, new ChatStatusItem(message, EnumSet.of(ChatFlags.CUSTOM_STATE)), this),
-				this);
+		peerConnectionManager.writeItemToAllPeers(new ChatStatusItem(message, EnumSet.of(ChatFlags.CUSTOM_STATE)), this);
 	}
 
 	/**
@@ -24,16 +24,48 @@ import io.xeres.common.id.LocationId;
 import io.xeres.common.util.SecureRandomUtils;
 
 import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.function.IntSupplier;
 
+/**
+ * Remembers the ids of the messages seen recently in a chat room to avoid forwarding them twice.
+ * <p>
+ * The ids and their last seen time are kept in an open addressing hash table of primitives. Each id
+ * is also recorded in a ring of time buckets, which is used to expire the ids without scanning the whole table
+ * and to find the recent messages needed by connection challenges.
+ */
 class MessageCache
 {
 	private static final int CONNECTION_CHALLENGE_MAX_TIME = 30; // maximum age in seconds a message can be used in a connection challenge
 	private static final int LIFETIME_MAX = 1200; // maximum age of a message in seconds
 
-	private final Map<Long, Integer> messages = new ConcurrentHashMap<>();
+	private static final int BUCKET_DURATION = 10; // in seconds
+	private static final int BUCKETS = LIFETIME_MAX / BUCKET_DURATION + 1;
+	private static final int INITIAL_BUCKET_CAPACITY = 16;
+	private static final int INITIAL_CAPACITY = 64; // must be a power of 2
+	private static final int NO_BUCKET = -1;
+
+	private final IntSupplier clock;
+
+	// A slot is free when its time is 0
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private int[] times = new int[INITIAL_CAPACITY];
+	private int size;
 
+	private final long[][] buckets = new long[BUCKETS][];
+	private final int[] bucketSizes = new int[BUCKETS];
+	private final int[] bucketNumbers = new int[BUCKETS];
+
+	MessageCache()
+	{
+		this(() -> (int) Instant.now().getEpochSecond());
+	}
+
+	MessageCache(IntSupplier clock)
+	{
+		this.clock = clock;
+		Arrays.fill(bucketNumbers, NO_BUCKET);
+	}
 
 	/**
 	 * Checks if a message has been recorded already. If yes, update
@@ -42,9 +74,15 @@ class MessageCache
 	 * @param id the id of the message to check
 	 * @return true if it exists
 	 */
-	public boolean exists(long id)
+	public synchronized boolean exists(long id)
 	{
-		return messages.replace(id, (int) Instant.now().getEpochSecond()) != null;
+		var index = indexOf(id);
+		if (index < 0)
+		{
+			return false;
+		}
+		touch(index, clock.getAsInt());
+		return true;
 	}
 
 	/**
@@ -52,9 +90,21 @@ class MessageCache
 	 *
 	 * @param id the message id
 	 */
-	public void add(long id)
+	public synchronized void add(long id)
 	{
-		messages.put(id, (int) Instant.now().getEpochSecond());
+		var now = clock.getAsInt();
+		var index = indexOf(id);
+		if (index < 0)
+		{
+			if ((size + 1) * 4 > ids.length * 3)
+			{
+				resize(ids.length * 2);
+			}
+			index = freeIndexOf(id);
+			ids[index] = id;
+			size++;
+		}
+		touch(index, now);
 	}
 
 	/**
@@ -72,7 +122,7 @@ class MessageCache
 	 *
 	 * @return the message id
 	 */
-	public long getNewMessageId()
+	public synchronized long getNewMessageId()
 	{
 		long newId;
 
@@ -80,7 +130,7 @@ class MessageCache
 		{
 			newId = SecureRandomUtils.nextLong();
 		}
-		while (messages.containsKey(newId));
+		while (indexOf(newId) >= 0);
 
 		return newId;
 	}
@@ -93,15 +143,25 @@ class MessageCache
 	 * @param challengeCode the challenge code to be matched against
 	 * @return true if challengeCode is in one of a suitable message
 	 */
-	public boolean hasConnectionChallenge(LocationId locationId, long chatRoomId, long challengeCode)
+	public synchronized boolean hasConnectionChallenge(LocationId locationId, long chatRoomId, long challengeCode)
 	{
-		var now = (int) Instant.now().getEpochSecond();
+		var now = clock.getAsInt();
+		var maxAge = CONNECTION_CHALLENGE_MAX_TIME + 5;
 
-		for (var message : messages.entrySet())
+		for (var bucketNumber = now / BUCKET_DURATION; bucketNumber >= (now - maxAge) / BUCKET_DURATION; bucketNumber--)
 		{
-			if (message.getValue() + CONNECTION_CHALLENGE_MAX_TIME + 5 > now && challengeCode == ChatChallenge.code(locationId, chatRoomId, message.getKey()))
+			var slot = bucketNumber % BUCKETS;
+			if (bucketNumbers[slot] != bucketNumber)
+			{
+				continue;
+			}
+			for (var i = bucketSizes[slot] - 1; i >= 0; i--)
 			{
-				return true;
+				var id = buckets[slot][i];
+				if (isYoungerThan(id, maxAge, now) && challengeCode == ChatChallenge.code(locationId, chatRoomId, id))
+				{
+					return true;
+				}
 			}
 		}
 		return false;
@@ -112,15 +172,24 @@ class MessageCache
 	 *
 	 * @return the message id of a recent message. If there's nothing suitable, return 0
 	 */
-	public long getRecentMessage()
+	public synchronized long getRecentMessage()
 	{
-		var now = (int) Instant.now().getEpochSecond();
+		var now = clock.getAsInt();
 
-		for (var message : messages.entrySet())
+		for (var bucketNumber = now / BUCKET_DURATION; bucketNumber >= (now - CONNECTION_CHALLENGE_MAX_TIME) / BUCKET_DURATION; bucketNumber--)
 		{
-			if (message.getValue() + CONNECTION_CHALLENGE_MAX_TIME > now)
+			var slot = bucketNumber % BUCKETS;
+			if (bucketNumbers[slot] != bucketNumber)
 			{
-				return message.getKey();
+				continue;
+			}
+			for (var i = bucketSizes[slot] - 1; i >= 0; i--)
+			{
+				var id = buckets[slot][i];
+				if (id != 0L && isYoungerThan(id, CONNECTION_CHALLENGE_MAX_TIME, now))
+				{
+					return id;
+				}
 			}
 		}
 		return 0L;
@@ -129,9 +198,159 @@ class MessageCache
 	/**
 	 * Removes all messages older than LIFETIME_MAX seconds.
 	 */
-	public void purge()
+	public synchronized void purge()
+	{
+		var now = clock.getAsInt();
+
+		for (var slot = 0; slot < BUCKETS; slot++)
+		{
+			if (bucketNumbers[slot] != NO_BUCKET && (bucketNumbers[slot] + 1) * BUCKET_DURATION + LIFETIME_MAX <= now)
+			{
+				expireBucket(slot);
+			}
+		}
+
+		if (ids.length > INITIAL_CAPACITY && size * 8 < ids.length)
+		{
+			resize(ids.length / 2);
+		}
+	}
+
+	synchronized int size()
+	{
+		return size;
+	}
+
+	private boolean isYoungerThan(long id, int maxAge, int now)
 	{
-		var now = (int) Instant.now().getEpochSecond();
-		messages.entrySet().removeIf(entry -> entry.getValue() + LIFETIME_MAX < now);
+		var index = indexOf(id);
+		return index >= 0 && times[index] + maxAge > now;
+	}
+
+	private void touch(int index, int now)
+	{
+		var previousBucketNumber = times[index] / BUCKET_DURATION;
+		times[index] = now;
+		if (previousBucketNumber != now / BUCKET_DURATION)
+		{
+			addToBucket(ids[index], now);
+		}
+	}
+
+	private void addToBucket(long id, int now)
+	{
+		var bucketNumber = now / BUCKET_DURATION;
+		var slot = bucketNumber % BUCKETS;
+		if (bucketNumbers[slot] != bucketNumber)
+		{
+			// The slot contains a bucket that is older than LIFETIME_MAX
+			expireBucket(slot);
+			bucketNumbers[slot] = bucketNumber;
+		}
+
+		var bucket = buckets[slot];
+		if (bucket == null)
+		{
+			bucket = new long[INITIAL_BUCKET_CAPACITY];
+			buckets[slot] = bucket;
+		}
+		else if (bucketSizes[slot] == bucket.length)
+		{
+			bucket = Arrays.copyOf(bucket, bucket.length * 2);
+			buckets[slot] = bucket;
+		}
+		bucket[bucketSizes[slot]++] = id;
+	}
+
+	private void expireBucket(int slot)
+	{
+		var bucketNumber = bucketNumbers[slot];
+		for (var i = 0; i < bucketSizes[slot]; i++)
+		{
+			// The id might have been seen again since, in which case it's also in a more recent bucket
+			var index = indexOf(buckets[slot][i]);
+			if (index >= 0 && times[index] / BUCKET_DURATION <= bucketNumber)
+			{
+				removeAt(index);
+			}
+		}
+		buckets[slot] = null;
+		bucketSizes[slot] = 0;
+		bucketNumbers[slot] = NO_BUCKET;
+	}
+
+	private static int hash(long id, int mask)
+	{
+		var h = id * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private int indexOf(long id)
+	{
+		var mask = ids.length - 1;
+		var index = hash(id, mask);
+		while (times[index] != 0)
+		{
+			if (ids[index] == id)
+			{
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int freeIndexOf(long id)
+	{
+		var mask = ids.length - 1;
+		var index = hash(id, mask);
+		while (times[index] != 0)
+		{
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	/**
+	 * Removes an entry by shifting back the following entries of its cluster, so that no tombstone is needed.
+	 *
+	 * @param index the index of the entry
+	 */
+	private void removeAt(int index)
+	{
+		var mask = ids.length - 1;
+		var gap = index;
+		var i = (index + 1) & mask;
+		while (times[i] != 0)
+		{
+			var home = hash(ids[i], mask);
+			if (((i - home) & mask) >= ((i - gap) & mask))
+			{
+				ids[gap] = ids[i];
+				times[gap] = times[i];
+				gap = i;
+			}
+			i = (i + 1) & mask;
+		}
+		ids[gap] = 0L;
+		times[gap] = 0;
+		size--;
+	}
+
+	private void resize(int capacity)
+	{
+		var oldIds = ids;
+		var oldTimes = times;
+		ids = new long[capacity];
+		times = new int[capacity];
+		for (var i = 0; i < oldIds.length; i++)
+		{
+			if (oldTimes[i] != 0)
+			{
+				var index = freeIndexOf(oldIds[i]);
+				ids[index] = oldIds[i];
+				times[index] = oldTimes[i];
+			}
+		}
 	}
 }
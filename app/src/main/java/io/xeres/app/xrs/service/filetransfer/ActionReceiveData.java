@@ -19,9 +19,10 @@
 
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBuf;
 import io.xeres.app.database.model.location.Location;
 import io.xeres.common.id.Sha1Sum;
 
-record ActionReceiveData(Location location, Sha1Sum hash, long offset, byte[] data) implements Action
+record ActionReceiveData(Location location, Sha1Sum hash, long offset, ByteBuf data) implements Action
 {
 }
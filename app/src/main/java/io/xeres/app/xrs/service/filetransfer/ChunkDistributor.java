@@ -34,8 +34,8 @@ class ChunkDistributor
 	private static final int MAX_RANDOM_TRY = 10;
 
 	/**
-	 * Time to consider a given chunk as "lost".
-	 * XXX: add a way to update that value when a write for that chunk is received. if possible, make the timeout shorter then
+	 * Time to consider a given chunk as "lost". Requests that time out are normally given back
+	 * earlier by {@link #releaseChunk(int)}, this is only a safety net.
 	 */
 	private static final Duration GIVEN_CHUNK_TIMEOUT = Duration.ofMinutes(10);
 
@@ -118,9 +118,38 @@ class ChunkDistributor
 		return Optional.of(chunk);
 	}
 
+	/**
+	 * Gives back a chunk that was given but won't be filled in, for example because the request
+	 * timed out. It can then be given again.
+	 *
+	 * @param chunk the chunk
+	 */
+	public void releaseChunk(int chunk)
+	{
+		if (givenChunks.remove(chunk) != null && !chunkMap.get(chunk) && (minChunk == -1 || chunk < minChunk))
+		{
+			minChunk = chunk;
+		}
+	}
+
+	/**
+	 * Puts back a chunk that was complete but turned out to be corrupted. It must be cleared from the
+	 * chunk map first.
+	 *
+	 * @param chunk the chunk
+	 */
+	public void resetChunk(int chunk)
+	{
+		givenChunks.remove(chunk);
+		if (minChunk == -1 || chunk < minChunk)
+		{
+			minChunk = chunk;
+		}
+	}
+
 	private int getLinearChunk()
 	{
-		if (givenChunks.containsKey(minChunk) || chunkMap.get(minChunk))
+		while (givenChunks.containsKey(minChunk) || chunkMap.get(minChunk))
 		{
 			minChunk++;
 		}
@@ -1,31 +1,182 @@
 package io.xeres.app.xrs.service.filetransfer;
 
-import java.util.BitSet;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.IntPredicate;
 
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.CHUNK_SIZE;
+
+/**
+ * Keeps track of the chunks requested from a seeder.
+ * <p>
+ * Several chunk requests can be in flight at the same time. The size of that window
+ * adapts to the measured bandwidth and round-trip time (basically the bandwidth-delay product)
+ * so that high latency links (like tunnels) aren't limited to one chunk per round-trip.
+ */
 class ChunkReceiver
 {
-	private boolean receiving;
-	private int chunkNumber;
+	private static final long MIN_TIMEOUT = Duration.ofSeconds(30).toNanos();
+	private static final long MAX_TIMEOUT = Duration.ofMinutes(5).toNanos();
+	private static final long BANDWIDTH_SAMPLE_PERIOD = Duration.ofSeconds(1).toNanos();
+
+	private static final int INITIAL_WINDOW = 2;
+
+	private final int maxWindow;
+	private final Map<Integer, PendingChunk> pendingChunks = new LinkedHashMap<>();
 	private BitSet chunkMap;
+	private final BitSet excludedChunks = new BitSet(); // Chunks that were corrupted when received from that seeder
+
+	private int window;
+	private long smoothedRtt; // in nanoseconds, 0 if not measured yet
+	private long minRtt = Long.MAX_VALUE;
+	private double bandwidth; // in bytes per second, 0 if not measured yet
+	private long sampleStart;
+	private long sampleBytes;
+
+	private static class PendingChunk
+	{
+		private final long requested;
+		private long lastActivity;
+
+		PendingChunk(long now)
+		{
+			requested = now;
+			lastActivity = now;
+		}
+	}
+
+	public ChunkReceiver(int maxWindow)
+	{
+		if (maxWindow < 1)
+		{
+			throw new IllegalArgumentException("maxWindow must be greater than 0");
+		}
+		this.maxWindow = maxWindow;
+		window = Math.min(INITIAL_WINDOW, maxWindow);
+	}
+
+	/**
+	 * Checks if another chunk can be requested from that seeder.
+	 *
+	 * @return true if the request window is not full
+	 */
+	public boolean canRequest()
+	{
+		return pendingChunks.size() < window;
+	}
 
 	public boolean isReceiving()
 	{
-		return receiving;
+		return !pendingChunks.isEmpty();
+	}
+
+	public void addRequest(int chunkNumber, long now)
+	{
+		if (sampleStart == 0L)
+		{
+			sampleStart = now;
+		}
+		pendingChunks.put(chunkNumber, new PendingChunk(now));
 	}
 
-	public void setReceiving(boolean receiving)
+	/**
+	 * Records incoming data. This keeps the chunk from timing out while it's still being transferred.
+	 *
+	 * @param offset the offset within the file
+	 * @param size   the size of the data
+	 * @param now    the current time, in nanoseconds
+	 */
+	public void addData(long offset, int size, long now)
 	{
-		this.receiving = receiving;
+		var pendingChunk = pendingChunks.get((int) (offset / CHUNK_SIZE));
+		if (pendingChunk != null)
+		{
+			pendingChunk.lastActivity = now;
+		}
+		sampleBytes += size;
+		updateBandwidth(now);
 	}
 
-	public int getChunkNumber()
+	/**
+	 * Removes the chunks that were completed and adapts the window.
+	 *
+	 * @param isComplete the predicate to know if a chunk is complete
+	 * @param now        the current time, in nanoseconds
+	 * @return the number of completed chunks
+	 */
+	public int removeCompleted(IntPredicate isComplete, long now)
 	{
-		return chunkNumber;
+		var completed = 0;
+		var iterator = pendingChunks.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			var entry = iterator.next();
+			if (isComplete.test(entry.getKey()))
+			{
+				updateRtt(now - entry.getValue().requested);
+				iterator.remove();
+				completed++;
+			}
+		}
+		if (completed > 0)
+		{
+			updateWindow();
+		}
+		return completed;
 	}
 
-	public void setChunkNumber(int chunkNumber)
+	/**
+	 * Removes the chunks that didn't receive any data for too long. The window is halved
+	 * if that happens.
+	 *
+	 * @param now the current time, in nanoseconds
+	 * @return the chunks that timed out and need to be requested again
+	 */
+	public List<Integer> removeTimedOut(long now)
 	{
-		this.chunkNumber = chunkNumber;
+		var timeout = getTimeout();
+		List<Integer> timedOut = new ArrayList<>();
+		var iterator = pendingChunks.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			var entry = iterator.next();
+			if (now - entry.getValue().lastActivity > timeout)
+			{
+				timedOut.add(entry.getKey());
+				iterator.remove();
+			}
+		}
+		if (!timedOut.isEmpty())
+		{
+			window = Math.max(1, window / 2);
+		}
+		return timedOut;
+	}
+
+	/**
+	 * Removes all pending chunks, for example when the seeder goes away.
+	 *
+	 * @return the chunks that were pending
+	 */
+	public List<Integer> clear()
+	{
+		var pending = new ArrayList<>(pendingChunks.keySet());
+		pendingChunks.clear();
+		return pending;
+	}
+
+	public int getWindow()
+	{
+		return window;
+	}
+
+	long getTimeout()
+	{
+		if (smoothedRtt == 0L)
+		{
+			return MAX_TIMEOUT;
+		}
+		return Math.clamp(smoothedRtt * 2, MIN_TIMEOUT, MAX_TIMEOUT);
 	}
 
 	public boolean hasChunkMap()
@@ -42,4 +193,65 @@ class ChunkReceiver
 	{
 		this.chunkMap = chunkMap;
 	}
+
+	/**
+	 * Gets the chunks that can be requested from that seeder.
+	 *
+	 * @return the chunk map, without the excluded chunks
+	 */
+	public BitSet getAvailableChunks()
+	{
+		if (excludedChunks.isEmpty())
+		{
+			return chunkMap;
+		}
+		var availableChunks = (BitSet) chunkMap.clone();
+		availableChunks.andNot(excludedChunks);
+		return availableChunks;
+	}
+
+	/**
+	 * Excludes a chunk so that it's not requested from that seeder anymore.
+	 *
+	 * @param chunkNumber the chunk
+	 */
+	public void excludeChunk(int chunkNumber)
+	{
+		excludedChunks.set(chunkNumber);
+	}
+
+	private void updateRtt(long rtt)
+	{
+		minRtt = Math.min(minRtt, rtt);
+		smoothedRtt = smoothedRtt == 0L ? rtt : (smoothedRtt * 7 + rtt) / 8;
+	}
+
+	private void updateBandwidth(long now)
+	{
+		var elapsed = now - sampleStart;
+		if (elapsed >= BANDWIDTH_SAMPLE_PERIOD)
+		{
+			var sample = sampleBytes * 1_000_000_000.0 / elapsed;
+			bandwidth = bandwidth == 0.0 ? sample : (bandwidth * 3 + sample) / 4;
+			sampleStart = now;
+			sampleBytes = 0L;
+		}
+	}
+
+	/**
+	 * Sets the window to the number of chunks needed to fill the link (bandwidth times
+	 * round-trip time) plus one so that there's always a request queued behind the chunk being
+	 * transferred. The window only grows by one chunk at a time but shrinks immediately.
+	 */
+	private void updateWindow()
+	{
+		if (bandwidth == 0.0 || minRtt == Long.MAX_VALUE)
+		{
+			window = Math.min(window + 1, maxWindow);
+			return;
+		}
+		var wanted = (int) Math.ceil(bandwidth * minRtt / 1_000_000_000.0 / CHUNK_SIZE) + 1;
+		wanted = Math.clamp(wanted, 1, maxWindow);
+		window = wanted > window ? window + 1 : wanted;
+	}
 }
@@ -1,5 +1,6 @@
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBuf;
 import io.xeres.app.database.model.location.Location;
 import io.xeres.common.id.Sha1Sum;
 import org.slf4j.Logger;
@@ -44,7 +45,7 @@ class ChunkSender
 	{
 		var length = Math.min(BLOCK_SIZE, size);
 
-		byte[] data;
+		ByteBuf data;
 		try
 		{
 			data = provider.read(offset, length);
@@ -54,14 +55,19 @@ class ChunkSender
 			log.error("Failed to read file", e);
 			return false;
 		}
-		if (data.length > 0)
+		var dataLength = data.readableBytes();
+		if (dataLength > 0)
 		{
 			fileTransferRsService.sendData(location, hash, totalSize, offset, data);
 		}
+		else
+		{
+			data.release();
+		}
 
-		size -= data.length;
-		offset += data.length;
+		size -= dataLength;
+		offset += dataLength;
 
-		return size > 0 && data.length == length;
+		return size > 0 && dataLength == length;
 	}
 }
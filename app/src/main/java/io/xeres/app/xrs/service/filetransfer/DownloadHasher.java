@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.xeres.app.xrs.service.filetransfer;
+
+import io.netty.buffer.ByteBuf;
+import io.xeres.app.crypto.hash.sha1.Sha1MessageDigest;
+import io.xeres.common.id.Sha1Sum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.CHUNK_SIZE;
+
+/**
+ * Computes the hashes of a file while it's being downloaded: one for each chunk and one for the whole file.
+ * <p>
+ * The blocks are hashed as they arrive when they follow what was hashed so far, which is the usual case
+ * because a seeder sends the blocks of a chunk in order. Only what couldn't be hashed that way is read back
+ * from the file, so there's no need to read the whole file again once it's complete.
+ */
+class DownloadHasher
+{
+	private static final int READ_SIZE = 64 * 1024;
+
+	private final long fileSize;
+	private final Map<Integer, ChunkDigest> chunkDigests = new HashMap<>();
+	private final Sha1Sum[] chunkHashes;
+	private Sha1MessageDigest fileDigest = new Sha1MessageDigest();
+	private long fileHashedOffset;
+	private ByteBuffer readBuffer;
+
+	private static class ChunkDigest
+	{
+		private final Sha1MessageDigest digest = new Sha1MessageDigest();
+		private long hashedOffset;
+
+		ChunkDigest(long offset)
+		{
+			hashedOffset = offset;
+		}
+	}
+
+	public DownloadHasher(long fileSize)
+	{
+		this.fileSize = fileSize;
+		chunkHashes = new Sha1Sum[(int) (fileSize / CHUNK_SIZE + (fileSize % CHUNK_SIZE != 0 ? 1 : 0))];
+	}
+
+	/**
+	 * Hashes a received block if it follows what was hashed so far, either within its chunk or within the file.
+	 *
+	 * @param offset the offset within the file
+	 * @param data   the data, left untouched
+	 */
+	public void addBlock(long offset, ByteBuf data)
+	{
+		var chunkDigest = chunkDigests.computeIfAbsent((int) (offset / CHUNK_SIZE), k -> new ChunkDigest((long) k * CHUNK_SIZE));
+		if (chunkDigest.hashedOffset == offset)
+		{
+			update(chunkDigest.digest, data);
+			chunkDigest.hashedOffset += data.readableBytes();
+		}
+		if (fileHashedOffset == offset)
+		{
+			update(fileDigest, data);
+			fileHashedOffset += data.readableBytes();
+		}
+	}
+
+	/**
+	 * Finishes the hash of a complete chunk. The part that couldn't be hashed while receiving is read from the file.
+	 *
+	 * @param chunkIndex the chunk
+	 * @param channel    the channel of the file, with all the chunk's data written
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void completeChunk(int chunkIndex, FileChannel channel) throws IOException
+	{
+		var chunkDigest = chunkDigests.remove(chunkIndex);
+		if (chunkDigest == null)
+		{
+			chunkDigest = new ChunkDigest((long) chunkIndex * CHUNK_SIZE);
+		}
+		var end = Math.min((long) (chunkIndex + 1) * CHUNK_SIZE, fileSize);
+		read(chunkDigest.digest, channel, chunkDigest.hashedOffset, end);
+		chunkHashes[chunkIndex] = chunkDigest.digest.getSum();
+	}
+
+	/**
+	 * Hashes the complete chunks that follow what was hashed so far for the whole file.
+	 *
+	 * @param channel  the channel of the file
+	 * @param chunkMap the complete chunks
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void advanceFileHash(FileChannel channel, BitSet chunkMap) throws IOException
+	{
+		while (fileHashedOffset < fileSize && chunkMap.get((int) (fileHashedOffset / CHUNK_SIZE)))
+		{
+			var end = Math.min((fileHashedOffset / CHUNK_SIZE + 1) * CHUNK_SIZE, fileSize);
+			read(fileDigest, channel, fileHashedOffset, end);
+			fileHashedOffset = end;
+		}
+	}
+
+	/**
+	 * Gets the hash of the whole file.
+	 *
+	 * @return the hash or null if the file wasn't completely hashed yet
+	 */
+	public Sha1Sum getFileHash()
+	{
+		return fileHashedOffset == fileSize ? fileDigest.getSum() : null;
+	}
+
+	/**
+	 * Gets the hash of a chunk.
+	 *
+	 * @param chunkIndex the chunk
+	 * @return the hash or null if it wasn't computed, for example if the chunk was downloaded in a previous session
+	 */
+	public Sha1Sum getChunkHash(int chunkIndex)
+	{
+		return chunkHashes[chunkIndex];
+	}
+
+	/**
+	 * Forgets about a chunk, so that it can be received again. If it was already part of the file hash, the file
+	 * hash is restarted.
+	 *
+	 * @param chunkIndex the chunk
+	 */
+	public void invalidateChunk(int chunkIndex)
+	{
+		chunkDigests.remove(chunkIndex);
+		chunkHashes[chunkIndex] = null;
+		if (fileHashedOffset > (long) chunkIndex * CHUNK_SIZE)
+		{
+			fileDigest = new Sha1MessageDigest();
+			fileHashedOffset = 0L;
+		}
+	}
+
+	private static void update(Sha1MessageDigest digest, ByteBuf data)
+	{
+		for (var buffer : data.nioBuffers())
+		{
+			digest.update(buffer);
+		}
+	}
+
+	private void read(Sha1MessageDigest digest, FileChannel channel, long start, long end) throws IOException
+	{
+		if (start >= end)
+		{
+			return;
+		}
+		if (readBuffer == null)
+		{
+			readBuffer = ByteBuffer.allocate(READ_SIZE);
+		}
+		var position = start;
+		while (position < end)
+		{
+			readBuffer.clear();
+			readBuffer.limit((int) Math.min(READ_SIZE, end - position));
+			var read = channel.read(readBuffer, position);
+			if (read <= 0)
+			{
+				throw new IOException("Failed to read file at position " + position + " for hashing");
+			}
+			readBuffer.flip();
+			digest.update(readBuffer);
+			position += read;
+		}
+	}
+}
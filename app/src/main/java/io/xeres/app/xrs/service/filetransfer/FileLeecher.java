@@ -19,6 +19,7 @@
 
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBuf;
 import io.xeres.common.id.Sha1Sum;
 import io.xeres.common.util.OsUtils;
 import org.apache.commons.lang3.SystemUtils;
@@ -31,10 +32,9 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.BLOCK_SIZE;
 import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.CHUNK_SIZE;
 import static java.nio.file.StandardOpenOption.*;
 
@@ -44,13 +44,18 @@ import static java.nio.file.StandardOpenOption.*;
 class FileLeecher extends FileSeeder
 {
 	private static final Logger log = LoggerFactory.getLogger(FileLeecher.class);
+	private static final int BLOCKS_PER_CHUNK = CHUNK_SIZE / BLOCK_SIZE;
+
 	private RandomAccessFile randomAccessFile;
 
 	private final long id;
 	private final BitSet chunkMap;
 	private final int nBits;
 	private final ChunkDistributor chunkDistributor;
-	private final Map<Integer, Chunk> chunks = new HashMap<>();
+	private final BitSet blockMap; // Blocks of the chunks that are not complete yet
+	private final int nBlocks;
+	private final WriteCoalescer writeCoalescer = new WriteCoalescer();
+	private final DownloadHasher downloadHasher;
 	private long bytesWritten;
 
 	public FileLeecher(long id, File file, long size, BitSet chunkMap, FileTransferStrategy fileTransferStrategy)
@@ -60,6 +65,9 @@ class FileLeecher extends FileSeeder
 		fileSize = size;
 		nBits = (int) (size / CHUNK_SIZE + (size % CHUNK_SIZE != 0 ? 1 : 0));
 		this.chunkMap = chunkMap != null ? chunkMap : new BitSet(nBits);
+		nBlocks = (int) (size / BLOCK_SIZE + (size % BLOCK_SIZE != 0 ? 1 : 0));
+		blockMap = new BitSet(nBlocks);
+		downloadHasher = new DownloadHasher(size);
 		bytesWritten = (long) this.chunkMap.cardinality() * CHUNK_SIZE;
 		chunkDistributor = new ChunkDistributor(this.chunkMap, nBits, fileTransferStrategy);
 	}
@@ -119,7 +127,7 @@ class FileLeecher extends FileSeeder
 	}
 
 	@Override
-	public byte[] read(long offset, int size) throws IOException
+	public ByteBuf read(long offset, int size) throws IOException
 	{
 		if (isChunkAvailable(offset, size))
 		{
@@ -129,21 +137,78 @@ class FileLeecher extends FileSeeder
 	}
 
 	@Override
-	public void write(long offset, byte[] data) throws IOException
+	public void write(long offset, ByteBuf data) throws IOException
+	{
+		if (offset % BLOCK_SIZE != 0 || offset < 0 || offset + data.readableBytes() > fileSize)
+		{
+			data.release();
+			throw new IllegalArgumentException("Wrong block offset: " + offset);
+		}
+
+		var blockIndex = (int) (offset / BLOCK_SIZE);
+		var chunkIndex = (int) (offset / CHUNK_SIZE);
+		if (chunkMap.get(chunkIndex) || blockMap.get(blockIndex))
+		{
+			data.release(); // Already got it
+			return;
+		}
+		blockMap.set(blockIndex);
+		bytesWritten += data.readableBytes();
+		downloadHasher.addBlock(offset, data);
+
+		var flushNeeded = writeCoalescer.add(offset, data);
+		var chunkComplete = isChunkComplete(chunkIndex);
+
+		// A chunk is only marked as complete once it's written
+		// because it can then be read and served to other peers.
+		if (flushNeeded || chunkComplete)
+		{
+			flush();
+		}
+		if (chunkComplete)
+		{
+			chunkMap.set(chunkIndex);
+			downloadHasher.completeChunk(chunkIndex, channel);
+			downloadHasher.advanceFileHash(channel, chunkMap);
+		}
+	}
+
+	private boolean isChunkComplete(int chunkIndex)
 	{
-		var buf = ByteBuffer.wrap(data);
-		var size = channel.write(buf, offset);
-		bytesWritten += size;
-		if (size != data.length)
+		var firstBlock = chunkIndex * BLOCKS_PER_CHUNK;
+		var endBlock = Math.min(firstBlock + BLOCKS_PER_CHUNK, nBlocks);
+		return blockMap.nextClearBit(firstBlock) >= endBlock;
+	}
+
+	private void flush() throws IOException
+	{
+		try
 		{
-			throw new IOException("Failed to write data, requested size: " + data.length + ", actually written: " + size);
+			writeCoalescer.flush(channel);
+		}
+		catch (IOException e)
+		{
+			// Forget the blocks that couldn't be written so that they're received again
+			bytesWritten -= writeCoalescer.discard(offset -> {
+				blockMap.clear((int) (offset / BLOCK_SIZE));
+				downloadHasher.invalidateChunk((int) (offset / CHUNK_SIZE));
+			});
+			throw e;
 		}
-		markBlockAsWritten(offset);
 	}
 
 	@Override
 	public void close()
 	{
+		try
+		{
+			flush();
+		}
+		catch (IOException e)
+		{
+			log.error("Failed to write pending data to file {}", file, e);
+		}
+
 		try
 		{
 			lock.close();
@@ -159,6 +224,8 @@ class FileLeecher extends FileSeeder
 	@Override
 	public void closeAndDelete()
 	{
+		writeCoalescer.discard(offset -> {
+		});
 		close();
 		try
 		{
@@ -188,6 +255,12 @@ class FileLeecher extends FileSeeder
 		return chunkDistributor.getNextChunk(chunkMap);
 	}
 
+	@Override
+	public void releaseNeededChunk(int index)
+	{
+		chunkDistributor.releaseChunk(index);
+	}
+
 	@Override
 	public boolean hasChunk(int index)
 	{
@@ -214,23 +287,54 @@ class FileLeecher extends FileSeeder
 		return true;
 	}
 
-	private void markBlockAsWritten(long offset)
+	@Override
+	public Sha1Sum computeHash(long offset)
 	{
-		int chunkKey = (int) (offset / CHUNK_SIZE);
-		var chunk = chunks.computeIfAbsent(chunkKey, k -> new Chunk(Math.min(CHUNK_SIZE, fileSize - offset)));
-		chunk.setBlockAsWritten(offset);
+		var chunkIndex = (int) (offset / CHUNK_SIZE);
+		if (!chunkMap.get(chunkIndex))
+		{
+			return null;
+		}
+		var hash = downloadHasher.getChunkHash(chunkIndex);
+		return hash != null ? hash : super.computeHash(offset);
+	}
 
-		if (chunk.isComplete())
+	@Override
+	public Sha1Sum getFileHash()
+	{
+		if (!isComplete())
+		{
+			return null;
+		}
+
+		try
+		{
+			downloadHasher.advanceFileHash(channel, chunkMap); // For the chunks from a previous session
+		}
+		catch (IOException e)
 		{
-			chunkMap.set(chunkKey);
-			chunks.remove(chunkKey);
+			log.error("Failed to compute the hash of file {}", file, e);
+			return null;
 		}
+		return downloadHasher.getFileHash();
 	}
 
 	@Override
-	public Sha1Sum computeHash(long offset)
+	public boolean verifyChunk(int index, Sha1Sum checkSum)
 	{
-		throw new IllegalStateException("Cannot compute hashes of file leechers");
+		var hash = computeHash((long) index * CHUNK_SIZE);
+		if (hash == null || hash.equals(checkSum))
+		{
+			return true;
+		}
+		log.warn("Chunk {} of file {} is corrupted, getting it again", index, file);
+		chunkMap.clear(index);
+		var firstBlock = index * BLOCKS_PER_CHUNK;
+		blockMap.clear(firstBlock, Math.min(firstBlock + BLOCKS_PER_CHUNK, nBlocks));
+		bytesWritten -= Math.min(CHUNK_SIZE, fileSize - (long) index * CHUNK_SIZE);
+		downloadHasher.invalidateChunk(index);
+		chunkDistributor.resetChunk(index);
+		return false;
 	}
 
 	@Override
@@ -19,6 +19,7 @@
 
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBuf;
 import io.xeres.common.id.Sha1Sum;
 
 import java.io.IOException;
@@ -35,9 +36,24 @@ interface FileProvider
 
 	boolean open();
 
-	byte[] read(long offset, int size) throws IOException;
-
-	void write(long offset, byte[] data) throws IOException;
+	/**
+	 * Reads data from the file.
+	 *
+	 * @param offset the offset within the file
+	 * @param size   the size to read, at most {@link FileTransferRsService#BLOCK_SIZE}
+	 * @return a direct buffer which must be released by the caller. Can contain less than the requested size at the end of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	ByteBuf read(long offset, int size) throws IOException;
+
+	/**
+	 * Writes data to the file. The write can be deferred to be coalesced with adjacent data.
+	 *
+	 * @param offset the offset within the file, aligned on {@link FileTransferRsService#BLOCK_SIZE}
+	 * @param data   the data, released by this method
+	 * @throws IOException if an I/O error occurs
+	 */
+	void write(long offset, ByteBuf data) throws IOException;
 
 	void close();
 
@@ -47,6 +63,8 @@ interface FileProvider
 
 	Optional<Integer> getNeededChunk(BitSet chunkMap);
 
+	void releaseNeededChunk(int index);
+
 	boolean hasChunk(int index);
 
 	boolean isComplete();
@@ -58,4 +76,21 @@ interface FileProvider
 	long getId();
 
 	Sha1Sum computeHash(long offset);
+
+	/**
+	 * Gets the hash of the whole file, once it's complete.
+	 *
+	 * @return the hash or null if it's not available
+	 */
+	Sha1Sum getFileHash();
+
+	/**
+	 * Verifies a complete chunk against the checksum of a seeder. If it doesn't match, the chunk
+	 * is marked as missing so that it's downloaded again.
+	 *
+	 * @param index    the chunk
+	 * @param checkSum the SHA-1 of the chunk
+	 * @return true if the chunk is fine or can't be verified
+	 */
+	boolean verifyChunk(int index, Sha1Sum checkSum);
 }
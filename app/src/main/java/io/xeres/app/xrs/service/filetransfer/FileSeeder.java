@@ -19,6 +19,8 @@
 
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.xeres.app.crypto.hash.sha1.Sha1MessageDigest;
 import io.xeres.common.id.Sha1Sum;
 import org.slf4j.Logger;
@@ -48,7 +50,6 @@ class FileSeeder implements FileProvider
 	protected FileLock lock;
 	protected long fileSize;
 	private BitSet chunkMap;
-	private ByteBuffer buf;
 
 	public FileSeeder(File file)
 	{
@@ -87,22 +88,32 @@ class FileSeeder implements FileProvider
 	}
 
 	@Override
-	public byte[] read(long offset, int size) throws IOException // XXX: RS has an option to return unchecked chunks. not sure when it's used
+	public ByteBuf read(long offset, int size) throws IOException // XXX: RS has an option to return unchecked chunks. not sure when it's used
 	{
 		if (size > BLOCK_SIZE)
 		{
 			throw new IllegalArgumentException("size must be smaller than " + BLOCK_SIZE + " bytes");
 		}
-		allocateBufferIfNeeded();
 
-		buf.clear();
-		buf.limit(size);
-
-		channel.read(buf, offset);
-		var a = new byte[buf.position()];
-		buf.flip();
-		buf.get(a);
-		return a;
+		// The data goes straight from the file to a pooled direct buffer which is sent as is to the peer
+		var data = ByteBufAllocator.DEFAULT.directBuffer(size);
+		try
+		{
+			while (data.writerIndex() < size)
+			{
+				var read = data.writeBytes(channel, offset + data.writerIndex(), size - data.writerIndex());
+				if (read <= 0)
+				{
+					break; // End of file
+				}
+			}
+			return data;
+		}
+		catch (IOException e)
+		{
+			data.release();
+			throw e;
+		}
 	}
 
 	@Override
@@ -129,17 +140,10 @@ class FileSeeder implements FileProvider
 		return digest.getSum();
 	}
 
-	private void allocateBufferIfNeeded()
-	{
-		if (buf == null)
-		{
-			buf = ByteBuffer.allocate(BLOCK_SIZE);
-		}
-	}
-
 	@Override
-	public void write(long offset, byte[] data) throws IOException
+	public void write(long offset, ByteBuf data) throws IOException
 	{
+		data.release();
 		throw new IllegalArgumentException("Cannot write data to a file provider");
 	}
 
@@ -208,6 +212,24 @@ class FileSeeder implements FileProvider
 		return Optional.empty();
 	}
 
+	@Override
+	public void releaseNeededChunk(int index)
+	{
+		// Nothing is needed
+	}
+
+	@Override
+	public Sha1Sum getFileHash()
+	{
+		throw new IllegalStateException("FileSeeder doesn't compute the file hash");
+	}
+
+	@Override
+	public boolean verifyChunk(int index, Sha1Sum checkSum)
+	{
+		return true; // The file is complete already
+	}
+
 	@Override
 	public Path getPath()
 	{
@@ -33,7 +33,9 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.BLOCK_SIZE;
 
 /**
  * Responsible for sending/receiving a file.
@@ -44,23 +46,40 @@ class FileTransferAgent
 
 	private static final long IDLE_TIME = Duration.ofMinutes(5).toNanos();
 
+	private static final long CHUNK_CRC_TIMEOUT = Duration.ofMinutes(1).toNanos();
+
+	/**
+	 * Maximum number of blocks sent in one go, so that the other transfers and the actions get processed.
+	 */
+	private static final int MAX_BLOCKS_PER_ROUND = 64;
+
+	static final long WAITING = -1L;
+
 	private final FileTransferRsService fileTransferRsService;
 	private final FileProvider fileProvider;
 	private final Sha1Sum hash;
 	private final String fileName;
+	private final int maxChunkRequests;
 	private boolean done;
 	private long lastActivity;
 	private boolean trusted;
+	private final TransferRateLimiter rateLimiter;
 
 	private final Map<Location, List<ChunkSender>> leechers = new LinkedHashMap<>();
 	private final Map<Location, ChunkReceiver> seeders = new LinkedHashMap<>();
+	private final Map<Integer, Location> chunkSources = new HashMap<>();
+	private final Map<Integer, Long> pendingChunkCrcs = new HashMap<>(); // Chunk number -> time of the request
+	private boolean verifying;
+	private boolean repaired;
 
-	public FileTransferAgent(FileTransferRsService fileTransferRsService, String fileName, Sha1Sum hash, FileProvider fileProvider)
+	public FileTransferAgent(FileTransferRsService fileTransferRsService, String fileName, Sha1Sum hash, FileProvider fileProvider, int maxChunkRequests)
 	{
 		this.fileTransferRsService = fileTransferRsService;
 		this.hash = hash;
 		this.fileProvider = fileProvider;
 		this.fileName = fileName;
+		this.maxChunkRequests = maxChunkRequests;
+		rateLimiter = new TransferRateLimiter(0L);
 		lastActivity = System.nanoTime();
 	}
 
@@ -81,7 +100,7 @@ class FileTransferAgent
 
 	public void addSeeder(Location peer)
 	{
-		seeders.computeIfAbsent(peer, k -> new ChunkReceiver());
+		seeders.computeIfAbsent(peer, k -> new ChunkReceiver(maxChunkRequests));
 		fileTransferRsService.sendChunkMapRequest(peer, hash, false);
 	}
 
@@ -93,7 +112,12 @@ class FileTransferAgent
 
 	public void removePeer(Location peer)
 	{
-		if (seeders.remove(peer) == null && leechers.remove(peer) == null)
+		var seeder = seeders.remove(peer);
+		if (seeder != null)
+		{
+			seeder.clear().forEach(fileProvider::releaseNeededChunk);
+		}
+		else if (leechers.remove(peer) == null)
 		{
 			log.warn("Removal of peer {} failed because it's not in the list. This shouldn't happen.", peer);
 		}
@@ -102,13 +126,24 @@ class FileTransferAgent
 	/**
 	 * Processes file transfers.
 	 *
-	 * @return true if processing, false if there's nothing to process
+	 * @param canSend tells if the connection of a leecher can take more data
+	 * @return the time to wait before uploads can continue, in nanoseconds. 0 if they can continue right away,
+	 * {@link #WAITING} if there's nothing to upload or if all connections are full
 	 */
-	public boolean process()
+	public long process(Predicate<Location> canSend)
 	{
 		processDownloads();
-		processUploads();
-		return !(leechers.isEmpty() && seeders.isEmpty());
+		return processUploads(canSend);
+	}
+
+	public void setRateLimit(long bytesPerSecond)
+	{
+		rateLimiter.setRate(bytesPerSecond);
+	}
+
+	public long getRateLimit()
+	{
+		return rateLimiter.getRate();
 	}
 
 	public void cancel()
@@ -124,6 +159,50 @@ class FileTransferAgent
 		fileProvider.close();
 	}
 
+	/**
+	 * Records data received from a seeder, to keep track of its requests.
+	 *
+	 * @param peer   the seeder
+	 * @param offset the offset of the data
+	 * @param size   the size of the data
+	 */
+	public void addData(Location peer, long offset, int size)
+	{
+		var seeder = seeders.get(peer);
+		if (seeder != null)
+		{
+			seeder.addData(offset, size, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Verifies a chunk against the checksum sent by a seeder. A corrupted chunk is downloaded again, if possible
+	 * from another seeder than the one it came from.
+	 *
+	 * @param peer        the seeder
+	 * @param chunkNumber the chunk
+	 * @param checkSum    the SHA-1 of the chunk
+	 */
+	public void addChunkCrc(Location peer, int chunkNumber, Sha1Sum checkSum)
+	{
+		if (pendingChunkCrcs.remove(chunkNumber) == null)
+		{
+			log.debug("Ignoring unrequested crc of chunk {} from peer {}", chunkNumber, peer);
+			return;
+		}
+
+		if (!fileProvider.verifyChunk(chunkNumber, checkSum))
+		{
+			repaired = true;
+			var source = chunkSources.remove(chunkNumber);
+			var sourceReceiver = source != null ? seeders.get(source) : null;
+			if (sourceReceiver != null && seeders.size() > 1)
+			{
+				sourceReceiver.excludeChunk(chunkNumber);
+			}
+		}
+	}
+
 	public void addChunkMap(Location peer, BitSet chunkMap)
 	{
 		var seeder = seeders.get(peer);
@@ -148,44 +227,114 @@ class FileTransferAgent
 
 	private void processDownloads()
 	{
-		seeders.entrySet().stream()
-				.skip(getRandomStreamSkip(seeders.size()))
-				.findFirst().ifPresent(entry -> {
-					if (entry.getValue().isReceiving())
-					{
-						if (fileProvider.hasChunk(entry.getValue().getChunkNumber()))
-						{
-							log.debug("Chunk {} is complete", entry.getValue().getChunkNumber());
-							entry.getValue().setReceiving(false);
-						}
-					}
-					else
-					{
-						if (fileProvider.isComplete() && !done)
-						{
-							log.debug("File is complete, size: {}, renaming to {}", fileProvider.getFileSize(), fileName);
-							stop();
-							fileTransferRsService.markDownloadAsCompleted(hash);
-							fileTransferRsService.deactivateTunnels(hash);
-							var newPath = renameFile(fileProvider.getPath(), fileName);
-							setFileSecurity(newPath);
-							seeders.remove(entry.getKey());
-							done = true; // Prevents closing the file several times (we might have several seeders)
-						}
-						else
-						{
-							if (entry.getValue().hasChunkMap())
-							{
-								getNextChunk(entry.getValue().getChunkMap()).ifPresent(chunkNumber -> {
-									log.debug("Requesting chunk number {} to peer {}", chunkNumber, entry.getKey());
-									fileTransferRsService.sendDataRequest(entry.getKey(), hash, fileProvider.getFileSize(), (long) chunkNumber * FileTransferRsService.CHUNK_SIZE, FileTransferRsService.CHUNK_SIZE);
-									entry.getValue().setChunkNumber(chunkNumber);
-									entry.getValue().setReceiving(true);
-								});
-							}
-						}
-					}
-				});
+		if (seeders.isEmpty())
+		{
+			return;
+		}
+
+		var now = System.nanoTime();
+
+		if (fileProvider.isComplete())
+		{
+			if (!done)
+			{
+				completeDownload(now);
+			}
+			return;
+		}
+
+		seeders.forEach((peer, chunkReceiver) -> {
+			chunkReceiver.removeCompleted(fileProvider::hasChunk, now);
+			chunkReceiver.removeTimedOut(now).forEach(chunkNumber -> {
+				log.debug("Request of chunk {} to peer {} timed out, window is now {}", chunkNumber, peer, chunkReceiver.getWindow());
+				fileProvider.releaseNeededChunk(chunkNumber);
+			});
+
+			if (chunkReceiver.hasChunkMap())
+			{
+				requestChunks(peer, chunkReceiver, now);
+			}
+		});
+	}
+
+	private void completeDownload(long now)
+	{
+		var fileHash = fileProvider.getFileHash();
+		if (hash.equals(fileHash))
+		{
+			log.debug("File is complete, size: {}, renaming to {}", fileProvider.getFileSize(), fileName);
+			stop();
+			fileTransferRsService.markDownloadAsCompleted(hash);
+			fileTransferRsService.deactivateTunnels(hash);
+			var newPath = renameFile(fileProvider.getPath(), fileName);
+			setFileSecurity(newPath);
+			seeders.clear();
+			done = true; // Prevents closing the file several times
+			return;
+		}
+
+		if (!verifying || (pendingChunkCrcs.isEmpty() && repaired))
+		{
+			log.warn("File {} doesn't match its hash {} (got {}), verifying its chunks", fileName, hash, fileHash);
+			verifying = true;
+			repaired = false;
+			var totalChunks = (int) ((fileProvider.getFileSize() + FileTransferRsService.CHUNK_SIZE - 1) / FileTransferRsService.CHUNK_SIZE);
+			for (var chunkNumber = 0; chunkNumber < totalChunks; chunkNumber++)
+			{
+				requestChunkCrc(chunkNumber, now);
+			}
+		}
+		else if (pendingChunkCrcs.isEmpty())
+		{
+			log.error("File {} doesn't match its hash {} but all its chunks match the seeders' ones, giving up", fileName, hash);
+			stop();
+			fileTransferRsService.deactivateTunnels(hash);
+			seeders.clear();
+			done = true;
+		}
+		else
+		{
+			pendingChunkCrcs.entrySet().stream()
+					.filter(entry -> now - entry.getValue() > CHUNK_CRC_TIMEOUT)
+					.map(Map.Entry::getKey)
+					.toList()
+					.forEach(chunkNumber -> requestChunkCrc(chunkNumber, now));
+		}
+	}
+
+	/**
+	 * Asks for the checksum of a chunk, preferably to another seeder than the one which sent it.
+	 */
+	private void requestChunkCrc(int chunkNumber, long now)
+	{
+		var source = chunkSources.get(chunkNumber);
+		var peer = seeders.entrySet().stream()
+				.filter(entry -> !entry.getKey().equals(source) && entry.getValue().hasChunkMap() && entry.getValue().getChunkMap().get(chunkNumber))
+				.map(Map.Entry::getKey)
+				.findFirst()
+				.orElseGet(() -> source != null && seeders.containsKey(source) ? source : seeders.keySet().iterator().next());
+
+		fileTransferRsService.sendSingleChunkCrcRequest(peer, hash, chunkNumber);
+		pendingChunkCrcs.put(chunkNumber, now);
+	}
+
+	/**
+	 * Sends chunk requests to a seeder until its window is full.
+	 */
+	private void requestChunks(Location peer, ChunkReceiver chunkReceiver, long now)
+	{
+		while (chunkReceiver.canRequest())
+		{
+			var chunkNumber = getNextChunk(chunkReceiver.getAvailableChunks());
+			if (chunkNumber.isEmpty())
+			{
+				break;
+			}
+			log.debug("Requesting chunk number {} to peer {}", chunkNumber.get(), peer);
+			fileTransferRsService.sendDataRequest(peer, hash, fileProvider.getFileSize(), (long) chunkNumber.get() * FileTransferRsService.CHUNK_SIZE, FileTransferRsService.CHUNK_SIZE);
+			chunkReceiver.addRequest(chunkNumber.get(), now);
+			chunkSources.put(chunkNumber.get(), peer);
+		}
 	}
 
 	private void setFileSecurity(Path path)
@@ -196,36 +345,62 @@ class FileTransferAgent
 		}
 	}
 
-	private void processUploads()
+	/**
+	 * Sends blocks to the leechers, in turn, until their connection is full, the rate limit is reached or
+	 * {@link #MAX_BLOCKS_PER_ROUND} blocks have been sent.
+	 *
+	 * @param canSend tells if a leecher's connection can take more data
+	 * @return the time to wait before sending more, in nanoseconds. 0 if more can be sent right away, {@link #WAITING} if
+	 * there's nothing to send or all connections are full
+	 */
+	private long processUploads(Predicate<Location> canSend)
 	{
-		leechers.entrySet().stream()
-				.skip(getRandomStreamSkip(leechers.size()))
-				.findFirst().ifPresent(entry -> {
-					var chunkList = entry.getValue();
-					var chunkSender = chunkList.getFirst();
-					var remaining = chunkSender.send();
-					lastActivity = System.nanoTime();
-					if (!remaining)
-					{
-						// We just remove the leecher here and nothing else. The fileTransferManager will close the file
-						// when it's idle for some time otherwise it would need to be reopened immediately for the
-						// next chunk.
-						chunkList.remove(chunkSender);
-						if (chunkList.isEmpty())
-						{
-							leechers.remove(entry.getKey());
-						}
-					}
-				});
-	}
+		if (leechers.isEmpty())
+		{
+			return WAITING;
+		}
 
-	private static int getRandomStreamSkip(int size)
-	{
-		if (size == 0)
+		var now = System.nanoTime();
+		var sent = 0;
+
+		while (sent < MAX_BLOCKS_PER_ROUND && !leechers.isEmpty())
 		{
-			return 0;
+			var sentThisRound = false;
+			var iterator = leechers.entrySet().iterator();
+			while (iterator.hasNext() && sent < MAX_BLOCKS_PER_ROUND)
+			{
+				var entry = iterator.next();
+				if (!canSend.test(entry.getKey()))
+				{
+					continue;
+				}
+				if (!rateLimiter.tryAcquire(BLOCK_SIZE, now))
+				{
+					return Math.max(1L, rateLimiter.getDelay(BLOCK_SIZE, now));
+				}
+				var chunkList = entry.getValue();
+				var chunkSender = chunkList.getFirst();
+				if (!chunkSender.send())
+				{
+					// We just remove the leecher here and nothing else. The fileTransferManager will close the file
+					// when it's idle for some time otherwise it would need to be reopened immediately for the
+					// next chunk.
+					chunkList.removeFirst();
+					if (chunkList.isEmpty())
+					{
+						iterator.remove();
+					}
+				}
+				lastActivity = now;
+				sent++;
+				sentThisRound = true;
+			}
+			if (!sentThisRound)
+			{
+				return WAITING;
+			}
 		}
-		return ThreadLocalRandom.current().nextInt(size);
+		return leechers.isEmpty() ? WAITING : 0L;
 	}
 
 	private static Path renameFile(Path filePath, String fileName)
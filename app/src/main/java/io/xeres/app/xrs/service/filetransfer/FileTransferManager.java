@@ -19,6 +19,7 @@
 
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBuf;
 import io.xeres.app.database.DatabaseSession;
 import io.xeres.app.database.DatabaseSessionManager;
 import io.xeres.app.database.model.location.Location;
@@ -34,24 +35,33 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static io.xeres.app.service.file.FileService.DOWNLOAD_EXTENSION;
 import static io.xeres.app.service.file.FileService.DOWNLOAD_PREFIX;
+import static io.xeres.app.xrs.service.filetransfer.FileTransferAgent.WAITING;
 import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.CHUNK_SIZE;
 
 /**
  * File transfer class.
  * <p>
+ * Several managers run in parallel, each one handling the files whose hash is assigned to it. A manager sleeps until
+ * an action arrives. Uploads are sent as long as the outbound queue of the peer can take data, and resume once the
+ * peer notifies that it's writable again.
+ * <p>
  * <img src="doc-files/filetransfer.svg" alt="File transfer diagram">
  */
 class FileTransferManager implements Runnable
 {
 	private static final Logger log = LoggerFactory.getLogger(FileTransferManager.class);
 
-	private static final int DEFAULT_TICK = 250;
+	/**
+	 * Maximum time to wait when nothing happens, for timeouts and idle files.
+	 */
+	private static final long IDLE_TICK = Duration.ofSeconds(1).toNanos();
 
 	private final FileTransferRsService fileTransferRsService;
 	private final FileService fileService;
@@ -61,14 +71,19 @@ class FileTransferManager implements Runnable
 	private final Location ownLocation;
 	private final BlockingQueue<Action> queue;
 	private final FileTransferStrategy fileTransferStrategy;
+	private final int maxChunkRequests;
 
 	private final Map<Sha1Sum, FileTransferAgent> leechers = new HashMap<>(); // files that we are downloading (client)
 	private final Map<Sha1Sum, FileTransferAgent> seeders = new HashMap<>(); // files that we are uploading (serving)
 
+	private final Map<Sha1Sum, Long> rateLimits = new HashMap<>();
+	private final Set<Location> blockedPeers = new HashSet<>(); // peers whose outbound queue is full
+	private long uploadDelay = WAITING;
+
 	private final List<FileProgress> downloadsProgress = new ArrayList<>();
 	private final List<FileProgress> uploadsProgress = new ArrayList<>();
 
-	public FileTransferManager(FileTransferRsService fileTransferRsService, FileService fileService, SettingsService settingsService, LocationService locationService, DatabaseSessionManager databaseSessionManager, Location ownLocation, BlockingQueue<Action> queue, FileTransferStrategy fileTransferStrategy)
+	public FileTransferManager(FileTransferRsService fileTransferRsService, FileService fileService, SettingsService settingsService, LocationService locationService, DatabaseSessionManager databaseSessionManager, Location ownLocation, BlockingQueue<Action> queue, FileTransferStrategy fileTransferStrategy, int maxChunkRequests)
 	{
 		this.fileTransferRsService = fileTransferRsService;
 		this.fileService = fileService;
@@ -78,6 +93,7 @@ class FileTransferManager implements Runnable
 		this.ownLocation = ownLocation;
 		this.queue = queue;
 		this.fileTransferStrategy = fileTransferStrategy;
+		this.maxChunkRequests = maxChunkRequests;
 	}
 
 	@Override
@@ -89,8 +105,9 @@ class FileTransferManager implements Runnable
 		{
 			try
 			{
-				var action = (leechers.isEmpty() && seeders.isEmpty()) ? queue.take() : queue.poll(DEFAULT_TICK, TimeUnit.MILLISECONDS); // XXX: change the timeout value... or better... have a way to compute the next one.
+				var action = waitForAction();
 				processAction(action);
+				uploadDelay = WAITING;
 				processLeechers();
 				processSeeders();
 			}
@@ -104,9 +121,48 @@ class FileTransferManager implements Runnable
 		}
 	}
 
+	/**
+	 * Waits for the next action. Doesn't wait at all if there's data to upload, otherwise until the next
+	 * upload is allowed by the rate limit, or for an idle tick.
+	 *
+	 * @return the action, or null if there's none
+	 * @throws InterruptedException if the thread is interrupted
+	 */
+	private Action waitForAction() throws InterruptedException
+	{
+		if (leechers.isEmpty() && seeders.isEmpty())
+		{
+			return queue.take();
+		}
+		if (uploadDelay == 0L)
+		{
+			return queue.poll();
+		}
+		var timeout = uploadDelay == WAITING ? IDLE_TICK : Math.min(uploadDelay, IDLE_TICK);
+		return queue.poll(timeout, TimeUnit.NANOSECONDS);
+	}
+
 	private void cleanup()
 	{
 		leechers.forEach((hash, fileTransferAgent) -> fileService.suspendDownload(hash, fileTransferAgent.getFileProvider().getChunkMap()));
+		discardActions(queue);
+	}
+
+	/**
+	 * Removes all pending actions from a queue and releases the data they hold.
+	 *
+	 * @param queue the queue
+	 */
+	static void discardActions(BlockingQueue<Action> queue)
+	{
+		List<Action> actions = new ArrayList<>();
+		queue.drainTo(actions);
+		actions.forEach(action -> {
+			if (action instanceof ActionReceiveData actionReceiveData)
+			{
+				actionReceiveData.data().release();
+			}
+		});
 	}
 
 	public List<FileProgress> getDownloadsProgress()
@@ -129,7 +185,7 @@ class FileTransferManager implements Runnable
 
 	private void processLeechers()
 	{
-		leechers.forEach((hash, agent) -> agent.process());
+		leechers.forEach((hash, agent) -> updateUploadDelay(agent.process(this::canSend)));
 	}
 
 	private void processSeeders()
@@ -142,7 +198,38 @@ class FileTransferManager implements Runnable
 			}
 			return false;
 		});
-		seeders.forEach((hash, agent) -> agent.process());
+		seeders.forEach((hash, agent) -> updateUploadDelay(agent.process(this::canSend)));
+	}
+
+	private void updateUploadDelay(long delay)
+	{
+		if (delay != WAITING)
+		{
+			uploadDelay = uploadDelay == WAITING ? delay : Math.min(uploadDelay, delay);
+		}
+	}
+
+	/**
+	 * Checks if more data can be sent to a location. If its outbound queue is full, we'll be notified
+	 * once it can take data again.
+	 *
+	 * @param location the location
+	 * @return true if data can be sent
+	 */
+	private boolean canSend(Location location)
+	{
+		if (blockedPeers.contains(location))
+		{
+			return false;
+		}
+		var outboundQueue = fileTransferRsService.getOutboundQueue(location);
+		if (outboundQueue == null || !outboundQueue.isFull())
+		{
+			return true; // If the peer is gone, the data is just dropped
+		}
+		blockedPeers.add(location);
+		outboundQueue.whenWritable(() -> queue.add(new ActionPeerWritable(location)));
+		return false;
 	}
 
 	private void processAction(Action action)
@@ -151,9 +238,11 @@ class FileTransferManager implements Runnable
 		{
 			case ActionAddPeer(Sha1Sum hash, Location location) -> actionAddPeer(hash, location);
 			case ActionRemovePeer(Sha1Sum hash, Location location) -> actionRemovePeer(hash, location);
+			case ActionPeerWritable(Location location) -> blockedPeers.remove(location);
+			case ActionSetRateLimit(Sha1Sum hash, long bytesPerSecond) -> actionSetRateLimit(hash, bytesPerSecond);
 
 			case ActionReceiveDataRequest(Location location, Sha1Sum hash, long offset, int chunkSize) -> actionReceiveDataRequest(location, hash, offset, chunkSize);
-			case ActionReceiveData(Location location, Sha1Sum hash, long offset, byte[] data) -> actionReceiveData(location, hash, offset, data);
+			case ActionReceiveData(Location location, Sha1Sum hash, long offset, ByteBuf data) -> actionReceiveData(location, hash, offset, data);
 
 			case ActionDownload(long id, String name, Sha1Sum hash, long size, LocationId from, BitSet chunkMap) -> actionDownload(id, name, hash, size, from, chunkMap);
 			case ActionRemoveDownload(long id) -> actionRemoveDownload(id);
@@ -184,7 +273,8 @@ class FileTransferManager implements Runnable
 				var fileLeecher = new FileLeecher(id, file, size, chunkMap, from != null ? FileTransferStrategy.LINEAR : fileTransferStrategy);
 				if (fileLeecher.open())
 				{
-					var agent = new FileTransferAgent(fileTransferRsService, name, sha1Sum, fileLeecher);
+					var agent = new FileTransferAgent(fileTransferRsService, name, sha1Sum, fileLeecher, maxChunkRequests);
+					agent.setRateLimit(rateLimits.getOrDefault(sha1Sum, 0L));
 					if (from != null)
 					{
 						agent.setTrusted(true);
@@ -273,6 +363,21 @@ class FileTransferManager implements Runnable
 		}
 	}
 
+	private void actionSetRateLimit(Sha1Sum hash, long bytesPerSecond)
+	{
+		log.debug("Setting rate limit of {} to {} bytes/s", hash, bytesPerSecond);
+		if (bytesPerSecond == 0L)
+		{
+			rateLimits.remove(hash);
+		}
+		else
+		{
+			rateLimits.put(hash, bytesPerSecond);
+		}
+		Optional.ofNullable(leechers.get(hash)).ifPresent(agent -> agent.setRateLimit(bytesPerSecond));
+		Optional.ofNullable(seeders.get(hash)).ifPresent(agent -> agent.setRateLimit(bytesPerSecond));
+	}
+
 	private void actionRemovePeer(Sha1Sum hash, Location location)
 	{
 		var leecher = leechers.get(hash);
@@ -319,32 +424,43 @@ class FileTransferManager implements Runnable
 							log.debug("Failed to open file {} for serving", file);
 							return null;
 						}
-						return new FileTransferAgent(fileTransferRsService, file.getName(), h, fileSeeder);
+						var agent = new FileTransferAgent(fileTransferRsService, file.getName(), h, fileSeeder, maxChunkRequests);
+						agent.setRateLimit(rateLimits.getOrDefault(h, 0L));
+						return agent;
 					})
 					.orElse(null));
 		}
 	}
 
-	private void actionReceiveData(Location location, Sha1Sum hash, long offset, byte[] data)
+	private void actionReceiveData(Location location, Sha1Sum hash, long offset, ByteBuf data)
 	{
+		fileTransferRsService.dataDequeued(data.readableBytes());
+
 		var agent = leechers.get(hash);
 		if (agent == null)
 		{
 			log.error("No matching agent for hash {} for receiving data", hash);
+			data.release();
 			return;
 		}
 
 		try
 		{
-			log.trace("Writing file {}, offset: {}, length: {}", agent.getFileName(), offset, data.length);
+			var size = data.readableBytes();
+			log.trace("Writing file {}, offset: {}, length: {}", agent.getFileName(), offset, size);
 			// XXX: update location stats for writing (see how RS does it)
 			var fileProvider = agent.getFileProvider();
 			fileProvider.write(offset, data);
+			agent.addData(location, offset, size);
 		}
 		catch (IOException e)
 		{
 			log.error("Failed to write to file", e);
 		}
+		catch (IllegalArgumentException e)
+		{
+			log.warn("Dropping data from {} for file {}: {}", location, agent.getFileName(), e.getMessage());
+		}
 	}
 
 	private void actionReceiveChunkMapRequest(Location location, Sha1Sum hash, boolean isLeecher)
@@ -429,7 +545,13 @@ class FileTransferManager implements Runnable
 	private void actionReceiveChunkCrc(Location location, Sha1Sum hash, int chunkNumber, Sha1Sum checkSum)
 	{
 		log.debug("Received chunk crc from {}", location);
-		// XXX: handle! need to check leecher...
+		var agent = leechers.get(hash);
+		if (agent == null)
+		{
+			log.warn("No matching download for hash {} for chunk crc", hash);
+			return;
+		}
+		agent.addChunkCrc(location, chunkNumber, checkSum);
 	}
 
 	private static void handleSeederRequest(Location location, FileTransferAgent agent, Sha1Sum hash, long offset, int chunkSize)
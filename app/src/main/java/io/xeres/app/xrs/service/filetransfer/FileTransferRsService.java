@@ -19,13 +19,19 @@
 
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.xeres.app.crypto.rscrypto.RsCrypto;
 import io.xeres.app.database.DatabaseSession;
 import io.xeres.app.database.DatabaseSessionManager;
 import io.xeres.app.database.model.location.Location;
 import io.xeres.app.database.repository.FileDownloadRepository;
+import io.xeres.app.net.peer.OutboundQueue;
 import io.xeres.app.net.peer.PeerConnection;
 import io.xeres.app.net.peer.PeerConnectionManager;
+import io.xeres.app.net.peer.ReadSuspension;
 import io.xeres.app.properties.NetworkProperties;
 import io.xeres.app.service.LocationService;
 import io.xeres.app.service.SettingsService;
@@ -51,11 +57,11 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.file.Files;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.xeres.app.properties.NetworkProperties.*;
 import static io.xeres.app.xrs.service.RsServiceType.FILE_TRANSFER;
@@ -80,11 +86,31 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 	private final SettingsService settingsService;
 	private final RsCrypto.EncryptionFormat encryptionFormat;
 	private final FileTransferStrategy fileTransferStrategy;
+	private final int fileTransferWindow;
 	private final FileDownloadRepository fileDownloadRepository;
-	private FileTransferManager fileTransferManager;
-	private Thread fileTransferManagerThread;
+	private final List<FileTransferManager> fileTransferManagers = new ArrayList<>();
+	private final List<Thread> fileTransferManagerThreads = new ArrayList<>();
 
-	private final BlockingQueue<Action> fileCommandQueue = new LinkedBlockingQueue<>();
+	/**
+	 * Number of file transfer managers. Each file is handled by one of them, depending on its hash.
+	 */
+	private static final int FILE_TRANSFER_MANAGERS = Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4);
+
+	private final List<BlockingQueue<Action>> fileCommandQueues = createFileCommandQueues();
+
+	/**
+	 * Size of the received data waiting to be written above which reading from the peers sending it is suspended.
+	 * Until it's written, the data holds the buffers it was received in.
+	 */
+	private static final long PENDING_DATA_HIGH_WATER_MARK = 16L * 1024 * 1024;
+
+	/**
+	 * Size of the received data waiting to be written below which reading from the peers is resumed.
+	 */
+	private static final long PENDING_DATA_LOW_WATER_MARK = 4L * 1024 * 1024;
+
+	private final AtomicLong pendingDataSize = new AtomicLong();
+	private final Set<Channel> suspendedChannels = new HashSet<>();
 
 	private Location ownLocation;
 
@@ -103,6 +129,7 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 		this.settingsService = settingsService;
 		encryptionFormat = getEncryptionFormat(networkProperties);
 		fileTransferStrategy = getFileTransferStrategy(networkProperties);
+		fileTransferWindow = networkProperties.getFileTransferWindow();
 		this.fileDownloadRepository = fileDownloadRepository;
 	}
 
@@ -146,14 +173,96 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 			ownLocation = locationService.findOwnLocation().orElseThrow();
 			fileDownloadRepository.deleteAllByCompletedTrue();
 			fileDownloadRepository.findAllByLocationIsNull()
-					.forEach(file -> fileCommandQueue.add(new ActionDownload(file.getId(), file.getName(), file.getHash(), file.getSize(), null, file.getChunkMap())));
+					.forEach(file -> queueAction(file.getHash(), new ActionDownload(file.getId(), file.getName(), file.getHash(), file.getSize(), null, file.getChunkMap())));
 		}
 
-		fileTransferManager = new FileTransferManager(this, fileService, settingsService, locationService, databaseSessionManager, ownLocation, fileCommandQueue, fileTransferStrategy);
+		for (var i = 0; i < fileCommandQueues.size(); i++)
+		{
+			var fileTransferManager = new FileTransferManager(this, fileService, settingsService, locationService, databaseSessionManager, ownLocation, fileCommandQueues.get(i), fileTransferStrategy, fileTransferWindow);
+			fileTransferManagers.add(fileTransferManager);
+			fileTransferManagerThreads.add(Thread.ofVirtual()
+					.name("File Transfer Manager " + i)
+					.start(fileTransferManager));
+		}
+	}
+
+	private static List<BlockingQueue<Action>> createFileCommandQueues()
+	{
+		List<BlockingQueue<Action>> queues = new ArrayList<>(FILE_TRANSFER_MANAGERS);
+		for (var i = 0; i < FILE_TRANSFER_MANAGERS; i++)
+		{
+			queues.add(new LinkedBlockingQueue<>());
+		}
+		return queues;
+	}
+
+	/**
+	 * Queues an action for the file transfer manager handling the hash.
+	 *
+	 * @param hash   the hash of the file
+	 * @param action the action
+	 */
+	private void queueAction(Sha1Sum hash, Action action)
+	{
+		fileCommandQueues.get(Math.floorMod(hash.hashCode(), fileCommandQueues.size())).add(action);
+	}
+
+	/**
+	 * Queues received data to be written. If too much data is waiting, reading from the peer that sent it
+	 * is suspended until the file transfer managers catch up.
+	 *
+	 * @param location the location that sent the data, can be virtual
+	 * @param hash     the hash of the file
+	 * @param offset   the offset within the file
+	 * @param data     the data
+	 */
+	private void queueData(Location location, Sha1Sum hash, long offset, ByteBuf data)
+	{
+		if (pendingDataSize.addAndGet(data.readableBytes()) >= PENDING_DATA_HIGH_WATER_MARK)
+		{
+			var peerConnection = getPeerConnection(location);
+			if (peerConnection != null)
+			{
+				var channel = peerConnection.getCtx().channel();
+				synchronized (suspendedChannels)
+				{
+					// The data might have been written in the meantime
+					if (pendingDataSize.get() >= PENDING_DATA_HIGH_WATER_MARK && suspendedChannels.add(channel))
+					{
+						log.debug("Too much received data waiting to be written, suspending reads from {}", peerConnection);
+						ReadSuspension.suspend(channel, this);
+					}
+				}
+			}
+		}
+		queueAction(hash, new ActionReceiveData(location, hash, offset, data));
+	}
+
+	/**
+	 * Tells that received data was taken from the queue by a file transfer manager. Reading from the
+	 * suspended peers is resumed once there's little data left.
+	 *
+	 * @param size the size of the data
+	 */
+	void dataDequeued(int size)
+	{
+		if (pendingDataSize.addAndGet(-size) <= PENDING_DATA_LOW_WATER_MARK)
+		{
+			synchronized (suspendedChannels)
+			{
+				if (!suspendedChannels.isEmpty())
+				{
+					log.debug("Resuming reads from {} peers", suspendedChannels.size());
+					suspendedChannels.forEach(channel -> ReadSuspension.resume(channel, this));
+					suspendedChannels.clear();
+				}
+			}
+		}
+	}
 
-		fileTransferManagerThread = Thread.ofVirtual()
-				.name("File Transfer Manager")
-				.start(fileTransferManager);
+	private void queueActionForAll(Action action)
+	{
+		fileCommandQueues.forEach(queue -> queue.add(action));
 	}
 
 	@Override
@@ -186,7 +295,7 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 		try (var ignored = new DatabaseSession(databaseSessionManager))
 		{
 			fileDownloadRepository.findAllByLocation(peerConnection.getLocation())
-					.forEach(file -> fileCommandQueue.add(new ActionDownload(file.getId(), file.getName(), file.getHash(), file.getSize(), file.getLocation().getLocationId(), file.getChunkMap())));
+					.forEach(file -> queueAction(file.getHash(), new ActionDownload(file.getId(), file.getName(), file.getHash(), file.getSize(), file.getLocation().getLocationId(), file.getChunkMap())));
 		}
 	}
 
@@ -196,14 +305,14 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 		switch (item)
 		{
 			case FileTransferDataRequestItem ftItem -> // XXX: check for upload limit for this peer and drop it if exceeded!
-					fileCommandQueue.add(new ActionReceiveDataRequest(sender.getLocation(), ftItem.getFileItem().hash(), ftItem.getFileOffset(), ftItem.getChunkSize()));
-			case FileTransferDataItem ftItem -> fileCommandQueue.add(new ActionReceiveData(sender.getLocation(), ftItem.getFileData().fileItem().hash(), ftItem.getFileData().offset(), ftItem.getFileData().data()));
+					queueAction(ftItem.getFileItem().hash(), new ActionReceiveDataRequest(sender.getLocation(), ftItem.getFileItem().hash(), ftItem.getFileOffset(), ftItem.getChunkSize()));
+			case FileTransferDataItem ftItem -> queueData(sender.getLocation(), ftItem.getFileData().fileItem().hash(), ftItem.getFileData().offset(), ftItem.getFileData().data().retain());
 
-			case FileTransferChunkMapRequestItem ftItem -> fileCommandQueue.add(new ActionReceiveChunkMapRequest(sender.getLocation(), ftItem.getHash(), ftItem.isLeecher()));
-			case FileTransferChunkMapItem ftItem -> fileCommandQueue.add(new ActionReceiveChunkMap(sender.getLocation(), ftItem.getHash(), ftItem.getCompressedChunks()));
+			case FileTransferChunkMapRequestItem ftItem -> queueAction(ftItem.getHash(), new ActionReceiveChunkMapRequest(sender.getLocation(), ftItem.getHash(), ftItem.isLeecher()));
+			case FileTransferChunkMapItem ftItem -> queueAction(ftItem.getHash(), new ActionReceiveChunkMap(sender.getLocation(), ftItem.getHash(), ftItem.getCompressedChunks()));
 
-			case FileTransferSingleChunkCrcRequestItem ftItem -> fileCommandQueue.add(new ActionReceiveSingleChunkCrcRequest(sender.getLocation(), ftItem.getHash(), ftItem.getChunkNumber()));
-			case FileTransferSingleChunkCrcItem ftItem -> fileCommandQueue.add(new ActionReceiveSingleChunkCrc(sender.getLocation(), ftItem.getHash(), ftItem.getChunkNumber(), ftItem.getCheckSum()));
+			case FileTransferSingleChunkCrcRequestItem ftItem -> queueAction(ftItem.getHash(), new ActionReceiveSingleChunkCrcRequest(sender.getLocation(), ftItem.getHash(), ftItem.getChunkNumber()));
+			case FileTransferSingleChunkCrcItem ftItem -> queueAction(ftItem.getHash(), new ActionReceiveSingleChunkCrc(sender.getLocation(), ftItem.getHash(), ftItem.getChunkNumber(), ftItem.getCheckSum()));
 			default -> log.debug("Unhandled item {}", item);
 		}
 	}
@@ -262,14 +371,14 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 				// No need to dispose decryptedItem as it doesn't come from netty
 			}
 
-			case TurtleFileRequestItem turtleFileRequestItem -> fileCommandQueue.add(new ActionReceiveDataRequest(virtualLocation, hash, turtleFileRequestItem.getChunkOffset(), turtleFileRequestItem.getChunkSize()));
-			case TurtleFileDataItem turtleFileDataItem -> fileCommandQueue.add(new ActionReceiveData(virtualLocation, hash, turtleFileDataItem.getChunkOffset(), turtleFileDataItem.getChunkData()));
+			case TurtleFileRequestItem turtleFileRequestItem -> queueAction(hash, new ActionReceiveDataRequest(virtualLocation, hash, turtleFileRequestItem.getChunkOffset(), turtleFileRequestItem.getChunkSize()));
+			case TurtleFileDataItem turtleFileDataItem -> queueData(virtualLocation, hash, turtleFileDataItem.getChunkOffset(), Unpooled.wrappedBuffer(turtleFileDataItem.getChunkData()));
 
-			case TurtleFileMapRequestItem turtleFileMapRequestItem -> fileCommandQueue.add(new ActionReceiveChunkMapRequest(virtualLocation, hash, turtleFileMapRequestItem.getDirection() == TunnelDirection.CLIENT));
-			case TurtleFileMapItem turtleFileMapItem -> fileCommandQueue.add(new ActionReceiveChunkMap(virtualLocation, hash, turtleFileMapItem.getCompressedChunks()));
+			case TurtleFileMapRequestItem turtleFileMapRequestItem -> queueAction(hash, new ActionReceiveChunkMapRequest(virtualLocation, hash, turtleFileMapRequestItem.getDirection() == TunnelDirection.CLIENT));
+			case TurtleFileMapItem turtleFileMapItem -> queueAction(hash, new ActionReceiveChunkMap(virtualLocation, hash, turtleFileMapItem.getCompressedChunks()));
 
-			case TurtleChunkCrcRequestItem turtleChunkCrcRequestItem -> fileCommandQueue.add(new ActionReceiveSingleChunkCrcRequest(virtualLocation, hash, turtleChunkCrcRequestItem.getChunkNumber()));
-			case TurtleChunkCrcItem turtleChunkCrcItem -> fileCommandQueue.add(new ActionReceiveSingleChunkCrc(virtualLocation, hash, turtleChunkCrcItem.getChunkNumber(), turtleChunkCrcItem.getChecksum()));
+			case TurtleChunkCrcRequestItem turtleChunkCrcRequestItem -> queueAction(hash, new ActionReceiveSingleChunkCrcRequest(virtualLocation, hash, turtleChunkCrcRequestItem.getChunkNumber()));
+			case TurtleChunkCrcItem turtleChunkCrcItem -> queueAction(hash, new ActionReceiveSingleChunkCrc(virtualLocation, hash, turtleChunkCrcItem.getChunkNumber(), turtleChunkCrcItem.getChecksum()));
 
 			case null -> throw new IllegalStateException("Null item");
 			default -> log.warn("Unknown packet type received: {}", item.getSubType());
@@ -309,7 +418,7 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 		}
 		if (direction == TunnelDirection.SERVER)
 		{
-			fileCommandQueue.add(new ActionAddPeer(hash, virtualLocation));
+			queueAction(hash, new ActionAddPeer(hash, virtualLocation));
 		}
 	}
 
@@ -322,7 +431,7 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 			log.warn("Couldn't remove virtual peer, not an encrypted hash");
 			return;
 		}
-		fileCommandQueue.add(new ActionRemovePeer(hash, virtualLocation));
+		queueAction(hash, new ActionRemovePeer(hash, virtualLocation));
 	}
 
 	public int turtleSearch(String search) // XXX: maybe make a generic version or so...
@@ -340,7 +449,7 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 		var id = fileService.addDownload(name, hash, size, locationService.findLocationByLocationId(locationId).orElse(null));
 		if (id != 0L)
 		{
-			fileCommandQueue.add(new ActionDownload(id, name, hash, size, locationId, null));
+			queueAction(hash, new ActionDownload(id, name, hash, size, locationId, null));
 		}
 		return id;
 	}
@@ -352,19 +461,73 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 
 	public List<FileProgress> getDownloadStatistics()
 	{
-		fileCommandQueue.add(new ActionGetDownloadsProgress());
-		return fileTransferManager.getDownloadsProgress();
+		queueActionForAll(new ActionGetDownloadsProgress());
+		return fileTransferManagers.stream()
+				.flatMap(fileTransferManager -> fileTransferManager.getDownloadsProgress().stream())
+				.toList();
 	}
 
 	public List<FileProgress> getUploadStatistics()
 	{
-		fileCommandQueue.add(new ActionGetUploadsProgress());
-		return fileTransferManager.getUploadsProgress();
+		queueActionForAll(new ActionGetUploadsProgress());
+		return fileTransferManagers.stream()
+				.flatMap(fileTransferManager -> fileTransferManager.getUploadsProgress().stream())
+				.toList();
 	}
 
 	public void removeDownload(long id)
 	{
-		fileCommandQueue.add(new ActionRemoveDownload(id));
+		try (var ignored = new DatabaseSession(databaseSessionManager))
+		{
+			fileService.findById(id).ifPresent(fileDownload -> queueAction(fileDownload.getHash(), new ActionRemoveDownload(id)));
+		}
+	}
+
+	/**
+	 * Sets the upload rate limit of a file.
+	 *
+	 * @param hash           the hash of the file
+	 * @param bytesPerSecond the maximum rate, in bytes per second. 0 means unlimited
+	 */
+	public void setRateLimit(Sha1Sum hash, long bytesPerSecond)
+	{
+		if (bytesPerSecond < 0L)
+		{
+			throw new IllegalArgumentException("Rate limit must not be negative");
+		}
+		queueAction(hash, new ActionSetRateLimit(hash, bytesPerSecond));
+	}
+
+	/**
+	 * Gets the outbound queue used to send data to a location.
+	 *
+	 * @param location the location, can be virtual
+	 * @return the outbound queue of the connected peer, or null if it's not connected
+	 */
+	OutboundQueue getOutboundQueue(Location location)
+	{
+		var peerConnection = getPeerConnection(location);
+		return peerConnection != null ? peerConnection.getOutboundQueue() : null;
+	}
+
+	/**
+	 * Gets the connection of the peer used to exchange data with a location.
+	 *
+	 * @param location the location, can be virtual, in which case the peer is the one the tunnel goes through
+	 * @return the connection of the peer, or null if it's not connected
+	 */
+	private PeerConnection getPeerConnection(Location location)
+	{
+		var peerLocation = location;
+		if (turtleRouter != null && turtleRouter.isVirtualPeer(location))
+		{
+			peerLocation = turtleRouter.getTunnelPeer(location);
+			if (peerLocation == null)
+			{
+				return null;
+			}
+		}
+		return peerConnectionManager.getPeerByLocation(peerLocation.getId());
 	}
 
 	@Override
@@ -372,15 +535,19 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 	{
 		fileSearchNotificationService.shutdown();
 		fileTrendNotificationService.shutdown();
-		if (fileTransferManagerThread != null)
+		if (!fileTransferManagerThreads.isEmpty())
 		{
-			log.info("Stopping FileTransferManager...");
-			fileTransferManagerThread.interrupt();
+			log.info("Stopping FileTransferManagers...");
+			fileTransferManagerThreads.forEach(Thread::interrupt);
 			try
 			{
-				log.info("Waiting for FileTransferManager to terminate...");
-				fileTransferManagerThread.join();
-				log.debug("FileTransferManager terminated");
+				log.info("Waiting for FileTransferManagers to terminate...");
+				for (var fileTransferManagerThread : fileTransferManagerThreads)
+				{
+					fileTransferManagerThread.join();
+				}
+				log.debug("FileTransferManagers terminated");
+				fileCommandQueues.forEach(FileTransferManager::discardActions); // Actions queued while they were stopping
 			}
 			catch (InterruptedException e)
 			{
@@ -518,31 +685,31 @@ public class FileTransferRsService extends RsService implements TurtleRsClient
 	 * @param hash      the hash related to it
 	 * @param totalSize the total size of the file
 	 * @param offset    the offset within the file
-	 * @param data      the data to send
+	 * @param data      the data to send, released once sent
 	 */
-	void sendData(Location location, Sha1Sum hash, long totalSize, long offset, byte[] data)
+	void sendData(Location location, Sha1Sum hash, long totalSize, long offset, ByteBuf data)
 	{
-		if (data.length > 0)
+		if (data.readableBytes() > BLOCK_SIZE)
 		{
-			if (data.length > BLOCK_SIZE)
-			{
-				throw new IllegalArgumentException("Maximum send totalSize must be " + BLOCK_SIZE + ", not " + data.length);
-			}
+			var size = data.readableBytes();
+			data.release();
+			throw new IllegalArgumentException("Maximum send totalSize must be " + BLOCK_SIZE + ", not " + size);
+		}
 
-			if (turtleRouter.isVirtualPeer(location))
-			{
-				var item = new TurtleFileDataItem(offset, data);
-				sendTurtleItem(location, hash, item);
-			}
-			else
-			{
-				var item = new FileTransferDataItem(offset, totalSize, hash, data);
-				peerConnectionManager.writeItem(location, item, this);
-			}
+		if (turtleRouter.isVirtualPeer(location))
+		{
+			// Tunnel data is encrypted so it needs to be copied anyway
+			var item = new TurtleFileDataItem(offset, ByteBufUtil.getBytes(data));
+			data.release();
+			sendTurtleItem(location, hash, item);
 		}
 		else
 		{
-			log.debug("Empty data, nothing to send. Bug?!");
+			var item = new FileTransferDataItem(offset, totalSize, hash, data);
+			if (peerConnectionManager.writeItem(location, item, this) == null)
+			{
+				data.release(); // The item was not serialized
+			}
 		}
 	}
 }
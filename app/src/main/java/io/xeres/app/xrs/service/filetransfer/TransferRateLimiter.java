@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.filetransfer;
+
+import java.time.Duration;
+
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.BLOCK_SIZE;
+
+/**
+ * Token bucket limiting the rate of a transfer. A rate of 0 means unlimited.
+ */
+class TransferRateLimiter
+{
+	private static final long ONE_SECOND = Duration.ofSeconds(1).toNanos();
+
+	/**
+	 * How long the bucket can keep unused tokens, which gives the maximum burst.
+	 */
+	private static final long BURST_TIME = Duration.ofMillis(100).toNanos();
+
+	private long rate; // bytes per second
+	private long capacity;
+	private double tokens;
+	private long lastRefill;
+
+	public TransferRateLimiter(long rate)
+	{
+		setRate(rate);
+	}
+
+	public void setRate(long rate)
+	{
+		if (rate < 0)
+		{
+			throw new IllegalArgumentException("rate must not be negative");
+		}
+		this.rate = rate;
+		capacity = Math.max(BLOCK_SIZE, (long) ((double) rate * BURST_TIME / ONE_SECOND));
+		tokens = Math.min(tokens, capacity);
+		lastRefill = 0L;
+	}
+
+	public long getRate()
+	{
+		return rate;
+	}
+
+	/**
+	 * Takes tokens from the bucket if there are enough.
+	 *
+	 * @param size the number of bytes to send
+	 * @param now  the current time, in nanoseconds
+	 * @return true if the bytes can be sent
+	 */
+	public boolean tryAcquire(int size, long now)
+	{
+		if (rate == 0L)
+		{
+			return true;
+		}
+		refill(now);
+		if (tokens >= size)
+		{
+			tokens -= size;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the time until the bucket has enough tokens.
+	 *
+	 * @param size the number of bytes to send
+	 * @param now  the current time, in nanoseconds
+	 * @return the time to wait, in nanoseconds
+	 */
+	public long getDelay(int size, long now)
+	{
+		if (rate == 0L)
+		{
+			return 0L;
+		}
+		refill(now);
+		var missing = size - tokens;
+		if (missing <= 0.0)
+		{
+			return 0L;
+		}
+		return (long) Math.ceil(missing * ONE_SECOND / rate);
+	}
+
+	private void refill(long now)
+	{
+		if (lastRefill == 0L)
+		{
+			tokens = capacity;
+		}
+		else
+		{
+			tokens = Math.min(capacity, tokens + (double) (now - lastRefill) * rate / ONE_SECOND);
+		}
+		lastRefill = now;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.xeres.app.xrs.service.filetransfer;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Collects the blocks received for a file so that adjacent ones can be written
+ * together with one gathering write instead of one write per block.
+ * <p>
+ * The blocks are kept as they were received (usually slices of the incoming items), no copy is made.
+ */
+class WriteCoalescer
+{
+	static final int MAX_PENDING_SIZE = 256 * 1024;
+
+	private final NavigableMap<Long, ByteBuf> pendingBlocks = new TreeMap<>();
+	private int pendingSize;
+
+	/**
+	 * Adds a block to be written.
+	 *
+	 * @param offset the offset within the file
+	 * @param data   the data, owned by the coalescer from now on
+	 * @return true if enough data is pending and it should be flushed
+	 */
+	public boolean add(long offset, ByteBuf data)
+	{
+		var previous = pendingBlocks.put(offset, data);
+		if (previous != null)
+		{
+			pendingSize -= previous.readableBytes();
+			previous.release();
+		}
+		pendingSize += data.readableBytes();
+		return pendingSize >= MAX_PENDING_SIZE;
+	}
+
+	public boolean isEmpty()
+	{
+		return pendingBlocks.isEmpty();
+	}
+
+	public int getPendingSize()
+	{
+		return pendingSize;
+	}
+
+	/**
+	 * Writes all pending blocks. Each run of adjacent blocks is written at once. If an error
+	 * occurs, the blocks that couldn't be written are kept.
+	 *
+	 * @param channel the channel of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void flush(FileChannel channel) throws IOException
+	{
+		while (!pendingBlocks.isEmpty())
+		{
+			long start = pendingBlocks.firstKey();
+			var end = start;
+			List<ByteBuffer> buffers = new ArrayList<>();
+
+			for (var entry : pendingBlocks.entrySet())
+			{
+				if (entry.getKey() != end)
+				{
+					break;
+				}
+				var data = entry.getValue();
+				buffers.addAll(List.of(data.nioBuffers()));
+				end += data.readableBytes();
+			}
+			write(channel, start, end - start, buffers.toArray(ByteBuffer[]::new));
+
+			var written = pendingBlocks.headMap(end, false);
+			written.values().forEach(data -> {
+				pendingSize -= data.readableBytes();
+				data.release();
+			});
+			written.clear();
+		}
+	}
+
+	/**
+	 * Releases all pending blocks without writing them.
+	 *
+	 * @param discardedOffset called with the offset of each discarded block
+	 * @return the total size of the discarded blocks
+	 */
+	public long discard(LongConsumer discardedOffset)
+	{
+		long discardedSize = pendingSize;
+		pendingBlocks.forEach((offset, data) -> {
+			discardedOffset.accept(offset);
+			data.release();
+		});
+		pendingBlocks.clear();
+		pendingSize = 0;
+		return discardedSize;
+	}
+
+	private static void write(FileChannel channel, long position, long length, ByteBuffer[] buffers) throws IOException
+	{
+		channel.position(position);
+		var remaining = length;
+		while (remaining > 0)
+		{
+			remaining -= channel.write(buffers);
+		}
+	}
+}
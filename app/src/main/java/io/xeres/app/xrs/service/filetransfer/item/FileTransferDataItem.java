@@ -19,6 +19,9 @@
 
 package io.xeres.app.xrs.service.filetransfer.item;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
 import io.xeres.app.xrs.common.FileData;
 import io.xeres.app.xrs.common.FileItem;
 import io.xeres.app.xrs.item.Item;
@@ -39,12 +42,34 @@ public class FileTransferDataItem extends Item
 	{
 	}
 
-	public FileTransferDataItem(long offset, long size, Sha1Sum hash, byte[] data)
+	/**
+	 * Creates a data item.
+	 *
+	 * @param offset the offset within the file
+	 * @param size   the size of the file
+	 * @param hash   the hash of the file
+	 * @param data   the data, released once the item is sent
+	 */
+	public FileTransferDataItem(long offset, long size, Sha1Sum hash, ByteBuf data)
 	{
 		var fileItem = new FileItem(size, hash, "", "", 0, 0, 0, null);
 		fileData = new FileData(fileItem, offset, data);
 	}
 
+	@Override
+	protected ByteBuf allocateBuffer(ByteBufAllocator allocator)
+	{
+		return allocator.compositeDirectBuffer();
+	}
+
+	@Override
+	public void dispose()
+	{
+		// The data is a slice of the buffer and can still be retained
+		// by the file writer so the reference count can be higher than 1.
+		ReferenceCountUtil.release(buf);
+	}
+
 	@Override
 	public int getServiceType()
 	{
@@ -21,12 +21,15 @@ package io.xeres.app.xrs.service.forum;
 
 import io.xeres.app.database.DatabaseSession;
 import io.xeres.app.database.DatabaseSessionManager;
+import io.xeres.app.database.model.forum.ForumMessageCursor;
+import io.xeres.app.database.model.forum.ForumMessageItemId;
 import io.xeres.app.database.model.forum.ForumMessageItemSummary;
 import io.xeres.app.database.model.gxs.*;
 import io.xeres.app.database.repository.GxsForumGroupRepository;
 import io.xeres.app.database.repository.GxsForumMessageRepository;
 import io.xeres.app.net.peer.PeerConnection;
 import io.xeres.app.net.peer.PeerConnectionManager;
+import io.xeres.app.service.ForumThreadService;
 import io.xeres.app.service.notification.forum.ForumNotificationService;
 import io.xeres.app.xrs.item.Item;
 import io.xeres.app.xrs.service.RsServiceRegistry;
@@ -42,6 +45,7 @@ import io.xeres.app.xrs.service.identity.IdentityManager;
 import io.xeres.app.xrs.service.identity.item.IdentityGroupItem;
 import io.xeres.common.id.GxsId;
 import io.xeres.common.id.MessageId;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -66,8 +70,9 @@ public class ForumRsService extends GxsRsService<ForumGroupItem, ForumMessageIte
 	private final GxsUpdateService<ForumGroupItem, ForumMessageItem> gxsUpdateService;
 	private final DatabaseSessionManager databaseSessionManager;
 	private final ForumNotificationService forumNotificationService;
+	private final ForumThreadService forumThreadService;
 
-	public ForumRsService(RsServiceRegistry rsServiceRegistry, PeerConnectionManager peerConnectionManager, GxsTransactionManager gxsTransactionManager, DatabaseSessionManager databaseSessionManager, IdentityManager identityManager, GxsForumGroupRepository gxsForumGroupRepository, GxsForumMessageRepository gxsForumMessageRepository, GxsUpdateService<ForumGroupItem, ForumMessageItem> gxsUpdateService, ForumNotificationService forumNotificationService)
+	public ForumRsService(RsServiceRegistry rsServiceRegistry, PeerConnectionManager peerConnectionManager, GxsTransactionManager gxsTransactionManager, DatabaseSessionManager databaseSessionManager, IdentityManager identityManager, GxsForumGroupRepository gxsForumGroupRepository, GxsForumMessageRepository gxsForumMessageRepository, GxsUpdateService<ForumGroupItem, ForumMessageItem> gxsUpdateService, ForumNotificationService forumNotificationService, ForumThreadService forumThreadService)
 	{
 		super(rsServiceRegistry, peerConnectionManager, gxsTransactionManager, databaseSessionManager, identityManager, gxsUpdateService);
 		this.gxsForumGroupRepository = gxsForumGroupRepository;
@@ -75,6 +80,7 @@ public class ForumRsService extends GxsRsService<ForumGroupItem, ForumMessageIte
 		this.gxsUpdateService = gxsUpdateService;
 		this.databaseSessionManager = databaseSessionManager;
 		this.forumNotificationService = forumNotificationService;
+		this.forumThreadService = forumThreadService;
 	}
 
 	@Override
@@ -190,6 +196,12 @@ public class ForumRsService extends GxsRsService<ForumGroupItem, ForumMessageIte
 
 	@Override
 	protected void onMessagesSaved(List<ForumMessageItem> items)
+	{
+		forumThreadService.addMessages(items);
+	}
+
+	@Override
+	protected void onMessagesCommitted(List<ForumMessageItem> items)
 	{
 		forumNotificationService.addForumMessages(items);
 	}
@@ -223,6 +235,11 @@ public class ForumRsService extends GxsRsService<ForumGroupItem, ForumMessageIte
 		return gxsForumGroupRepository.findById(id);
 	}
 
+	public Optional<ForumGroupItem> findByGxsId(GxsId gxsId)
+	{
+		return gxsForumGroupRepository.findByGxsId(gxsId);
+	}
+
 	public List<ForumGroupItem> findAllGroups()
 	{
 		return gxsForumGroupRepository.findAll();
@@ -277,6 +294,48 @@ public class ForumRsService extends GxsRsService<ForumGroupItem, ForumMessageIte
 		return gxsForumMessageRepository.findSummaryAllByGxsId(forumGroup.getGxsId());
 	}
 
+	/**
+	 * Finds a page of message summaries, sorted from the most recent one. Messages without a publication date
+	 * come last, sorted by id.
+	 *
+	 * @param groupId the forum group
+	 * @param before  the position after which to start, or null for the first page
+	 * @param size    the maximum number of messages to return
+	 * @return the messages summaries
+	 */
+	@Transactional
+	public List<ForumMessageItemSummary> findMessagesSummaryPage(long groupId, ForumMessageCursor before, int size)
+	{
+		var forumGroup = gxsForumGroupRepository.findById(groupId).orElseThrow();
+		if (before != null && before.isUndated())
+		{
+			return gxsForumMessageRepository.findSummaryAllUndatedByGxsIdBefore(forumGroup.getGxsId(), before.id(), Limit.of(size));
+		}
+
+		// Both segments are keyed on plain columns so that they can use the (gxs_id, published, id) index
+		var messages = before == null ?
+				gxsForumMessageRepository.findSummaryAllDatedByGxsIdFirst(forumGroup.getGxsId(), Limit.of(size)) :
+				gxsForumMessageRepository.findSummaryAllDatedByGxsIdBefore(forumGroup.getGxsId(), before.date(), before.id(), Limit.of(size));
+		if (messages.size() < size)
+		{
+			messages = new ArrayList<>(messages);
+			messages.addAll(gxsForumMessageRepository.findSummaryAllUndatedByGxsIdFirst(forumGroup.getGxsId(), Limit.of(size - messages.size())));
+		}
+		return messages;
+	}
+
+	public List<ForumMessageItemSummary> findMessagesSummary(Collection<Long> ids)
+	{
+		return gxsForumMessageRepository.findSummaryAllByIdIn(ids);
+	}
+
+	@Transactional
+	public List<ForumMessageItemId> findAllMessageIds(long groupId, Set<MessageId> messageIds)
+	{
+		var forumGroup = gxsForumGroupRepository.findById(groupId).orElseThrow();
+		return gxsForumMessageRepository.findIdAllByGxsIdAndMessageIdIn(forumGroup.getGxsId(), messageIds);
+	}
+
 	public ForumMessageItem findMessageById(long id)
 	{
 		return gxsForumMessageRepository.findById(id).orElseThrow();
@@ -353,6 +412,7 @@ public class ForumRsService extends GxsRsService<ForumGroupItem, ForumMessageIte
 		var savedMessageId = saveMessage(forumMessageItem).getId();
 
 		forumMessageItem.setId(savedMessageId);
+		forumThreadService.addMessages(List.of(forumMessageItem));
 		forumNotificationService.addForumMessages(List.of(forumMessageItem));
 
 		peerConnectionManager.doForAllPeers(this::sendSyncNotification, this);
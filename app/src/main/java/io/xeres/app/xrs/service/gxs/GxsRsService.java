@@ -33,6 +33,7 @@ import io.xeres.app.xrs.service.RsService;
 import io.xeres.app.xrs.service.RsServiceInitPriority;
 import io.xeres.app.xrs.service.RsServiceRegistry;
 import io.xeres.app.xrs.service.RsServiceType;
+import io.xeres.app.xrs.service.gxs.SignatureVerifier.SignatureCheck;
 import io.xeres.app.xrs.service.gxs.item.*;
 import io.xeres.app.xrs.service.identity.IdentityManager;
 import io.xeres.common.id.GxsId;
@@ -52,10 +53,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 import static io.xeres.app.xrs.service.gxs.item.GxsSyncGroupItem.REQUEST;
 import static io.xeres.app.xrs.service.gxs.item.GxsSyncGroupItem.RESPONSE;
@@ -90,6 +88,15 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 	private static final Duration PENDING_VERIFICATION_MAX = Duration.ofMinutes(1);
 	private static final Duration PENDING_VERIFICATION_DELAY = Duration.ofSeconds(10);
 
+	private static final int SAVE_CHUNK_SIZE = 500; // Messages saved per transaction, then passed to onMessagesCommitted()
+
+	/**
+	 * Shared by all Gxs services to verify signatures of incoming items.
+	 */
+	private static final SignatureVerifier signatureVerifier = new SignatureVerifier(Executors.newFixedThreadPool(
+			Math.clamp(Runtime.getRuntime().availableProcessors() - 1L, 1, 8),
+			Thread.ofPlatform().name("Gxs Signature Verifier ", 1).daemon().factory()));
+
 	protected final GxsTransactionManager gxsTransactionManager;
 	protected final PeerConnectionManager peerConnectionManager;
 	private final IdentityManager identityManager;
@@ -202,8 +209,23 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 	 */
 	protected abstract boolean onMessageReceived(M item);
 
+	/**
+	 * Called when messages have been saved, within the same transaction.
+	 *
+	 * @param items the saved messages
+	 */
 	protected abstract void onMessagesSaved(List<M> items);
 
+	/**
+	 * Called when the transaction that saved messages has been committed.
+	 *
+	 * @param items the saved messages
+	 */
+	protected void onMessagesCommitted(List<M> items)
+	{
+		// Nothing to do by default
+	}
+
 	protected abstract AuthenticationRequirements getAuthenticationRequirements();
 
 	@Override
@@ -543,7 +565,8 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 
 	private void verifyAndStoreGroups(PeerConnection peerConnection, Collection<G> gxsGroupItems)
 	{
-		List<G> savedGroups = new ArrayList<>(gxsGroupItems.size());
+		List<G> candidateGroups = new ArrayList<>(gxsGroupItems.size());
+		List<SignatureCheck<G>> signatureChecks = new ArrayList<>();
 
 		for (var gxsGroupItem : gxsGroupItems)
 		{
@@ -558,7 +581,7 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 			// Validate author signature
 			if (gxsGroupItem.getAuthor() != null)
 			{
-				validation = verifyGroup(peerConnection, gxsGroupItem);
+				validation = verifyGroup(peerConnection, gxsGroupItem, signatureChecks);
 				if (validation == VerificationStatus.DELAYED)
 				{
 					continue;
@@ -568,26 +591,26 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 			// If this is a group update, validate its admin signature using the public key we already have
 			if (validation == VerificationStatus.OK)
 			{
-				validation = verifyGroupForUpdate(gxsGroupItem);
-			}
-
-			// Save the group if everything is OK
-			if (validation == VerificationStatus.OK)
-			{
-				gxsUpdateService.saveGroup(gxsGroupItem, this::onGroupReceived).ifPresent(savedGroups::add);
+				verifyGroupForUpdate(gxsGroupItem, signatureChecks);
+				candidateGroups.add(gxsGroupItem);
 			}
 
 			// If the group verification was delayed, remove it
 			pendingGxsGroups.computeIfPresent(gxsGroupItem, (group, delay) -> -1L);
 		}
 
+		// Save the groups if everything is OK
+		List<G> savedGroups = new ArrayList<>(candidateGroups.size());
+		signatureVerifier.filterVerified(candidateGroups, signatureChecks)
+				.forEach(gxsGroupItem -> gxsUpdateService.saveGroup(gxsGroupItem, this::onGroupReceived).ifPresent(savedGroups::add));
+
 		if (!savedGroups.isEmpty())
 		{
 			onGroupsSaved(savedGroups);
 		}
 	}
 
-	private VerificationStatus verifyGroup(PeerConnection peerConnection, G gxsGroupItem)
+	private VerificationStatus verifyGroup(PeerConnection peerConnection, G gxsGroupItem, List<SignatureCheck<G>> signatureChecks)
 	{
 		if (gxsGroupItem.getAuthorSignature() == null)
 		{
@@ -595,8 +618,8 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 			return VerificationStatus.FAILED;
 		}
 
-		var authorIdentity = identityManager.getGxsGroup(peerConnection, gxsGroupItem.getAuthor());
-		if (authorIdentity == null)
+		var authorKey = identityManager.getAdminKey(peerConnection, gxsGroupItem.getAuthor());
+		if (authorKey == null)
 		{
 			log.warn("Delaying verification of group {}", gxsGroupItem);
 			var existingDelay = pendingGxsGroups.putIfAbsent(gxsGroupItem, PENDING_VERIFICATION_MAX.toSeconds());
@@ -611,49 +634,25 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 			}
 			return VerificationStatus.DELAYED;
 		}
-		else
+		else if (authorKey.publicKey() == null)
 		{
-			if (validateGroup(gxsGroupItem, authorIdentity.getAdminPublicKey(), gxsGroupItem.getAuthorSignature()))
-			{
-				return VerificationStatus.OK;
-			}
-			else
-			{
-				log.warn("Failed to validate group {}: wrong author signature", gxsGroupItem);
-				return VerificationStatus.FAILED;
-			}
+			log.warn("Author of group {} has no public admin key", gxsGroupItem);
+			return VerificationStatus.FAILED;
 		}
-	}
-
-	private VerificationStatus verifyGroupForUpdate(G gxsGroupItem)
-	{
-		var existingGroup = gxsUpdateService.getExistingGroup(gxsGroupItem);
-		if (existingGroup.isPresent())
+		else
 		{
-			if (validateGroup(gxsGroupItem, existingGroup.get().getAdminPublicKey(), gxsGroupItem.getAdminSignature()))
-			{
-				return VerificationStatus.OK;
-			}
-			else
-			{
-				if (isSameKey(existingGroup.get().getAdminPublicKey(), gxsGroupItem.getAdminPublicKey()))
-				{
-					log.warn("Failed to validate group {} for update: wrong admin signature", gxsGroupItem);
-				}
-				else
-				{
-					log.warn("Failed to validate group {} for update: new public key doesn't match the old one", gxsGroupItem);
-				}
-				return VerificationStatus.FAILED;
-			}
+			signatureChecks.add(new SignatureCheck<>(gxsGroupItem, authorKey.publicKey(), gxsGroupItem.getAuthorSignature(), ItemUtils.serializeItemForSignature(gxsGroupItem, this), "wrong author signature"));
+			return VerificationStatus.OK;
 		}
-		return VerificationStatus.OK;
 	}
 
-	private boolean validateGroup(G gxsGroupItem, PublicKey publicKey, byte[] signature)
+	private void verifyGroupForUpdate(G gxsGroupItem, List<SignatureCheck<G>> signatureChecks)
 	{
-		var data = ItemUtils.serializeItemForSignature(gxsGroupItem, this);
-		return RSA.verify(publicKey, signature, data);
+		gxsUpdateService.getExistingGroup(gxsGroupItem).ifPresent(existingGroup -> signatureChecks.add(new SignatureCheck<>(gxsGroupItem,
+				existingGroup.getAdminPublicKey(),
+				gxsGroupItem.getAdminSignature(),
+				ItemUtils.serializeItemForSignature(gxsGroupItem, this),
+				isSameKey(existingGroup.getAdminPublicKey(), gxsGroupItem.getAdminPublicKey()) ? "wrong admin signature for update" : "new public key for update doesn't match the old one")));
 	}
 
 	private static boolean isSameKey(PublicKey a, PublicKey b)
@@ -717,7 +716,8 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 
 	private void verifyAndStoreMessages(PeerConnection peerConnection, Collection<M> gxsMessageItems)
 	{
-		List<M> savedMessages = new ArrayList<>(gxsMessageItems.size());
+		List<M> candidateMessages = new ArrayList<>(gxsMessageItems.size());
+		List<SignatureCheck<M>> signatureChecks = new ArrayList<>();
 
 		for (var gxsMessageItem : gxsMessageItems)
 		{
@@ -741,30 +741,36 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 
 			if (gxsMessageItem.getAuthorId() != null)
 			{
-				validation = verifyMessage(peerConnection, gxsMessageItem);
+				validation = verifyMessage(peerConnection, gxsMessageItem, signatureChecks);
 				if (validation == VerificationStatus.DELAYED)
 				{
 					continue;
 				}
 			}
 
-			// Save the message if everything is OK
 			if (validation == VerificationStatus.OK)
 			{
-				gxsUpdateService.saveMessage(gxsMessageItem, this::onMessageReceived).ifPresent(savedMessages::add);
+				candidateMessages.add(gxsMessageItem);
 			}
 
 			// If the message verification was delayed, remove it
 			pendingGxsMessages.computeIfPresent(gxsMessageItem, (message, delay) -> -1L);
 		}
 
-		if (!savedMessages.isEmpty())
+		// Save the messages if everything is OK, by chunks so that the progress is visible
+		var verifiedMessages = signatureVerifier.filterVerified(candidateMessages, signatureChecks);
+
+		for (var i = 0; i < verifiedMessages.size(); i += SAVE_CHUNK_SIZE)
 		{
-			onMessagesSaved(savedMessages);
+			var savedMessages = gxsUpdateService.saveMessages(verifiedMessages.subList(i, Math.min(i + SAVE_CHUNK_SIZE, verifiedMessages.size())), this::onMessageReceived, this::onMessagesSaved);
+			if (!savedMessages.isEmpty())
+			{
+				onMessagesCommitted(savedMessages);
+			}
 		}
 	}
 
-	private VerificationStatus verifyMessage(PeerConnection peerConnection, M gxsMessageItem)
+	private VerificationStatus verifyMessage(PeerConnection peerConnection, M gxsMessageItem, List<SignatureCheck<M>> signatureChecks)
 	{
 		if (gxsMessageItem.getAuthorSignature() == null)
 		{
@@ -772,8 +778,8 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 			return VerificationStatus.FAILED;
 		}
 
-		var authorIdentity = identityManager.getGxsGroup(peerConnection, gxsMessageItem.getAuthorId());
-		if (authorIdentity == null)
+		var authorKey = identityManager.getAdminKey(peerConnection, gxsMessageItem.getAuthorId());
+		if (authorKey == null)
 		{
 			log.warn("Delaying verification of message {}", gxsMessageItem);
 			var existingDelay = pendingGxsMessages.putIfAbsent(gxsMessageItem, PENDING_VERIFICATION_MAX.toSeconds());
@@ -788,22 +794,20 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 			}
 			return VerificationStatus.DELAYED;
 		}
+		else if (authorKey.publicKey() == null)
+		{
+			log.warn("Author of message {} has no public admin key", gxsMessageItem);
+			return VerificationStatus.FAILED;
+		}
 		else
 		{
-			if (validateMessage(gxsMessageItem, authorIdentity.getAdminPublicKey(), gxsMessageItem.getAuthorSignature()))
-			{
-				// XXX: check for reputation here, if reputation is too low, remove
-				return VerificationStatus.OK;
-			}
-			else
-			{
-				log.warn("Failed to validate message {}: wrong author signature", gxsMessageItem);
-				return VerificationStatus.FAILED;
-			}
+			// XXX: check for reputation here, if reputation is too low, remove
+			signatureChecks.add(new SignatureCheck<>(gxsMessageItem, authorKey.publicKey(), gxsMessageItem.getAuthorSignature(), getMessageSignedData(gxsMessageItem), "wrong author signature"));
+			return VerificationStatus.OK;
 		}
 	}
 
-	private boolean validateMessage(M gxsMessageItem, PublicKey publicKey, byte[] signature)
+	private byte[] getMessageSignedData(M gxsMessageItem)
 	{
 		// Clear messageId and possibly originalMessageId because they're created after the signature
 		// is made (they depend on the content)
@@ -818,7 +822,7 @@ public abstract class GxsRsService<G extends GxsGroupItem, M extends GxsMessageI
 		gxsMessageItem.setMessageId(savedMessageId);
 		gxsMessageItem.setOriginalMessageId(savedOriginalMessageId);
 
-		return RSA.verify(publicKey, signature, data);
+		return data;
 	}
 
 	public void sendGxsMessages(PeerConnection peerConnection, List<M> gxsMessageItems)
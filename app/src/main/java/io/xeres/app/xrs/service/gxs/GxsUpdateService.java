@@ -31,11 +31,16 @@ import io.xeres.app.database.repository.GxsServiceSettingRepository;
 import io.xeres.app.xrs.service.RsServiceType;
 import io.xeres.common.id.GxsId;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
@@ -48,13 +53,15 @@ public class GxsUpdateService<G extends GxsGroupItem, M extends GxsMessageItem>
 	private final GxsServiceSettingRepository gxsServiceSettingRepository;
 	private final GxsGroupItemRepository gxsGroupItemRepository;
 	private final GxsMessageItemRepository gxsMessageItemRepository;
+	private final TransactionTemplate transactionTemplate;
 
-	public GxsUpdateService(GxsClientUpdateRepository gxsClientUpdateRepository, GxsServiceSettingRepository gxsServiceSettingRepository, GxsGroupItemRepository gxsGroupItemRepository, GxsMessageItemRepository gxsMessageItemRepository)
+	public GxsUpdateService(GxsClientUpdateRepository gxsClientUpdateRepository, GxsServiceSettingRepository gxsServiceSettingRepository, GxsGroupItemRepository gxsGroupItemRepository, GxsMessageItemRepository gxsMessageItemRepository, PlatformTransactionManager transactionManager)
 	{
 		this.gxsClientUpdateRepository = gxsClientUpdateRepository;
 		this.gxsServiceSettingRepository = gxsServiceSettingRepository;
 		this.gxsGroupItemRepository = gxsGroupItemRepository;
 		this.gxsMessageItemRepository = gxsMessageItemRepository;
+		transactionTemplate = new TransactionTemplate(transactionManager);
 	}
 
 	/**
@@ -159,4 +166,26 @@ public class GxsUpdateService<G extends GxsGroupItem, M extends GxsMessageItem>
 		}
 		return Optional.empty();
 	}
+
+	/**
+	 * Saves several messages within a transaction. Callers are not running within a transaction so it is
+	 * committed when this method returns.
+	 *
+	 * @param gxsMessageItems the messages
+	 * @param confirmation    called for each message, returns false if it must not be saved
+	 * @param saved           called with the saved messages (if any) within the same transaction
+	 * @return the saved messages
+	 */
+	public List<M> saveMessages(List<M> gxsMessageItems, Predicate<M> confirmation, Consumer<List<M>> saved)
+	{
+		return transactionTemplate.execute(status -> {
+			List<M> savedMessages = new ArrayList<>(gxsMessageItems.size());
+			gxsMessageItems.forEach(gxsMessageItem -> saveMessage(gxsMessageItem, confirmation).ifPresent(savedMessages::add));
+			if (!savedMessages.isEmpty())
+			{
+				saved.accept(savedMessages);
+			}
+			return savedMessages;
+		});
+	}
 }
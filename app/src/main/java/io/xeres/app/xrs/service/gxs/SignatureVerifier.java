@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.gxs;
+
+import io.xeres.app.crypto.rsa.RSA;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Verifies the signatures of a batch of items in parallel.
+ */
+class SignatureVerifier
+{
+	private static final Logger log = LoggerFactory.getLogger(SignatureVerifier.class);
+
+	private final ExecutorService executorService;
+
+	/**
+	 * A signature to verify. The data is serialized beforehand so that the verification itself
+	 * can run on any thread.
+	 */
+	record SignatureCheck<T>(T item, PublicKey publicKey, byte[] signature, byte[] data, String failureReason)
+	{
+		boolean verify()
+		{
+			return RSA.verify(publicKey, signature, data);
+		}
+	}
+
+	SignatureVerifier(ExecutorService executorService)
+	{
+		this.executorService = executorService;
+	}
+
+	/**
+	 * Keeps the candidates whose signatures are all correct.
+	 *
+	 * @param candidates      the items, an item without any signature check is kept
+	 * @param signatureChecks the signatures to verify, an item can have several of them
+	 * @param <T>             the type of the signed items
+	 * @return the verified items, in the same order as the candidates
+	 */
+	<T> List<T> filterVerified(List<T> candidates, List<SignatureCheck<T>> signatureChecks)
+	{
+		var failedItems = verify(signatureChecks);
+		return candidates.stream()
+				.filter(item -> !failedItems.contains(item))
+				.toList();
+	}
+
+	/**
+	 * Verifies signatures. Batches of more than one signature are verified in parallel.
+	 *
+	 * @param signatureChecks the signatures to verify
+	 * @param <T>             the type of the signed items
+	 * @return the items that have at least one wrong signature
+	 */
+	<T> Set<T> verify(List<SignatureCheck<T>> signatureChecks)
+	{
+		Set<T> failedItems = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		if (signatureChecks.size() == 1)
+		{
+			var signatureCheck = signatureChecks.getFirst();
+			if (!signatureCheck.verify())
+			{
+				log.warn("Failed to validate {}: {}", signatureCheck.item(), signatureCheck.failureReason());
+				failedItems.add(signatureCheck.item());
+			}
+			return failedItems;
+		}
+
+		var results = signatureChecks.stream()
+				.map(signatureCheck -> executorService.submit(signatureCheck::verify))
+				.toList();
+
+		for (var i = 0; i < signatureChecks.size(); i++)
+		{
+			var signatureCheck = signatureChecks.get(i);
+			if (!getVerificationResult(results.get(i)))
+			{
+				log.warn("Failed to validate {}: {}", signatureCheck.item(), signatureCheck.failureReason());
+				failedItems.add(signatureCheck.item());
+			}
+		}
+		return failedItems;
+	}
+
+	private static boolean getVerificationResult(Future<Boolean> result)
+	{
+		try
+		{
+			return result.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e)
+		{
+			log.error("Signature verification error: {}", e.getMessage());
+			return false;
+		}
+	}
+}
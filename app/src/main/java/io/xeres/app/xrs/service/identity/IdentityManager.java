@@ -19,6 +19,7 @@
 
 package io.xeres.app.xrs.service.identity;
 
+import io.xeres.app.application.events.IdentityChangedEvent;
 import io.xeres.app.database.model.gxs.GxsGroupItem;
 import io.xeres.app.net.peer.PeerConnection;
 import io.xeres.app.net.peer.PeerConnectionManager;
@@ -30,6 +31,7 @@ import io.xeres.common.util.ExecutorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
@@ -66,6 +68,8 @@ public class IdentityManager
 
 	private final ScheduledExecutorService executorService;
 
+	private final PublicKeyCache publicKeyCache = new PublicKeyCache();
+
 	// XXX: try to fix the circular dependency injection
 	public IdentityManager(@Lazy IdentityRsService identityRsService, IdentityService identityService, PeerConnectionManager peerConnectionManager)
 	{
@@ -107,6 +111,56 @@ public class IdentityManager
 		return identityService.findByGxsId(gxsId).orElse(null);
 	}
 
+	/**
+	 * Gets the admin public key of an identity, if available. Otherwise, put a request to fetch the identity later.
+	 * <p>
+	 * This is the preferred way to verify signatures, as keys are cached.
+	 *
+	 * @param peerConnection the peer to try to get the identity from
+	 * @param gxsId          the gxs group id of the identity
+	 * @return the admin key, which has no public key if the identity doesn't have one, or null if the identity is not found yet
+	 */
+	public PublicKeyCache.AdminKey getAdminKey(PeerConnection peerConnection, GxsId gxsId)
+	{
+		var adminKey = publicKeyCache.get(gxsId, this::loadAdminKey);
+		if (adminKey == null)
+		{
+			synchronized (pendingGxsIds)
+			{
+				pendingGxsIds.computeIfAbsent(peerConnection.getLocation().getId(), locationId -> ConcurrentHashMap.newKeySet()).add(gxsId);
+			}
+		}
+		return adminKey;
+	}
+
+	private PublicKeyCache.AdminKey loadAdminKey(GxsId gxsId)
+	{
+		return identityService.findByGxsId(gxsId)
+				.map(identity -> new PublicKeyCache.AdminKey(identity.hasAdminPublicKey() ? identity.getAdminPublicKey() : null))
+				.orElse(null);
+	}
+
+	/**
+	 * Must be called when an identity is saved or deleted without going through {@link IdentityService}.
+	 *
+	 * @param gxsId the gxs group id of the identity
+	 */
+	public void invalidatePublicKey(GxsId gxsId)
+	{
+		publicKeyCache.invalidate(gxsId);
+	}
+
+	@EventListener
+	public void onIdentityChangedEvent(IdentityChangedEvent event)
+	{
+		invalidatePublicKey(event.gxsId());
+	}
+
+	public PublicKeyCache getPublicKeyCache()
+	{
+		return publicKeyCache;
+	}
+
 	public void fetchGxsGroups(PeerConnection peerConnection, Set<GxsId> gxsIds)
 	{
 		synchronized (pendingGxsIds)
@@ -94,6 +94,7 @@ public class IdentityRsService extends GxsRsService<IdentityGroupItem, GxsMessag
 	private final IdentityService identityService;
 	private final SettingsService settingsService;
 	private final ProfileService profileService;
+	private final IdentityManager identityManager;
 	private final GxsUpdateService<IdentityGroupItem, GxsMessageItem> gxsUpdateService;
 	private final ContactNotificationService contactNotificationService;
 
@@ -111,6 +112,7 @@ public class IdentityRsService extends GxsRsService<IdentityGroupItem, GxsMessag
 		this.identityService = identityService;
 		this.settingsService = settingsService;
 		this.profileService = profileService;
+		this.identityManager = identityManager;
 		this.gxsUpdateService = gxsUpdateService;
 		this.contactNotificationService = contactNotificationService;
 	}
@@ -291,6 +293,8 @@ public class IdentityRsService extends GxsRsService<IdentityGroupItem, GxsMessag
 	@Override
 	protected void onGroupsSaved(List<IdentityGroupItem> items)
 	{
+		items.forEach(identityGroupItem -> identityManager.invalidatePublicKey(identityGroupItem.getGxsId()));
+
 		// We only send the notification for contacts that don't require a validation.
 		// The others will appear upon validation (or be deleted if they're not validated).
 		var itemsToNotify = items.stream()
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.identity;
+
+import io.xeres.common.id.GxsId;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A cache of the decoded admin public keys of identities, to avoid a database access and an ASN.1 parsing
+ * each time a signature is verified.
+ * <p>
+ * Unknown identities are cached too (negative entries), for a shorter time. Known identities without an admin
+ * public key are cached like the others, so that they can still be told apart from unknown ones. The least
+ * recently used entries are evicted when the cache is full.
+ */
+public class PublicKeyCache
+{
+	private static final int MAXIMUM_SIZE = 10_000;
+	private static final Duration TIME_TO_LIVE = Duration.ofMinutes(30);
+	private static final Duration NEGATIVE_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+	private final int maximumSize;
+	private final Duration timeToLive;
+	private final Duration negativeTimeToLive;
+
+	private final Map<GxsId, Entry> entries;
+
+	private long invalidations; // Prevents storing a key loaded before an invalidation
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * The admin public key of a known identity.
+	 *
+	 * @param publicKey the public key, or null if the identity has none
+	 */
+	public record AdminKey(PublicKey publicKey)
+	{
+	}
+
+	private record Entry(AdminKey adminKey, Instant expiration)
+	{
+	}
+
+	public PublicKeyCache()
+	{
+		this(MAXIMUM_SIZE, TIME_TO_LIVE, NEGATIVE_TIME_TO_LIVE);
+	}
+
+	PublicKeyCache(int maximumSize, Duration timeToLive, Duration negativeTimeToLive)
+	{
+		this.maximumSize = maximumSize;
+		this.timeToLive = timeToLive;
+		this.negativeTimeToLive = negativeTimeToLive;
+
+		entries = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<GxsId, Entry> eldest)
+			{
+				if (size() > PublicKeyCache.this.maximumSize)
+				{
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets a public key.
+	 *
+	 * @param gxsId  the id of the identity
+	 * @param loader the function to load the key if it's not in the cache, returns null if the identity is unknown
+	 * @return the admin key, or null if the identity is unknown
+	 */
+	public AdminKey get(GxsId gxsId, Function<GxsId, AdminKey> loader)
+	{
+		long invalidationsBeforeLoad;
+
+		synchronized (this)
+		{
+			var entry = entries.get(gxsId);
+			if (entry != null)
+			{
+				if (entry.expiration().isAfter(Instant.now()))
+				{
+					hits++;
+					return entry.adminKey();
+				}
+				entries.remove(gxsId);
+				evictions++;
+			}
+			misses++;
+			invalidationsBeforeLoad = invalidations;
+		}
+
+		// Loading is done outside the lock as it needs the database
+		var adminKey = loader.apply(gxsId);
+
+		synchronized (this)
+		{
+			if (invalidations != invalidationsBeforeLoad)
+			{
+				return adminKey;
+			}
+			entries.put(gxsId, new Entry(adminKey, Instant.now().plus(adminKey != null ? timeToLive : negativeTimeToLive)));
+		}
+		return adminKey;
+	}
+
+	/**
+	 * Removes an identity from the cache, to be called when it's saved or deleted.
+	 *
+	 * @param gxsId the id of the identity
+	 */
+	public synchronized void invalidate(GxsId gxsId)
+	{
+		entries.remove(gxsId);
+		invalidations++;
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		invalidations++;
+	}
+
+	public synchronized int getSize()
+	{
+		return entries.size();
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+}
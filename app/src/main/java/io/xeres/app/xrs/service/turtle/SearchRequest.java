@@ -28,6 +28,11 @@ import java.time.Instant;
  */
 class SearchRequest
 {
+	/**
+	 * Rough memory used by a search request without its keywords.
+	 */
+	private static final int BASE_SIZE = 128;
+
 	private final Location source;
 	private final Instant lastUsed;
 	private final int depth;
@@ -105,4 +110,14 @@ class SearchRequest
 	{
 		return client;
 	}
+
+	/**
+	 * Estimates the memory used by the request, to limit the size of the request cache.
+	 *
+	 * @return the estimated size in bytes
+	 */
+	public int getEstimatedSize()
+	{
+		return BASE_SIZE + (keywords != null ? keywords.length() * 2 : 0);
+	}
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.xeres.app.xrs.service.turtle;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timer wheel to expire entries without scanning all of them.
+ * <p>
+ * Each slot of the wheel covers one tick and holds the keys expiring during it. Scheduling is O(1)
+ * and expiring only looks at the slots that were passed since the last call. Keys expiring further away than
+ * one turn of the wheel just stay in their slot for more turns.
+ * <p>
+ * Keys cannot be cancelled, the caller is expected to check if the key is still relevant when it expires
+ * (for example if it's still in its map and if it really expired). It can then be scheduled again.
+ *
+ * @param <T> the type of the keys
+ */
+class TimerWheel<T>
+{
+	private record Timeout<T>(T key, long tick)
+	{
+	}
+
+	private final long tickDuration;
+	private final ArrayDeque<Timeout<T>>[] slots;
+	private final long start;
+	private long currentTick;
+	private int size;
+
+	/**
+	 * Creates a timer wheel.
+	 *
+	 * @param tickDuration the precision of the timeouts
+	 * @param wheelSize    the number of slots, the wheel covers wheelSize * tickDuration in one turn
+	 * @param now          the current time, in nanoseconds
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(Duration tickDuration, int wheelSize, long now)
+	{
+		if (tickDuration.isNegative() || tickDuration.isZero())
+		{
+			throw new IllegalArgumentException("tickDuration must be positive");
+		}
+		if (wheelSize < 1)
+		{
+			throw new IllegalArgumentException("wheelSize must be greater than 0");
+		}
+		this.tickDuration = tickDuration.toNanos();
+		slots = new ArrayDeque[wheelSize];
+		for (var i = 0; i < wheelSize; i++)
+		{
+			slots[i] = new ArrayDeque<>();
+		}
+		start = now;
+	}
+
+	/**
+	 * Schedules a key to expire.
+	 *
+	 * @param key      the key
+	 * @param deadline the time at which it expires, in nanoseconds
+	 */
+	public synchronized void schedule(T key, long deadline)
+	{
+		// Rounded up so that a key never expires before its deadline
+		var tick = Math.max(Math.ceilDiv(deadline - start, tickDuration), currentTick + 1);
+		slots[(int) (tick % slots.length)].add(new Timeout<>(key, tick));
+		size++;
+	}
+
+	/**
+	 * Removes the keys whose deadline passed.
+	 *
+	 * @param now     the current time, in nanoseconds
+	 * @param expired called with each expired key
+	 */
+	public void expire(long now, Consumer<T> expired)
+	{
+		List<T> keys = new ArrayList<>();
+		synchronized (this)
+		{
+			var nowTick = (now - start) / tickDuration;
+			// Past one turn, all the slots have been seen
+			var lastTick = Math.min(nowTick, currentTick + slots.length);
+			while (currentTick < lastTick)
+			{
+				currentTick++;
+				var slot = slots[(int) (currentTick % slots.length)];
+				var iterator = slot.iterator();
+				while (iterator.hasNext())
+				{
+					var timeout = iterator.next();
+					if (timeout.tick() <= nowTick)
+					{
+						iterator.remove();
+						keys.add(timeout.key());
+					}
+				}
+			}
+			currentTick = Math.max(currentTick, nowTick);
+			size -= keys.size();
+		}
+		// Outside the lock so that the keys can be scheduled again
+		keys.forEach(expired);
+	}
+
+	public synchronized int size()
+	{
+		return size;
+	}
+}
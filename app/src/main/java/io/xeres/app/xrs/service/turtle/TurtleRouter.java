@@ -73,6 +73,14 @@ public interface TurtleRouter
 	 */
 	boolean isVirtualPeer(Location location);
 
+	/**
+	 * Gets the connected peer through which the data for a virtual peer is sent.
+	 *
+	 * @param virtualPeer the virtual peer
+	 * @return the location of the connected peer, or null if there's no tunnel for that virtual peer
+	 */
+	Location getTunnelPeer(Location virtualPeer);
+
 	/**
 	 * Performs a tunnel search.
 	 *
@@ -53,6 +53,9 @@ import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import static io.xeres.app.xrs.service.RsServiceType.TURTLE;
 
@@ -95,9 +98,10 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 	private static final Duration SPEED_ESTIMATE_TIME = Duration.ofSeconds(5);
 
 	/**
-	 * Maximum number of search requests allowed in the cache.
+	 * Memory allowed for the search requests in the cache. It depends on the maximum heap size so that
+	 * bigger nodes can relay more searches.
 	 */
-	private static final int MAX_SEARCH_REQUEST_IN_CACHE = 120;
+	static final long SEARCH_REQUEST_CACHE_BUDGET = Math.clamp(Runtime.getRuntime().maxMemory() / 2048, 256 * 1024L, 8 * 1024 * 1024L);
 
 	/**
 	 * Maximum number of search results forwarded by default.
@@ -116,7 +120,7 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 	/**
 	 * Lifetime of search requests in the cache.
 	 */
-	private static final Duration SEARCH_REQUEST_LIFETIME = Duration.ofMinutes(10);
+	static final Duration SEARCH_REQUEST_LIFETIME = Duration.ofMinutes(10);
 
 	/**
 	 * Lifetime of tunnel requests in the cache.
@@ -145,6 +149,29 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 
 	private final Map<LocationId, Integer> virtualPeers = new ConcurrentHashMap<>();
 
+	/**
+	 * Index of the last tunnel request id of each hash in {@link #incomingHashes}.
+	 */
+	private final Map<Integer, Sha1Sum> requestHashes = new ConcurrentHashMap<>();
+
+	private final TimerWheel<Integer> tunnelTimeouts = new TimerWheel<>(Duration.ofSeconds(1), 128, System.nanoTime());
+
+	private final TimerWheel<Integer> searchRequestTimeouts = new TimerWheel<>(Duration.ofSeconds(1), 1024, System.nanoTime());
+
+	private final TimerWheel<Integer> tunnelRequestTimeouts = new TimerWheel<>(Duration.ofSeconds(1), 1024, System.nanoTime());
+
+	private final AtomicLong searchRequestsCacheSize = new AtomicLong();
+
+	/**
+	 * Ids of the search requests in {@link #searchRequestsOrigins}, the oldest first. Also used as the lock
+	 * for adding and removing search requests.
+	 */
+	private final Set<Integer> searchRequestsOrder = new LinkedHashSet<>();
+
+	private record VirtualPeerRemoval(TurtleRsClient client, Sha1Sum hash, Location virtualLocation)
+	{
+	}
+
 	private final Set<Sha1Sum> hashesToRemove = ConcurrentHashMap.newKeySet();
 
 	private final Map<Integer, TurtleRsClient> outgoingTunnelClients = new ConcurrentHashMap<>();
@@ -361,6 +388,22 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 		return virtualPeers.containsKey(location.getLocationId());
 	}
 
+	@Override
+	public Location getTunnelPeer(Location virtualPeer)
+	{
+		var tunnelId = virtualPeers.get(virtualPeer.getLocationId());
+		if (tunnelId == null)
+		{
+			return null;
+		}
+		var tunnel = localTunnels.get(tunnelId);
+		if (tunnel == null)
+		{
+			return null;
+		}
+		return tunnel.getSource().equals(ownLocation) ? tunnel.getDestination() : tunnel.getSource();
+	}
+
 	private void handleReceiveGenericTunnel(TurtleGenericTunnelItem item, Tunnel tunnel)
 	{
 		TurtleRsClient client = null;
@@ -414,6 +457,7 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 			log.debug("Requests {} already exists", item.getRequestId());
 			return;
 		}
+		scheduleTimeout(tunnelRequestTimeouts, item.getRequestId(), TUNNEL_REQUEST_LIFETIME);
 
 		Optional<TurtleRsClient> clientWithSearchResult = Optional.empty();
 
@@ -434,6 +478,7 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 
 			var tunnel = new Tunnel(tunnelId, sender.getLocation(), ownLocation, item.getHash());
 			localTunnels.put(tunnelId, tunnel);
+			scheduleTunnelTimeout(tunnelId, MAX_TUNNEL_IDLE_TIME);
 			virtualPeers.put(tunnel.getVirtualLocation().getLocationId(), tunnelId);
 			clientWithSearchResult.get().addVirtualPeer(item.getHash(), tunnel.getVirtualLocation(), TunnelDirection.CLIENT);
 
@@ -457,17 +502,21 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 					turtleStatistics.getTunnelRequestsDownload(),
 					peerConnectionManager.getNumberOfPeers());// XXX: there's a difference with RS here, it's the number of peers USING the turtle service. do we care?
 
+			List<PeerConnection> targets = new ArrayList<>();
 			peerConnectionManager.doForAllPeersExceptSender(peerConnection -> {
-						var itemToSend = item.clone();
-						tunnelProbability.incrementDepth(itemToSend);
 						if (SecureRandomUtils.nextDouble() <= probability)
 						{
-							turtleStatisticsBuffer.addToTunnelRequestsUpload(SerializerSizeCache.getItemSize(itemToSend, this));
-							peerConnectionManager.writeItem(peerConnection, itemToSend, this);
+							targets.add(peerConnection);
 						}
 					},
 					sender,
 					this);
+
+			// The depth doesn't depend on the peer so the item is serialized once for all of them
+			var itemToSend = item.clone();
+			tunnelProbability.incrementDepth(itemToSend);
+			var itemSize = peerConnectionManager.writeItem(targets, itemToSend, this);
+			targets.forEach(peerConnection -> turtleStatisticsBuffer.addToTunnelRequestsUpload(itemSize));
 		}
 	}
 
@@ -492,7 +541,10 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 		}
 
 		// Transitive tunnel
-		var tunnel = localTunnels.computeIfAbsent(item.getTunnelId(), tunnelId -> new Tunnel(tunnelId, tunnelRequest.getSource(), sender.getLocation(), null));
+		var tunnel = localTunnels.computeIfAbsent(item.getTunnelId(), tunnelId -> {
+			scheduleTunnelTimeout(tunnelId, MAX_TUNNEL_IDLE_TIME);
+			return new Tunnel(tunnelId, tunnelRequest.getSource(), sender.getLocation(), null);
+		});
 
 		if (Duration.between(tunnelRequest.getLastUsed(), Instant.now()).compareTo(TUNNEL_REQUEST_TIMEOUT) > 0)
 		{
@@ -522,9 +574,17 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 
 	private Optional<Map.Entry<Sha1Sum, HashInfo>> findHashInfoByRequest(int requestId)
 	{
-		return incomingHashes.entrySet().stream()
-				.filter(entry -> entry.getValue().getLastRequest() == requestId)
-				.findFirst();
+		var hash = requestHashes.get(requestId);
+		if (hash == null)
+		{
+			return Optional.empty();
+		}
+		var hashInfo = incomingHashes.get(hash);
+		if (hashInfo == null || hashInfo.getLastRequest() != requestId)
+		{
+			return Optional.empty();
+		}
+		return Optional.of(Map.entry(hash, hashInfo));
 	}
 
 	int generatePersonalFilePrint(Sha1Sum hash, int bias, boolean symmetrical)
@@ -563,9 +623,9 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 			return;
 		}
 
-		if (searchRequestsOrigins.size() > MAX_SEARCH_REQUEST_IN_CACHE) // XXX: no expiration for those??
+		if (searchRequestsOrigins.containsKey(item.getRequestId()))
 		{
-			log.debug("Request cache is full. Check if a peer is flooding.");
+			log.debug("Request {} already in cache", item.getRequestId());
 			return;
 		}
 
@@ -581,7 +641,7 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 				searchResults.size(),
 				MAX_SEARCH_HITS);
 
-		if (searchRequestsOrigins.putIfAbsent(item.getRequestId(), searchRequest) != null)
+		if (!addSearchRequestToCache(item.getRequestId(), searchRequest))
 		{
 			log.debug("Request {} already in cache", item.getRequestId());
 			return;
@@ -598,22 +658,20 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 
 		if (tunnelProbability.isForwardable(item))
 		{
-			peerConnectionManager.doForAllPeersExceptSender(peerConnection -> {
-						var itemToSend = item.clone();
-						tunnelProbability.incrementDepth(itemToSend);
-						turtleStatisticsBuffer.addToSearchRequestsUpload(itemSerializedSize);
-						peerConnectionManager.writeItem(peerConnection, itemToSend, this);
-					},
-					sender,
-					this);
+			List<PeerConnection> targets = new ArrayList<>();
+			peerConnectionManager.doForAllPeersExceptSender(targets::add, sender, this);
+
+			// The depth doesn't depend on the peer so the item is serialized once for all of them
+			var itemToSend = item.clone();
+			tunnelProbability.incrementDepth(itemToSend);
+			var itemSize = peerConnectionManager.writeItem(targets, itemToSend, this);
+			targets.forEach(peerConnection -> turtleStatisticsBuffer.addToSearchRequestsUpload(itemSize));
 		}
 	}
 
 	@Override
 	public int turtleSearch(String search, TurtleRsClient client) // XXX: put a size limit there in the search string length...
 	{
-		var id = SecureRandomUtils.nextInt();
-
 		TurtleFileSearchRequestItem item;
 
 		// "foobar" -> exact search
@@ -632,20 +690,79 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 			item = new TurtleStringSearchRequestItem(search);
 		}
 
+		var request = new SearchRequest(client, ownLocation, 0, search, 0, MAX_SEARCH_HITS);
+		int id;
+		do
+		{
+			id = SecureRandomUtils.nextInt();
+		}
+		while (!addSearchRequestToCache(id, request));
 		item.setRequestId(id);
 
-		var request = new SearchRequest(client, ownLocation, 0, search, 0, MAX_SEARCH_HITS);
-		searchRequestsOrigins.put(id, request);
+		List<PeerConnection> targets = new ArrayList<>();
+		peerConnectionManager.doForAllPeers(targets::add, this);
+		var itemSize = peerConnectionManager.writeItem(targets, item, this);
+		targets.forEach(peerConnection -> turtleStatisticsBuffer.addToSearchRequestsUpload(itemSize));
 
-		var itemSerializedSize = ItemUtils.getItemSerializedSize(item, this);
+		return id;
+	}
 
-		peerConnectionManager.doForAllPeers(peerConnection -> {
-			var itemToSend = item.clone();
-			turtleStatisticsBuffer.addToSearchRequestsUpload(itemSerializedSize);
-			peerConnectionManager.writeItem(peerConnection, itemToSend, this);
-		}, this);
+	/**
+	 * Adds a search request to the cache. If the cache goes over its budget, the oldest requests are evicted.
+	 *
+	 * @param requestId     the id of the request
+	 * @param searchRequest the request
+	 * @return false if a request with the same id is already in the cache, in which case nothing is added
+	 */
+	boolean addSearchRequestToCache(int requestId, SearchRequest searchRequest)
+	{
+		synchronized (searchRequestsOrder)
+		{
+			if (searchRequestsOrigins.putIfAbsent(requestId, searchRequest) != null)
+			{
+				return false;
+			}
+			searchRequestsOrder.add(requestId);
+			var cacheSize = searchRequestsCacheSize.addAndGet(searchRequest.getEstimatedSize());
 
-		return id;
+			var iterator = searchRequestsOrder.iterator();
+			while (cacheSize > SEARCH_REQUEST_CACHE_BUDGET)
+			{
+				var oldestId = iterator.next();
+				if (oldestId == requestId)
+				{
+					break; // The new request is always kept
+				}
+				iterator.remove();
+				var oldest = searchRequestsOrigins.remove(oldestId);
+				if (oldest != null)
+				{
+					log.debug("Request cache is full, evicting request {}. Check if a peer is flooding.", oldestId);
+					cacheSize = searchRequestsCacheSize.addAndGet(-oldest.getEstimatedSize());
+				}
+			}
+		}
+		scheduleTimeout(searchRequestTimeouts, requestId, SEARCH_REQUEST_LIFETIME);
+		return true;
+	}
+
+	boolean hasSearchRequest(int requestId)
+	{
+		return searchRequestsOrigins.containsKey(requestId);
+	}
+
+	long getSearchRequestsCacheSize()
+	{
+		return searchRequestsCacheSize.get();
+	}
+
+	private void removeSearchRequestFromCache(int requestId, SearchRequest searchRequest)
+	{
+		synchronized (searchRequestsOrder)
+		{
+			searchRequestsOrder.remove(requestId);
+			searchRequestsCacheSize.addAndGet(-searchRequest.getEstimatedSize());
+		}
 	}
 
 	private List<TurtleSearchResultItem> performLocalSearch(TurtleSearchRequestItem item, int maxHits)
@@ -777,6 +894,8 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 	{
 		manageTunnels();
 		computeTrafficInformation();
+		expireTunnels();
+		expireRequests();
 		cleanTunnelsIfNeeded();
 		estimateSpeedIfNeeded();
 	}
@@ -816,19 +935,20 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 
 		var hashInfo = incomingHashes.get(hash);
 
+		requestHashes.remove(hashInfo.getLastRequest(), hash);
+		requestHashes.put(requestId, hash);
 		hashInfo.setLastRequest(requestId);
 		hashInfo.setLastDiggTime(Instant.now());
 
 		var item = new TurtleTunnelRequestItem(hash, requestId, generatePersonalFilePrint(hash, tunnelProbability.getBias(), true));
 
 		tunnelRequestsOrigins.put(item.getRequestId(), new TunnelRequest(ownLocation, item.getDepth()));
+		scheduleTimeout(tunnelRequestTimeouts, item.getRequestId(), TUNNEL_REQUEST_LIFETIME);
 
-		peerConnectionManager.doForAllPeers(peerConnection -> {
-					var itemToSend = item.clone();
-					turtleStatisticsBuffer.addToTunnelRequestsUpload(SerializerSizeCache.getItemSize(itemToSend, this));
-					peerConnectionManager.writeItem(peerConnection, itemToSend, this);
-				},
-				this);
+		List<PeerConnection> targets = new ArrayList<>();
+		peerConnectionManager.doForAllPeers(targets::add, this);
+		var itemSize = peerConnectionManager.writeItem(targets, item.clone(), this);
+		targets.forEach(peerConnection -> turtleStatisticsBuffer.addToTunnelRequestsUpload(itemSize));
 	}
 
 	private void cleanTunnelsIfNeeded()
@@ -840,35 +960,110 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 		}
 		lastTunnelCleanup = now;
 
-		var virtualPeersToRemove = new HashMap<TurtleRsClient, AbstractMap.SimpleEntry<Sha1Sum, Location>>();
+		List<VirtualPeerRemoval> virtualPeersToRemove = new ArrayList<>();
 
 		// Hashes marked for removal
-		hashesToRemove.stream()
-				.map(incomingHashes::remove)
-				.filter(Objects::nonNull)
-				.map(HashInfo::getTunnels)
-				.forEach(tunnelId -> tunnelId.forEach(id -> closeTunnel(id, virtualPeersToRemove)));
+		hashesToRemove.forEach(hash -> {
+			var hashInfo = incomingHashes.remove(hash);
+			if (hashInfo != null)
+			{
+				requestHashes.remove(hashInfo.getLastRequest(), hash);
+				hashInfo.getTunnels().forEach(id -> closeTunnel(id, virtualPeersToRemove));
+			}
+		});
 
 		hashesToRemove.clear();
 
-		// Search requests
-		searchRequestsOrigins.entrySet().removeIf(entry ->
-				Duration.between(entry.getValue().getLastUsed(), now).compareTo(SEARCH_REQUEST_LIFETIME) > 0);
+		// Remove all the virtual peer ids from the clients
+		virtualPeersToRemove.forEach(removal -> removal.client().removeVirtualPeer(removal.hash(), removal.virtualLocation()));
+	}
 
-		// Tunnel requests
-		tunnelRequestsOrigins.entrySet().removeIf(entry ->
-				Duration.between(entry.getValue().getLastUsed(), now).compareTo(TUNNEL_REQUEST_LIFETIME) > 0);
+	private void scheduleTunnelTimeout(int tunnelId, Duration delay)
+	{
+		scheduleTimeout(tunnelTimeouts, tunnelId, delay);
+	}
 
-		// Tunnels
-		localTunnels.entrySet().stream()
-				.filter(entry -> Duration.between(entry.getValue().getLastUsed(), now).compareTo(MAX_TUNNEL_IDLE_TIME) > 0)
-				.forEach(entry -> closeTunnel(entry.getKey(), virtualPeersToRemove));
+	private static void scheduleTimeout(TimerWheel<Integer> timeouts, int id, Duration delay)
+	{
+		timeouts.schedule(id, System.nanoTime() + delay.toNanos());
+	}
 
-		// Remove all the virtual peer ids from the clients
-		virtualPeersToRemove.forEach((client, entry) -> client.removeVirtualPeer(entry.getKey(), entry.getValue()));
+	private void expireRequests()
+	{
+		expireRequests(Instant.now(), System.nanoTime());
+	}
+
+	/**
+	 * Removes the search and tunnel requests that reached their lifetime. Only the requests
+	 * whose timeout expired are looked at.
+	 *
+	 * @param now     the current time
+	 * @param nanoNow the current time, in nanoseconds, as used by the timer wheels
+	 */
+	void expireRequests(Instant now, long nanoNow)
+	{
+		expireRequests(searchRequestTimeouts, searchRequestsOrigins, SearchRequest::getLastUsed, SEARCH_REQUEST_LIFETIME, now, nanoNow,
+				this::removeSearchRequestFromCache);
+
+		expireRequests(tunnelRequestTimeouts, tunnelRequestsOrigins, TunnelRequest::getLastUsed, TUNNEL_REQUEST_LIFETIME, now, nanoNow,
+				(requestId, tunnelRequest) -> {
+				});
+	}
+
+	private static <T> void expireRequests(TimerWheel<Integer> timeouts, Map<Integer, T> requests, Function<T, Instant> lastUsed, Duration lifetime, Instant now, long nanoNow, BiConsumer<Integer, T> removed)
+	{
+		timeouts.expire(nanoNow, requestId -> {
+			var request = requests.get(requestId);
+			if (request == null)
+			{
+				return;
+			}
+			var age = Duration.between(lastUsed.apply(request), now);
+			if (age.compareTo(lifetime) >= 0)
+			{
+				if (requests.remove(requestId, request))
+				{
+					removed.accept(requestId, request);
+				}
+			}
+			else
+			{
+				// Replaced by a newer request with the same id
+				scheduleTimeout(timeouts, requestId, lifetime.minus(age));
+			}
+		});
+	}
+
+	/**
+	 * Closes the tunnels that have been idle for too long. Only the tunnels whose timeout expired are
+	 * looked at. The ones that were used in the meantime are scheduled again.
+	 */
+	private void expireTunnels()
+	{
+		var now = Instant.now();
+		List<VirtualPeerRemoval> virtualPeersToRemove = new ArrayList<>();
+
+		tunnelTimeouts.expire(System.nanoTime(), tunnelId -> {
+			var tunnel = localTunnels.get(tunnelId);
+			if (tunnel == null)
+			{
+				return; // Already closed
+			}
+			var idleTime = Duration.between(tunnel.getLastUsed(), now);
+			if (idleTime.compareTo(MAX_TUNNEL_IDLE_TIME) > 0)
+			{
+				closeTunnel(tunnelId, virtualPeersToRemove);
+			}
+			else
+			{
+				scheduleTunnelTimeout(tunnelId, MAX_TUNNEL_IDLE_TIME.minus(idleTime));
+			}
+		});
+
+		virtualPeersToRemove.forEach(removal -> removal.client().removeVirtualPeer(removal.hash(), removal.virtualLocation()));
 	}
 
-	private void closeTunnel(int id, Map<TurtleRsClient, AbstractMap.SimpleEntry<Sha1Sum, Location>> sourcesToRemove)
+	private void closeTunnel(int id, List<VirtualPeerRemoval> sourcesToRemove)
 	{
 		log.debug("Closing tunnel {}", id);
 		var tunnel = localTunnels.get(id);
@@ -889,7 +1084,7 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 			// Remove the tunnel id from the file hash
 			Optional.ofNullable(incomingHashes.get(tunnel.getHash())).ifPresent(hashInfo -> {
 				hashInfo.removeTunnel(id);
-				sourcesToRemove.put(hashInfo.getClient(), new AbstractMap.SimpleEntry<>(tunnel.getHash(), tunnel.getVirtualLocation()));
+				sourcesToRemove.add(new VirtualPeerRemoval(hashInfo.getClient(), tunnel.getHash(), tunnel.getVirtualLocation()));
 			});
 		}
 		else if (tunnel.getDestination().equals(ownLocation))
@@ -899,7 +1094,7 @@ public class TurtleRsService extends RsService implements RsServiceMaster<Turtle
 			var client = outgoingTunnelClients.remove(id);
 			if (client != null)
 			{
-				sourcesToRemove.put(client, new AbstractMap.SimpleEntry<>(tunnel.getHash(), tunnel.getVirtualLocation()));
+				sourcesToRemove.add(new VirtualPeerRemoval(client, tunnel.getHash(), tunnel.getVirtualLocation()));
 
 				// Remove associated virtual peers
 				virtualPeers.remove(tunnel.getVirtualLocation().getLocationId());
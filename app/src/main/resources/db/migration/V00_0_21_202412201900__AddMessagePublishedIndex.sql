@@ -0,0 +1,4 @@
+--
+-- Add an index for paging messages by publication date
+--
+CREATE INDEX idx_gxs_id_published ON gxs_message (gxs_id, published, id);
@@ -0,0 +1,18 @@
+--
+-- Add forum threads
+--
+CREATE TABLE forum_thread_node
+(
+	id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+	gxs_id        BINARY(16) NOT NULL,
+	message_id    BIGINT     NOT NULL UNIQUE,
+	parent_id     BIGINT,
+	root_id       BIGINT     NOT NULL,
+	depth         INT        NOT NULL DEFAULT 0,
+	reply_count   INT        NOT NULL DEFAULT 0,
+	last_activity TIMESTAMP(9)
+);
+CREATE INDEX idx_thread_root_id ON forum_thread_node (root_id);
+CREATE INDEX idx_thread_activity ON forum_thread_node (gxs_id, parent_id, last_activity);
+
+CREATE INDEX idx_parent_id ON gxs_message (parent_id);
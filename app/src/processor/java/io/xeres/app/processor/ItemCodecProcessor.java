@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Generates an {@code ItemCodec} for each item using {@code @RsSerialized} fields.
+ * <p>
+ * The generated codec reads and writes the fields in the same order as the reflective serializer, using one
+ * constant {@code VarHandle} per field so that the JIT can inline everything. Items with field types that
+ * are not handled here (maps, lists, nested objects, ...) are skipped and keep using the reflective serializer.
+ * <p>
+ * The names of the items having a generated codec are listed in the {@value #REGISTRY} resource.
+ */
+@SupportedAnnotationTypes(ItemCodecProcessor.RS_SERIALIZED)
+public class ItemCodecProcessor extends AbstractProcessor
+{
+	static final String RS_SERIALIZED = "io.xeres.app.xrs.serialization.RsSerialized";
+	private static final String RS_CLASS_SERIALIZED_REVERSED = "io.xeres.app.xrs.serialization.RsClassSerializedReversed";
+	private static final String RS_SERIALIZABLE = "io.xeres.app.xrs.serialization.RsSerializable";
+	private static final String GXS_META_AND_DATA = "io.xeres.app.database.model.gxs.GxsMetaAndData";
+	private static final String ITEM = "io.xeres.app.xrs.item.Item";
+	private static final String IDENTIFIER = "io.xeres.common.id.Identifier";
+	private static final String TLV_TYPE = "TlvType";
+	private static final String FIELD_SIZE = "FieldSize";
+	private static final String SERIALIZER = "Serializer";
+	private static final String CODEC_SUFFIX = "Codec";
+	static final String REGISTRY = "META-INF/xeres/item-codecs";
+
+	private final Set<String> generatedItems = new TreeSet<>();
+
+	private record FieldCode(String handleName, VariableElement field, TypeElement declaringClass, String write, String read)
+	{
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		if (roundEnv.processingOver())
+		{
+			writeRegistry();
+			return false;
+		}
+
+		if (annotations.isEmpty() || processingEnv.getElementUtils().getTypeElement(ITEM) == null)
+		{
+			return false;
+		}
+
+		for (var type : ElementFilter.typesIn(roundEnv.getRootElements()))
+		{
+			if (isCandidate(type))
+			{
+				var fields = getFieldCodes(type);
+				if (fields != null && !fields.isEmpty() && writeCodec(type, fields))
+				{
+					generatedItems.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean isCandidate(TypeElement type)
+	{
+		return type.getKind() == ElementKind.CLASS
+				&& type.getModifiers().contains(Modifier.PUBLIC)
+				&& !type.getModifiers().contains(Modifier.ABSTRACT)
+				&& type.getTypeParameters().isEmpty()
+				&& isAssignable(type.asType(), ITEM)
+				&& !isAssignable(type.asType(), RS_SERIALIZABLE)
+				&& !isAssignable(type.asType(), GXS_META_AND_DATA);
+	}
+
+	/**
+	 * Builds the code of all fields, in the same order as the reflective serializer.
+	 *
+	 * @param type the item class
+	 * @return the code of the fields or null if at least one field is not supported
+	 */
+	private List<FieldCode> getFieldCodes(TypeElement type)
+	{
+		var reversed = type.getAnnotationMirrors().stream().anyMatch(mirror -> isAnnotation(mirror, RS_CLASS_SERIALIZED_REVERSED));
+
+		var hierarchy = new ArrayList<TypeElement>();
+		var current = type;
+		while (current != null && !current.getQualifiedName().contentEquals(ITEM))
+		{
+			hierarchy.add(current);
+			current = getSuperclass(current);
+		}
+		if (!reversed)
+		{
+			Collections.reverse(hierarchy);
+		}
+
+		var fieldCodes = new ArrayList<FieldCode>();
+		var handleNames = new HashSet<String>();
+		for (var declaringClass : hierarchy)
+		{
+			for (var field : ElementFilter.fieldsIn(declaringClass.getEnclosedElements()))
+			{
+				var annotation = field.getAnnotationMirrors().stream()
+						.filter(mirror -> isAnnotation(mirror, RS_SERIALIZED))
+						.findFirst();
+				if (annotation.isEmpty())
+				{
+					continue;
+				}
+				var handleName = getHandleName(field, handleNames);
+				var fieldCode = getFieldCode(handleName, field, declaringClass, annotation.get());
+				if (fieldCode == null)
+				{
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Field type not supported by generated codecs, using reflection for " + type.getSimpleName(), field);
+					return null;
+				}
+				fieldCodes.add(fieldCode);
+			}
+		}
+		return fieldCodes;
+	}
+
+	private FieldCode getFieldCode(String handleName, VariableElement field, TypeElement declaringClass, AnnotationMirror annotation)
+	{
+		if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.FINAL))
+		{
+			return null;
+		}
+
+		var fieldType = field.asType();
+		var erasure = processingEnv.getTypeUtils().erasure(fieldType).toString();
+		var get = handleName + ".get(item)";
+
+		var tlvType = getAnnotationValue(annotation, "tlvType");
+		if (!"NONE".equals(tlvType))
+		{
+			if (!isAccessible(fieldType))
+			{
+				return null;
+			}
+			return new FieldCode(handleName, field, declaringClass,
+					SERIALIZER + ".serialize(buf, " + TLV_TYPE + "." + tlvType + ", " + get + ")",
+					"(" + erasure + ") " + SERIALIZER + ".deserialize(buf, " + TLV_TYPE + "." + tlvType + ")");
+		}
+
+		return switch (fieldType.getKind())
+		{
+			case INT -> primitive(handleName, field, declaringClass, "int", "Int");
+			case SHORT -> primitive(handleName, field, declaringClass, "short", "Short");
+			case BYTE -> primitive(handleName, field, declaringClass, "byte", "Byte");
+			case LONG -> primitive(handleName, field, declaringClass, "long", "Long");
+			case FLOAT -> primitive(handleName, field, declaringClass, "float", "Float");
+			case DOUBLE -> primitive(handleName, field, declaringClass, "double", "Double");
+			case BOOLEAN -> primitive(handleName, field, declaringClass, "boolean", "Boolean");
+			case ARRAY -> "byte[]".equals(erasure) ? new FieldCode(handleName, field, declaringClass,
+					SERIALIZER + ".serialize(buf, (byte[]) " + get + ")",
+					SERIALIZER + ".deserializeByteArray(buf)") : null;
+			case DECLARED -> getDeclaredFieldCode(handleName, field, declaringClass, (DeclaredType) fieldType, annotation);
+			default -> null;
+		};
+	}
+
+	private FieldCode primitive(String handleName, VariableElement field, TypeElement declaringClass, String type, String name)
+	{
+		return new FieldCode(handleName, field, declaringClass,
+				SERIALIZER + ".serialize(buf, (" + type + ") " + handleName + ".get(item))",
+				SERIALIZER + ".deserialize" + name + "(buf)");
+	}
+
+	private FieldCode getDeclaredFieldCode(String handleName, VariableElement field, TypeElement declaringClass, DeclaredType fieldType, AnnotationMirror annotation)
+	{
+		if (!isAccessible(fieldType))
+		{
+			return null;
+		}
+		var typeElement = (TypeElement) fieldType.asElement();
+		var typeName = typeElement.getQualifiedName().toString();
+		var get = handleName + ".get(item)";
+
+		if (typeName.equals("java.lang.String"))
+		{
+			return new FieldCode(handleName, field, declaringClass,
+					SERIALIZER + ".serialize(buf, (String) " + get + ")",
+					SERIALIZER + ".deserializeString(buf)");
+		}
+		else if (typeElement.getKind() == ElementKind.ENUM)
+		{
+			return new FieldCode(handleName, field, declaringClass,
+					SERIALIZER + ".serialize(buf, (Enum<?>) " + get + ")",
+					SERIALIZER + ".deserializeEnum(buf, " + typeName + ".class)");
+		}
+		else if (isAssignable(fieldType, IDENTIFIER))
+		{
+			return new FieldCode(handleName, field, declaringClass,
+					SERIALIZER + ".serialize(buf, (" + typeName + ") " + get + ", " + typeName + ".class)",
+					"(" + typeName + ") " + SERIALIZER + ".deserializeIdentifier(buf, " + typeName + ".class)");
+		}
+		else if ((typeName.equals("java.util.Set") || typeName.equals("java.util.EnumSet")) && fieldType.getTypeArguments().size() == 1)
+		{
+			var argument = fieldType.getTypeArguments().get(0);
+			if (argument.getKind() != TypeKind.DECLARED || ((DeclaredType) argument).asElement().getKind() != ElementKind.ENUM || !isAccessible(argument))
+			{
+				return null;
+			}
+			var enumName = ((TypeElement) ((DeclaredType) argument).asElement()).getQualifiedName();
+			var fieldSize = FIELD_SIZE + "." + getAnnotationValue(annotation, "fieldSize");
+			return new FieldCode(handleName, field, declaringClass,
+					SERIALIZER + ".serialize(buf, (java.util.Set<" + enumName + ">) " + get + ", " + fieldSize + ")",
+					SERIALIZER + ".deserializeEnumSet(buf, " + enumName + ".class, " + fieldSize + ")");
+		}
+		return null;
+	}
+
+	private boolean writeCodec(TypeElement type, List<FieldCode> fieldCodes)
+	{
+		var packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		var itemName = type.getSimpleName().toString();
+		var codecName = itemName + CODEC_SUFFIX;
+
+		try (var out = new PrintWriter(processingEnv.getFiler().createSourceFile(packageName + "." + codecName, type).openWriter()))
+		{
+			out.println("package " + packageName + ";");
+			out.println();
+			out.println("import io.netty.buffer.ByteBuf;");
+			out.println("import io.xeres.app.xrs.item.ItemCodec;");
+			out.println("import io.xeres.app.xrs.item.ItemCodecs;");
+			out.println("import io.xeres.app.xrs.serialization.FieldSize;");
+			out.println("import io.xeres.app.xrs.serialization.Serializer;");
+			out.println("import io.xeres.app.xrs.serialization.TlvType;");
+			out.println();
+			out.println("import java.lang.invoke.VarHandle;");
+			out.println();
+			out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+			out.println("@SuppressWarnings(\"unchecked\")");
+			out.println("public final class " + codecName + " implements ItemCodec<" + itemName + ">");
+			out.println("{");
+			for (var fieldCode : fieldCodes)
+			{
+				out.println("\tprivate static final VarHandle " + fieldCode.handleName() + " = ItemCodecs.findVarHandle(" + itemName + ".class, \""
+						+ processingEnv.getElementUtils().getBinaryName(fieldCode.declaringClass()) + "\", \""
+						+ fieldCode.field().getSimpleName() + "\", "
+						+ processingEnv.getTypeUtils().erasure(fieldCode.field().asType()) + ".class);");
+			}
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic int serialize(ByteBuf buf, " + itemName + " item)");
+			out.println("\t{");
+			out.println("\t\tvar size = 0;");
+			for (var fieldCode : fieldCodes)
+			{
+				out.println("\t\tsize += " + fieldCode.write() + ";");
+			}
+			out.println("\t\treturn size;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic void deserialize(ByteBuf buf, " + itemName + " item)");
+			out.println("\t{");
+			for (var fieldCode : fieldCodes)
+			{
+				out.println("\t\t" + fieldCode.handleName() + ".set(item, " + fieldCode.read() + ");");
+			}
+			out.println("\t}");
+			out.println("}");
+			return true;
+		}
+		catch (IOException e)
+		{
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Couldn't write codec: " + e.getMessage(), type);
+			return false;
+		}
+	}
+
+	private void writeRegistry()
+	{
+		if (generatedItems.isEmpty())
+		{
+			return;
+		}
+
+		try (var out = new PrintWriter(processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY).openWriter()))
+		{
+			generatedItems.forEach(out::println);
+		}
+		catch (IOException e)
+		{
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Couldn't write codec registry: " + e.getMessage());
+		}
+	}
+
+	private static String getHandleName(VariableElement field, Set<String> handleNames)
+	{
+		var name = field.getSimpleName().toString().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+		var handleName = name;
+		var index = 1;
+		while (!handleNames.add(handleName))
+		{
+			handleName = name + "_" + index++;
+		}
+		return handleName;
+	}
+
+	private String getAnnotationValue(AnnotationMirror annotation, String name)
+	{
+		return processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet().stream()
+				.filter(entry -> entry.getKey().getSimpleName().contentEquals(name))
+				.map(entry -> entry.getValue().getValue())
+				.map(value -> value instanceof VariableElement variableElement ? variableElement.getSimpleName().toString() : value.toString())
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private TypeElement getSuperclass(TypeElement type)
+	{
+		var superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED)
+		{
+			return null;
+		}
+		return (TypeElement) ((DeclaredType) superclass).asElement();
+	}
+
+	private boolean isAssignable(TypeMirror type, String className)
+	{
+		var classElement = processingEnv.getElementUtils().getTypeElement(className);
+		if (classElement == null)
+		{
+			return false;
+		}
+		var typeUtils = processingEnv.getTypeUtils();
+		return typeUtils.isAssignable(typeUtils.erasure(type), typeUtils.erasure(classElement.asType()));
+	}
+
+	/**
+	 * Checks if the generated code can name the type. The codec is in the package of the item, but the type could be
+	 * nested in a private class, etc... so only public types are allowed.
+	 */
+	private boolean isAccessible(TypeMirror type)
+	{
+		if (type.getKind() == TypeKind.ARRAY)
+		{
+			return isAccessible(((ArrayType) type).getComponentType());
+		}
+		else if (type.getKind() != TypeKind.DECLARED)
+		{
+			return type.getKind().isPrimitive();
+		}
+		Element element = ((DeclaredType) type).asElement();
+		while (element instanceof TypeElement)
+		{
+			if (!element.getModifiers().contains(Modifier.PUBLIC))
+			{
+				return false;
+			}
+			element = element.getEnclosingElement();
+		}
+		return true;
+	}
+
+	private static boolean isAnnotation(AnnotationMirror mirror, String className)
+	{
+		return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(className);
+	}
+}
@@ -20,12 +20,17 @@
 package io.xeres.app.api.controller.forum;
 
 import io.xeres.app.api.controller.AbstractControllerTest;
+import io.xeres.app.database.model.forum.ForumMessageCursor;
+import io.xeres.app.database.model.forum.ForumMessageItemSummary;
+import io.xeres.app.database.model.forum.ForumThreadNode;
 import io.xeres.app.database.model.gxs.ForumGroupItemFakes;
 import io.xeres.app.service.ForumMessageService;
+import io.xeres.app.service.ForumThreadService;
 import io.xeres.app.service.IdentityService;
 import io.xeres.app.xrs.service.forum.ForumRsService;
 import io.xeres.app.xrs.service.identity.IdentityRsService;
 import io.xeres.common.rest.forum.UpdateForumMessagesReadRequest;
+import io.xeres.testutils.IdFakes;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -33,11 +38,21 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static io.xeres.common.rest.PathConfig.FORUMS_PATH;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -61,6 +76,9 @@ class ForumControllerTest extends AbstractControllerTest
 	@MockitoBean
 	private ForumMessageService forumMessageService;
 
+	@MockitoBean
+	private ForumThreadService forumThreadService;
+
 	@Autowired
 	public MockMvc mvc;
 
@@ -80,6 +98,170 @@ class ForumControllerTest extends AbstractControllerTest
 		verify(forumRsService).findAllGroups();
 	}
 
+	@Test
+	void GetForumMessagesPage_Success() throws Exception
+	{
+		var now = Instant.now();
+		var forumMessages = List.of(createSummary(3L, now), createSummary(2L, now), createSummary(1L, now.minusSeconds(60)));
+
+		when(forumRsService.findMessagesSummaryPage(1L, null, 3)).thenReturn(forumMessages);
+		when(forumMessageService.getAuthorsMapFromSummaries(anyList())).thenReturn(Collections.emptyMap());
+		when(forumMessageService.getMessageIdsMapFromSummaries(eq(1L), anyList())).thenReturn(Collections.emptyMap());
+
+		mvc.perform(getJson(BASE_URL + "/groups/1/messages/page?size=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.messages.length()", is(2)))
+				.andExpect(jsonPath("$.messages[0].id").value(is(3L), Long.class))
+				.andExpect(jsonPath("$.messages[1].id").value(is(2L), Long.class))
+				.andExpect(jsonPath("$.nextCursor", is(new ForumMessageCursor(now, 2L).encode())));
+	}
+
+	@Test
+	void GetForumMessagesPage_LastPage_Success() throws Exception
+	{
+		var now = Instant.now();
+		var cursor = new ForumMessageCursor(now, 2L);
+		var forumMessages = List.of(createSummary(1L, now.minusSeconds(60)));
+
+		when(forumRsService.findMessagesSummaryPage(1L, cursor, 3)).thenReturn(forumMessages);
+		when(forumMessageService.getAuthorsMapFromSummaries(anyList())).thenReturn(Collections.emptyMap());
+		when(forumMessageService.getMessageIdsMapFromSummaries(eq(1L), anyList())).thenReturn(Collections.emptyMap());
+
+		mvc.perform(getJson(BASE_URL + "/groups/1/messages/page?size=2&cursor=" + cursor.encode()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.messages.length()", is(1)))
+				.andExpect(jsonPath("$.nextCursor", nullValue()));
+	}
+
+	@Test
+	void GetForumMessagesPage_Undated_Success() throws Exception
+	{
+		var forumMessages = List.of(createSummary(3L, Instant.now()), createSummary(2L, null), createSummary(1L, null));
+
+		when(forumRsService.findMessagesSummaryPage(1L, null, 3)).thenReturn(forumMessages);
+		when(forumMessageService.getAuthorsMapFromSummaries(anyList())).thenReturn(Collections.emptyMap());
+		when(forumMessageService.getMessageIdsMapFromSummaries(eq(1L), anyList())).thenReturn(Collections.emptyMap());
+
+		mvc.perform(getJson(BASE_URL + "/groups/1/messages/page?size=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.messages.length()", is(2)))
+				.andExpect(jsonPath("$.nextCursor", is(new ForumMessageCursor(null, 2L).encode())));
+	}
+
+	@Test
+	void GetForumMessagesPage_InvalidCursor() throws Exception
+	{
+		mvc.perform(getJson(BASE_URL + "/groups/1/messages/page?cursor=!!!"))
+				.andExpect(status().isBadRequest());
+
+		verify(forumRsService, never()).findMessagesSummaryPage(eq(1L), any(), anyInt());
+	}
+
+	@Test
+	void GetForumThreads_Success() throws Exception
+	{
+		var now = Instant.now();
+		var groupId = IdFakes.createGxsId();
+		var thread1 = new ForumThreadNode(groupId, 2L, now);
+		thread1.setReplyCount(5);
+		var thread2 = new ForumThreadNode(groupId, 1L, now.minusSeconds(60));
+
+		when(forumThreadService.findThreads(1L, null, 501)).thenReturn(List.of(thread1, thread2));
+		when(forumRsService.findMessagesSummary(List.of(2L, 1L))).thenReturn(List.of(createSummary(2L, now), createSummary(1L, now.minusSeconds(60))));
+		when(forumMessageService.getAuthorsMapFromSummaries(anyList())).thenReturn(Collections.emptyMap());
+		when(forumMessageService.getMessageIdsMapFromSummaries(eq(1L), anyList())).thenReturn(Collections.emptyMap());
+
+		mvc.perform(getJson(BASE_URL + "/groups/1/threads"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.threads.length()", is(2)))
+				.andExpect(jsonPath("$.threads[0].message.id").value(is(2L), Long.class))
+				.andExpect(jsonPath("$.threads[0].replyCount", is(5)))
+				.andExpect(jsonPath("$.threads[1].message.id").value(is(1L), Long.class))
+				.andExpect(jsonPath("$.nextCursor", nullValue()));
+	}
+
+	@Test
+	void GetForumReplies_Success() throws Exception
+	{
+		var now = Instant.now();
+		var forumGroup = ForumGroupItemFakes.createForumGroupItem();
+		var reply1 = new ForumThreadNode(forumGroup.getGxsId(), 2L, now);
+		reply1.setParentId(1L);
+		reply1.setReplyCount(3);
+		var reply2 = new ForumThreadNode(forumGroup.getGxsId(), 3L, now);
+		reply2.setParentId(1L);
+
+		when(forumThreadService.findReplies(1L)).thenReturn(List.of(reply1, reply2));
+		when(forumRsService.findByGxsId(forumGroup.getGxsId())).thenReturn(Optional.of(forumGroup));
+		when(forumRsService.findMessagesSummary(List.of(2L, 3L))).thenReturn(List.of(createSummary(2L, now), createSummary(3L, now)));
+		when(forumMessageService.getAuthorsMapFromSummaries(anyList())).thenReturn(Collections.emptyMap());
+		when(forumMessageService.getMessageIdsMapFromSummaries(eq(forumGroup.getId()), anyList())).thenReturn(Collections.emptyMap());
+
+		mvc.perform(getJson(BASE_URL + "/messages/1/replies"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(2)))
+				.andExpect(jsonPath("$[0].message.id").value(is(2L), Long.class))
+				.andExpect(jsonPath("$[0].replyCount", is(3)))
+				.andExpect(jsonPath("$[1].message.id").value(is(3L), Long.class));
+	}
+
+	@Test
+	void GetForumReplies_None_Success() throws Exception
+	{
+		when(forumThreadService.findReplies(1L)).thenReturn(List.of());
+
+		mvc.perform(getJson(BASE_URL + "/messages/1/replies"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(0)));
+	}
+
+	@Test
+	void GetForumMessagePath_Success() throws Exception
+	{
+		var now = Instant.now();
+		var messageId = IdFakes.createMessageId();
+		var root = new ForumThreadNode(IdFakes.createGxsId(), 1L, now);
+		root.setReplyCount(1);
+		var reply = new ForumThreadNode(root.getGxsId(), 2L, now);
+		reply.setParentId(1L);
+
+		when(forumThreadService.findPath(1L, messageId)).thenReturn(List.of(root, reply));
+		when(forumRsService.findMessagesSummary(List.of(1L, 2L))).thenReturn(List.of(createSummary(1L, now), createSummary(2L, now)));
+		when(forumMessageService.getAuthorsMapFromSummaries(anyList())).thenReturn(Collections.emptyMap());
+		when(forumMessageService.getMessageIdsMapFromSummaries(eq(1L), anyList())).thenReturn(Collections.emptyMap());
+
+		mvc.perform(getJson(BASE_URL + "/groups/1/messages/path?messageId=" + messageId))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(2)))
+				.andExpect(jsonPath("$[0].message.id").value(is(1L), Long.class))
+				.andExpect(jsonPath("$[0].replyCount", is(1)))
+				.andExpect(jsonPath("$[1].message.id").value(is(2L), Long.class));
+	}
+
+	@Test
+	void GetForumMessagePath_Unknown_Empty() throws Exception
+	{
+		var messageId = IdFakes.createMessageId();
+
+		when(forumThreadService.findPath(1L, messageId)).thenReturn(List.of());
+
+		mvc.perform(getJson(BASE_URL + "/groups/1/messages/path?messageId=" + messageId))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(0)));
+	}
+
+	@Test
+	void GetForumAncestors_Success() throws Exception
+	{
+		when(forumThreadService.findAncestorIds(3L)).thenReturn(List.of(2L, 1L));
+
+		mvc.perform(getJson(BASE_URL + "/messages/3/ancestors"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(2)))
+				.andExpect(jsonPath("$[0]").value(is(2L), Long.class))
+				.andExpect(jsonPath("$[1]").value(is(1L), Long.class));
+	}
+
 	@Test
 	void UpdateMessagesReadFlag_Success() throws Exception
 	{
@@ -91,4 +273,13 @@ class ForumControllerTest extends AbstractControllerTest
 
 		verify(forumRsService).setForumMessagesAsRead(ids);
 	}
+
+	private static ForumMessageItemSummary createSummary(long id, Instant published)
+	{
+		var summary = mock(ForumMessageItemSummary.class);
+		when(summary.getId()).thenReturn(id);
+		when(summary.getPublished()).thenReturn(published);
+		when(summary.getName()).thenReturn("Message " + id);
+		return summary;
+	}
 }
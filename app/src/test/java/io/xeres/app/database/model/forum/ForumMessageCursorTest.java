@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.xeres.app.database.model.forum;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ForumMessageCursorTest
+{
+	@Test
+	void EncodeDecode_Success()
+	{
+		var cursor = new ForumMessageCursor(Instant.ofEpochSecond(1_700_000_000L, 123_456_789), 42L);
+
+		assertEquals(cursor, ForumMessageCursor.decode(cursor.encode()));
+	}
+
+	@Test
+	void EncodeDecode_Undated_Success()
+	{
+		var cursor = new ForumMessageCursor(null, 42L);
+
+		assertEquals(cursor, ForumMessageCursor.decode(cursor.encode()));
+	}
+
+	@Test
+	void Decode_Invalid()
+	{
+		assertThrows(IllegalArgumentException.class, () -> ForumMessageCursor.decode("foobar"));
+		assertThrows(IllegalArgumentException.class, () -> ForumMessageCursor.decode("!!!"));
+	}
+}
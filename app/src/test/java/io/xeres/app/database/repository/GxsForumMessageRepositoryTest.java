@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.database.repository;
+
+import io.xeres.app.xrs.service.forum.item.ForumMessageItem;
+import io.xeres.testutils.IdFakes;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+class GxsForumMessageRepositoryTest
+{
+	@Autowired
+	private GxsForumMessageRepository gxsForumMessageRepository;
+
+	@Test
+	void FindSummaryPages_UndatedMessagesLast()
+	{
+		var gxsId = IdFakes.createGxsId();
+
+		var undated1 = gxsForumMessageRepository.save(new ForumMessageItem(gxsId, IdFakes.createMessageId(), "undated 1"));
+		var dated1 = new ForumMessageItem(gxsId, IdFakes.createMessageId(), "dated 1");
+		dated1.updatePublished();
+		dated1 = gxsForumMessageRepository.save(dated1);
+		var undated2 = gxsForumMessageRepository.save(new ForumMessageItem(gxsId, IdFakes.createMessageId(), "undated 2"));
+		var dated2 = new ForumMessageItem(gxsId, IdFakes.createMessageId(), "dated 2");
+		dated2.updatePublished();
+		dated2 = gxsForumMessageRepository.save(dated2);
+
+		// Fetch one message per page, so that the cursor walks through both segments
+		List<Long> ids = new ArrayList<>();
+		var page = gxsForumMessageRepository.findSummaryAllDatedByGxsIdFirst(gxsId, Limit.of(1));
+		while (!page.isEmpty())
+		{
+			ids.add(page.getFirst().getId());
+			page = gxsForumMessageRepository.findSummaryAllDatedByGxsIdBefore(gxsId, page.getFirst().getPublished(), page.getFirst().getId(), Limit.of(1));
+		}
+		page = gxsForumMessageRepository.findSummaryAllUndatedByGxsIdFirst(gxsId, Limit.of(1));
+		while (!page.isEmpty())
+		{
+			ids.add(page.getFirst().getId());
+			page = gxsForumMessageRepository.findSummaryAllUndatedByGxsIdBefore(gxsId, page.getFirst().getId(), Limit.of(1));
+		}
+
+		assertEquals(List.of(dated2.getId(), dated1.getId(), undated2.getId(), undated1.getId()), ids);
+	}
+}
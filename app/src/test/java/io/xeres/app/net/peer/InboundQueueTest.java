@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.net.peer;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundQueueTest
+{
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	@Test
+	void Add_MixedBlockingAndNonBlocking_InOrder()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var inboundQueue = new InboundQueue(channel.pipeline().firstContext());
+		var handled = new ConcurrentLinkedQueue<Integer>();
+		var latch = new CountDownLatch(1);
+
+		dispatch(inboundQueue, true, () -> {
+			waitFor(latch);
+			handled.add(1);
+		});
+		dispatch(inboundQueue, false, () -> handled.add(2)); // Must not overtake the blocking one
+		dispatch(inboundQueue, true, () -> handled.add(3));
+		dispatch(inboundQueue, false, () -> handled.add(4));
+		assertTrue(handled.isEmpty());
+		assertEquals(4, inboundQueue.getDepth());
+
+		latch.countDown();
+		await().atMost(TIMEOUT).until(inboundQueue::isEmpty);
+
+		dispatch(inboundQueue, false, () -> handled.add(5)); // Empty queue, run right away
+		assertEquals(List.of(1, 2, 3, 4, 5), new ArrayList<>(handled));
+	}
+
+	@Test
+	void Add_TooManyPending_SuspendsReads()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var inboundQueue = new InboundQueue(channel.pipeline().firstContext());
+		var autoReads = new boolean[256];
+		var latch = new CountDownLatch(1);
+
+		inboundQueue.add(() -> {
+			waitFor(latch);
+			autoReads[0] = channel.config().isAutoRead();
+		});
+		for (var i = 1; i < autoReads.length; i++)
+		{
+			assertTrue(channel.config().isAutoRead());
+			var index = i;
+			inboundQueue.add(() -> autoReads[index] = channel.config().isAutoRead());
+		}
+		assertFalse(channel.config().isAutoRead());
+
+		latch.countDown();
+		await().atMost(TIMEOUT).until(inboundQueue::isEmpty);
+
+		assertTrue(channel.config().isAutoRead());
+		assertFalse(autoReads[191]); // 65 still pending while it runs
+		assertTrue(autoReads[192]); // Resumed once 64 are left
+	}
+
+	@Test
+	void Add_ConcurrentProducers_AllRun() throws InterruptedException
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var inboundQueue = new InboundQueue(channel.pipeline().firstContext());
+		var handled = new AtomicInteger();
+		var producers = 4;
+		var tasksPerProducer = 25_000;
+
+		// Tasks added while the queue is being found empty must not be stranded
+		var threads = new ArrayList<Thread>();
+		for (var i = 0; i < producers; i++)
+		{
+			threads.add(Thread.ofPlatform().start(() -> {
+				for (var j = 0; j < tasksPerProducer; j++)
+				{
+					inboundQueue.add(handled::incrementAndGet);
+				}
+			}));
+		}
+		for (var thread : threads)
+		{
+			thread.join(TIMEOUT.toMillis());
+		}
+
+		await().atMost(TIMEOUT).until(() -> handled.get() == producers * tasksPerProducer);
+		assertTrue(inboundQueue.isEmpty());
+	}
+
+	@Test
+	void Add_TaskFails_NextOnesRun()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var inboundQueue = new InboundQueue(channel.pipeline().firstContext());
+		var handled = new AtomicInteger();
+
+		inboundQueue.add(() -> {
+			throw new IllegalStateException("failed");
+		});
+		inboundQueue.add(handled::incrementAndGet);
+
+		await().atMost(TIMEOUT).until(inboundQueue::isEmpty);
+		assertEquals(1, handled.get());
+	}
+
+	/**
+	 * Same as what PeerHandler does.
+	 */
+	private static void dispatch(InboundQueue inboundQueue, boolean blocking, Runnable task)
+	{
+		if (blocking || !inboundQueue.isEmpty())
+		{
+			inboundQueue.add(task);
+		}
+		else
+		{
+			task.run();
+		}
+	}
+
+	private static void waitFor(CountDownLatch latch)
+	{
+		try
+		{
+			if (!latch.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+			{
+				throw new IllegalStateException("Timeout");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
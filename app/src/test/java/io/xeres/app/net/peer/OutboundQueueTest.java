@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.net.peer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.xeres.app.net.peer.packet.SimplePacketBuilder;
+import io.xeres.app.net.peer.pipeline.ItemDecoder;
+import io.xeres.app.net.peer.pipeline.ItemEncoder;
+import io.xeres.app.net.peer.pipeline.MultiPacketEncoder;
+import io.xeres.app.net.peer.pipeline.PacketDecoder;
+import io.xeres.app.xrs.item.ItemPriority;
+import io.xeres.app.xrs.item.RawItem;
+import io.xeres.testutils.RandomUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.xeres.app.net.peer.packet.Packet.OPTIMAL_PACKET_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest
+{
+	@Test
+	void Add_HigherPriorityFirst()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var outboundQueue = new OutboundQueue(channel.pipeline().firstContext());
+
+		var background = createRawItem(ItemPriority.BACKGROUND);
+		var realtime = createRawItem(ItemPriority.REALTIME);
+
+		outboundQueue.add(background);
+		outboundQueue.add(realtime);
+		assertEquals(1, outboundQueue.getDepths().get(ItemPriority.BACKGROUND));
+		assertEquals(1, outboundQueue.getDepths().get(ItemPriority.REALTIME));
+
+		channel.runPendingTasks();
+
+		assertSame(realtime, channel.readOutbound());
+		assertSame(background, channel.readOutbound());
+		assertEquals(0, outboundQueue.getDepths().get(ItemPriority.BACKGROUND));
+		assertEquals(0, outboundQueue.getDepths().get(ItemPriority.REALTIME));
+
+		background.dispose();
+		realtime.dispose();
+	}
+
+	@Test
+	void Add_LowerPriorityNotStarved()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var outboundQueue = new OutboundQueue(channel.pipeline().firstContext());
+
+		var background = createRawItem(ItemPriority.BACKGROUND);
+		outboundQueue.add(background);
+		for (var i = 0; i < 100; i++)
+		{
+			outboundQueue.add(createRawItem(ItemPriority.INTERACTIVE, 1024));
+		}
+
+		channel.runPendingTasks();
+
+		var position = 0;
+		Object out;
+		while ((out = channel.readOutbound()) != null && out != background)
+		{
+			((RawItem) out).dispose();
+			position++;
+		}
+		assertSame(background, out);
+		assertTrue(position < 100);
+		channel.finishAndReleaseAll();
+		background.dispose();
+	}
+
+	@Test
+	void Clear_FailsWrites()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var outboundQueue = new OutboundQueue(channel.pipeline().firstContext());
+
+		var rawItem = createRawItem(ItemPriority.DEFAULT);
+		var future = outboundQueue.add(rawItem);
+		outboundQueue.clear();
+
+		assertFalse(future.isSuccess());
+		assertEquals(0, rawItem.getBuffer().refCnt());
+		assertEquals(0, outboundQueue.getDepths().get(ItemPriority.DEFAULT));
+	}
+
+	@Test
+	void Clear_AddAfterwards_Released()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var outboundQueue = new OutboundQueue(channel.pipeline().firstContext());
+
+		outboundQueue.clear();
+		var rawItem = createRawItem(ItemPriority.DEFAULT);
+		var future = outboundQueue.add(rawItem);
+		channel.runPendingTasks();
+
+		assertFalse(future.isSuccess());
+		assertEquals(0, rawItem.getBuffer().refCnt());
+		assertEquals(0, outboundQueue.getDepths().get(ItemPriority.DEFAULT));
+		assertNull(channel.readOutbound());
+	}
+
+	@Test
+	void WhenWritable_NotifiesOnceDrained()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var outboundQueue = new OutboundQueue(channel.pipeline().firstContext());
+		var notified = new AtomicInteger();
+
+		for (var i = 0; i < 300; i++)
+		{
+			outboundQueue.add(createRawItem(ItemPriority.BACKGROUND, 1024));
+		}
+		assertTrue(outboundQueue.isFull());
+
+		outboundQueue.whenWritable(notified::incrementAndGet);
+		assertEquals(0, notified.get());
+
+		channel.runPendingTasks();
+
+		assertFalse(outboundQueue.isFull());
+		assertEquals(1, notified.get());
+		channel.finishAndReleaseAll();
+	}
+
+	@Test
+	void WhenWritable_NotFull_NotifiesImmediately()
+	{
+		var channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		var outboundQueue = new OutboundQueue(channel.pipeline().firstContext());
+		var notified = new AtomicInteger();
+
+		outboundQueue.whenWritable(notified::incrementAndGet);
+
+		assertEquals(1, notified.get());
+	}
+
+	@Test
+	void Add_BigItem_InterleavedWithSlices()
+	{
+		var channel = new EmbeddedChannel(new MultiPacketEncoder(false), new ItemEncoder(), new ChannelInboundHandlerAdapter());
+		channel.attr(PeerAttribute.MULTI_PACKET).set(true);
+		channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1024, 2048));
+		var outboundQueue = new OutboundQueue(channel.pipeline().lastContext());
+
+		var bigData = RandomUtils.nextBytes(OPTIMAL_PACKET_SIZE * 16);
+		var smallData = RandomUtils.nextBytes(16);
+
+		outboundQueue.add(createPacketItem(ItemPriority.BACKGROUND, bigData));
+		channel.runPendingTasks();
+		assertEquals(1, outboundQueue.getDepths().get(ItemPriority.BACKGROUND)); // Only some slices could be written
+
+		outboundQueue.add(createPacketItem(ItemPriority.REALTIME, smallData));
+		channel.runPendingTasks();
+		while (outboundQueue.getDepths().get(ItemPriority.BACKGROUND) > 0)
+		{
+			outboundQueue.resume();
+		}
+
+		var decoder = new EmbeddedChannel(new PacketDecoder(), new ItemDecoder());
+		ByteBuf out;
+		while ((out = channel.readOutbound()) != null)
+		{
+			decoder.writeInbound(out);
+		}
+
+		RawItem first = decoder.readInbound();
+		assertArrayEquals(SimplePacketBuilder.builder().setVersion(2).setData(smallData).build(), ByteBufUtil.getBytes(first.getBuffer()));
+		first.dispose();
+
+		RawItem second = decoder.readInbound();
+		assertArrayEquals(SimplePacketBuilder.builder().setVersion(2).setData(bigData).build(), ByteBufUtil.getBytes(second.getBuffer()));
+		second.dispose();
+
+		assertNull(decoder.readInbound());
+	}
+
+	@Test
+	void Add_BigItem_SliceFailed_RemainingSlicesDropped()
+	{
+		var writes = new AtomicInteger();
+		var failSecondWrite = new ChannelOutboundHandlerAdapter()
+		{
+			@Override
+			public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+			{
+				if (writes.incrementAndGet() == 2)
+				{
+					ReferenceCountUtil.release(msg);
+					promise.setFailure(new IOException("Write failed"));
+				}
+				else
+				{
+					ctx.write(msg, promise);
+				}
+			}
+		};
+		var channel = new EmbeddedChannel(failSecondWrite, new MultiPacketEncoder(false), new ItemEncoder(), new ChannelInboundHandlerAdapter());
+		channel.attr(PeerAttribute.MULTI_PACKET).set(true);
+		var outboundQueue = new OutboundQueue(channel.pipeline().lastContext());
+
+		var bigItem = createPacketItem(ItemPriority.BACKGROUND, RandomUtils.nextBytes(OPTIMAL_PACKET_SIZE * 16));
+		var bigFuture = outboundQueue.add(bigItem);
+		var smallFuture = outboundQueue.add(createPacketItem(ItemPriority.BACKGROUND, RandomUtils.nextBytes(16)));
+		channel.runPendingTasks();
+
+		assertFalse(bigFuture.isSuccess());
+		assertTrue(smallFuture.isSuccess());
+		assertEquals(3, writes.get()); // First slice, failed slice, small item
+		assertEquals(0, outboundQueue.getDepths().get(ItemPriority.BACKGROUND));
+		channel.finishAndReleaseAll();
+		assertEquals(0, bigItem.getBuffer().refCnt());
+	}
+
+	private static RawItem createPacketItem(ItemPriority priority, byte[] data)
+	{
+		return new RawItem(Unpooled.wrappedBuffer(SimplePacketBuilder.builder().setVersion(2).setData(data).build()), priority.getPriority());
+	}
+
+	private static RawItem createRawItem(ItemPriority priority)
+	{
+		return createRawItem(priority, 16);
+	}
+
+	private static RawItem createRawItem(ItemPriority priority, int size)
+	{
+		return new RawItem(Unpooled.buffer(size).writeZero(size), priority.getPriority());
+	}
+}
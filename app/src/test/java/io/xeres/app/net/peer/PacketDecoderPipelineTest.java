@@ -191,6 +191,77 @@ class PacketDecoderPipelineTest extends AbstractPipelineTest
 				.hasMessageFindingMatch("End packet [0-9]* received without corresponding start packet");
 	}
 
+	@Test
+	void NewPacket_TooMuchAccumulatedData()
+	{
+		var channel = new EmbeddedChannel(new PacketDecoder(), new ItemDecoder());
+
+		var data = new byte[60_000];
+
+		channel.writeInbound(Unpooled.wrappedBuffer(MultiPacketBuilder.builder()
+				.setFlags(SLICE_FLAG_START)
+				.setData(data)
+				.build()));
+
+		var middlePacket = MultiPacketBuilder.builder()
+				.setFlags(0)
+				.setData(data)
+				.build();
+
+		assertThatThrownBy(() -> {
+			for (var i = 0; i < 1000; i++)
+			{
+				channel.writeInbound(Unpooled.wrappedBuffer(middlePacket));
+			}
+		}).isInstanceOf(DecoderException.class)
+				.hasCauseInstanceOf(ProtocolException.class)
+				.hasMessageContaining("Too much data waiting for incomplete packets");
+	}
+
+	@Test
+	void NewPacket_SmallSlicesOfBigBuffers_Success()
+	{
+		var channel = new EmbeddedChannel(new PacketDecoder(), new ItemDecoder());
+
+		channel.writeInbound(Unpooled.wrappedBuffer(MultiPacketBuilder.builder()
+				.setPacketId(1)
+				.setFlags(SLICE_FLAG_START)
+				.setData(new byte[100])
+				.build()));
+
+		// Each small slice arrives with a big packet in the same buffer, the slice must not keep it alive
+		var middlePacket = MultiPacketBuilder.builder()
+				.setPacketId(1)
+				.setFlags(0)
+				.setData(new byte[100])
+				.build();
+
+		var bigPacket = MultiPacketBuilder.builder()
+				.setPacketId(2)
+				.setFlags(SLICE_FLAG_START | SLICE_FLAG_END)
+				.setData(new byte[60_000])
+				.build();
+
+		for (var i = 0; i < 1000; i++)
+		{
+			channel.writeInbound(Unpooled.wrappedBuffer(middlePacket, bigPacket));
+			ReferenceCountUtil.release(channel.readInbound());
+		}
+
+		channel.writeInbound(Unpooled.wrappedBuffer(MultiPacketBuilder.builder()
+				.setPacketId(1)
+				.setFlags(SLICE_FLAG_END)
+				.setData(new byte[100])
+				.build()));
+
+		RawItem rawItem = channel.readInbound();
+		assertNotNull(rawItem);
+		assertEquals(1002 * 100, rawItem.getBuffer().writerIndex());
+		assertFalse(channel.finish());
+
+		ReferenceCountUtil.release(rawItem);
+	}
+
 	@Test
 	void NewPacket_Empty_Success()
 	{
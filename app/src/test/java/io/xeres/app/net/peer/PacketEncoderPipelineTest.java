@@ -20,14 +20,24 @@
 package io.xeres.app.net.peer;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.util.ReferenceCountUtil;
+import io.xeres.app.net.peer.packet.MultiPacket;
 import io.xeres.app.net.peer.packet.Packet;
 import io.xeres.app.net.peer.packet.SimplePacketBuilder;
+import io.xeres.app.net.peer.pipeline.ItemDecoder;
+import io.xeres.app.net.peer.pipeline.MultiPacketEncoder;
+import io.xeres.app.net.peer.pipeline.PacketDecoder;
 import io.xeres.app.net.peer.pipeline.SimplePacketEncoder;
+import io.xeres.app.xrs.item.RawItem;
+import io.xeres.app.xrs.service.RsServiceType;
+import io.xeres.testutils.RandomUtils;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static io.xeres.app.net.peer.packet.Packet.HEADER_SIZE;
+import static io.xeres.app.net.peer.packet.Packet.OPTIMAL_PACKET_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
 
 class PacketEncoderPipelineTest extends AbstractPipelineTest
 {
@@ -44,172 +54,135 @@ class PacketEncoderPipelineTest extends AbstractPipelineTest
 		ReferenceCountUtil.release(outBuf);
 	}
 
-	public void RsNewPacketEncoder_OK()
+	@Test
+	void RsNewPacketEncoder_NotNegotiated_UsesOldFormat()
 	{
-//		var channel = new EmbeddedChannel(new MultiPacketEncoder());
-//
-//		Packet inPacket = PacketBuilder.builder().buildPacket();
-//
-//		channel.attr(PeerHandler.MULTI_PACKET).set(true);
-//		channel.writeAndFlush(inPacket);
-//		ByteBuf outBuf = channel.readOutbound();
-//		assertEquals(inPacket.getSize(), outBuf.readableBytes());
-//		ReferenceCountUtil.release(outBuf);
-	}
+		var channel = new EmbeddedChannel(new MultiPacketEncoder(false));
 
-	public void RsNewPacketEncoder_OldPacket_OK()
-	{
-//		var channel = new EmbeddedChannel(new MultiPacketEncoder());
-//
-//		Packet inPacket = PacketBuilder.builder()
-//				.setData(new byte[]{1, 2, 3, 4})
-//				.buildPacket();
-//
-//		channel.writeAndFlush(inPacket);
-//		var outPacket = new byte[4];
-//		ByteBuf outBuf = channel.readOutbound();
-//		outBuf.readBytes(outPacket);
-//		//assertArrayEquals(inPacket.getData(), outPacket);
-//
-//		ReferenceCountUtil.release(outBuf);
+		var inPacket = SimplePacketBuilder.builder()
+				.setVersion(2)
+				.setData(new byte[]{1, 2, 3, 4})
+				.build();
+
+		channel.writeAndFlush(SimplePacketBuilder.builder().setVersion(2).setData(new byte[]{1, 2, 3, 4}).buildPacket());
+		ByteBuf outBuf = channel.readOutbound();
+		assertArrayEquals(inPacket, getByteBufAsArray(outBuf));
+		ReferenceCountUtil.release(outBuf);
 	}
 
-	public void RsPacketEncoder_Small_OK()
+	@Test
+	void RsNewPacketEncoder_SliceProbe_UsesOldFormat()
 	{
-//		var channel = new EmbeddedChannel(new MultiPacketEncoder());
-//
-//		Packet inPacket = PacketBuilder.builder()
-//				.setData(new byte[]{1, 2, 3, 4})
-//				.buildPacket();
-//
-//		channel.attr(PeerHandler.MULTI_PACKET).set(true);
-//		channel.writeAndFlush(inPacket);
-//		channel.runPendingTasks();
-//		var outPacket = new byte[4];
-//		skipHeader(channel);
-//		ByteBuf outBuf = channel.readOutbound();
-//		outBuf.readBytes(outPacket);
-//		//assertArrayEquals(inPacket.getData(), outPacket);
-//
-//		ReferenceCountUtil.release(outBuf);
+		var channel = new EmbeddedChannel(new MultiPacketEncoder(false));
+		channel.attr(PeerAttribute.MULTI_PACKET).set(true);
+
+		channel.writeAndFlush(SimplePacketBuilder.builder()
+				.setVersion(2)
+				.setService(RsServiceType.PACKET_SLICING_PROBE.getType())
+				.setSubPacket(0xcc)
+				.buildPacket());
+		ByteBuf outBuf = channel.readOutbound();
+		assertEquals(2, outBuf.getUnsignedByte(0));
+		assertEquals(HEADER_SIZE, outBuf.readableBytes());
+		ReferenceCountUtil.release(outBuf);
 	}
 
-	public void RsPacketEncoder_Optimal_OK()
+	@Test
+	void RsNewPacketEncoder_Small_Success()
 	{
-//		EmbeddedChannel channel = new EmbeddedChannel(new MultiPacketEncoder());
-//
-//		Packet inPacket = PacketBuilder.builder()
-//				.setRandomData(Packet.OPTIMAL_PACKET_SIZE)
-//				.buildPacket();
-//
-//		channel.attr(PeerHandler.MULTI_PACKET).set(true);
-//		channel.writeAndFlush(inPacket);
-//		channel.runPendingTasks();
-//		var outPacket = new byte[Packet.OPTIMAL_PACKET_SIZE];
-//		skipHeader(channel);
-//		ByteBuf outBuf = channel.readOutbound();
-//		outBuf.readBytes(outPacket);
-//		//assertArrayEquals(inPacket.getData(), outPacket);
-//
-//		ReferenceCountUtil.release(outBuf);
+		var channel = new EmbeddedChannel(new MultiPacketEncoder(false));
+		channel.attr(PeerAttribute.MULTI_PACKET).set(true);
+
+		var inPacket = SimplePacketBuilder.builder()
+				.setVersion(2)
+				.setData(new byte[]{1, 2, 3, 4})
+				.build();
+
+		channel.writeAndFlush(SimplePacketBuilder.builder().setVersion(2).setData(new byte[]{1, 2, 3, 4}).buildPacket());
+		ByteBuf outBuf = channel.readOutbound();
+		assertEquals(Packet.SLICE_PROTOCOL_VERSION_ID_01, outBuf.getUnsignedByte(0));
+		assertEquals(MultiPacket.SLICE_FLAG_START | MultiPacket.SLICE_FLAG_END, outBuf.getUnsignedByte(1));
+		assertEquals(inPacket.length, outBuf.getUnsignedShort(6));
+		var outPacket = new byte[inPacket.length];
+		outBuf.getBytes(HEADER_SIZE, outPacket);
+		assertArrayEquals(inPacket, outPacket);
+		ReferenceCountUtil.release(outBuf);
 	}
 
-	public void RsPacketEncoder_Big_OK()
+	@Test
+	void RsNewPacketEncoder_Big_Sliced()
 	{
-//		var channel = new EmbeddedChannel(new MultiPacketEncoder());
-//
-//		byte[] inPacket = PacketBuilder.builder()
-//				.setRandomData(Packet.OPTIMAL_PACKET_SIZE * 3 + 200)
-//				.build();
-//
-//		channel.attr(PeerHandler.MULTI_PACKET).set(true);
-//		channel.writeAndFlush(Unpooled.wrappedBuffer(inPacket));
-//		ByteBuf outBuf = channel.readOutbound();
-//		byte[] outPacket = outBuf.array();
-//		assertArrayEquals(inPacket, outPacket);
-//
-//		ReferenceCountUtil.release(outBuf);
+		var channel = new EmbeddedChannel(new MultiPacketEncoder(false));
+		channel.attr(PeerAttribute.MULTI_PACKET).set(true);
+
+		var data = RandomUtils.nextBytes(OPTIMAL_PACKET_SIZE * 3 + 200);
+		var inPacket = SimplePacketBuilder.builder().setVersion(2).setData(data).build();
+
+		channel.writeAndFlush(SimplePacketBuilder.builder().setVersion(2).setData(data).buildPacket());
+		ByteBuf outBuf = channel.readOutbound();
+
+		var outItem = decode(outBuf);
+		assertArrayEquals(inPacket, getByteBufAsArray(outItem.getBuffer()));
+		outItem.dispose();
 	}
 
-	public void RsPacketEncoder_Multiple_OK()
+	@Test
+	void RsNewPacketEncoder_Grouping_Success()
 	{
-//		var channel = new EmbeddedChannel(new MultiPacketEncoder());
-//
-//		byte[] inPacket1 = PacketBuilder.builder()
-//				.setRandomData(Packet.OPTIMAL_PACKET_SIZE * 3 + 200)
-//				.build();
-//
-//		byte[] inPacket2 = PacketBuilder.builder()
-//				.setRandomData(6)
-//				.build();
-//
-//		byte[] inPacket3 = PacketBuilder.builder()
-//				.setRandomData(Packet.OPTIMAL_PACKET_SIZE * 2)
-//				.build();
-//
-//		channel.attr(PeerHandler.MULTI_PACKET).set(true);
-//		channel.writeAndFlush(Unpooled.wrappedBuffer(inPacket1));
-//		channel.writeAndFlush(Unpooled.wrappedBuffer(inPacket2));
-//		channel.writeAndFlush(Unpooled.wrappedBuffer(inPacket3));
-//		ByteBuf outBuf1 = channel.readOutbound();
-//		byte[] outPacket1 = outBuf1.array();
-//		ByteBuf outBuf2 = channel.readOutbound();
-//		byte[] outPacket2 = outBuf1.array();
-//		ByteBuf outBuf3 = channel.readOutbound();
-//		byte[] outPacket3 = outBuf1.array();
-//
-//		assertArrayEquals(inPacket1, outPacket1);
-//		assertArrayEquals(inPacket2, outPacket2);
-//		assertArrayEquals(inPacket3, outPacket3);
-//
-//		ReferenceCountUtil.release(outBuf1);
-//		ReferenceCountUtil.release(outBuf2);
-//		ReferenceCountUtil.release(outBuf3);
+		var channel = new EmbeddedChannel(new MultiPacketEncoder(true));
+		channel.attr(PeerAttribute.MULTI_PACKET).set(true);
+
+		var data1 = RandomUtils.nextBytes(OPTIMAL_PACKET_SIZE * 3 + 200);
+		var data2 = RandomUtils.nextBytes(6);
+		var data3 = RandomUtils.nextBytes(OPTIMAL_PACKET_SIZE * 2);
+
+		channel.writeAndFlush(SimplePacketBuilder.builder().setVersion(2).setData(data1).buildPacket());
+		channel.writeAndFlush(SimplePacketBuilder.builder().setVersion(2).setData(data2).buildPacket());
+		channel.writeAndFlush(SimplePacketBuilder.builder().setVersion(2).setData(data3).buildPacket());
+		channel.runPendingTasks();
+
+		ByteBuf outBuf = channel.readOutbound();
+		assertNull(channel.readOutbound());
+
+		var decoder = new EmbeddedChannel(new PacketDecoder(), new ItemDecoder());
+		decoder.writeInbound(outBuf);
+		for (var data : new byte[][]{data1, data2, data3})
+		{
+			RawItem outItem = decoder.readInbound();
+			assertArrayEquals(SimplePacketBuilder.builder().setVersion(2).setData(data).build(), getByteBufAsArray(outItem.getBuffer()));
+			outItem.dispose();
+		}
+		assertNull(decoder.readInbound());
 	}
 
-	public void RsPacketEncoder_Multiple_Priority_OK()
+	@Test
+	void RsNewPacketEncoder_Grouping_KeepsOrderWithOtherMessages()
 	{
-//		var channel = new EmbeddedChannel(new MultiPacketEncoder());
-//
-//		byte[] inPacket1 = PacketBuilder.builder()
-//				.setRandomData(Packet.OPTIMAL_PACKET_SIZE * 3 + 200)
-//				.build();
-//
-//		byte[] inPacket2 = PacketBuilder.builder()
-//				.setRandomData(6)
-//				.setPriority(9)
-//				.build();
-//
-//		byte[] inPacket3 = PacketBuilder.builder()
-//				.setRandomData(Packet.OPTIMAL_PACKET_SIZE * 2)
-//				.build();
-//
-//		channel.attr(PeerHandler.MULTI_PACKET).set(true);
-//		channel.writeAndFlush(Unpooled.wrappedBuffer(inPacket1));
-//		channel.writeAndFlush(Unpooled.wrappedBuffer(inPacket2));
-//		channel.writeAndFlush(Unpooled.wrappedBuffer(inPacket3));
-//
-//		ByteBuf outBuf1 = channel.readOutbound();
-//		byte[] outPacket1 = outBuf1.array();
-//		ByteBuf outBuf2 = channel.readOutbound();
-//		byte[] outPacket2 = outBuf1.array();
-//		ByteBuf outBuf3 = channel.readOutbound();
-//		byte[] outPacket3 = outBuf1.array();
-//
-//		assertArrayEquals(inPacket1, outPacket1);
-//		assertArrayEquals(inPacket2, outPacket2);
-//		assertArrayEquals(inPacket3, outPacket3);
-//
-//		ReferenceCountUtil.release(outBuf1);
-//		ReferenceCountUtil.release(outBuf2);
-//		ReferenceCountUtil.release(outBuf3);
+		var channel = new EmbeddedChannel(new MultiPacketEncoder(true));
+		channel.attr(PeerAttribute.MULTI_PACKET).set(true);
+
+		var data = RandomUtils.nextBytes(6);
+		var other = Unpooled.wrappedBuffer(new byte[]{1, 2, 3});
+
+		channel.write(SimplePacketBuilder.builder().setVersion(2).setData(data).buildPacket());
+		channel.writeAndFlush(other);
+		channel.runPendingTasks();
+
+		ByteBuf outBuf = channel.readOutbound();
+		var outItem = decode(outBuf);
+		assertArrayEquals(SimplePacketBuilder.builder().setVersion(2).setData(data).build(), getByteBufAsArray(outItem.getBuffer()));
+		outItem.dispose();
+
+		ByteBuf otherBuf = channel.readOutbound();
+		assertSame(other, otherBuf);
+		ReferenceCountUtil.release(otherBuf);
+		assertNull(channel.readOutbound());
 	}
 
-	private void skipHeader(EmbeddedChannel channel)
+	private static RawItem decode(ByteBuf buf)
 	{
-		ByteBuf byteBuf = channel.readOutbound();
-		byteBuf.skipBytes(8);
-
-		ReferenceCountUtil.release(byteBuf);
+		var channel = new EmbeddedChannel(new PacketDecoder(), new ItemDecoder());
+		channel.writeInbound(buf);
+		return channel.readInbound();
 	}
 }
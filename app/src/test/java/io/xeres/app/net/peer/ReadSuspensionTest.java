@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.net.peer;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xeres.testutils.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadSuspensionTest
+{
+	@Test
+	void Instance_ThrowsException() throws NoSuchMethodException
+	{
+		TestUtils.assertUtilityClass(ReadSuspension.class);
+	}
+
+	@Test
+	void Resume_AllReasons_Success()
+	{
+		var channel = new EmbeddedChannel();
+		var first = new Object();
+		var second = new Object();
+
+		ReadSuspension.suspend(channel, first);
+		ReadSuspension.suspend(channel, second);
+		assertFalse(channel.config().isAutoRead());
+
+		ReadSuspension.resume(channel, first);
+		assertFalse(channel.config().isAutoRead());
+
+		ReadSuspension.resume(channel, second);
+		assertTrue(channel.config().isAutoRead());
+	}
+
+	@Test
+	void Resume_UnknownReason_StillSuspended()
+	{
+		var channel = new EmbeddedChannel();
+		var reason = new Object();
+
+		ReadSuspension.suspend(channel, reason);
+		ReadSuspension.resume(channel, new Object());
+
+		assertFalse(channel.config().isAutoRead());
+	}
+}
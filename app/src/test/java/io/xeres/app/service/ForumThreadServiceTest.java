@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.xeres.app.service;
+
+import io.xeres.app.database.model.forum.ForumMessageItemId;
+import io.xeres.app.database.model.forum.ForumMessageItemSummary;
+import io.xeres.app.database.model.forum.ForumThreadNode;
+import io.xeres.app.database.model.gxs.ForumGroupItemFakes;
+import io.xeres.app.database.repository.ForumThreadNodeRepository;
+import io.xeres.app.database.repository.GxsForumGroupRepository;
+import io.xeres.app.database.repository.GxsForumMessageRepository;
+import io.xeres.app.xrs.service.forum.item.ForumMessageItem;
+import io.xeres.common.id.MessageId;
+import io.xeres.testutils.IdFakes;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class ForumThreadServiceTest
+{
+	@Test
+	void BuildNodes_Success()
+	{
+		var groupId = IdFakes.createGxsId();
+		var now = Instant.now();
+
+		var root = createSummary(1L, null, now);
+		var reply = createSummary(2L, root.getMessageId(), now.plusSeconds(10));
+		var replyOfReply = createSummary(3L, reply.getMessageId(), now.plusSeconds(30));
+		var otherReply = createSummary(4L, root.getMessageId(), now.plusSeconds(20));
+		var orphan = createSummary(5L, IdFakes.createMessageId(), now.plusSeconds(40));
+
+		var nodes = ForumThreadService.buildNodes(groupId, List.of(replyOfReply, orphan, otherReply, reply, root)).stream()
+				.collect(Collectors.toMap(ForumThreadNode::getMessageId, Function.identity()));
+
+		assertEquals(5, nodes.size());
+
+		var rootNode = nodes.get(1L);
+		assertTrue(rootNode.isRoot());
+		assertEquals(1L, rootNode.getRootId());
+		assertEquals(0, rootNode.getDepth());
+		assertEquals(3, rootNode.getReplyCount());
+		assertEquals(now.plusSeconds(30), rootNode.getLastActivity());
+
+		var replyNode = nodes.get(2L);
+		assertEquals(1L, replyNode.getParentId());
+		assertEquals(1L, replyNode.getRootId());
+		assertEquals(1, replyNode.getDepth());
+		assertEquals(1, replyNode.getReplyCount());
+		assertEquals(now.plusSeconds(30), replyNode.getLastActivity());
+
+		var replyOfReplyNode = nodes.get(3L);
+		assertEquals(2L, replyOfReplyNode.getParentId());
+		assertEquals(1L, replyOfReplyNode.getRootId());
+		assertEquals(2, replyOfReplyNode.getDepth());
+		assertEquals(0, replyOfReplyNode.getReplyCount());
+
+		var otherReplyNode = nodes.get(4L);
+		assertEquals(1L, otherReplyNode.getRootId());
+		assertEquals(1, otherReplyNode.getDepth());
+
+		var orphanNode = nodes.get(5L);
+		assertTrue(orphanNode.isRoot());
+		assertEquals(5L, orphanNode.getRootId());
+		assertEquals(0, orphanNode.getDepth());
+	}
+
+	@Test
+	void BuildNodes_NoPublished_HasLastActivity()
+	{
+		var nodes = ForumThreadService.buildNodes(IdFakes.createGxsId(), List.of(createSummary(1L, null, null)));
+
+		assertEquals(Instant.EPOCH, nodes.getFirst().getLastActivity());
+	}
+
+	@Test
+	void BuildNodes_Empty()
+	{
+		assertTrue(ForumThreadService.buildNodes(IdFakes.createGxsId(), List.of()).isEmpty());
+	}
+
+	@Test
+	void BuildNodes_SelfParent_Root()
+	{
+		var messageId = IdFakes.createMessageId();
+		var selfParent = createSummary(1L, messageId, messageId, Instant.now());
+
+		var nodes = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> ForumThreadService.buildNodes(IdFakes.createGxsId(), List.of(selfParent)));
+
+		assertTrue(nodes.getFirst().isRoot());
+		assertEquals(0, nodes.getFirst().getReplyCount());
+	}
+
+	@Test
+	void BuildNodes_ParentCycle_OneRoot()
+	{
+		var firstMessageId = IdFakes.createMessageId();
+		var secondMessageId = IdFakes.createMessageId();
+		var first = createSummary(1L, firstMessageId, secondMessageId, Instant.now());
+		var second = createSummary(2L, secondMessageId, firstMessageId, Instant.now());
+
+		var nodes = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> ForumThreadService.buildNodes(IdFakes.createGxsId(), List.of(first, second))).stream()
+				.collect(Collectors.toMap(ForumThreadNode::getMessageId, Function.identity()));
+
+		var firstNode = nodes.get(1L);
+		var secondNode = nodes.get(2L);
+		assertTrue(firstNode.isRoot());
+		assertEquals(1, firstNode.getReplyCount());
+		assertEquals(1L, secondNode.getParentId());
+		assertEquals(1L, secondNode.getRootId());
+		assertEquals(1, secondNode.getDepth());
+	}
+
+	@Test
+	void AddMessages_ParentCycle_NotAdopted()
+	{
+		var forumThreadNodeRepository = mock(ForumThreadNodeRepository.class);
+		var gxsForumMessageRepository = mock(GxsForumMessageRepository.class);
+		var forumThreadService = new ForumThreadService(forumThreadNodeRepository, gxsForumMessageRepository, mock(GxsForumGroupRepository.class), mock(PlatformTransactionManager.class));
+
+		// The first message replies to the second one, which wasn't known yet, so it's a root
+		var groupId = IdFakes.createGxsId();
+		var firstMessageId = IdFakes.createMessageId();
+		var firstNode = new ForumThreadNode(groupId, 1L, Instant.now());
+
+		// The second message replies to the first one
+		var second = new ForumMessageItem(groupId, IdFakes.createMessageId(), "second");
+		second.setId(2L);
+		second.setParentId(firstMessageId);
+
+		var firstId = mock(ForumMessageItemId.class);
+		when(firstId.getId()).thenReturn(1L);
+		when(gxsForumMessageRepository.findIdByGxsIdAndMessageId(groupId, firstMessageId)).thenReturn(Optional.of(firstId));
+		when(gxsForumMessageRepository.findIdAllByGxsIdAndParentId(groupId, second.getMessageId())).thenReturn(List.of(firstId));
+		when(forumThreadNodeRepository.findByMessageId(1L)).thenReturn(Optional.of(firstNode));
+		when(forumThreadNodeRepository.findAllByMessageIdIn(List.of(1L))).thenReturn(List.of(firstNode));
+
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> forumThreadService.addMessages(List.of(second)));
+
+		assertTrue(firstNode.isRoot());
+		assertEquals(1, firstNode.getReplyCount());
+		verify(forumThreadNodeRepository).save(argThat(node -> node.getMessageId() == 2L && Long.valueOf(1L).equals(node.getParentId())));
+	}
+
+	@Test
+	void RebuildAllThreads_ResumesAfterRebuiltForums()
+	{
+		var forumThreadNodeRepository = mock(ForumThreadNodeRepository.class);
+		var gxsForumMessageRepository = mock(GxsForumMessageRepository.class);
+		var gxsForumGroupRepository = mock(GxsForumGroupRepository.class);
+		var transactionManager = mock(PlatformTransactionManager.class);
+		var forumThreadService = new ForumThreadService(forumThreadNodeRepository, gxsForumMessageRepository, gxsForumGroupRepository, transactionManager);
+
+		var rebuiltForum = ForumGroupItemFakes.createForumGroupItem();
+		var forum = ForumGroupItemFakes.createForumGroupItem();
+		when(gxsForumGroupRepository.findAll()).thenReturn(List.of(rebuiltForum, forum));
+		when(forumThreadNodeRepository.existsByGxsId(rebuiltForum.getGxsId())).thenReturn(true);
+		when(gxsForumMessageRepository.findSummaryAllByGxsId(forum.getGxsId())).thenReturn(List.of(createSummary(1L, null, Instant.now())));
+
+		forumThreadService.rebuildAllThreads();
+
+		verify(gxsForumMessageRepository, never()).findSummaryAllByGxsId(rebuiltForum.getGxsId());
+		verify(forumThreadNodeRepository).saveAll(argThat(nodes -> nodes.iterator().next().getMessageId() == 1L));
+		verify(transactionManager, times(2)).commit(any());
+	}
+
+	private static ForumMessageItemSummary createSummary(long id, MessageId parentId, Instant published)
+	{
+		return createSummary(id, IdFakes.createMessageId(), parentId, published);
+	}
+
+	private static ForumMessageItemSummary createSummary(long id, MessageId messageId, MessageId parentId, Instant published)
+	{
+		var summary = mock(ForumMessageItemSummary.class);
+		when(summary.getId()).thenReturn(id);
+		when(summary.getMessageId()).thenReturn(messageId);
+		when(summary.getParentId()).thenReturn(parentId);
+		when(summary.getPublished()).thenReturn(published);
+		return summary;
+	}
+}
@@ -24,6 +24,7 @@ import io.xeres.app.database.model.profile.Profile;
 import io.xeres.app.database.model.profile.ProfileFakes;
 import io.xeres.app.database.repository.ProfileRepository;
 import io.xeres.app.service.notification.contact.ContactNotificationService;
+import io.xeres.app.xrs.service.chat.ChatBacklogService;
 import io.xeres.common.dto.profile.ProfileConstants;
 import io.xeres.common.id.ProfileFingerprint;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -36,6 +37,7 @@ import org.mockito.Mock;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.security.Security;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -55,6 +57,9 @@ class ProfileServiceTest
 	@Mock
 	private ContactNotificationService contactNotificationService;
 
+	@Mock
+	private ChatBacklogService chatBacklogService;
+
 	@InjectMocks
 	private ProfileService profileService;
 
@@ -134,4 +139,20 @@ class ProfileServiceTest
 
 		// XXX: add the case where we "update" an existing location, not just add
 	}
+
+	@Test
+	void DeleteProfile_NotConnected_Success()
+	{
+		var profile = ProfileFakes.createProfile("foo", 1);
+		var location = LocationFakes.createLocation("foo location", profile);
+		profile.addLocation(location);
+
+		when(profileRepository.findById(profile.getId())).thenReturn(Optional.of(profile));
+
+		profileService.deleteProfile(profile.getId());
+
+		verify(profileRepository).delete(profile);
+		verify(chatBacklogService).evictLocations(List.of(location.getLocationId()));
+		verify(contactNotificationService).removeProfile(profile);
+	}
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.service.file;
+
+import io.xeres.app.database.model.file.File;
+import io.xeres.app.database.model.file.FileFakes;
+import io.xeres.app.util.expression.CompoundExpression;
+import io.xeres.app.util.expression.ExtensionExpression;
+import io.xeres.app.util.expression.NameExpression;
+import io.xeres.app.util.expression.RelationalExpression;
+import io.xeres.app.util.expression.SizeExpression;
+import io.xeres.app.util.expression.StringExpression;
+import io.xeres.common.file.FileType;
+import io.xeres.testutils.Sha1SumFakes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSearchIndexTest
+{
+	@TempDir
+	private Path tempDir;
+
+	private static File createFile(long id, String name, long size)
+	{
+		var file = FileFakes.createFile(name, size, Instant.now(), Sha1SumFakes.createSha1Sum());
+		file.setId(id);
+		return file;
+	}
+
+	private static File createDirectory(long id, String name)
+	{
+		var directory = new File();
+		directory.setId(id);
+		directory.setName(name);
+		directory.setType(FileType.DIRECTORY);
+		return directory;
+	}
+
+	private static FileSearchIndex createIndex()
+	{
+		var index = new FileSearchIndex(null);
+		index.rebuild(List.of(
+				createFile(1L, "The Great Race.mkv", 1024),
+				createFile(2L, "Great Expectations.epub", 2048),
+				createFile(3L, "holidays.jpg", 4096)));
+		return index;
+	}
+
+	@Test
+	void FindCandidates_Keywords_Success()
+	{
+		var index = createIndex();
+
+		assertEquals(Optional.of(Set.of(1L, 2L)), index.findCandidates("great"));
+		assertEquals(Optional.of(Set.of(1L)), index.findCandidates("RACE"));
+		assertTrue(index.findCandidates("ho").isEmpty()); // Too short for the index, the database has to do it all
+		assertEquals(Optional.of(Set.of()), index.findCandidates("foobar"));
+	}
+
+	@Test
+	void FindMatches_Keywords_Success()
+	{
+		var index = createIndex();
+
+		assertEquals(Optional.of(Set.of(1L, 2L)), index.findMatches("great"));
+		assertEquals(Optional.of(Set.of(1L)), index.findMatches("GREAT RACE"));
+		assertEquals(Optional.of(Set.of()), index.findMatches("race great")); // Same trigrams, but not in that order
+		assertEquals(Optional.of(Set.of(3L)), index.findMatches("ho")); // Too short for the trigrams
+		assertEquals(Optional.of(Set.of(1L, 2L, 3L)), index.findMatches(""));
+		assertEquals(Optional.of(Set.of()), index.findMatches("foobar"));
+	}
+
+	@Test
+	void FindMatches_Removed_Success()
+	{
+		var index = createIndex();
+
+		index.remove(3L);
+
+		assertEquals(Optional.of(Set.of()), index.findMatches("ho"));
+	}
+
+	@Test
+	void FindCandidates_Expressions_Success()
+	{
+		var index = createIndex();
+
+		assertEquals(Optional.of(Set.of(1L, 2L)), index.findCandidates(List.of(new NameExpression(StringExpression.Operator.CONTAINS_ANY, "race expectations", false))));
+		assertEquals(Optional.of(Set.of(1L)), index.findCandidates(List.of(new NameExpression(StringExpression.Operator.CONTAINS_ALL, "great race", false))));
+		assertEquals(Optional.of(Set.of(1L)), index.findCandidates(List.of(new NameExpression(StringExpression.Operator.CONTAINS_ALL, "great race", true)))); // The case is checked by the database
+		assertEquals(Optional.of(Set.of(3L)), index.findCandidates(List.of(new ExtensionExpression(StringExpression.Operator.CONTAINS_ANY, "jpg", false))));
+		assertEquals(Optional.of(Set.of(1L, 2L)), index.findCandidates(List.of(new CompoundExpression(CompoundExpression.Operator.AND,
+				new NameExpression(StringExpression.Operator.CONTAINS_ANY, "great", false),
+				new SizeExpression(RelationalExpression.Operator.LESSER_THAN, 1024, 0)))));
+		assertTrue(index.findCandidates(List.of(new SizeExpression(RelationalExpression.Operator.LESSER_THAN, 1024, 0))).isEmpty());
+	}
+
+	@Test
+	void FindCandidates_NotReady_Empty()
+	{
+		var index = createIndex();
+
+		index.clear();
+		index.addAll(List.of(createFile(1L, "The Great Race.mkv", 1024)));
+		assertTrue(index.findCandidates("great").isEmpty());
+
+		assertTrue(index.findMatches("great").isEmpty());
+
+		index.setReady();
+		assertEquals(Optional.of(Set.of(1L)), index.findCandidates("great"));
+		assertEquals(Optional.of(Set.of(1L)), index.findMatches("great"));
+	}
+
+	@Test
+	void Add_Replace_Success()
+	{
+		var index = createIndex();
+
+		index.add(createFile(1L, "The Small Race.mkv", 1024));
+
+		assertEquals(Set.of(2L), index.findCandidates("great").orElseThrow());
+		assertEquals(Set.of(1L), index.findCandidates("small").orElseThrow());
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	void Remove_Directory_Success()
+	{
+		var index = new FileSearchIndex(null);
+		var root = createDirectory(1L, "Movies");
+		var directory = File.createDirectory(root, "Great Movies", Instant.now());
+		directory.setId(2L);
+		var file = File.createFile(directory, "The Great Race.mkv", 1024, Instant.now());
+		file.setId(3L);
+		var otherFile = File.createFile(root, "Great Expectations.mkv", 2048, Instant.now());
+		otherFile.setId(4L);
+		index.rebuild(List.of(root, directory, file, otherFile));
+
+		assertEquals(Set.of(2L, 3L, 4L), index.findCandidates("great").orElseThrow());
+
+		index.remove(2L);
+
+		assertEquals(Set.of(4L), index.findCandidates("great").orElseThrow());
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	void Save_Load_Success()
+	{
+		var index = new FileSearchIndex(tempDir.toString());
+		var directory = createDirectory(2L, "Movies");
+		var file = File.createFile(directory, "The Great Race.mkv", 1024, Instant.now());
+		file.setId(1L);
+		index.rebuild(List.of(directory, file));
+		index.save();
+
+		var loadedIndex = new FileSearchIndex(tempDir.toString());
+		assertTrue(loadedIndex.load(2, 2L));
+		assertEquals(Set.of(1L), loadedIndex.findCandidates("great").orElseThrow());
+
+		loadedIndex.remove(2L);
+		assertEquals(0, loadedIndex.size());
+	}
+
+	@Test
+	void Load_DatabaseChanged_Failure()
+	{
+		var index = new FileSearchIndex(tempDir.toString());
+		index.rebuild(List.of(createFile(1L, "The Great Race.mkv", 1024), createFile(2L, "holidays.jpg", 4096)));
+		index.save();
+
+		assertFalse(new FileSearchIndex(tempDir.toString()).load(3, 3L)); // Added after the index was saved
+		assertFalse(new FileSearchIndex(tempDir.toString()).load(2, 3L)); // Replaced
+		assertTrue(new FileSearchIndex(tempDir.toString()).load(2, 2L));
+	}
+
+	@Test
+	void Load_Missing_Failure()
+	{
+		assertFalse(new FileSearchIndex(tempDir.toString()).load(0, 0L));
+	}
+}
@@ -20,12 +20,14 @@
 package io.xeres.app.service.file;
 
 import io.xeres.app.configuration.DataDirConfiguration;
+import io.xeres.app.database.model.file.File;
 import io.xeres.app.database.model.file.FileFakes;
 import io.xeres.app.database.model.share.ShareFakes;
 import io.xeres.app.database.repository.FileRepository;
 import io.xeres.app.database.repository.ShareRepository;
 import io.xeres.app.service.notification.file.FileNotificationService;
 import io.xeres.common.id.Id;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -33,16 +35,23 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.boot.logging.LogLevel;
 import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
@@ -63,6 +72,12 @@ class FileServiceTest
 	@Mock
 	private ShareRepository shareRepository;
 
+	@Mock
+	private EntityManager entityManager;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
 	@InjectMocks
 	private FileService fileService;
 
@@ -280,4 +295,39 @@ class FileServiceTest
 		verify(fileRepository, never()).delete(fileRoot);
 	}
 
-}
\ No newline at end of file
+	@Test
+	void SearchFiles_IndexNotReady_UsesDatabase()
+	{
+		var file = FileFakes.createFile("The Great Race.mkv");
+		when(fileRepository.findAllByNameContainingIgnoreCase("great")).thenReturn(List.of(file));
+
+		assertEquals(List.of(file), fileService.searchFiles("great"));
+		verify(fileRepository, never()).findAllById(any());
+	}
+
+	@Test
+	void RebuildSearchIndex_ByBatches_Success()
+	{
+		var firstBatch = LongStream.rangeClosed(1L, 1000L)
+				.mapToObj(id -> createFile(id, "holidays " + id + ".jpg"))
+				.toList();
+		var file = createFile(1001L, "The Great Race.mkv");
+		when(fileRepository.findAllByIdGreaterThanOrderByIdAsc(eq(0L), any(Limit.class))).thenReturn(firstBatch);
+		when(fileRepository.findAllByIdGreaterThanOrderByIdAsc(eq(1000L), any(Limit.class))).thenReturn(List.of(file));
+		when(fileRepository.findAllById(Set.of(1001L))).thenReturn(List.of(file));
+
+		fileService.rebuildSearchIndex();
+
+		assertEquals(List.of(file), fileService.searchFiles("great"));
+		assertEquals(List.of(file), fileService.searchFiles("e.")); // Too short for the trigrams
+		assertTrue(fileService.searchFiles("foobar").isEmpty());
+		verify(fileRepository, never()).findAllByNameContainingIgnoreCase(any());
+	}
+
+	private static File createFile(long id, String name)
+	{
+		var file = FileFakes.createFile(name);
+		file.setId(id);
+		return file;
+	}
+}
@@ -50,6 +50,7 @@ class ExpressionCriteriaTest
 	{
 		var file = FileFakes.createFile("The Great Race.mkv");
 		fileRepository.save(file);
+		fileService.rebuildSearchIndex();
 
 		var expressionEqualsOk = new NameExpression(StringExpression.Operator.EQUALS, "The Great Race.mkv", true);
 		var expressionEqualsNoCaseOk = new NameExpression(StringExpression.Operator.EQUALS, "the great race.mkv", false);
@@ -91,6 +92,7 @@ class ExpressionCriteriaTest
 		fileRepository.save(parent);
 		var file = FileFakes.createFile("The Great Race.mkv", parent);
 		fileRepository.save(file);
+		fileService.rebuildSearchIndex();
 
 		var expressionNotSupported = new PathExpression(StringExpression.Operator.EQUALS, "Movies", false);
 
@@ -105,6 +107,7 @@ class ExpressionCriteriaTest
 	{
 		var file = FileFakes.createFile("The Empty Bin.EXE");
 		fileRepository.save(file);
+		fileService.rebuildSearchIndex();
 
 		var expressionEqualsOk = new ExtensionExpression(StringExpression.Operator.EQUALS, "EXE", true);
 		var expressionEqualsNoCaseOk = new ExtensionExpression(StringExpression.Operator.EQUALS, "exe", false);
@@ -137,6 +140,7 @@ class ExpressionCriteriaTest
 	{
 		var file = FileFakes.createFile("Foobar", 1024, Instant.now().truncatedTo(ChronoUnit.SECONDS));
 		fileRepository.save(file);
+		fileService.rebuildSearchIndex();
 
 		var expressionEqualsOk = new DateExpression(RelationalExpression.Operator.EQUALS, (int) file.getModified().getEpochSecond(), 0);
 		var expressionInRange = new DateExpression(RelationalExpression.Operator.IN_RANGE, (int) file.getModified().getEpochSecond() - 1, (int) file.getModified().getEpochSecond() + 1);
@@ -152,6 +156,7 @@ class ExpressionCriteriaTest
 	{
 		var file = FileFakes.createFile("foobar", 1024);
 		fileRepository.save(file);
+		fileService.rebuildSearchIndex();
 
 		var expressionEqualsOk = new SizeExpression(RelationalExpression.Operator.EQUALS, 1024, 0);
 		var expressionEqualsFail = new SizeExpression(RelationalExpression.Operator.EQUALS, 1025, 0);
@@ -197,6 +202,7 @@ class ExpressionCriteriaTest
 	{
 		var file = FileFakes.createFile("foobar", 1_000_000_000_000L);
 		fileRepository.save(file);
+		fileService.rebuildSearchIndex();
 
 		var expressionEqualsOk = new SizeMbExpression(RelationalExpression.Operator.EQUALS, (int) (1_000_000_000_000L >> 20), 0);
 		var expressionEqualsFail = new SizeMbExpression(RelationalExpression.Operator.EQUALS, (int) (1_000_001_000_000L >> 20), 0);
@@ -242,6 +248,7 @@ class ExpressionCriteriaTest
 	{
 		var file = FileFakes.createFile("foobar");
 		fileRepository.save(file);
+		fileService.rebuildSearchIndex();
 
 		var expressionEqualsNotSupported = new PopularityExpression(RelationalExpression.Operator.EQUALS, 1, 0);
 
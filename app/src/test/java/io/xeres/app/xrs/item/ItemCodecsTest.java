@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.item;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.xeres.app.database.model.gxs.GxsMetaAndData;
+import io.xeres.app.xrs.serialization.RsSerializable;
+import io.xeres.app.xrs.serialization.RsSerialized;
+import io.xeres.app.xrs.serialization.Serializer;
+import io.xeres.common.id.Identifier;
+import io.xeres.testutils.RandomUtils;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Checks that generated codecs produce the same output as the reflective serializer, for every item listed in
+ * the registry of the annotation processor. Skipped when building without generated codecs.
+ */
+class ItemCodecsTest
+{
+	static Stream<Class<? extends Item>> getItemClasses() throws ClassNotFoundException
+	{
+		var provider = new ClassPathScanningCandidateComponentProvider(false);
+		provider.addIncludeFilter(new AssignableTypeFilter(Item.class));
+
+		var itemClasses = new ArrayList<Class<? extends Item>>();
+		for (var bean : provider.findCandidateComponents("io.xeres.app.xrs.service"))
+		{
+			@SuppressWarnings("unchecked")
+			var itemClass = (Class<? extends Item>) Class.forName(bean.getBeanClassName());
+			if (!Modifier.isAbstract(itemClass.getModifiers())
+					&& !RsSerializable.class.isAssignableFrom(itemClass)
+					&& !GxsMetaAndData.class.isAssignableFrom(itemClass))
+			{
+				itemClasses.add(itemClass);
+			}
+		}
+		return itemClasses.stream();
+	}
+
+	static Stream<Class<? extends Item>> getGeneratedItemClasses() throws ClassNotFoundException
+	{
+		var itemClassNames = ItemCodecs.getGeneratedItemClassNames();
+		assumeFalse(itemClassNames.isEmpty(), "Built without generated codecs");
+
+		var itemClasses = new ArrayList<Class<? extends Item>>();
+		for (var itemClassName : itemClassNames)
+		{
+			itemClasses.add(Class.forName(itemClassName).asSubclass(Item.class));
+		}
+		return itemClasses.stream();
+	}
+
+	static Stream<Class<? extends Item>> getReflectiveItemClasses() throws ClassNotFoundException
+	{
+		return getItemClasses().filter(itemClass -> !ItemCodecs.getGeneratedItemClassNames().contains(itemClass.getName()));
+	}
+
+	@ParameterizedTest
+	@MethodSource("getGeneratedItemClasses")
+	void Codec_SameAsSerializer(Class<? extends Item> itemClass) throws ReflectiveOperationException
+	{
+		assertTrue(ItemCodecs.hasGeneratedCodec(itemClass), itemClass.getSimpleName() + " has no generated codec");
+
+		var item = itemClass.getConstructor().newInstance();
+		fillFields(item);
+
+		var codec = ItemCodecs.get(itemClass);
+
+		var expected = serialize(buf -> Serializer.serializeAnnotatedFields(buf, item));
+		var actual = serialize(buf -> codec.serialize(buf, item));
+		assertArrayEquals(expected, actual, itemClass.getSimpleName() + " serialization differs");
+
+		var buf = Unpooled.wrappedBuffer(actual);
+		var result = itemClass.getConstructor().newInstance();
+		codec.deserialize(buf, result);
+		assertEquals(actual.length, buf.readerIndex());
+		buf.release();
+
+		assertArrayEquals(expected, serialize(out -> Serializer.serializeAnnotatedFields(out, result)), itemClass.getSimpleName() + " deserialization differs");
+	}
+
+	@ParameterizedTest
+	@MethodSource("getReflectiveItemClasses")
+	void Codec_Unsupported_UsesSerializer(Class<? extends Item> itemClass)
+	{
+		assertFalse(ItemCodecs.hasGeneratedCodec(itemClass), itemClass.getSimpleName() + " has an unexpected generated codec");
+	}
+
+	private interface Writer
+	{
+		int write(ByteBuf buf);
+	}
+
+	private static byte[] serialize(Writer writer)
+	{
+		var buf = Unpooled.buffer();
+		var size = writer.write(buf);
+		assertEquals(buf.writerIndex(), size);
+		var data = ByteBufUtil.getBytes(buf);
+		buf.release();
+		return data;
+	}
+
+	private static void fillFields(Object object) throws ReflectiveOperationException
+	{
+		for (var javaClass = object.getClass(); javaClass != Item.class; javaClass = javaClass.getSuperclass())
+		{
+			for (var field : javaClass.getDeclaredFields())
+			{
+				if (field.isAnnotationPresent(RsSerialized.class) && !Modifier.isFinal(field.getModifiers()))
+				{
+					field.setAccessible(true);
+					field.set(object, createValue(field.getType(), field.getGenericType()));
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Object createValue(Class<?> type, Type genericType) throws ReflectiveOperationException
+	{
+		if (type == int.class || type == Integer.class)
+		{
+			return RandomUtils.nextInt();
+		}
+		else if (type == short.class || type == Short.class)
+		{
+			return (short) RandomUtils.nextInt(0, Short.MAX_VALUE);
+		}
+		else if (type == byte.class || type == Byte.class)
+		{
+			return (byte) RandomUtils.nextInt(0, Byte.MAX_VALUE);
+		}
+		else if (type == long.class || type == Long.class)
+		{
+			return RandomUtils.nextLong();
+		}
+		else if (type == float.class || type == Float.class)
+		{
+			return RandomUtils.nextFloat();
+		}
+		else if (type == double.class || type == Double.class)
+		{
+			return RandomUtils.nextDouble();
+		}
+		else if (type == boolean.class || type == Boolean.class)
+		{
+			return RandomUtils.nextBoolean();
+		}
+		else if (type == String.class)
+		{
+			return "value" + RandomUtils.nextInt();
+		}
+		else if (type == byte[].class)
+		{
+			return RandomUtils.nextBytes(32);
+		}
+		else if (Identifier.class.isAssignableFrom(type))
+		{
+			return type.getConstructor(byte[].class).newInstance((Object) RandomUtils.nextBytes(type.getField("LENGTH").getInt(null)));
+		}
+		else if (type.isEnum())
+		{
+			return type.getEnumConstants()[0];
+		}
+		else if (Set.class.isAssignableFrom(type))
+		{
+			if (genericType instanceof ParameterizedType parameterizedType && parameterizedType.getActualTypeArguments()[0] instanceof Class<?> argument && argument.isEnum())
+			{
+				return EnumSet.of((Enum) argument.getEnumConstants()[0]);
+			}
+			return new HashSet<>();
+		}
+		else if (List.class.isAssignableFrom(type))
+		{
+			return new ArrayList<>();
+		}
+		else if (Map.class.isAssignableFrom(type))
+		{
+			return new HashMap<>();
+		}
+		else if (type.isRecord())
+		{
+			var components = type.getRecordComponents();
+			var values = new Object[components.length];
+			for (var i = 0; i < components.length; i++)
+			{
+				values[i] = createValue(components[i].getType(), components[i].getGenericType());
+			}
+			return type.getDeclaredConstructor(Arrays.stream(components).map(component -> component.getType()).toArray(Class<?>[]::new)).newInstance(values);
+		}
+		return null;
+	}
+}
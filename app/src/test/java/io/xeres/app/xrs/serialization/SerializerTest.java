@@ -26,6 +26,7 @@ import io.xeres.app.database.model.gxs.IdentityGroupItemFakes;
 import io.xeres.app.database.model.location.LocationFakes;
 import io.xeres.app.net.protocol.PeerAddress;
 import io.xeres.app.xrs.common.Signature;
+import io.xeres.app.xrs.service.turtle.item.TurtleStringSearchRequestItem;
 import io.xeres.common.id.GxsId;
 import io.xeres.common.id.LocationId;
 import io.xeres.common.id.MessageId;
@@ -607,6 +608,27 @@ class SerializerTest
 		buf.release();
 	}
 
+	@Test
+	void Serialize_ReversedClassOrder()
+	{
+		var buf = Unpooled.buffer();
+
+		var input = new TurtleStringSearchRequestItem("foobar");
+
+		var size = Serializer.serializeAnnotatedFields(buf, input);
+
+		assertEquals(TLV_HEADER_SIZE + 6 + 4 + 2, size);
+		assertEquals(TlvType.STR_VALUE.getValue(), buf.getUnsignedShort(0));
+		assertEquals(TLV_HEADER_SIZE + 6, buf.getInt(2));
+
+		var result = new TurtleStringSearchRequestItem();
+		assertTrue(Serializer.deserializeAnnotatedFields(buf, result));
+		assertEquals("foobar", result.getKeywords());
+		assertEquals(buf.writerIndex(), buf.readerIndex());
+
+		buf.release();
+	}
+
 	@Test
 	void Serialize_ComplexObject()
 	{
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.serialization;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.xeres.app.xrs.common.FileData;
+import io.xeres.app.xrs.common.FileItem;
+import io.xeres.testutils.Sha1SumFakes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TlvFileDataSerializerTest
+{
+	@Test
+	void Serialize_Composite_Success()
+	{
+		var data = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+		var dataBuf = Unpooled.directBuffer(data.length).writeBytes(data);
+		var fileData = new FileData(new FileItem(1024L, Sha1SumFakes.createSha1Sum(), "", "", 0, 0, 0, null), 512L, dataBuf);
+		var buf = Unpooled.compositeBuffer();
+
+		var size = TlvFileDataSerializer.serialize(buf, fileData);
+
+		assertEquals(size, buf.writerIndex());
+		assertEquals(1, dataBuf.refCnt()); // Owned by the composite buffer now
+
+		var result = TlvFileDataSerializer.deserialize(buf);
+		assertEquals(512L, result.offset());
+		assertEquals(fileData.fileItem().hash(), result.fileItem().hash());
+		assertArrayEquals(data, ByteBufUtil.getBytes(result.data()));
+
+		buf.release();
+		assertEquals(0, dataBuf.refCnt());
+	}
+
+	@Test
+	void Serialize_Copy_Success()
+	{
+		var data = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+		var dataBuf = Unpooled.directBuffer(data.length).writeBytes(data);
+		var fileData = new FileData(new FileItem(1024L, Sha1SumFakes.createSha1Sum(), "", "", 0, 0, 0, null), 512L, dataBuf);
+		var buf = Unpooled.buffer();
+
+		var size = TlvFileDataSerializer.serialize(buf, fileData);
+
+		assertEquals(size, buf.writerIndex());
+		assertEquals(0, dataBuf.refCnt());
+
+		var result = TlvFileDataSerializer.deserialize(buf);
+		assertArrayEquals(data, ByteBufUtil.getBytes(result.data()));
+		buf.release();
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.chat;
+
+import io.xeres.app.database.model.chat.ChatRoomFakes;
+import io.xeres.app.database.model.location.LocationFakes;
+import io.xeres.app.database.repository.ChatRoomRepository;
+import io.xeres.app.database.repository.LocationRepository;
+import io.xeres.testutils.IdFakes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatBacklogWriterTest
+{
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@Mock
+	private ChatRoomRepository chatRoomRepository;
+
+	@Mock
+	private LocationRepository locationRepository;
+
+	private ChatBacklogWriter chatBacklogWriter;
+
+	@BeforeEach
+	void setUp()
+	{
+		chatBacklogWriter = new ChatBacklogWriter(jdbcTemplate, transactionManager, chatRoomRepository, locationRepository);
+	}
+
+	@AfterEach
+	void tearDown()
+	{
+		chatBacklogWriter.shutdown();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void AddChatRoomLine_Flush_Success()
+	{
+		var chatRoom = ChatRoomFakes.createChatRoomEntity();
+		when(chatRoomRepository.findByRoomId(chatRoom.getRoomId())).thenReturn(Optional.of(chatRoom));
+
+		chatBacklogWriter.addChatRoomLine(chatRoom.getRoomId(), IdFakes.createGxsId(), "foo", "hello");
+		chatBacklogWriter.addChatRoomLine(chatRoom.getRoomId(), null, "bar", "world");
+		chatBacklogWriter.flush();
+
+		assertEquals(0, chatBacklogWriter.getPendingLines());
+
+		ArgumentCaptor<Collection<Object>> captor = ArgumentCaptor.forClass(Collection.class);
+		verify(jdbcTemplate, atLeastOnce()).batchUpdate(startsWith("INSERT INTO chat_room_backlog"), captor.capture(), eq(ChatBacklogWriter.FLUSH_SIZE), any());
+		assertEquals(2, captor.getAllValues().stream().mapToInt(Collection::size).sum());
+		verify(chatRoomRepository).findByRoomId(chatRoom.getRoomId());
+	}
+
+	@Test
+	void AddChatLine_UnknownLocation_Dropped()
+	{
+		var locationId = IdFakes.createLocationId();
+		when(locationRepository.findByLocationId(locationId)).thenReturn(Optional.empty());
+
+		chatBacklogWriter.addChatLine(locationId, true, "hello");
+		chatBacklogWriter.flush();
+
+		assertEquals(0, chatBacklogWriter.getPendingLines());
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+	}
+
+	@Test
+	void EvictChatRoom_LooksUpAgain()
+	{
+		var chatRoom = ChatRoomFakes.createChatRoomEntity();
+		when(chatRoomRepository.findByRoomId(chatRoom.getRoomId())).thenReturn(Optional.of(chatRoom), Optional.empty());
+
+		chatBacklogWriter.addChatRoomLine(chatRoom.getRoomId(), null, "foo", "hello");
+		chatBacklogWriter.flush();
+
+		chatBacklogWriter.evictChatRoom(chatRoom.getRoomId());
+
+		chatBacklogWriter.addChatRoomLine(chatRoom.getRoomId(), null, "foo", "anyone?");
+		chatBacklogWriter.flush();
+
+		verify(chatRoomRepository, times(2)).findByRoomId(chatRoom.getRoomId());
+		verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO chat_room_backlog"), anyCollection(), eq(ChatBacklogWriter.FLUSH_SIZE), any());
+	}
+
+	@Test
+	void Flush_FailingLine_OthersWritten()
+	{
+		var chatRoom = ChatRoomFakes.createChatRoomEntity();
+		var location = LocationFakes.createLocation();
+		when(chatRoomRepository.findByRoomId(chatRoom.getRoomId())).thenReturn(Optional.of(chatRoom));
+		when(locationRepository.findByLocationId(location.getLocationId())).thenReturn(Optional.of(location));
+		when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO chat_room_backlog"), anyCollection(), eq(ChatBacklogWriter.FLUSH_SIZE), any()))
+				.thenThrow(new DataIntegrityViolationException("batch"))
+				.thenReturn(new int[][]{{1}})
+				.thenThrow(new DataIntegrityViolationException("line"));
+
+		synchronized (chatBacklogWriter) // Makes sure all lines are in the same flush
+		{
+			chatBacklogWriter.addChatRoomLine(chatRoom.getRoomId(), null, "foo", "good");
+			chatBacklogWriter.addChatRoomLine(chatRoom.getRoomId(), null, "bar", "bad");
+			chatBacklogWriter.addChatLine(location.getLocationId(), true, "hello");
+			chatBacklogWriter.flush();
+		}
+
+		assertEquals(0, chatBacklogWriter.getPendingLines());
+		// Batch, then one by one
+		verify(jdbcTemplate, times(3)).batchUpdate(startsWith("INSERT INTO chat_room_backlog"), anyCollection(), eq(ChatBacklogWriter.FLUSH_SIZE), any());
+		// Not affected by the other table's failure
+		verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO chat_backlog"), anyCollection(), eq(ChatBacklogWriter.FLUSH_SIZE), any());
+	}
+
+	@Test
+	void AddChatLine_QueueFull_Dropped()
+	{
+		var locationId = IdFakes.createLocationId();
+
+		synchronized (chatBacklogWriter) // Prevents the writer from flushing
+		{
+			for (var i = 0; i < ChatBacklogWriter.MAXIMUM_PENDING_LINES + 10; i++)
+			{
+				chatBacklogWriter.addChatLine(locationId, false, "spam");
+			}
+			assertEquals(ChatBacklogWriter.MAXIMUM_PENDING_LINES, chatBacklogWriter.getPendingLines());
+		}
+	}
+
+	@Test
+	void Shutdown_Flushes()
+	{
+		var location = LocationFakes.createLocation();
+		when(locationRepository.findByLocationId(location.getLocationId())).thenReturn(Optional.of(location));
+
+		chatBacklogWriter.addChatLine(location.getLocationId(), false, "bye");
+		chatBacklogWriter.shutdown();
+
+		assertEquals(0, chatBacklogWriter.getPendingLines());
+		verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO chat_backlog"), anyCollection(), eq(ChatBacklogWriter.FLUSH_SIZE), any());
+	}
+}
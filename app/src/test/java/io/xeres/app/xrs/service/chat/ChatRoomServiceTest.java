@@ -25,6 +25,9 @@ class ChatRoomServiceTest
 	@Mock
 	private ChatRoomRepository chatRoomRepository;
 
+	@Mock
+	private ChatBacklogWriter chatBacklogWriter;
+
 	@InjectMocks
 	private ChatRoomService chatRoomService;
 
@@ -71,6 +74,20 @@ class ChatRoomServiceTest
 		verify(chatRoomRepository).findByRoomIdAndIdentityGroupItem(chatRoom.getRoomId(), identity);
 	}
 
+	@Test
+	void DeleteChatRoom_Success()
+	{
+		var identity = IdentityFakes.createOwn();
+		var chatRoom = ChatRoomFakes.createChatRoomEntity(1L, identity, "test", "something", 0);
+
+		when(chatRoomRepository.findByRoomIdAndIdentityGroupItem(chatRoom.getRoomId(), identity)).thenReturn(Optional.of(chatRoom));
+
+		chatRoomService.deleteChatRoom(chatRoom.getRoomId(), identity);
+
+		verify(chatRoomRepository).delete(chatRoom);
+		verify(chatBacklogWriter).evictChatRoom(chatRoom.getRoomId());
+	}
+
 	private io.xeres.app.xrs.service.chat.ChatRoom createSignedChatRoom()
 	{
 		return new io.xeres.app.xrs.service.chat.ChatRoom(1L, "test", "something", RoomType.PUBLIC, 1, true);
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.chat;
+
+import io.xeres.app.crypto.hash.chat.ChatChallenge;
+import io.xeres.testutils.IdFakes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCacheTest
+{
+	private final AtomicInteger now = new AtomicInteger(1_700_000_000);
+
+	private MessageCache messageCache;
+
+	@BeforeEach
+	void setUp()
+	{
+		messageCache = new MessageCache(now::get);
+	}
+
+	@Test
+	void Add_Exists_Success()
+	{
+		messageCache.add(1234L);
+
+		assertTrue(messageCache.exists(1234L));
+		assertFalse(messageCache.exists(5678L));
+	}
+
+	@Test
+	void Add_Many_Success()
+	{
+		for (var i = 0L; i < 10_000L; i++)
+		{
+			messageCache.add(i * 31);
+		}
+		assertEquals(10_000, messageCache.size());
+
+		for (var i = 0L; i < 10_000L; i++)
+		{
+			assertTrue(messageCache.exists(i * 31));
+		}
+		assertFalse(messageCache.exists(1L));
+	}
+
+	@Test
+	void Purge_Success()
+	{
+		for (var i = 0L; i < 1000L; i++)
+		{
+			messageCache.add(i);
+		}
+		now.addAndGet(600);
+		messageCache.add(2000L);
+
+		now.addAndGet(1211 - 600);
+		messageCache.purge();
+
+		assertEquals(1, messageCache.size());
+		assertFalse(messageCache.exists(0L));
+		assertFalse(messageCache.exists(999L));
+		assertTrue(messageCache.exists(2000L));
+	}
+
+	@Test
+	void Purge_Refreshed_Success()
+	{
+		messageCache.add(1234L);
+		now.addAndGet(1000);
+		assertTrue(messageCache.exists(1234L));
+
+		now.addAndGet(1000);
+		messageCache.purge();
+
+		assertTrue(messageCache.exists(1234L));
+	}
+
+	@Test
+	void Add_ReusesExpiredBucket_Success()
+	{
+		messageCache.add(1234L);
+		now.addAndGet(1210);
+		messageCache.add(5678L);
+
+		assertFalse(messageCache.exists(1234L));
+		assertTrue(messageCache.exists(5678L));
+	}
+
+	@Test
+	void GetRecentMessage_Success()
+	{
+		messageCache.add(1234L);
+		now.addAndGet(20);
+		messageCache.add(5678L);
+
+		assertEquals(5678L, messageCache.getRecentMessage());
+	}
+
+	@Test
+	void GetRecentMessage_TooOld_Failure()
+	{
+		messageCache.add(1234L);
+		now.addAndGet(31);
+
+		assertEquals(0L, messageCache.getRecentMessage());
+	}
+
+	@Test
+	void HasConnectionChallenge_Success()
+	{
+		var locationId = IdFakes.createLocationId();
+		var chatRoomId = 42L;
+		messageCache.add(1234L);
+		now.addAndGet(20);
+
+		assertTrue(messageCache.hasConnectionChallenge(locationId, chatRoomId, ChatChallenge.code(locationId, chatRoomId, 1234L)));
+		assertFalse(messageCache.hasConnectionChallenge(locationId, chatRoomId, ChatChallenge.code(locationId, chatRoomId, 5678L)));
+	}
+
+	@Test
+	void HasConnectionChallenge_TooOld_Failure()
+	{
+		var locationId = IdFakes.createLocationId();
+		var chatRoomId = 42L;
+		messageCache.add(1234L);
+		now.addAndGet(40);
+
+		assertFalse(messageCache.hasConnectionChallenge(locationId, chatRoomId, ChatChallenge.code(locationId, chatRoomId, 1234L)));
+	}
+
+	@Test
+	void GetNewMessageId_Success()
+	{
+		var id = messageCache.getNewMessageId();
+
+		assertFalse(messageCache.exists(id));
+	}
+}
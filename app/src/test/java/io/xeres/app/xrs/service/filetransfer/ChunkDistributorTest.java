@@ -122,4 +122,58 @@ class ChunkDistributorTest
 		assertEquals(Optional.empty(), chunkDistributor.getNextChunk(availableChunkMap));
 		assertEquals(Optional.empty(), chunkDistributor.getNextChunk(availableChunkMap));
 	}
-}
\ No newline at end of file
+
+	@Test
+	void Linear_Released()
+	{
+		var availableChunkMap = new BitSet(4);
+		availableChunkMap.set(0, 4);
+		var chunkMap = new BitSet(4);
+		var chunkDistributor = new ChunkDistributor(chunkMap, 4, LINEAR);
+
+		assertEquals(0, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+		assertEquals(1, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+		assertEquals(2, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+		chunkDistributor.releaseChunk(1);
+		assertEquals(1, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+		assertEquals(3, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+		assertEquals(Optional.empty(), chunkDistributor.getNextChunk(availableChunkMap));
+	}
+
+	@Test
+	void Random_Released()
+	{
+		var availableChunkMap = new BitSet(2);
+		availableChunkMap.set(0, 2);
+		var chunkMap = new BitSet(2);
+		var chunkDistributor = new ChunkDistributor(chunkMap, 2, RANDOM);
+
+		var first = chunkDistributor.getNextChunk(availableChunkMap).orElseThrow();
+		var second = chunkDistributor.getNextChunk(availableChunkMap).orElseThrow();
+		assertEquals(Optional.empty(), chunkDistributor.getNextChunk(availableChunkMap));
+		chunkDistributor.releaseChunk(first);
+		assertEquals(first, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+		assertEquals(1, first + second);
+	}
+
+	@Test
+	void Linear_Reset()
+	{
+		var availableChunkMap = new BitSet(4);
+		availableChunkMap.set(0, 4);
+		var chunkMap = new BitSet(4);
+		var chunkDistributor = new ChunkDistributor(chunkMap, 4, LINEAR);
+
+		for (var i = 0; i < 4; i++)
+		{
+			assertEquals(i, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+			chunkMap.set(i);
+		}
+		assertEquals(Optional.empty(), chunkDistributor.getNextChunk(availableChunkMap));
+
+		chunkMap.clear(1);
+		chunkDistributor.resetChunk(1);
+		assertEquals(1, chunkDistributor.getNextChunk(availableChunkMap).orElseThrow());
+		assertEquals(Optional.empty(), chunkDistributor.getNextChunk(availableChunkMap));
+	}
+}
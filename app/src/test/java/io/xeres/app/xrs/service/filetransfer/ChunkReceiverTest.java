@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.filetransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkReceiverTest
+{
+	@Test
+	void Window_Initial()
+	{
+		var chunkReceiver = new ChunkReceiver(8);
+
+		assertEquals(2, chunkReceiver.getWindow());
+		chunkReceiver.addRequest(0, 1L);
+		assertTrue(chunkReceiver.canRequest());
+		chunkReceiver.addRequest(1, 1L);
+		assertFalse(chunkReceiver.canRequest());
+		assertTrue(chunkReceiver.isReceiving());
+	}
+
+	@Test
+	void Window_Limited()
+	{
+		var chunkReceiver = new ChunkReceiver(1);
+
+		assertEquals(1, chunkReceiver.getWindow());
+	}
+
+	@Test
+	void Window_Grows()
+	{
+		var chunkReceiver = new ChunkReceiver(8);
+		var now = 1L;
+
+		chunkReceiver.addRequest(0, now);
+		chunkReceiver.addRequest(1, now);
+		now += Duration.ofMillis(100).toNanos();
+		assertEquals(2, chunkReceiver.removeCompleted(chunkNumber -> true, now));
+		assertEquals(3, chunkReceiver.getWindow());
+		assertFalse(chunkReceiver.isReceiving());
+	}
+
+	@Test
+	void Window_FollowsBandwidthDelayProduct()
+	{
+		var chunkReceiver = new ChunkReceiver(16);
+		var now = 1L;
+
+		// 4 MB/s with a round-trip of 1 second: 4 chunks in flight plus one queued
+		for (var i = 0; i < 10; i++)
+		{
+			chunkReceiver.addRequest(i, now);
+			now += Duration.ofSeconds(1).toNanos();
+			chunkReceiver.addData((long) i * CHUNK_SIZE, 4 * CHUNK_SIZE, now);
+			final var completed = i;
+			chunkReceiver.removeCompleted(chunkNumber -> chunkNumber == completed, now);
+		}
+		assertEquals(5, chunkReceiver.getWindow());
+	}
+
+	@Test
+	void Timeout_Halves()
+	{
+		var chunkReceiver = new ChunkReceiver(8);
+		var now = 1L;
+
+		chunkReceiver.addRequest(0, now);
+		chunkReceiver.addRequest(1, now);
+		now += chunkReceiver.getTimeout() / 2;
+		chunkReceiver.addData(CHUNK_SIZE, 1024, now);
+		now += chunkReceiver.getTimeout() / 2 + 1;
+
+		assertEquals(List.of(0), chunkReceiver.removeTimedOut(now));
+		assertEquals(1, chunkReceiver.getWindow());
+		assertTrue(chunkReceiver.isReceiving());
+		assertEquals(List.of(1), chunkReceiver.clear());
+		assertFalse(chunkReceiver.isReceiving());
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.filetransfer;
+
+import io.netty.buffer.Unpooled;
+import io.xeres.app.crypto.hash.sha1.Sha1MessageDigest;
+import io.xeres.common.id.Sha1Sum;
+import io.xeres.testutils.RandomUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.BLOCK_SIZE;
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.CHUNK_SIZE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadHasherTest
+{
+	private static final int FILE_SIZE = CHUNK_SIZE + 100;
+
+	private Path path;
+	private FileChannel channel;
+	private byte[] content;
+
+	@BeforeEach
+	void setup() throws IOException
+	{
+		path = Files.createTempFile("hasher", ".tmp");
+		channel = FileChannel.open(path, READ, WRITE);
+		content = RandomUtils.nextBytes(FILE_SIZE);
+	}
+
+	@AfterEach
+	void cleanup() throws IOException
+	{
+		channel.close();
+		Files.delete(path);
+	}
+
+	@Test
+	void InOrder_Success() throws IOException
+	{
+		var downloadHasher = new DownloadHasher(FILE_SIZE);
+		var chunkMap = new BitSet(2);
+
+		for (var offset = 0; offset < FILE_SIZE; offset += BLOCK_SIZE)
+		{
+			receive(downloadHasher, offset);
+		}
+		// Nothing needs to be read back, the file is empty
+		chunkMap.set(0, 2);
+		downloadHasher.completeChunk(0, channel);
+		downloadHasher.completeChunk(1, channel);
+		downloadHasher.advanceFileHash(channel, chunkMap);
+
+		assertEquals(sha1(0, CHUNK_SIZE), downloadHasher.getChunkHash(0));
+		assertEquals(sha1(CHUNK_SIZE, 100), downloadHasher.getChunkHash(1));
+		assertEquals(sha1(0, FILE_SIZE), downloadHasher.getFileHash());
+	}
+
+	@Test
+	void OutOfOrder_Success() throws IOException
+	{
+		var downloadHasher = new DownloadHasher(FILE_SIZE);
+		var chunkMap = new BitSet(2);
+		channel.write(ByteBuffer.wrap(content), 0);
+
+		// The last chunk first, then the first one with its 2 first blocks swapped
+		receive(downloadHasher, CHUNK_SIZE);
+		chunkMap.set(1);
+		downloadHasher.completeChunk(1, channel);
+		downloadHasher.advanceFileHash(channel, chunkMap);
+		assertNull(downloadHasher.getFileHash());
+
+		receive(downloadHasher, BLOCK_SIZE);
+		receive(downloadHasher, 0);
+		for (var offset = BLOCK_SIZE * 2; offset < CHUNK_SIZE; offset += BLOCK_SIZE)
+		{
+			receive(downloadHasher, offset);
+		}
+		chunkMap.set(0);
+		downloadHasher.completeChunk(0, channel);
+		downloadHasher.advanceFileHash(channel, chunkMap);
+
+		assertEquals(sha1(0, CHUNK_SIZE), downloadHasher.getChunkHash(0));
+		assertEquals(sha1(CHUNK_SIZE, 100), downloadHasher.getChunkHash(1));
+		assertEquals(sha1(0, FILE_SIZE), downloadHasher.getFileHash());
+	}
+
+	@Test
+	void Invalidate_RestartsFileHash() throws IOException
+	{
+		var downloadHasher = new DownloadHasher(FILE_SIZE);
+		var chunkMap = new BitSet(2);
+		channel.write(ByteBuffer.wrap(content), 0);
+
+		for (var offset = 0; offset < FILE_SIZE; offset += BLOCK_SIZE)
+		{
+			receive(downloadHasher, offset);
+		}
+		chunkMap.set(0, 2);
+		downloadHasher.completeChunk(0, channel);
+		downloadHasher.completeChunk(1, channel);
+		downloadHasher.advanceFileHash(channel, chunkMap);
+
+		downloadHasher.invalidateChunk(0);
+		chunkMap.clear(0);
+		assertNull(downloadHasher.getChunkHash(0));
+		assertNull(downloadHasher.getFileHash());
+
+		chunkMap.set(0);
+		downloadHasher.completeChunk(0, channel);
+		downloadHasher.advanceFileHash(channel, chunkMap);
+		assertEquals(sha1(0, CHUNK_SIZE), downloadHasher.getChunkHash(0));
+		assertEquals(sha1(0, FILE_SIZE), downloadHasher.getFileHash());
+	}
+
+	private void receive(DownloadHasher downloadHasher, int offset)
+	{
+		var data = Unpooled.wrappedBuffer(content, offset, Math.min(BLOCK_SIZE, FILE_SIZE - offset));
+		downloadHasher.addBlock(offset, data);
+		data.release();
+	}
+
+	private Sha1Sum sha1(int offset, int length)
+	{
+		var digest = new Sha1MessageDigest();
+		digest.update(content, offset, length);
+		return digest.getSum();
+	}
+}
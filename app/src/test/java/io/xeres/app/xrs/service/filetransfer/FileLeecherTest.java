@@ -19,15 +19,23 @@
 
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.xeres.app.crypto.hash.sha1.Sha1MessageDigest;
 import io.xeres.common.util.OsUtils;
+import io.xeres.testutils.RandomUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
 
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.BLOCK_SIZE;
 import static io.xeres.app.xrs.service.filetransfer.FileTransferStrategy.LINEAR;
+import static io.xeres.testutils.Sha1SumFakes.createSha1Sum;
 import static org.junit.jupiter.api.Assertions.*;
 
 class FileLeecherTest
@@ -77,4 +85,106 @@ class FileLeecherTest
 		//noinspection ResultOfMethodCallIgnored
 		file.delete();
 	}
-}
\ No newline at end of file
+
+	@Test
+	void Write_OutOfOrder_Success() throws IOException
+	{
+		var file = Paths.get(tempDir, "writefile.tmp").toFile();
+		var size = BLOCK_SIZE * 3 + 100;
+		var content = RandomUtils.nextBytes(size);
+		var fileLeecher = new FileLeecher(0L, file, size, null, LINEAR);
+		fileLeecher.open();
+
+		fileLeecher.write(BLOCK_SIZE * 3L, Unpooled.wrappedBuffer(content, BLOCK_SIZE * 3, 100));
+		fileLeecher.write(BLOCK_SIZE, Unpooled.wrappedBuffer(content, BLOCK_SIZE, BLOCK_SIZE));
+		fileLeecher.write(0L, Unpooled.wrappedBuffer(content, 0, BLOCK_SIZE));
+		assertFalse(fileLeecher.hasChunk(0));
+
+		fileLeecher.write(BLOCK_SIZE * 2L, Unpooled.wrappedBuffer(content, BLOCK_SIZE * 2, BLOCK_SIZE));
+		assertTrue(fileLeecher.hasChunk(0));
+		assertTrue(fileLeecher.isComplete());
+		assertEquals(size, fileLeecher.getBytesWritten());
+
+		for (var offset = 0; offset < size; offset += BLOCK_SIZE) // Reads are limited to one block
+		{
+			var length = Math.min(BLOCK_SIZE, size - offset);
+			var data = fileLeecher.read(offset, length);
+			assertArrayEquals(Arrays.copyOfRange(content, offset, offset + length), ByteBufUtil.getBytes(data));
+			data.release();
+		}
+
+		fileLeecher.close();
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	@Test
+	void Write_Duplicate_Ignored() throws IOException
+	{
+		var file = Paths.get(tempDir, "duplicatefile.tmp").toFile();
+		var size = BLOCK_SIZE * 2;
+		var fileLeecher = new FileLeecher(0L, file, size, null, LINEAR);
+		fileLeecher.open();
+
+		var block = Unpooled.wrappedBuffer(new byte[BLOCK_SIZE]);
+		var duplicate = Unpooled.wrappedBuffer(new byte[BLOCK_SIZE]);
+		fileLeecher.write(0L, block);
+		fileLeecher.write(0L, duplicate);
+		assertEquals(0, duplicate.refCnt());
+		assertEquals(BLOCK_SIZE, fileLeecher.getBytesWritten());
+
+		fileLeecher.close();
+		assertEquals(0, block.refCnt());
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	@Test
+	void Write_WrongOffset()
+	{
+		var file = Paths.get(tempDir, "wrongoffset.tmp").toFile();
+		var fileLeecher = new FileLeecher(0L, file, BLOCK_SIZE * 2, null, LINEAR);
+		fileLeecher.open();
+
+		var data = Unpooled.wrappedBuffer(new byte[]{1, 2, 3});
+		assertThrows(IllegalArgumentException.class, () -> fileLeecher.write(1L, data));
+		assertEquals(0, data.refCnt());
+
+		fileLeecher.close();
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	@Test
+	void VerifyChunk_Corrupted() throws IOException
+	{
+		var file = Paths.get(tempDir, "verifyfile.tmp").toFile();
+		var size = BLOCK_SIZE * 2;
+		var content = RandomUtils.nextBytes(size);
+		var fileLeecher = new FileLeecher(0L, file, size, null, LINEAR);
+		fileLeecher.open();
+
+		fileLeecher.write(0L, Unpooled.wrappedBuffer(content, 0, BLOCK_SIZE));
+		fileLeecher.write(BLOCK_SIZE, Unpooled.wrappedBuffer(content, BLOCK_SIZE, BLOCK_SIZE));
+		assertTrue(fileLeecher.isComplete());
+
+		var digest = new Sha1MessageDigest();
+		digest.update(content);
+		assertEquals(digest.getSum(), fileLeecher.getFileHash());
+		assertEquals(digest.getSum(), fileLeecher.computeHash(0L));
+
+		assertTrue(fileLeecher.verifyChunk(0, digest.getSum()));
+		assertFalse(fileLeecher.verifyChunk(0, createSha1Sum()));
+		assertFalse(fileLeecher.hasChunk(0));
+		assertFalse(fileLeecher.isComplete());
+		assertEquals(0L, fileLeecher.getBytesWritten());
+		assertNull(fileLeecher.getFileHash());
+		var available = new BitSet(1);
+		available.set(0);
+		assertEquals(0, fileLeecher.getNeededChunk(available).orElseThrow());
+
+		fileLeecher.close();
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+}
@@ -1,5 +1,7 @@
 package io.xeres.app.xrs.service.filetransfer;
 
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.xeres.testutils.RandomUtils;
 import org.junit.jupiter.api.Test;
 
@@ -54,7 +56,7 @@ class FileSeederTest
 		var tempFile = createTempFile(TEMP_FILE_SIZE);
 		var fileSeeder = new FileSeeder(tempFile);
 		fileSeeder.open();
-		assertThrows(IllegalArgumentException.class, () -> fileSeeder.write(0, new byte[]{1, 2, 3}));
+		assertThrows(IllegalArgumentException.class, () -> fileSeeder.write(0, Unpooled.wrappedBuffer(new byte[]{1, 2, 3})));
 		fileSeeder.close();
 		deleteTempFile(tempFile);
 	}
@@ -65,7 +67,10 @@ class FileSeederTest
 		var tempFile = createTempFile(TEMP_FILE_SIZE);
 		var fileSeeder = new FileSeeder(tempFile);
 		fileSeeder.open();
-		assertArrayEquals(Files.readAllBytes(tempFile.toPath()), fileSeeder.read(0, TEMP_FILE_SIZE));
+		var data = fileSeeder.read(0, TEMP_FILE_SIZE);
+		assertTrue(data.isDirect());
+		assertArrayEquals(Files.readAllBytes(tempFile.toPath()), ByteBufUtil.getBytes(data));
+		data.release();
 		fileSeeder.close();
 		deleteTempFile(tempFile);
 	}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.filetransfer;
+
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileTransferManagerTest
+{
+	@Test
+	void DiscardActions_ReleasesData()
+	{
+		var data1 = Unpooled.buffer(16);
+		var data2 = Unpooled.buffer(16);
+		var queue = new LinkedBlockingQueue<Action>();
+		queue.add(new ActionReceiveData(null, null, 0L, data1));
+		queue.add(new ActionReceiveDataRequest(null, null, 0L, 16));
+		queue.add(new ActionReceiveData(null, null, 16L, data2));
+
+		FileTransferManager.discardActions(queue);
+
+		assertTrue(queue.isEmpty());
+		assertEquals(0, data1.refCnt());
+		assertEquals(0, data2.refCnt());
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.filetransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.BLOCK_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferRateLimiterTest
+{
+	@Test
+	void Unlimited()
+	{
+		var rateLimiter = new TransferRateLimiter(0L);
+
+		for (var i = 0; i < 1000; i++)
+		{
+			assertTrue(rateLimiter.tryAcquire(BLOCK_SIZE, 1L));
+		}
+		assertEquals(0L, rateLimiter.getDelay(BLOCK_SIZE, 1L));
+	}
+
+	@Test
+	void Limited()
+	{
+		var rateLimiter = new TransferRateLimiter(BLOCK_SIZE * 10L); // 10 blocks per second, burst of one block
+		var now = 1L;
+
+		assertTrue(rateLimiter.tryAcquire(BLOCK_SIZE, now));
+		assertFalse(rateLimiter.tryAcquire(BLOCK_SIZE, now));
+		assertEquals(Duration.ofMillis(100).toNanos(), rateLimiter.getDelay(BLOCK_SIZE, now));
+
+		now += Duration.ofMillis(100).toNanos();
+		assertTrue(rateLimiter.tryAcquire(BLOCK_SIZE, now));
+	}
+
+	@Test
+	void Burst()
+	{
+		var rateLimiter = new TransferRateLimiter(BLOCK_SIZE * 100L); // burst of 10 blocks
+		var now = 1L;
+
+		for (var i = 0; i < 10; i++)
+		{
+			assertTrue(rateLimiter.tryAcquire(BLOCK_SIZE, now));
+		}
+		assertFalse(rateLimiter.tryAcquire(BLOCK_SIZE, now));
+	}
+
+	@Test
+	void Negative_Fails()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new TransferRateLimiter(-1L));
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.filetransfer;
+
+import io.netty.buffer.Unpooled;
+import io.xeres.testutils.RandomUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.xeres.app.xrs.service.filetransfer.FileTransferRsService.BLOCK_SIZE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteCoalescerTest
+{
+	@Test
+	void Flush_Success() throws IOException
+	{
+		var path = Files.createTempFile("coalescer", ".tmp");
+		var content = RandomUtils.nextBytes(BLOCK_SIZE * 4);
+		var writeCoalescer = new WriteCoalescer();
+
+		// Block 2 is missing so there are two runs to write
+		var block3 = Unpooled.wrappedBuffer(content, BLOCK_SIZE * 3, BLOCK_SIZE);
+		var block0 = Unpooled.wrappedBuffer(content, 0, BLOCK_SIZE);
+		var block1 = Unpooled.wrappedBuffer(content, BLOCK_SIZE, BLOCK_SIZE);
+		assertFalse(writeCoalescer.add(BLOCK_SIZE * 3L, block3));
+		assertFalse(writeCoalescer.add(0L, block0));
+		assertFalse(writeCoalescer.add(BLOCK_SIZE, block1));
+		assertEquals(BLOCK_SIZE * 3, writeCoalescer.getPendingSize());
+
+		try (var channel = FileChannel.open(path, READ, WRITE))
+		{
+			writeCoalescer.flush(channel);
+		}
+
+		assertTrue(writeCoalescer.isEmpty());
+		assertEquals(0, writeCoalescer.getPendingSize());
+		assertEquals(0, block0.refCnt());
+		assertEquals(0, block1.refCnt());
+		assertEquals(0, block3.refCnt());
+
+		var written = Files.readAllBytes(path);
+		assertEquals(content.length, written.length);
+		for (var i = 0; i < content.length; i++)
+		{
+			if (i < BLOCK_SIZE * 2 || i >= BLOCK_SIZE * 3)
+			{
+				assertEquals(content[i], written[i]);
+			}
+			else
+			{
+				assertEquals(0, written[i]);
+			}
+		}
+		Files.delete(path);
+	}
+
+	@Test
+	void Add_FlushNeeded()
+	{
+		var writeCoalescer = new WriteCoalescer();
+		var blocks = WriteCoalescer.MAX_PENDING_SIZE / BLOCK_SIZE;
+
+		for (var i = 0; i < blocks - 1; i++)
+		{
+			assertFalse(writeCoalescer.add((long) i * BLOCK_SIZE, Unpooled.wrappedBuffer(new byte[BLOCK_SIZE])));
+		}
+		assertTrue(writeCoalescer.add((long) (blocks - 1) * BLOCK_SIZE, Unpooled.wrappedBuffer(new byte[BLOCK_SIZE])));
+		writeCoalescer.discard(offset -> {
+		});
+	}
+
+	@Test
+	void Add_SameOffset_ReplacesBlock()
+	{
+		var writeCoalescer = new WriteCoalescer();
+		var first = Unpooled.wrappedBuffer(new byte[BLOCK_SIZE]);
+		var second = Unpooled.wrappedBuffer(new byte[BLOCK_SIZE]);
+
+		writeCoalescer.add(0L, first);
+		writeCoalescer.add(0L, second);
+
+		assertEquals(0, first.refCnt());
+		assertEquals(BLOCK_SIZE, writeCoalescer.getPendingSize());
+		writeCoalescer.discard(offset -> {
+		});
+		assertEquals(0, second.refCnt());
+	}
+
+	@Test
+	void Discard_Success()
+	{
+		var writeCoalescer = new WriteCoalescer();
+		var block = Unpooled.wrappedBuffer(new byte[BLOCK_SIZE]);
+		writeCoalescer.add(BLOCK_SIZE, block);
+		writeCoalescer.add(0L, Unpooled.wrappedBuffer(new byte[100]));
+
+		List<Long> discarded = new ArrayList<>();
+		var size = writeCoalescer.discard(discarded::add);
+
+		assertEquals(BLOCK_SIZE + 100, size);
+		assertEquals(List.of(0L, (long) BLOCK_SIZE), discarded);
+		assertEquals(0, block.refCnt());
+		assertTrue(writeCoalescer.isEmpty());
+	}
+}
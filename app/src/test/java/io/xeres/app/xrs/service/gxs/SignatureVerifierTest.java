@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.gxs;
+
+import io.xeres.app.crypto.rsa.RSA;
+import io.xeres.app.xrs.service.gxs.SignatureVerifier.SignatureCheck;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureVerifierTest
+{
+	private static final int KEY_SIZE = 512;
+
+	private static KeyPair keyPair;
+	private static ExecutorService executorService;
+	private static SignatureVerifier signatureVerifier;
+
+	@BeforeAll
+	static void setup()
+	{
+		keyPair = RSA.generateKeys(KEY_SIZE);
+		executorService = Executors.newFixedThreadPool(4);
+		signatureVerifier = new SignatureVerifier(executorService);
+	}
+
+	@AfterAll
+	static void tearDown()
+	{
+		executorService.shutdownNow();
+	}
+
+	@Test
+	void Verify_Single_Valid()
+	{
+		var item = "item";
+
+		assertTrue(signatureVerifier.verify(List.of(createCheck(item, true))).isEmpty());
+	}
+
+	@Test
+	void Verify_Single_Invalid()
+	{
+		var item = "item";
+
+		var failed = signatureVerifier.verify(List.of(createCheck(item, false)));
+
+		assertEquals(1, failed.size());
+		assertTrue(failed.contains(item));
+	}
+
+	@Test
+	void Verify_Batch_AllValid()
+	{
+		var items = createItems(20);
+
+		var verified = signatureVerifier.filterVerified(items, items.stream().map(item -> createCheck(item, true)).toList());
+
+		assertEquals(items, verified);
+	}
+
+	@Test
+	void Verify_Batch_AllInvalid()
+	{
+		var items = createItems(20);
+
+		var verified = signatureVerifier.filterVerified(items, items.stream().map(item -> createCheck(item, false)).toList());
+
+		assertTrue(verified.isEmpty());
+	}
+
+	@Test
+	void Verify_Batch_Mixed_OrderPreserved()
+	{
+		var items = createItems(20);
+
+		var verified = signatureVerifier.filterVerified(items, items.stream().map(item -> createCheck(item, Integer.parseInt(item.substring(5)) % 3 != 0)).toList());
+
+		var expected = items.stream()
+				.filter(item -> Integer.parseInt(item.substring(5)) % 3 != 0)
+				.toList();
+		assertEquals(expected, verified);
+	}
+
+	@Test
+	void Verify_Batch_OneOfSeveralSignaturesInvalid()
+	{
+		var items = createItems(3);
+		List<SignatureCheck<String>> signatureChecks = new ArrayList<>();
+		items.forEach(item -> signatureChecks.add(createCheck(item, true)));
+		signatureChecks.add(createCheck(items.get(1), false)); // Second signature of the same item, as for a group update
+
+		var verified = signatureVerifier.filterVerified(items, signatureChecks);
+
+		assertEquals(List.of(items.get(0), items.get(2)), verified);
+	}
+
+	@Test
+	void Verify_Batch_ItemWithoutSignatureKept()
+	{
+		var items = createItems(3);
+
+		var verified = signatureVerifier.filterVerified(items, List.of(createCheck(items.get(0), true), createCheck(items.get(2), false)));
+
+		assertEquals(List.of(items.get(0), items.get(1)), verified);
+	}
+
+	private static List<String> createItems(int count)
+	{
+		return IntStream.range(0, count)
+				.mapToObj(i -> "item " + i)
+				.toList();
+	}
+
+	private static SignatureCheck<String> createCheck(String item, boolean valid)
+	{
+		var data = item.getBytes(StandardCharsets.UTF_8);
+		var signature = RSA.sign(data, keyPair.getPrivate());
+		var signedData = valid ? data : (item + " tampered").getBytes(StandardCharsets.UTF_8);
+		return new SignatureCheck<>(item, keyPair.getPublic(), signature, signedData, "wrong signature");
+	}
+}
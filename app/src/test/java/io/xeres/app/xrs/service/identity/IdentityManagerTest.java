@@ -19,6 +19,7 @@
 
 package io.xeres.app.xrs.service.identity;
 
+import io.xeres.app.application.events.IdentityChangedEvent;
 import io.xeres.app.database.model.gxs.IdentityGroupItemFakes;
 import io.xeres.app.net.peer.PeerConnectionFakes;
 import io.xeres.app.net.peer.PeerConnectionManager;
@@ -38,6 +39,7 @@ import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -111,4 +113,22 @@ class IdentityManagerTest
 		ids.getValue().forEach(allGxsIds::remove);
 		assertEquals(1, allGxsIds.size());
 	}
+
+	@Test
+	void GetAdminKey_InvalidatedOnIdentityChange()
+	{
+		var identity = IdentityGroupItemFakes.createIdentityGroupItem();
+		var peerConnection = PeerConnectionFakes.createPeerConnection();
+
+		when(identityService.findByGxsId(identity.getGxsId())).thenReturn(Optional.of(identity));
+
+		identityManager.getAdminKey(peerConnection, identity.getGxsId());
+		identityManager.getAdminKey(peerConnection, identity.getGxsId());
+		verify(identityService, times(1)).findByGxsId(identity.getGxsId());
+
+		identityManager.onIdentityChangedEvent(new IdentityChangedEvent(identity.getGxsId()));
+
+		identityManager.getAdminKey(peerConnection, identity.getGxsId());
+		verify(identityService, times(2)).findByGxsId(identity.getGxsId());
+	}
 }
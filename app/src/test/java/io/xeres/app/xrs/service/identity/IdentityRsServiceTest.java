@@ -69,6 +69,9 @@ class IdentityRsServiceTest
 	@Mock
 	private ContactNotificationService contactNotificationService;
 
+	@Mock
+	private IdentityManager identityManager;
+
 	@InjectMocks
 	private IdentityRsService identityRsService;
 
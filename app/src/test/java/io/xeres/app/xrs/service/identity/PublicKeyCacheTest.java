@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.identity;
+
+import io.xeres.app.crypto.rsa.RSA;
+import io.xeres.testutils.IdFakes;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublicKeyCacheTest
+{
+	private static final PublicKeyCache.AdminKey adminKey = new PublicKeyCache.AdminKey(RSA.generateKeys(512).getPublic());
+
+	@Test
+	void Get_Hit_Success()
+	{
+		var cache = new PublicKeyCache();
+		var gxsId = IdFakes.createGxsId();
+		var loads = new AtomicInteger();
+
+		assertEquals(adminKey, cache.get(gxsId, id -> {
+			loads.incrementAndGet();
+			return adminKey;
+		}));
+		assertEquals(adminKey, cache.get(gxsId, id -> {
+			loads.incrementAndGet();
+			return adminKey;
+		}));
+
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	void Get_Negative_Success()
+	{
+		var cache = new PublicKeyCache();
+		var gxsId = IdFakes.createGxsId();
+
+		assertNull(cache.get(gxsId, id -> null));
+		assertNull(cache.get(gxsId, id -> adminKey)); // Still cached as unknown
+
+		cache.invalidate(gxsId);
+
+		assertEquals(adminKey, cache.get(gxsId, id -> adminKey));
+	}
+
+	@Test
+	void Get_NoPublicKey_Success()
+	{
+		var cache = new PublicKeyCache();
+		var gxsId = IdFakes.createGxsId();
+		var noKey = new PublicKeyCache.AdminKey(null);
+
+		assertEquals(noKey, cache.get(gxsId, id -> noKey));
+		assertEquals(noKey, cache.get(gxsId, id -> adminKey)); // Known identity, cached as such
+
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	void Get_Expired_Success()
+	{
+		var cache = new PublicKeyCache(10, Duration.ZERO, Duration.ZERO);
+		var gxsId = IdFakes.createGxsId();
+
+		cache.get(gxsId, id -> adminKey);
+		cache.get(gxsId, id -> adminKey);
+
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	void Get_Evicted_Success()
+	{
+		var cache = new PublicKeyCache(2, Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+		cache.get(IdFakes.createGxsId(), id -> adminKey);
+		cache.get(IdFakes.createGxsId(), id -> adminKey);
+		cache.get(IdFakes.createGxsId(), id -> adminKey);
+
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getEvictions());
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.app.xrs.service.turtle;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest
+{
+	private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+	@Test
+	void Expire_Success()
+	{
+		var timerWheel = new TimerWheel<Integer>(Duration.ofSeconds(1), 8, 0L);
+		timerWheel.schedule(1, 2 * SECOND);
+		timerWheel.schedule(2, 5 * SECOND);
+
+		List<Integer> expired = new ArrayList<>();
+		timerWheel.expire(SECOND, expired::add);
+		assertTrue(expired.isEmpty());
+
+		timerWheel.expire(3 * SECOND, expired::add);
+		assertEquals(List.of(1), expired);
+		assertEquals(1, timerWheel.size());
+
+		timerWheel.expire(5 * SECOND, expired::add);
+		assertEquals(List.of(1, 2), expired);
+		assertEquals(0, timerWheel.size());
+	}
+
+	@Test
+	void Expire_NotBeforeDeadline()
+	{
+		var timerWheel = new TimerWheel<Integer>(Duration.ofSeconds(1), 8, 0L);
+		timerWheel.schedule(1, SECOND + 1);
+
+		List<Integer> expired = new ArrayList<>();
+		timerWheel.expire(SECOND, expired::add);
+		assertTrue(expired.isEmpty());
+
+		timerWheel.expire(2 * SECOND, expired::add);
+		assertEquals(List.of(1), expired);
+	}
+
+	@Test
+	void Expire_MoreThanOneTurn()
+	{
+		var timerWheel = new TimerWheel<Integer>(Duration.ofSeconds(1), 4, 0L);
+		timerWheel.schedule(1, 10 * SECOND);
+
+		List<Integer> expired = new ArrayList<>();
+		timerWheel.expire(9 * SECOND, expired::add);
+		assertTrue(expired.isEmpty());
+
+		timerWheel.expire(10 * SECOND, expired::add);
+		assertEquals(List.of(1), expired);
+	}
+
+	@Test
+	void Expire_LateCall()
+	{
+		var timerWheel = new TimerWheel<Integer>(Duration.ofSeconds(1), 4, 0L);
+		timerWheel.schedule(1, SECOND);
+		timerWheel.schedule(2, 3 * SECOND);
+		timerWheel.schedule(3, 30 * SECOND);
+
+		List<Integer> expired = new ArrayList<>();
+		timerWheel.expire(20 * SECOND, expired::add);
+		assertEquals(Set.of(1, 2), new HashSet<>(expired));
+
+		timerWheel.expire(30 * SECOND, expired::add);
+		assertEquals(Set.of(1, 2, 3), new HashSet<>(expired));
+	}
+
+	@Test
+	void Expire_ScheduleAgain()
+	{
+		var timerWheel = new TimerWheel<Integer>(Duration.ofSeconds(1), 8, 0L);
+		timerWheel.schedule(1, SECOND);
+
+		timerWheel.expire(SECOND, key -> timerWheel.schedule(key, 3 * SECOND));
+		assertEquals(1, timerWheel.size());
+
+		List<Integer> expired = new ArrayList<>();
+		timerWheel.expire(3 * SECOND, expired::add);
+		assertEquals(List.of(1), expired);
+	}
+
+	@Test
+	void Expire_ManyTunnels()
+	{
+		var timerWheel = new TimerWheel<Integer>(Duration.ofSeconds(1), 128, 0L);
+		var tunnels = 10_000;
+
+		// Spread over 100 seconds
+		for (var i = 0; i < tunnels; i++)
+		{
+			timerWheel.schedule(i, (i % 100 + 1) * SECOND);
+		}
+		assertEquals(tunnels, timerWheel.size());
+
+		Set<Integer> expired = new HashSet<>();
+		for (var second = 1; second <= 100; second++)
+		{
+			var before = expired.size();
+			timerWheel.expire(second * SECOND, expired::add);
+			assertEquals(tunnels / 100, expired.size() - before);
+		}
+		assertEquals(tunnels, expired.size());
+		assertEquals(0, timerWheel.size());
+	}
+}
@@ -32,9 +32,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -65,4 +68,59 @@ class TurtleRsServiceTest
 
 		assertEquals(3_280_770_886L, Integer.toUnsignedLong(result));
 	}
+
+	@Test
+	void AddSearchRequestToCache_OverBudget_EvictsOldest()
+	{
+		var requestSize = createSearchRequest().getEstimatedSize();
+		var kept = (int) (TurtleRsService.SEARCH_REQUEST_CACHE_BUDGET / requestSize);
+		var total = kept + 10;
+
+		for (var i = 0; i < total; i++)
+		{
+			assertTrue(turtleRsService.addSearchRequestToCache(i, createSearchRequest()));
+		}
+
+		assertEquals((long) kept * requestSize, turtleRsService.getSearchRequestsCacheSize());
+		assertTrue(IntStream.range(0, total - kept).noneMatch(turtleRsService::hasSearchRequest));
+		assertTrue(IntStream.range(total - kept, total).allMatch(turtleRsService::hasSearchRequest));
+	}
+
+	@Test
+	void AddSearchRequestToCache_Duplicate_NotCounted()
+	{
+		var searchRequest = createSearchRequest();
+
+		assertTrue(turtleRsService.addSearchRequestToCache(1, searchRequest));
+		assertFalse(turtleRsService.addSearchRequestToCache(1, createSearchRequest()));
+
+		assertEquals(searchRequest.getEstimatedSize(), turtleRsService.getSearchRequestsCacheSize());
+	}
+
+	@Test
+	void ExpireRequests_SearchRequest_Removed()
+	{
+		var lifetime = TurtleRsService.SEARCH_REQUEST_LIFETIME;
+
+		turtleRsService.addSearchRequestToCache(1, createSearchRequest());
+		turtleRsService.addSearchRequestToCache(2, createSearchRequest());
+
+		turtleRsService.expireRequests(Instant.now(), System.nanoTime());
+		assertTrue(turtleRsService.hasSearchRequest(1));
+		assertTrue(turtleRsService.hasSearchRequest(2));
+
+		var later = lifetime.plus(Duration.ofSeconds(2));
+		turtleRsService.expireRequests(Instant.now().plus(later), System.nanoTime() + later.toNanos());
+		assertFalse(turtleRsService.hasSearchRequest(1));
+		assertFalse(turtleRsService.hasSearchRequest(2));
+		assertEquals(0, turtleRsService.getSearchRequestsCacheSize());
+
+		// Expired ids don't count against the budget anymore and can be used again
+		assertTrue(turtleRsService.addSearchRequestToCache(1, createSearchRequest()));
+	}
+
+	private static SearchRequest createSearchRequest()
+	{
+		return new SearchRequest(null, 0, "foobar", 0, 100);
+	}
 }
\ No newline at end of file
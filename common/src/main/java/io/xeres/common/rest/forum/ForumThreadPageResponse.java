@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.common.rest.forum;
+
+import io.xeres.common.dto.forum.ForumThreadDTO;
+
+import java.util.List;
+
+/**
+ * A page of forum threads.
+ *
+ * @param threads    the root messages of the threads, most recently active first
+ * @param nextCursor the cursor to get the next page, or null if it's the last page
+ */
+public record ForumThreadPageResponse(
+		List<ForumThreadDTO> threads,
+		String nextCursor
+)
+{
+}
@@ -21,14 +21,18 @@ package io.xeres.ui.client;
 
 import io.xeres.common.dto.forum.ForumGroupDTO;
 import io.xeres.common.dto.forum.ForumMessageDTO;
+import io.xeres.common.dto.forum.ForumThreadDTO;
 import io.xeres.common.events.StartupEvent;
+import io.xeres.common.id.MessageId;
 import io.xeres.common.message.forum.ForumGroup;
 import io.xeres.common.message.forum.ForumMessage;
 import io.xeres.common.rest.forum.CreateForumGroupRequest;
 import io.xeres.common.rest.forum.CreateForumMessageRequest;
+import io.xeres.common.rest.forum.ForumThreadPageResponse;
 import io.xeres.common.rest.forum.UpdateForumMessagesReadRequest;
 import io.xeres.common.util.RemoteUtils;
 import io.xeres.ui.model.forum.ForumMapper;
+import io.xeres.ui.model.forum.ForumThread;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -36,12 +40,15 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Map;
+import java.util.Optional;
 
 import static io.xeres.common.rest.PathConfig.FORUMS_PATH;
 
 @Component
 public class ForumClient
 {
+	private static final int THREADS_PAGE_SIZE = 100;
+
 	private final WebClient.Builder webClientBuilder;
 
 	private WebClient webClient;
@@ -104,15 +111,73 @@ public class ForumClient
 				.bodyToMono(Void.class);
 	}
 
-	public Flux<ForumMessage> getForumMessages(long groupId)
+	/**
+	 * Gets a page of the threads of a forum, most recently active first.
+	 *
+	 * @param groupId the forum group
+	 * @param cursor  the cursor returned with the previous page, or null for the first page
+	 * @return the page, with the root message of each thread
+	 */
+	public Mono<ForumThreadPageResponse> getForumThreads(long groupId, String cursor)
 	{
 		return webClient.get()
-				.uri("/groups/{groupId}/messages", groupId)
+				.uri(uriBuilder -> uriBuilder
+						.path("/groups/{groupId}/threads")
+						.queryParam("size", THREADS_PAGE_SIZE)
+						.queryParamIfPresent("cursor", Optional.ofNullable(cursor))
+						.build(groupId))
 				.retrieve()
-				.bodyToFlux(ForumMessageDTO.class)
+				.bodyToMono(ForumThreadPageResponse.class);
+	}
+
+	/**
+	 * Gets the path to a message within its thread.
+	 *
+	 * @param groupId   the forum group
+	 * @param messageId the message
+	 * @return the root of the thread, the ancestors of the message, then the message itself. Empty if the message is unknown
+	 */
+	public Flux<ForumThread> getForumMessagePath(long groupId, MessageId messageId)
+	{
+		return webClient.get()
+				.uri(uriBuilder -> uriBuilder
+						.path("/groups/{groupId}/messages/path")
+						.queryParam("messageId", messageId.toString())
+						.build(groupId))
+				.retrieve()
+				.bodyToFlux(ForumThreadDTO.class)
 				.map(ForumMapper::fromDTO);
 	}
 
+	/**
+	 * Gets the direct replies to a message.
+	 *
+	 * @param messageId the message
+	 * @return the replies
+	 */
+	public Flux<ForumThread> getForumReplies(long messageId)
+	{
+		return webClient.get()
+				.uri("/messages/{messageId}/replies", messageId)
+				.retrieve()
+				.bodyToFlux(ForumThreadDTO.class)
+				.map(ForumMapper::fromDTO);
+	}
+
+	/**
+	 * Gets the ancestors of a message.
+	 *
+	 * @param messageId the message
+	 * @return the ids of the ancestors, from the parent to the root of the thread
+	 */
+	public Flux<Long> getForumAncestors(long messageId)
+	{
+		return webClient.get()
+				.uri("/messages/{messageId}/ancestors", messageId)
+				.retrieve()
+				.bodyToFlux(Long.class);
+	}
+
 	public Mono<ForumMessage> getForumMessage(long messageId)
 	{
 		return webClient.get()
@@ -24,9 +24,17 @@ import javafx.scene.control.TreeTableRow;
 
 public class ForumMessageCell extends TreeTableRow<ForumMessage>
 {
-	public ForumMessageCell()
+	private final Runnable onLastThreadShown;
+
+	/**
+	 * Creates a row.
+	 *
+	 * @param onLastThreadShown called when the last thread is shown, so that the next ones can be fetched
+	 */
+	public ForumMessageCell(Runnable onLastThreadShown)
 	{
 		super();
+		this.onLastThreadShown = onLastThreadShown;
 	}
 
 	@Override
@@ -47,7 +55,21 @@ public class ForumMessageCell extends TreeTableRow<ForumMessage>
 			{
 				setStyle("-fx-font-weight: bold");
 			}
+			if (isLastThread())
+			{
+				onLastThreadShown.run();
+			}
+		}
+	}
+
+	private boolean isLastThread()
+	{
+		var treeItem = getTreeItem();
+		if (treeItem == null || treeItem.getParent() == null || treeItem.getParent().getParent() != null)
+		{
+			return false;
 		}
+		return treeItem.getParent().getChildren().getLast() == treeItem;
 	}
 
 	private void clearStyle()
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.xeres.ui.controller.forum;
+
+import io.xeres.common.message.forum.ForumMessage;
+import javafx.scene.control.TreeItem;
+
+import java.util.function.Consumer;
+
+/**
+ * A forum message whose replies are only fetched the first time it's expanded.
+ */
+class ForumMessageTreeItem extends TreeItem<ForumMessage>
+{
+	private int replyCount;
+	private boolean loaded;
+
+	ForumMessageTreeItem(ForumMessage forumMessage, int replyCount, Consumer<ForumMessageTreeItem> repliesLoader)
+	{
+		super(forumMessage);
+		this.replyCount = replyCount;
+
+		expandedProperty().addListener((observable, oldValue, newValue) -> {
+			if (Boolean.TRUE.equals(newValue) && !loaded)
+			{
+				loaded = true;
+				repliesLoader.accept(this);
+			}
+		});
+	}
+
+	@Override
+	public boolean isLeaf()
+	{
+		return loaded ? getChildren().isEmpty() : replyCount == 0;
+	}
+
+	public int getReplyCount()
+	{
+		return replyCount;
+	}
+
+	public void addReply()
+	{
+		replyCount++;
+	}
+
+	/**
+	 * Tells if the replies were fetched. Replies can only be added to the item if that's the case.
+	 *
+	 * @return true if the replies were fetched
+	 */
+	public boolean isLoaded()
+	{
+		return loaded;
+	}
+
+	public void setLoaded(boolean loaded)
+	{
+		this.loaded = loaded;
+	}
+}
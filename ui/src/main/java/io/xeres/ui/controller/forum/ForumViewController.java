@@ -24,6 +24,7 @@ import io.xeres.common.id.GxsId;
 import io.xeres.common.id.MessageId;
 import io.xeres.common.message.forum.ForumGroup;
 import io.xeres.common.message.forum.ForumMessage;
+import io.xeres.common.rest.forum.ForumThreadPageResponse;
 import io.xeres.common.rest.forum.PostRequest;
 import io.xeres.common.rest.notification.forum.AddForumGroups;
 import io.xeres.common.rest.notification.forum.AddForumMessages;
@@ -35,6 +36,7 @@ import io.xeres.ui.controller.Controller;
 import io.xeres.ui.custom.ProgressPane;
 import io.xeres.ui.custom.asyncimage.ImageCache;
 import io.xeres.ui.model.forum.ForumMapper;
+import io.xeres.ui.model.forum.ForumThread;
 import io.xeres.ui.support.clipboard.ClipboardUtils;
 import io.xeres.ui.support.contentline.Content;
 import io.xeres.ui.support.contextmenu.XContextMenu;
@@ -69,6 +71,8 @@ import reactor.core.Disposable;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 import static io.xeres.ui.support.preference.PreferenceService.FORUMS;
@@ -157,6 +161,12 @@ public class ForumViewController implements Controller
 	private Disposable notificationDisposable;
 
 	private TreeItem<ForumMessage> forumMessagesRoot;
+	private final Map<Long, ForumMessageTreeItem> forumMessageTreeItems = new HashMap<>(); // Only the loaded ones
+	private String nextThreadsCursor;
+	private boolean loadingThreads;
+
+	private final Queue<ForumMessage> pendingForumMessages = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean pendingForumMessagesScheduled = new AtomicBoolean();
 
 	private final TreeItem<ForumGroup> ownForums;
 	private final TreeItem<ForumGroup> subscribedForums;
@@ -209,7 +219,7 @@ public class ForumViewController implements Controller
 			}
 		});
 
-		forumMessagesTreeTableView.setRowFactory(param -> new ForumMessageCell());
+		forumMessagesTreeTableView.setRowFactory(param -> new ForumMessageCell(this::getMoreThreads));
 		createForumMessageTableViewContextMenu();
 		treeTableSubject.setCellValueFactory(new TreeItemPropertyValueFactory<>("name"));
 		treeTableAuthor.setCellFactory(param -> new ForumCellAuthor(generalClient, imageCacheService));
@@ -222,7 +232,7 @@ public class ForumViewController implements Controller
 		forumMessagesTreeTableView.setRoot(forumMessagesRoot);
 		forumMessagesTreeTableView.setShowRoot(false);
 
-		forumMessagesTreeTableView.getSortOrder().add(treeTableDate);
+		// The threads come sorted by last activity, so the date column is only sorted on demand
 		treeTableDate.setSortType(DESCENDING);
 		treeTableDate.setSortable(true);
 
@@ -293,16 +303,74 @@ public class ForumViewController implements Controller
 
 	private void selectMessageIfNeeded()
 	{
-		if (messageIdToSelect != null)
+		if (messageIdToSelect == null || selectedForumGroup == null)
 		{
-			forumMessagesRoot.getChildren().stream()
-					.filter(forumMessageTreeItem -> forumMessageTreeItem.getValue().getMessageId().equals(messageIdToSelect))
-					.findFirst()
-					.ifPresentOrElse(forumMessageTreeItem -> Platform.runLater(() -> forumMessagesTreeTableView.getSelectionModel().select(forumMessageTreeItem)),
-							() -> UiUtils.alert(WARNING, bundle.getString("forum.view.message.not-found")));
+			return;
+		}
 
-			messageIdToSelect = null;
+		// The message might be in a thread or a reply that isn't loaded yet, so its path is resolved by the server
+		var forumGroup = selectedForumGroup;
+		forumClient.getForumMessagePath(forumGroup.getId(), messageIdToSelect).collectList()
+				.doOnSuccess(path -> Platform.runLater(() -> {
+					if (forumGroup != selectedForumGroup)
+					{
+						return;
+					}
+					if (path.isEmpty())
+					{
+						UiUtils.alert(WARNING, bundle.getString("forum.view.message.not-found"));
+						return;
+					}
+					var root = path.getFirst();
+					var rootTreeItem = forumMessageTreeItems.get(root.getMessage().getId());
+					if (rootTreeItem == null)
+					{
+						// Thread not in the loaded pages
+						rootTreeItem = createTreeItem(root.getMessage(), root.getReplyCount());
+						forumMessagesRoot.getChildren().add(rootTreeItem);
+						forumMessagesTreeTableView.sort();
+					}
+					expandPath(rootTreeItem, path, 1);
+				}))
+				.doOnError(UiUtils::showAlertError)
+				.subscribe();
+
+		messageIdToSelect = null;
+	}
+
+	/**
+	 * Expands the messages along a path, fetching their replies if needed, then selects the last one.
+	 *
+	 * @param treeItem the item of the message at the current index - 1
+	 * @param path     the path, from the root of the thread to the message to select
+	 * @param index    the index of the next message in the path
+	 */
+	private void expandPath(ForumMessageTreeItem treeItem, List<ForumThread> path, int index)
+	{
+		if (index == path.size())
+		{
+			forumMessagesTreeTableView.getSelectionModel().select(treeItem);
+			forumMessagesTreeTableView.scrollTo(forumMessagesTreeTableView.getRow(treeItem));
+			return;
+		}
+
+		if (!treeItem.isLoaded())
+		{
+			treeItem.setLoaded(true);
+			getReplies(treeItem, () -> expandPath(treeItem, path, index));
+			return;
+		}
+
+		var next = path.get(index);
+		var nextTreeItem = forumMessageTreeItems.get(next.getMessage().getId());
+		if (nextTreeItem == null)
+		{
+			// The replies are still being fetched, they'll skip the one added here
+			nextTreeItem = createTreeItem(next.getMessage(), next.getReplyCount());
+			treeItem.getChildren().add(nextTreeItem);
 		}
+		treeItem.setExpanded(true);
+		expandPath(nextTreeItem, path, index + 1);
 	}
 
 	private void createForumTreeContextMenu()
@@ -382,7 +450,7 @@ public class ForumViewController implements Controller
 	{
 		notificationDisposable = notificationClient.getForumNotifications()
 				.doOnError(UiUtils::showAlertError)
-				.doOnNext(sse -> Platform.runLater(() -> {
+				.doOnNext(sse -> {
 					if (sse.data() != null)
 					{
 						var idName = Objects.requireNonNull(sse.id());
@@ -391,27 +459,48 @@ public class ForumViewController implements Controller
 						{
 							var action = objectMapper.convertValue(sse.data().action(), AddForumGroups.class);
 
-							addForumGroups(action.forumGroups().stream()
+							var forumGroups = action.forumGroups().stream()
 									.map(ForumMapper::fromDTO)
-									.toList());
+									.toList();
+
+							Platform.runLater(() -> addForumGroups(forumGroups));
 						}
 						else if (idName.equals(AddForumMessages.class.getSimpleName()))
 						{
 							var action = objectMapper.convertValue(sse.data().action(), AddForumMessages.class);
 
-							addForumMessages(action.forumMessages().stream()
+							action.forumMessages().stream()
 									.map(ForumMapper::fromDTO)
-									.toList());
+									.forEach(pendingForumMessages::add);
+
+							// Messages arrive in bursts when synchronizing, so they're added all at once when the UI thread gets to them
+							if (pendingForumMessagesScheduled.compareAndSet(false, true))
+							{
+								Platform.runLater(this::addPendingForumMessages);
+							}
 						}
 						else
 						{
 							log.debug("Unknown forum notification");
 						}
 					}
-				}))
+				})
 				.subscribe();
 	}
 
+	private void addPendingForumMessages()
+	{
+		pendingForumMessagesScheduled.set(false);
+
+		List<ForumMessage> forumMessages = new ArrayList<>();
+		ForumMessage forumMessage;
+		while ((forumMessage = pendingForumMessages.poll()) != null)
+		{
+			forumMessages.add(forumMessage);
+		}
+		addForumMessages(forumMessages);
+	}
+
 	private void getForumGroups()
 	{
 		forumClient.getForumGroups().collectList()
@@ -504,13 +593,16 @@ public class ForumViewController implements Controller
 		selectedForumGroup = forumGroup;
 		selectedForumMessage = null;
 
-		getBrowsableTreeItem(forumGroup.getId()).ifPresentOrElse(forumGroupTreeItem -> forumClient.getForumMessages(forumGroup.getId()).collectList()
+		getBrowsableTreeItem(forumGroup.getId()).ifPresentOrElse(forumGroupTreeItem -> forumClient.getForumThreads(forumGroup.getId(), null)
 				.doFirst(() -> forumMessagesState(true))
-				.doOnSuccess(forumMessages -> Platform.runLater(() -> {
+				.doOnSuccess(forumThreadPage -> Platform.runLater(() -> {
+					if (forumGroup != selectedForumGroup)
+					{
+						return; // Another forum was selected in the meantime
+					}
 					forumMessagesTreeTableView.getSelectionModel().clearSelection(); // Important! Clear the selection before clearing the content, otherwise the next sort() crashes
-					forumMessagesRoot.getChildren().clear();
-					forumMessagesRoot.getChildren().addAll(toTreeItemForumMessages(forumMessages));
-					forumMessagesTreeTableView.sort();
+					clearForumMessages();
+					addThreads(forumThreadPage);
 					clearMessage();
 					newThread.setDisable(false);
 					selectMessageIfNeeded();
@@ -520,7 +612,7 @@ public class ForumViewController implements Controller
 				.subscribe(), () -> Platform.runLater(() -> {
 			// XXX: this is the case when there's no active forum selected. display some forum/tree group info in the message view
 			forumMessagesTreeTableView.getSelectionModel().clearSelection();
-			forumMessagesRoot.getChildren().clear();
+			clearForumMessages();
 			clearMessage();
 			newThread.setDisable(true);
 			forumMessagesState(false);
@@ -536,19 +628,93 @@ public class ForumViewController implements Controller
 		});
 	}
 
-	// XXX: implement threaded support for the 2 following methods.
-	// if the message has a parentId, find it in the list then add the message to it.
-	// could be slow if the list is big so find tricks to speed it up
-	private List<TreeItem<ForumMessage>> toTreeItemForumMessages(List<ForumMessage> forumMessages)
+	private void clearForumMessages()
 	{
-		return forumMessages.stream()
-				.map(TreeItem::new)
+		forumMessagesRoot.getChildren().clear();
+		forumMessageTreeItems.clear();
+		nextThreadsCursor = null;
+	}
+
+	private void addThreads(ForumThreadPageResponse forumThreadPage)
+	{
+		nextThreadsCursor = forumThreadPage.nextCursor();
+
+		var threads = forumThreadPage.threads().stream()
+				.map(ForumMapper::fromDTO)
+				.filter(forumThread -> !forumMessageTreeItems.containsKey(forumThread.getMessage().getId()))
+				.map(forumThread -> createTreeItem(forumThread.getMessage(), forumThread.getReplyCount()))
 				.toList();
+
+		forumMessagesRoot.getChildren().addAll(threads);
+		forumMessagesTreeTableView.sort();
 	}
 
-	private void add(ForumMessage forumMessage)
+	/**
+	 * Fetches the next page of threads, if any. This is called when the last thread is shown.
+	 */
+	private void getMoreThreads()
 	{
-		forumMessagesRoot.getChildren().add(new TreeItem<>(forumMessage));
+		if (nextThreadsCursor == null || loadingThreads || selectedForumGroup == null)
+		{
+			return;
+		}
+		loadingThreads = true;
+
+		var forumGroup = selectedForumGroup;
+		forumClient.getForumThreads(forumGroup.getId(), nextThreadsCursor)
+				.doOnSuccess(forumThreadPage -> Platform.runLater(() -> {
+					if (forumGroup == selectedForumGroup)
+					{
+						addThreads(forumThreadPage);
+					}
+				}))
+				.doOnError(UiUtils::showAlertError)
+				.doFinally(signalType -> Platform.runLater(() -> loadingThreads = false))
+				.subscribe();
+	}
+
+	private ForumMessageTreeItem createTreeItem(ForumMessage forumMessage, int replyCount)
+	{
+		var treeItem = new ForumMessageTreeItem(forumMessage, replyCount, this::getReplies);
+		forumMessageTreeItems.put(forumMessage.getId(), treeItem);
+		return treeItem;
+	}
+
+	private void getReplies(ForumMessageTreeItem treeItem)
+	{
+		getReplies(treeItem, () -> {
+		});
+	}
+
+	private void getReplies(ForumMessageTreeItem treeItem, Runnable onAdded)
+	{
+		var forumGroup = selectedForumGroup;
+		forumClient.getForumReplies(treeItem.getValue().getId()).collectList()
+				.doOnSuccess(forumThreads -> Platform.runLater(() -> {
+					if (forumGroup == selectedForumGroup)
+					{
+						addReplies(treeItem, forumThreads);
+						onAdded.run();
+					}
+				}))
+				.doOnError(throwable -> {
+					Platform.runLater(() -> treeItem.setLoaded(false));
+					UiUtils.showAlertError(throwable);
+				})
+				.subscribe();
+	}
+
+	private void addReplies(ForumMessageTreeItem treeItem, List<ForumThread> forumThreads)
+	{
+		// Only the direct replies are there, theirs are fetched when they're expanded
+		var replies = forumThreads.stream()
+				.filter(forumThread -> !forumMessageTreeItems.containsKey(forumThread.getMessage().getId()))
+				.map(forumThread -> (TreeItem<ForumMessage>) createTreeItem(forumThread.getMessage(), forumThread.getReplyCount()))
+				.sorted(Comparator.comparing(TreeItem::getValue, Comparator.comparing(ForumMessage::getPublished, Comparator.nullsFirst(Comparator.naturalOrder()))))
+				.toList();
+
+		treeItem.getChildren().addAll(replies);
+		forumMessagesTreeTableView.sort();
 	}
 
 	private Optional<TreeItem<ForumGroup>> getBrowsableTreeItem(long forumId)
@@ -608,13 +774,69 @@ public class ForumViewController implements Controller
 			return;
 		}
 
-		forumMessages.forEach(forumMessage -> {
-			if (forumMessage.getGxsId().equals(selectedForumGroup.getGxsId()))
-			{
-				add(forumMessage);
-			}
-		});
+		forumMessages.stream()
+				.filter(forumMessage -> forumMessage.getGxsId().equals(selectedForumGroup.getGxsId()))
+				.filter(forumMessage -> !forumMessageTreeItems.containsKey(forumMessage.getId()))
+				.sorted(Comparator.comparing(ForumMessage::getPublished, Comparator.nullsFirst(Comparator.naturalOrder())))
+				.forEach(this::addForumMessage);
+
 		forumMessagesTreeTableView.sort();
+		forumMessagesTreeTableView.refresh(); // The reply counts might have changed
+	}
+
+	private void addForumMessage(ForumMessage forumMessage)
+	{
+		if (forumMessage.getParentId() == 0L)
+		{
+			forumMessagesRoot.getChildren().addFirst(createTreeItem(forumMessage, 0));
+			return;
+		}
+
+		var parent = forumMessageTreeItems.get(forumMessage.getParentId());
+		if (parent == null)
+		{
+			// The message will be fetched when its parent is expanded, but the loaded ancestors must count it already
+			addReplyToLoadedAncestor(forumMessage);
+			return;
+		}
+
+		if (parent.isLoaded())
+		{
+			var reply = createTreeItem(forumMessage, 0);
+			reply.setLoaded(true);
+			parent.getChildren().add(reply);
+		}
+		addReply(parent);
+	}
+
+	private void addReplyToLoadedAncestor(ForumMessage forumMessage)
+	{
+		var forumGroup = selectedForumGroup;
+		forumClient.getForumAncestors(forumMessage.getId()).collectList()
+				.doOnSuccess(ancestorIds -> Platform.runLater(() -> {
+					if (forumGroup == selectedForumGroup)
+					{
+						ancestorIds.stream()
+								.map(forumMessageTreeItems::get)
+								.filter(Objects::nonNull)
+								.findFirst()
+								.ifPresent(ancestor -> {
+									addReply(ancestor);
+									forumMessagesTreeTableView.refresh();
+								});
+					}
+				}))
+				.subscribe();
+	}
+
+	private static void addReply(ForumMessageTreeItem treeItem)
+	{
+		TreeItem<ForumMessage> ancestor = treeItem;
+		while (ancestor instanceof ForumMessageTreeItem forumMessageTreeItem)
+		{
+			forumMessageTreeItem.addReply();
+			ancestor = ancestor.getParent();
+		}
 	}
 
 	@EventListener
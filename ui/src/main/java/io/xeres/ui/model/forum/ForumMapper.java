@@ -21,6 +21,7 @@ package io.xeres.ui.model.forum;
 
 import io.xeres.common.dto.forum.ForumGroupDTO;
 import io.xeres.common.dto.forum.ForumMessageDTO;
+import io.xeres.common.dto.forum.ForumThreadDTO;
 import io.xeres.common.message.forum.ForumGroup;
 import io.xeres.common.message.forum.ForumMessage;
 
@@ -69,4 +70,17 @@ public final class ForumMapper
 		forumMessage.setRead(dto.read());
 		return forumMessage;
 	}
+
+	public static ForumThread fromDTO(ForumThreadDTO dto)
+	{
+		if (dto == null)
+		{
+			return null;
+		}
+
+		var forumThread = new ForumThread();
+		forumThread.setMessage(fromDTO(dto.message()));
+		forumThread.setReplyCount(dto.replyCount());
+		return forumThread;
+	}
 }
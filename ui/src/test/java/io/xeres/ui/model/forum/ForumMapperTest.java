@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 by David Gerber - https://zapek.com
+ *
+ * This file is part of Xeres.
+ *
+ * Xeres is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Xeres is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Xeres.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.xeres.ui.model.forum;
+
+import io.xeres.common.dto.forum.ForumMessageDTO;
+import io.xeres.common.dto.forum.ForumThreadDTO;
+import io.xeres.testutils.IdFakes;
+import io.xeres.testutils.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ForumMapperTest
+{
+	@Test
+	void Instance_ThrowsException() throws NoSuchMethodException
+	{
+		TestUtils.assertUtilityClass(ForumMapper.class);
+	}
+
+	@Test
+	void FromDTO_ForumThread_Success()
+	{
+		var now = Instant.now();
+		var message = new ForumMessageDTO(2L, IdFakes.createGxsId(), IdFakes.createMessageId(), 0L, 1L, IdFakes.createGxsId(), "Bob", "Re: Hello", now, "", false);
+		var dto = new ForumThreadDTO(message, 1L, 1, 3, now.plusSeconds(60));
+
+		var forumThread = ForumMapper.fromDTO(dto);
+
+		assertEquals(message.id(), forumThread.getMessage().getId());
+		assertEquals(message.parentId(), forumThread.getMessage().getParentId());
+		assertEquals(message.name(), forumThread.getMessage().getName());
+		assertEquals(dto.replyCount(), forumThread.getReplyCount());
+	}
+}